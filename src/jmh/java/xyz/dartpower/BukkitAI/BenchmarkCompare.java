@@ -0,0 +1,93 @@
+package xyz.dartpower.BukkitAI;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Сравнивает два результата JMH в формате JSON (-rf json): пропускную способность
+ * и объём выделяемой памяти на операцию (gc.alloc.rate.norm, профилировщик -prof gc).
+ * <p>
+ * Использование: java -cp target/benchmarks.jar xyz.dartpower.BukkitAI.BenchmarkCompare old.json new.json
+ */
+public class BenchmarkCompare {
+
+    private static final String ALLOC_METRIC = "gc.alloc.rate.norm";
+
+    private record Result(double score, String unit, double allocBytesPerOp) {}
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Использование: BenchmarkCompare <старый.json> <новый.json>");
+            System.exit(2);
+        }
+        Map<String, Result> before = load(Path.of(args[0]));
+        Map<String, Result> after = load(Path.of(args[1]));
+
+        System.out.printf("%-60s %14s %14s %8s %12s %12s %8s%n",
+                "Бенчмарк", "было", "стало", "Δ", "B/op было", "B/op стало", "Δ");
+        for (Map.Entry<String, Result> entry : after.entrySet()) {
+            Result now = entry.getValue();
+            Result old = before.get(entry.getKey());
+            if (old == null) {
+                System.out.printf("%-60s %14s %14.1f %8s %12s %12.0f %8s%n",
+                        entry.getKey(), "-", now.score(), "новый", "-", now.allocBytesPerOp(), "");
+                continue;
+            }
+            System.out.printf("%-60s %14.1f %14.1f %8s %12.0f %12.0f %8s%n",
+                    entry.getKey(), old.score(), now.score(), percent(old.score(), now.score()),
+                    old.allocBytesPerOp(), now.allocBytesPerOp(), percent(old.allocBytesPerOp(), now.allocBytesPerOp()));
+        }
+        for (String key : before.keySet()) {
+            if (!after.containsKey(key)) {
+                System.out.printf("%-60s (нет в новом результате)%n", key);
+            }
+        }
+    }
+
+    private static String percent(double before, double after) {
+        if (before == 0 || Double.isNaN(before) || Double.isNaN(after)) {
+            return "";
+        }
+        return String.format("%+.1f%%", (after - before) / before * 100);
+    }
+
+    /**
+     * @return Результаты по ключу "имя бенчмарка [параметры]" в порядке файла.
+     */
+    private static Map<String, Result> load(Path file) throws IOException {
+        JsonArray runs = JsonParser.parseString(Files.readString(file)).getAsJsonArray();
+        Map<String, Result> results = new LinkedHashMap<>();
+        for (JsonElement element : runs) {
+            JsonObject run = element.getAsJsonObject();
+            String name = run.get("benchmark").getAsString();
+            name = name.substring(name.lastIndexOf('.', name.lastIndexOf('.') - 1) + 1);
+            if (run.has("params")) {
+                Map<String, String> params = new TreeMap<>();
+                run.getAsJsonObject("params").entrySet()
+                        .forEach(param -> params.put(param.getKey(), param.getValue().getAsString()));
+                name += " " + params;
+            }
+            JsonObject primary = run.getAsJsonObject("primaryMetric");
+            double alloc = Double.NaN;
+            if (run.has("secondaryMetrics")) {
+                for (Map.Entry<String, JsonElement> metric : run.getAsJsonObject("secondaryMetrics").entrySet()) {
+                    // В старых версиях JMH имена метрик профилировщика начинаются с "·"
+                    if (metric.getKey().replace("·", "").equals(ALLOC_METRIC)) {
+                        alloc = metric.getValue().getAsJsonObject().get("score").getAsDouble();
+                    }
+                }
+            }
+            results.put(name, new Result(primary.get("score").getAsDouble(), primary.get("scoreUnit").getAsString(), alloc));
+        }
+        return results;
+    }
+}
@@ -0,0 +1,75 @@
+package xyz.dartpower.BukkitAI;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Построение тела запроса и извлечение ответа из JSON (обычного и потокового) так же,
+ * как это делает {@link ChatCompletionsClient}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonBenchmark {
+
+    private static final StreamListener IGNORE = delta -> { };
+
+    @Param({"1024", "16384", "262144", "2097152"})
+    public int size;
+
+    private final Gson gson = new Gson();
+    private String prompt;
+    private byte[] responseBytes;
+    private byte[] sseStream;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String content = ResponseCorpus.response(size);
+        // Промпт берём из того же корпуса: длинные промпты с примерами кода встречаются на практике
+        prompt = content.substring(0, Math.min(content.length(), 4096));
+        responseBytes = ResponseCorpus.chatResponseJson(content).getBytes(StandardCharsets.UTF_8);
+        sseStream = ResponseCorpus.sseStream(content);
+    }
+
+    @Benchmark
+    public String buildRequestBody() {
+        return ChatRequest.pluginCode(prompt, "BenchPlugin", true).toJson("bench-model", false).toString();
+    }
+
+    @Benchmark
+    public Completion extractResponse() throws IOException {
+        TeeInputStream body = new TeeInputStream(new ByteArrayInputStream(responseBytes), responseBytes.length);
+        Completion completion = CompletionReader.read(body);
+        body.drain();
+        return completion;
+    }
+
+    // Прежний способ: тело целиком в строку и полное дерево Gson, для сравнения
+    @Benchmark
+    public Completion extractResponseTree() throws IOException {
+        String rawBody = new String(responseBytes, StandardCharsets.UTF_8);
+        return Completion.fromResponse(gson.fromJson(rawBody, JsonObject.class));
+    }
+
+    @Benchmark
+    public Completion extractStream() throws IOException {
+        return SseReader.readCompletionDeltas(new ByteArrayInputStream(sseStream), IGNORE);
+    }
+}
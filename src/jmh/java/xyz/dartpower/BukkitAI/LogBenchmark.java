@@ -0,0 +1,70 @@
+package xyz.dartpower.BukkitAI;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Запись в журнал взаимодействий. Очередь журнала небольшая и блокирующая, поэтому после
+ * её заполнения пропускная способность append равна скорости фоновой записи на диск.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LogBenchmark {
+
+    @Param({"1024", "262144"})
+    public int size;
+
+    @Param({"deflate", "none"})
+    public String compression;
+
+    private String prompt;
+    private String response;
+    private Path dir;
+    private InteractionLog log;
+
+    @Setup(Level.Trial)
+    public void loadCorpus() {
+        response = ResponseCorpus.response(size);
+        prompt = "Generate a Bukkit plugin with the following functionality: homes with cooldowns";
+    }
+
+    @Setup(Level.Iteration)
+    public void open() throws IOException {
+        dir = Files.createTempDirectory("bench-log");
+        log = new InteractionLog(dir, 64, 64L * 1024 * 1024, "deflate".equals(compression), false);
+    }
+
+    @TearDown(Level.Iteration)
+    public void close() throws IOException {
+        log.close();
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Benchmark
+    public void append() {
+        log.append("BenchPlugin", prompt, response);
+    }
+}
@@ -0,0 +1,71 @@
+package xyz.dartpower.BukkitAI;
+
+import com.google.common.jimfs.Configuration;
+import com.google.common.jimfs.Jimfs;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.FileSystem;
+import java.nio.file.Path;
+
+/**
+ * Разбор ответа модели на блоки кода и создание файлов проекта (разбор и запись через commit()).
+ * Проект записывается в файловую систему в памяти, чтобы замер не зависел от диска.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParseBenchmark {
+
+    @Param({"1024", "16384", "262144", "2097152"})
+    public int size;
+
+    private String response;
+    private FileSystem fileSystem;
+    private Path baseDir;
+    private PrintStream originalOut;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        response = ResponseCorpus.response(size);
+        fileSystem = Jimfs.newFileSystem(Configuration.unix());
+        baseDir = fileSystem.getPath("/work");
+        // ProjectCreator сообщает о каждом файле в консоль; в замер это попадать не должно
+        originalOut = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        System.setOut(originalOut);
+        fileSystem.close();
+    }
+
+    @Benchmark
+    public boolean fenceParser(Blackhole blackhole) throws IOException {
+        return CodeFenceParser.parse(response, blackhole::consume);
+    }
+
+    @Benchmark
+    public void createProject() throws IOException {
+        ProjectCreator creator = new ProjectCreator(baseDir, "BenchPlugin");
+        creator.createProject(response);
+        creator.commit();
+    }
+}
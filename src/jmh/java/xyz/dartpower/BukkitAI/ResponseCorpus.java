@@ -0,0 +1,182 @@
+package xyz.dartpower.BukkitAI;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Набор ответов модели заданного размера для бенчмарков.
+ * <p>
+ * За основу берётся записанный ответ из resources/corpus/sample-response.md либо, если задано
+ * свойство -Dbench.corpus=&lt;каталог журнала&gt;, реальные ответы из журнала взаимодействий.
+ * Текст режется на фрагменты "пояснение + блок кода"; до нужного размера фрагменты повторяются,
+ * а Java-классы в повторах получают новые имена, чтобы каждый повтор давал новый файл.
+ */
+final class ResponseCorpus {
+
+    private static final String FENCE = "```";
+    // Размер фрагмента потокового ответа в символах, примерно 3-4 токена
+    private static final int STREAM_CHUNK_CHARS = 12;
+
+    private static final Pattern TYPE_DECLARATION = Pattern.compile(
+            "^\\s*(?:(?:public|abstract|final)\\s+)*(?:class|interface|enum|record)\\s+(\\w+)", Pattern.MULTILINE);
+
+    private static List<String> segments;
+
+    private ResponseCorpus() {
+    }
+
+    /**
+     * @return Ответ модели длиной не меньше size символов (но не меньше одного блока кода).
+     */
+    static String response(int size) {
+        List<String> parts = segments();
+        StringBuilder text = new StringBuilder(size + 8192);
+        int round = 0;
+        while (text.length() < size) {
+            for (String part : parts) {
+                if (round > 0 && !part.contains(FENCE + "java")) {
+                    continue;
+                }
+                text.append(round == 0 ? part : renameTypes(part, round));
+                if (text.length() >= size) {
+                    break;
+                }
+            }
+            round++;
+        }
+        return text.toString();
+    }
+
+    // Добавляет номер повтора ко всем объявленным в блоке типам и их упоминаниям
+    private static String renameTypes(String part, int round) {
+        Matcher declaration = TYPE_DECLARATION.matcher(part);
+        String renamed = part;
+        while (declaration.find()) {
+            String name = declaration.group(1);
+            renamed = renamed.replaceAll("\\b" + name + "\\b", name + round);
+        }
+        return renamed;
+    }
+
+    /**
+     * @return Тело ответа chat/completions без потоковой передачи.
+     */
+    static String chatResponseJson(String content) {
+        JsonObject message = new JsonObject();
+        message.addProperty("role", "assistant");
+        message.addProperty("content", content);
+        JsonObject choice = new JsonObject();
+        choice.addProperty("index", 0);
+        choice.add("message", message);
+        choice.addProperty("finish_reason", "stop");
+        JsonArray choices = new JsonArray();
+        choices.add(choice);
+
+        JsonObject usage = new JsonObject();
+        usage.addProperty("prompt_tokens", 120);
+        usage.addProperty("completion_tokens", content.length() / 4);
+        JsonObject body = new JsonObject();
+        body.addProperty("id", "chatcmpl-bench");
+        body.addProperty("object", "chat.completion");
+        body.addProperty("model", "bench-model");
+        body.add("choices", choices);
+        body.add("usage", usage);
+        return body.toString();
+    }
+
+    /**
+     * @return Поток server-sent events, в котором ответ разбит на мелкие фрагменты delta.content.
+     */
+    static byte[] sseStream(String content) {
+        StringBuilder sse = new StringBuilder(content.length() * 8);
+        for (int i = 0; i < content.length(); i += STREAM_CHUNK_CHARS) {
+            String piece = content.substring(i, Math.min(content.length(), i + STREAM_CHUNK_CHARS));
+            JsonObject delta = new JsonObject();
+            delta.addProperty("content", piece);
+            sse.append("data: ").append(chunk(delta, null)).append("\n\n");
+        }
+        sse.append("data: ").append(chunk(new JsonObject(), "stop")).append("\n\n");
+        sse.append("data: ").append(SseReader.DONE).append("\n\n");
+        return sse.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String chunk(JsonObject delta, String finishReason) {
+        JsonObject choice = new JsonObject();
+        choice.addProperty("index", 0);
+        choice.add("delta", delta);
+        choice.addProperty("finish_reason", finishReason);
+        JsonArray choices = new JsonArray();
+        choices.add(choice);
+        JsonObject body = new JsonObject();
+        body.addProperty("id", "chatcmpl-bench");
+        body.addProperty("object", "chat.completion.chunk");
+        body.add("choices", choices);
+        return body.toString();
+    }
+
+    private static synchronized List<String> segments() {
+        if (segments == null) {
+            segments = split(source());
+            if (segments.isEmpty()) {
+                throw new IllegalStateException("В корпусе нет ни одного блока кода");
+            }
+        }
+        return segments;
+    }
+
+    private static String source() {
+        String corpusDir = System.getProperty("bench.corpus");
+        try {
+            if (corpusDir != null) {
+                StringBuilder recorded = new StringBuilder();
+                InteractionLog.read(Path.of(corpusDir), record -> {
+                    recorded.append(record.responseText()).append("\n\n");
+                    return true;
+                });
+                return recorded.toString();
+            }
+            try (InputStream in = ResponseCorpus.class.getResourceAsStream("/corpus/sample-response.md")) {
+                if (in == null) {
+                    throw new IllegalStateException("Не найден ресурс /corpus/sample-response.md");
+                }
+                return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Разрезает текст после каждой закрывающей ``` (ограда на отдельной строке)
+    private static List<String> split(String text) {
+        List<String> parts = new ArrayList<>();
+        boolean inside = false;
+        int start = 0;
+        int lineStart = 0;
+        while (lineStart < text.length()) {
+            int lineEnd = text.indexOf('\n', lineStart);
+            int next = lineEnd < 0 ? text.length() : lineEnd + 1;
+            String line = text.substring(lineStart, next).strip();
+            if (line.startsWith(FENCE)) {
+                if (inside && line.equals(FENCE)) {
+                    parts.add(text.substring(start, next));
+                    start = next;
+                    inside = false;
+                } else if (!inside) {
+                    inside = true;
+                }
+            }
+            lineStart = next;
+        }
+        return parts;
+    }
+}
@@ -1,11 +1,78 @@
 package xyz.dartpower.BukkitAI;
 
 import java.io.IOException;
+import java.util.List;
 
 /**
  * Общий интерфейс для клиентов AI-провайдеров.
  */
 public interface AiClient {
+
+    /**
+     * @return Идентификатор провайдера ("openrouter", "openai").
+     */
+    String provider();
+
+    /**
+     * @return Имя используемой модели.
+     */
+    String model();
+
+    /**
+     * @return Модели, которые могут ответить на запрос: обычно одна, у пула эндпоинтов — все модели его эндпоинтов.
+     */
+    default List<String> models() {
+        return List.of(model());
+    }
+
+    /**
+     * Выполняет запрос к chat/completions и возвращает ответ целиком.
+     * @param request Запрос к модели.
+     * @return Ответ модели.
+     * @throws IOException В случае ошибки сети или API.
+     * @throws InterruptedException В случае прерывания запроса.
+     */
+    Completion complete(ChatRequest request) throws IOException, InterruptedException;
+
+    /**
+     * Выполняет запрос в потоковом режиме ("stream": true), передавая фрагменты ответа по мере их получения.
+     * По умолчанию выполняет обычный запрос и передаёт весь ответ одним фрагментом.
+     * @param request Запрос к модели.
+     * @param listener Получатель фрагментов ответа.
+     * @return Ответ модели; текст в нём может отсутствовать (null), если не запрошен {@link ChatRequest#keepText()}.
+     * @throws IOException В случае ошибки сети или API.
+     * @throws InterruptedException В случае прерывания запроса.
+     */
+    default Completion stream(ChatRequest request, StreamListener listener) throws IOException, InterruptedException {
+        Completion completion = complete(request);
+        listener.onDelta(completion.content());
+        listener.onComplete();
+        return completion;
+    }
+
+    /**
+     * Параметры запросов генерации кода и идей.
+     * @param templates true — модель пишет только Java-классы, pom.xml и plugin.yml создаются по шаблонам
+     *                  (templates.enabled), false — весь проект.
+     * @param avoid Идеи, на которые новая идея не должна быть похожа (для generateRandomPluginIdea).
+     * @param deadline Срок генерации: при его истечении или отмене запрос прерывается; в потоковом режиме
+     *                 ограничивает и паузу между фрагментами (timeouts.idle-seconds).
+     */
+    record RequestOptions(boolean templates, List<String> avoid, Deadline deadline) {
+
+        public static RequestOptions fromOptions(ConfigOptions options) {
+            return new RequestOptions(options.getBoolean("templates.enabled", true), List.of(), Deadline.NONE);
+        }
+
+        public RequestOptions withAvoid(List<String> avoid) {
+            return new RequestOptions(templates, List.copyOf(avoid), deadline);
+        }
+
+        public RequestOptions withDeadline(Deadline deadline) {
+            return new RequestOptions(templates, avoid, deadline);
+        }
+    }
+
     /**
      * Генерирует код плагина на основе промпта.
      * @param userPrompt Описание функционала плагина.
@@ -13,13 +80,33 @@ public interface AiClient {
      * @throws IOException В случае ошибки сети или API.
      * @throws InterruptedException В случае прерывания запроса.
      */
-    String generatePluginCode(String userPrompt, String pluginName) throws IOException, InterruptedException;
+    default String generatePluginCode(String userPrompt, String pluginName, RequestOptions options)
+            throws IOException, InterruptedException {
+        return complete(ChatRequest.pluginCode(userPrompt, pluginName, options.templates())
+                .withDeadline(options.deadline())).content();
+    }
+
+    /**
+     * Генерирует код плагина в потоковом режиме, передавая фрагменты ответа по мере их получения.
+     * @param userPrompt Описание функционала плагина.
+     * @param listener Получатель фрагментов ответа (он и обрабатывает текст).
+     * @return Полный сгенерированный текст или null, если он не собирался целиком.
+     * @throws IOException В случае ошибки сети или API.
+     * @throws InterruptedException В случае прерывания запроса.
+     */
+    default String streamPluginCode(String userPrompt, String pluginName, RequestOptions options, StreamListener listener)
+            throws IOException, InterruptedException {
+        return stream(ChatRequest.pluginCode(userPrompt, pluginName, options.templates())
+                .withDeadline(options.deadline()), listener).content();
+    }
 
     /**
-     * Генерирует случайную идею для плагина.
+     * Генерирует случайную идею для плагина, отличную от options.avoid().
      * @return Строка с описанием идеи для плагина.
      * @throws IOException В случае ошибки сети или API.
      * @throws InterruptedException В случае прерывания запроса.
      */
-    String generateRandomPluginIdea(String pluginName) throws IOException, InterruptedException;
-}
\ No newline at end of file
+    default String generateRandomPluginIdea(String pluginName, RequestOptions options) throws IOException, InterruptedException {
+        return complete(ChatRequest.randomIdea(pluginName, options.avoid()).withDeadline(options.deadline())).content().trim();
+    }
+}
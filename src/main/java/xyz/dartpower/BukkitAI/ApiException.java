@@ -0,0 +1,34 @@
+package xyz.dartpower.BukkitAI;
+
+import java.io.IOException;
+import java.net.http.HttpHeaders;
+
+/**
+ * Ошибка, возвращённая API провайдера (код ответа, отличный от 200).
+ */
+public class ApiException extends IOException {
+
+    private final int statusCode;
+    private final HttpHeaders headers;
+
+    public ApiException(String message, int statusCode, HttpHeaders headers) {
+        super(message);
+        this.statusCode = statusCode;
+        this.headers = headers;
+    }
+
+    public int statusCode() {
+        return statusCode;
+    }
+
+    public HttpHeaders headers() {
+        return headers;
+    }
+
+    /**
+     * @return true для ошибок, после которых запрос имеет смысл повторить (429, 408 и 5xx).
+     */
+    public boolean isRetryable() {
+        return statusCode == 429 || statusCode == 408 || statusCode >= 500;
+    }
+}
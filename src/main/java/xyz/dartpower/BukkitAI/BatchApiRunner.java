@@ -0,0 +1,507 @@
+package xyz.dartpower.BukkitAI;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Stream;
+
+/**
+ * Пакетная генерация через OpenAI Batch API (--batch &lt;манифест&gt; --batch-api): запросы всех плагинов
+ * записываются в JSONL-файл, загружаются через /files, обрабатываются сервером как один пакет (/batches)
+ * и забираются файлом результатов, который построчно разбирается в проекты.
+ * <p>
+ * Состояние (отправленные пакеты и готовые плагины) сохраняется в папке результата после каждого шага.
+ * Повторный запуск продолжает опрос уже отправленных пакетов, забирает результаты завершённых, а плагины
+ * без результата (ошибка или пакет истёк, не обработав всё) отправляет новым пакетом; --fresh начинает заново.
+ * <p>
+ * Пакет — один запрос на плагин: параллельная генерация по плану и исправление ошибок компиляции
+ * (несколько зависимых запросов) в этом режиме не выполняются.
+ */
+public class BatchApiRunner {
+
+    private static final String CHAT_COMPLETIONS = "/v1/chat/completions";
+    private static final Set<String> TERMINAL = Set.of("completed", "failed", "expired", "cancelled");
+
+    /**
+     * Настройки режима (секция "batch.api" config.yaml).
+     * @param maxRequests Запросов в одном пакете (у OpenAI не больше 50 000).
+     * @param maxBytes Размер входного файла пакета (у OpenAI не больше 200 МБ).
+     * @param completionWindow Срок обработки пакета, например "24h".
+     * @param pollInitialMillis Первый интервал опроса; пока пакет не продвигается, интервал растёт до pollMaxMillis.
+     */
+    public record Settings(int maxRequests, long maxBytes, String completionWindow, long pollInitialMillis,
+                           long pollMaxMillis, String stateDir) {
+
+        public static Settings fromOptions(ConfigOptions options) {
+            return new Settings(
+                    Math.max(1, options.getInt("batch.api.max-requests", 50_000)),
+                    Math.max(1024, options.getLong("batch.api.max-megabytes", 190) * 1024 * 1024),
+                    options.getString("batch.api.completion-window", "24h"),
+                    Math.max(100, options.getLong("batch.api.poll-initial-ms", 5_000)),
+                    Math.max(100, options.getLong("batch.api.poll-max-ms", 60_000)),
+                    options.getString("batch.api.state-dir", ".batch-api")
+            );
+        }
+    }
+
+    /**
+     * Отправленный пакет в файле состояния.
+     * @param names Плагины пакета (custom_id запросов).
+     * @param processed Результаты пакета уже разобраны.
+     */
+    private record Submitted(String id, String inputFileId, List<String> names, String status, boolean processed) {}
+
+    /**
+     * Содержимое файла состояния.
+     * @param done Плагины, проекты которых записаны.
+     * @param failed Плагины, для которых пакет вернул ошибку: имя -> сообщение (при повторном запуске отправляются снова).
+     */
+    private record State(List<Submitted> batches, Set<String> done, Map<String, String> failed) {}
+
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+
+    private final ConfigManager.ConfigData config;
+    private final ConfigOptions options;
+    private final Settings settings;
+    private final Path outputDir;
+    private final Path stateFile;
+    private final boolean fresh;
+    private final HttpTransport transport;
+    private final String baseUrl;
+    private final String apiKey;
+    private final String model;
+    private final ProjectOutput output;
+    private State state;
+
+    public BatchApiRunner(ConfigManager.ConfigData config, Path outputDir, boolean fresh) {
+        this.config = config;
+        this.options = PluginGenerator.generationOptions(config);
+        this.settings = Settings.fromOptions(options);
+        this.outputDir = outputDir;
+        this.stateFile = outputDir.resolve(settings.stateDir()).resolve("state.json");
+        this.fresh = fresh;
+        this.transport = HttpTransport.shared(options);
+        boolean active = "openai".equals(config.provider());
+        String url = active ? config.baseUrl() : config.openaiBaseUrl();
+        this.baseUrl = url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+        this.apiKey = active ? config.apiKey() : config.openaiApiKey();
+        this.model = active ? config.model() : config.openaiModel();
+        this.output = ProjectOutput.fromOptions(outputDir, options);
+    }
+
+    /**
+     * Отправляет плагины без готового результата, дожидается всех пакетов и разбирает результаты.
+     * @return Количество плагинов без готового проекта.
+     */
+    public int run(List<BatchRunner.BatchEntry> entries) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        loadState();
+        Map<String, BatchRunner.BatchEntry> byName = new LinkedHashMap<>();
+        List<String> rejected = new ArrayList<>();
+        for (BatchRunner.BatchEntry entry : entries) {
+            if (!"openai".equals(entry.provider())) {
+                rejected.add(entry.name() + ": Batch API доступен только для провайдера openai");
+            } else if (byName.putIfAbsent(entry.name(), entry) != null) {
+                rejected.add(entry.name() + ": имя повторяется в манифесте");
+            }
+        }
+        System.out.println("-> Пакетная генерация через Batch API: " + byName.size() + " плагинов, " + baseUrl
+                + ", папка: " + outputDir.toAbsolutePath());
+
+        // Записанный раньше проект мог быть удалён вручную: тогда он генерируется снова
+        state.done().removeIf(name -> !output.exists(name));
+        Set<String> inFlight = new LinkedHashSet<>();
+        for (Submitted batch : state.batches()) {
+            if (!batch.processed()) {
+                inFlight.addAll(batch.names());
+            }
+        }
+        List<BatchRunner.BatchEntry> pending = new ArrayList<>();
+        for (BatchRunner.BatchEntry entry : byName.values()) {
+            if (!state.done().contains(entry.name()) && !inFlight.contains(entry.name())) {
+                pending.add(entry);
+            }
+        }
+        int skipped = (int) byName.keySet().stream().filter(state.done()::contains).count();
+        if (skipped > 0 || !inFlight.isEmpty()) {
+            System.out.printf("-> По состоянию прошлого запуска: готово %d, ожидается из отправленных пакетов %d%n",
+                    skipped, inFlight.size());
+        }
+
+        submit(pending);
+        poll(byName);
+
+        List<String> missing = new ArrayList<>(rejected);
+        for (String name : byName.keySet()) {
+            if (!state.done().contains(name)) {
+                missing.add(name + ": " + state.failed().getOrDefault(name, "нет результата"));
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println("\n=====================================");
+        System.out.println("  Итоги генерации через Batch API");
+        System.out.println("=====================================");
+        System.out.println("   Готово: " + byName.keySet().stream().filter(state.done()::contains).count()
+                + " (из них раньше: " + skipped + ")");
+        System.out.println("   Без результата: " + missing.size());
+        System.out.printf("   Время: %.1f с%n", seconds);
+        if (!missing.isEmpty()) {
+            System.out.println("\nПлагины без результата (повторный запуск отправит их снова):");
+            missing.forEach(line -> System.out.println("   - " + line));
+        }
+        return missing.size();
+    }
+
+    // --- Отправка ---
+
+    private void submit(List<BatchRunner.BatchEntry> pending) throws IOException, InterruptedException {
+        boolean templates = options.getBoolean("templates.enabled", true);
+        int maxTokens = options.getInt("budget.max-output-tokens", 0);
+        int index = 0;
+        while (index < pending.size()) {
+            Path input = stateFile.resolveSibling("input-" + System.currentTimeMillis() + ".jsonl");
+            List<String> names = new ArrayList<>();
+            long bytes = 0;
+            // Файл пишется построчно: в памяти не держится весь пакет
+            try (BufferedWriter writer = Files.newBufferedWriter(input, StandardCharsets.UTF_8)) {
+                for (; index < pending.size() && names.size() < settings.maxRequests(); index++) {
+                    BatchRunner.BatchEntry entry = pending.get(index);
+                    ChatRequest request = ChatRequest.pluginCode(entry.description(), entry.name(), templates);
+                    if (maxTokens > 0) {
+                        request = request.withMaxTokens(maxTokens);
+                    }
+                    JsonObject line = new JsonObject();
+                    line.addProperty("custom_id", entry.name());
+                    line.addProperty("method", "POST");
+                    line.addProperty("url", CHAT_COMPLETIONS);
+                    line.add("body", request.toJson(model, false));
+                    String text = line + "\n";
+                    long size = text.getBytes(StandardCharsets.UTF_8).length;
+                    if (!names.isEmpty() && bytes + size > settings.maxBytes()) {
+                        break;
+                    }
+                    writer.write(text);
+                    bytes += size;
+                    names.add(entry.name());
+                }
+            }
+            System.out.printf("-> Загрузка пакета: %d запросов, %.1f КБ...%n", names.size(), bytes / 1024.0);
+            String fileId = uploadFile(input);
+            JsonObject batch = createBatch(fileId);
+            String id = batch.get("id").getAsString();
+            state.batches().add(new Submitted(id, fileId, names, status(batch), false));
+            names.forEach(state.failed()::remove);
+            saveState();
+            Files.deleteIfExists(input);
+            System.out.println("   Пакет отправлен: " + id);
+        }
+    }
+
+    // --- Опрос и разбор результатов ---
+
+    private void poll(Map<String, BatchRunner.BatchEntry> entries) throws IOException, InterruptedException {
+        long interval = settings.pollInitialMillis();
+        Map<String, String> progress = new LinkedHashMap<>();
+        while (true) {
+            boolean advanced = false;
+            boolean waiting = false;
+            for (int i = 0; i < state.batches().size(); i++) {
+                Submitted batch = state.batches().get(i);
+                if (batch.processed()) {
+                    continue;
+                }
+                JsonObject current;
+                try {
+                    current = getJson("/batches/" + batch.id());
+                } catch (IOException e) {
+                    // Сбой опроса не прерывает ожидание: пакет продолжает обрабатываться на сервере
+                    System.out.println("   [Предупреждение] Не удалось узнать состояние пакета " + batch.id() + ": " + e.getMessage());
+                    waiting = true;
+                    continue;
+                }
+                String status = status(current);
+                String line = status + " " + counts(current);
+                if (!line.equals(progress.put(batch.id(), line))) {
+                    System.out.printf("   Пакет %s: %s%n", batch.id(), line);
+                    advanced = true;
+                }
+                if (!TERMINAL.contains(status)) {
+                    waiting = true;
+                    continue;
+                }
+                processResults(batch, current, entries);
+                state.batches().set(i, new Submitted(batch.id(), batch.inputFileId(), batch.names(), status, true));
+                saveState();
+                advanced = true;
+            }
+            if (!waiting) {
+                return;
+            }
+            // Пока пакеты не продвигаются, опрашиваем всё реже; после изменений — снова часто
+            interval = advanced ? settings.pollInitialMillis() : Math.min(settings.pollMaxMillis(), interval * 3 / 2);
+            Thread.sleep(interval);
+        }
+    }
+
+    private void processResults(Submitted batch, JsonObject current, Map<String, BatchRunner.BatchEntry> entries)
+            throws IOException, InterruptedException {
+        Set<String> seen = new LinkedHashSet<>();
+        if (current.has("output_file_id") && !current.get("output_file_id").isJsonNull()) {
+            readLines(current.get("output_file_id").getAsString(), line -> handleResult(line, entries, seen));
+        }
+        if (current.has("error_file_id") && !current.get("error_file_id").isJsonNull()) {
+            readLines(current.get("error_file_id").getAsString(), line -> handleResult(line, entries, seen));
+        }
+        for (String name : batch.names()) {
+            if (!seen.contains(name) && !state.done().contains(name)) {
+                state.failed().put(name, "пакет " + batch.id() + " завершён со статусом " + status(current) + " без результата");
+            }
+        }
+    }
+
+    private interface LineHandler {
+        void handle(String line) throws IOException;
+    }
+
+    /**
+     * Читает файл результатов построчно прямо из ответа сервера.
+     */
+    private void readLines(String fileId, LineHandler handler) throws IOException, InterruptedException {
+        HttpTransport.Response response = transport.send(request("/files/" + fileId + "/content").GET());
+        if (response.statusCode() != 200) {
+            throw apiError("Не удалось скачать файл " + fileId, response);
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(response.body(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isBlank()) {
+                    handler.handle(line);
+                }
+            }
+        }
+    }
+
+    private void handleResult(String text, Map<String, BatchRunner.BatchEntry> entries, Set<String> seen) throws IOException {
+        JsonObject line;
+        try {
+            line = JsonParser.parseString(text).getAsJsonObject();
+        } catch (RuntimeException e) {
+            System.out.println("   [Предупреждение] Пропущена некорректная строка результата: " + e.getMessage());
+            return;
+        }
+        String name = line.has("custom_id") ? line.get("custom_id").getAsString() : null;
+        BatchRunner.BatchEntry entry = name != null ? entries.get(name) : null;
+        if (entry == null) {
+            return;
+        }
+        seen.add(name);
+        JsonObject response = line.has("response") && line.get("response").isJsonObject() ? line.getAsJsonObject("response") : null;
+        int statusCode = response != null && response.has("status_code") ? response.get("status_code").getAsInt() : 0;
+        JsonObject body = response != null && response.has("body") && response.get("body").isJsonObject()
+                ? response.getAsJsonObject("body") : null;
+        if (statusCode != 200 || body == null) {
+            String error = line.has("error") && !line.get("error").isJsonNull() ? line.get("error").toString()
+                    : body != null ? body.toString() : "нет ответа";
+            state.failed().put(name, "код " + statusCode + ": " + error);
+            System.out.println("   ❌ " + name + ": код " + statusCode);
+            return;
+        }
+        LoggerUtil.log(name, entry.description(), body.toString());
+        try {
+            Completion completion = Completion.fromResponse(body);
+            if ("length".equals(completion.finishReason())) {
+                System.out.println("   [Предупреждение] " + name + ": ответ обрезан по длине (max_tokens).");
+            }
+            writeProject(entry, completion.content());
+            state.done().add(name);
+            state.failed().remove(name);
+        } catch (IOException | RuntimeException e) {
+            state.failed().put(name, String.valueOf(e.getMessage()));
+            System.out.println("   ❌ " + name + ": " + e.getMessage());
+        }
+    }
+
+    private void writeProject(BatchRunner.BatchEntry entry, String content) throws IOException {
+        ProjectCreator creator = new ProjectCreator(output, entry.name());
+        creator.quiet();
+        boolean templates = options.getBoolean("templates.enabled", true);
+        if (templates) {
+            creator.useTemplates();
+        }
+        creator.addFiles(content);
+        if (templates) {
+            ProjectTemplates.render(creator, entry.description(), Map.of(), options);
+        }
+        if (options.getBoolean("validate.enabled", false)) {
+            // Исправление ошибок потребовало бы отдельных запросов; здесь только проверка
+            PluginPipeline.printResult(creator.validate(CompileValidator.shared(options)));
+        }
+        creator.commit();
+    }
+
+    // --- HTTP ---
+
+    private HttpRequest.Builder request(String path) {
+        return HttpRequest.newBuilder()
+                .uri(URI.create(baseUrl + path))
+                .header("Authorization", "Bearer " + apiKey);
+    }
+
+    /**
+     * Загружает JSONL-файл (multipart/form-data, purpose=batch); файл передаётся с диска, не читаясь в память.
+     * @return Идентификатор файла.
+     */
+    private String uploadFile(Path file) throws IOException, InterruptedException {
+        String boundary = "----bukkitai" + Long.toHexString(ThreadLocalRandom.current().nextLong());
+        String head = "--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"purpose\"\r\n\r\nbatch\r\n"
+                + "--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"" + file.getFileName() + "\"\r\n"
+                + "Content-Type: application/jsonl\r\n\r\n";
+        String tail = "\r\n--" + boundary + "--\r\n";
+        HttpRequest.BodyPublisher body = HttpRequest.BodyPublishers.concat(
+                HttpRequest.BodyPublishers.ofString(head),
+                HttpRequest.BodyPublishers.ofFile(file),
+                HttpRequest.BodyPublishers.ofString(tail));
+        JsonObject uploaded = sendJson(request("/files")
+                .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                .POST(body), "Не удалось загрузить файл пакета");
+        return uploaded.get("id").getAsString();
+    }
+
+    private JsonObject createBatch(String fileId) throws IOException, InterruptedException {
+        JsonObject body = new JsonObject();
+        body.addProperty("input_file_id", fileId);
+        body.addProperty("endpoint", CHAT_COMPLETIONS);
+        body.addProperty("completion_window", settings.completionWindow());
+        JsonObject metadata = new JsonObject();
+        metadata.addProperty("source", "bukkitai");
+        body.add("metadata", metadata);
+        return sendJson(request("/batches")
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body.toString())), "Не удалось создать пакет");
+    }
+
+    private JsonObject getJson(String path) throws IOException, InterruptedException {
+        return sendJson(request(path).GET(), "Ошибка запроса " + path);
+    }
+
+    private JsonObject sendJson(HttpRequest.Builder builder, String message) throws IOException, InterruptedException {
+        HttpTransport.Response response = transport.send(builder);
+        if (response.statusCode() != 200) {
+            throw apiError(message, response);
+        }
+        try {
+            return JsonParser.parseString(response.bodyAsString()).getAsJsonObject();
+        } catch (RuntimeException e) {
+            throw new IOException(message + ": сервер вернул невалидный JSON", e);
+        }
+    }
+
+    private static ApiException apiError(String message, HttpTransport.Response response) throws IOException {
+        return new ApiException(message + ": код " + response.statusCode() + " " + response.bodyAsString(),
+                response.statusCode(), response.headers());
+    }
+
+    private static String status(JsonObject batch) {
+        return batch.has("status") ? batch.get("status").getAsString() : "unknown";
+    }
+
+    private static String counts(JsonObject batch) {
+        if (!batch.has("request_counts") || !batch.get("request_counts").isJsonObject()) {
+            return "";
+        }
+        JsonObject counts = batch.getAsJsonObject("request_counts");
+        return String.format("(выполнено %s, ошибок %s из %s)", value(counts, "completed"), value(counts, "failed"),
+                value(counts, "total"));
+    }
+
+    private static String value(JsonObject object, String key) {
+        JsonElement element = object.get(key);
+        return element == null || element.isJsonNull() ? "?" : element.getAsString();
+    }
+
+    // --- Состояние ---
+
+    private void loadState() throws IOException {
+        Path dir = stateFile.getParent();
+        if (fresh && Files.isDirectory(dir)) {
+            try (Stream<Path> walk = Files.walk(dir)) {
+                for (Path path : walk.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(path);
+                }
+            }
+        }
+        Files.createDirectories(dir);
+        state = new State(new ArrayList<>(), new LinkedHashSet<>(), new LinkedHashMap<>());
+        if (!Files.exists(stateFile)) {
+            return;
+        }
+        try {
+            JsonObject json = JsonParser.parseString(Files.readString(stateFile)).getAsJsonObject();
+            for (JsonElement element : json.getAsJsonArray("batches")) {
+                JsonObject batch = element.getAsJsonObject();
+                List<String> names = new ArrayList<>();
+                batch.getAsJsonArray("names").forEach(name -> names.add(name.getAsString()));
+                state.batches().add(new Submitted(batch.get("id").getAsString(), batch.get("inputFileId").getAsString(),
+                        names, batch.get("status").getAsString(), batch.get("processed").getAsBoolean()));
+            }
+            json.getAsJsonArray("done").forEach(name -> state.done().add(name.getAsString()));
+            json.getAsJsonObject("failed").entrySet().forEach(e -> state.failed().put(e.getKey(), e.getValue().getAsString()));
+        } catch (RuntimeException e) {
+            throw new IOException("Файл состояния " + stateFile + " повреждён (запустите с --fresh): " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Сохраняет состояние атомарно: временный файл и переименование.
+     */
+    private void saveState() throws IOException {
+        JsonObject json = new JsonObject();
+        JsonArray batches = new JsonArray();
+        for (Submitted batch : state.batches()) {
+            JsonObject item = new JsonObject();
+            item.addProperty("id", batch.id());
+            item.addProperty("inputFileId", batch.inputFileId());
+            item.addProperty("status", batch.status());
+            item.addProperty("processed", batch.processed());
+            JsonArray names = new JsonArray();
+            batch.names().forEach(names::add);
+            item.add("names", names);
+            batches.add(item);
+        }
+        json.add("batches", batches);
+        JsonArray done = new JsonArray();
+        state.done().forEach(done::add);
+        json.add("done", done);
+        JsonObject failed = new JsonObject();
+        state.failed().forEach(failed::addProperty);
+        json.add("failed", failed);
+
+        Path temp = stateFile.resolveSibling(stateFile.getFileName() + ".tmp");
+        Files.writeString(temp, GSON.toJson(json));
+        Files.move(temp, stateFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
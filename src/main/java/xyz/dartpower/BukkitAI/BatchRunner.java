@@ -0,0 +1,262 @@
+package xyz.dartpower.BukkitAI;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Неинтерактивная пакетная генерация плагинов по манифесту.
+ * <p>
+ * Формат манифеста: по одному плагину на строку, либо "Название | описание" (или через табуляцию),
+ * либо JSON-объект {"name": ..., "description": ..., "provider": ...}. Пустые строки и строки с '#' пропускаются.
+ */
+public class BatchRunner {
+
+    private static final int DEFAULT_CONCURRENCY = 8;
+
+    private final ConfigManager.ConfigData config;
+    private final Path outputDir;
+    private final Integer concurrencyOverride;
+    private final boolean fresh;
+    private final Map<String, AiClient> clients = new HashMap<>();
+    private final Map<String, Semaphore> permits = new HashMap<>();
+
+    /**
+     * @param fresh Начать заново, удалив журнал предыдущего запуска в папке результата.
+     */
+    public BatchRunner(ConfigManager.ConfigData config, Path outputDir, Integer concurrencyOverride, boolean fresh) {
+        this.config = config;
+        this.outputDir = outputDir;
+        this.concurrencyOverride = concurrencyOverride;
+        this.fresh = fresh;
+    }
+
+    // Одна строка манифеста
+    public record BatchEntry(String name, String description, String provider) {}
+
+    /**
+     * Читает манифест.
+     * @param manifest Путь к файлу манифеста.
+     * @return Список плагинов для генерации.
+     * @throws IOException В случае ошибки чтения, неверного формата строки или повторяющегося имени.
+     */
+    public List<BatchEntry> readManifest(Path manifest) throws IOException {
+        List<BatchEntry> entries = new ArrayList<>();
+        // Имя плагина — ключ журнала и имя папки проекта, поэтому повторяться не должно
+        // (без учёта регистра: на Windows и macOS такие папки совпадают)
+        Map<String, Integer> firstLine = new HashMap<>();
+        List<String> lines = Files.readAllLines(manifest);
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            BatchEntry entry = parseLine(line, i + 1);
+            try {
+                ProjectOutput.checkName(entry.name());
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Строка " + (i + 1) + " манифеста: " + e.getMessage());
+            }
+            Integer previous = firstLine.putIfAbsent(entry.name().toLowerCase(Locale.ROOT), i + 1);
+            if (previous != null) {
+                throw new IOException("Строка " + (i + 1) + " манифеста: плагин '" + entry.name()
+                        + "' уже указан в строке " + previous);
+            }
+            entries.add(entry);
+        }
+        return entries;
+    }
+
+    private BatchEntry parseLine(String line, int lineNumber) throws IOException {
+        if (line.startsWith("{")) {
+            try {
+                JsonObject json = JsonParser.parseString(line).getAsJsonObject();
+                String name = json.has("name") ? json.get("name").getAsString() : null;
+                String description = json.has("description") ? json.get("description").getAsString()
+                        : json.has("prompt") ? json.get("prompt").getAsString() : null;
+                String provider = json.has("provider") ? json.get("provider").getAsString() : config.provider();
+                if (name == null || description == null) {
+                    throw new IOException("Строка " + lineNumber + " манифеста: нужны поля 'name' и 'description'.");
+                }
+                return new BatchEntry(name.trim(), description.trim(), provider);
+            } catch (RuntimeException e) {
+                throw new IOException("Строка " + lineNumber + " манифеста содержит некорректный JSON: " + e.getMessage(), e);
+            }
+        }
+
+        int separator = line.indexOf('|');
+        if (separator < 0) {
+            separator = line.indexOf('\t');
+        }
+        if (separator <= 0) {
+            throw new IOException("Строка " + lineNumber + " манифеста должна иметь вид 'Название | описание'.");
+        }
+        return new BatchEntry(line.substring(0, separator).trim(), line.substring(separator + 1).trim(), config.provider());
+    }
+
+    /**
+     * Запускает генерацию всех плагинов на виртуальных потоках
+     * с ограничением числа одновременных запросов к каждому провайдеру.
+     * Если включён журнал (journal.enabled), готовые по журналу плагины пропускаются,
+     * а сохранённые в нём ответы используются вместо повторных запросов.
+     * @param entries Плагины для генерации.
+     * @return Количество неудачных генераций.
+     * @throws IOException Если не удалось открыть журнал генерации.
+     * @throws InterruptedException В случае прерывания ожидания.
+     */
+    public int run(List<BatchEntry> entries) throws IOException, InterruptedException {
+        GenerationJournal journal = openJournal();
+        try {
+            return run(entries, journal);
+        } finally {
+            if (journal != null) {
+                journal.close();
+            }
+        }
+    }
+
+    private GenerationJournal openJournal() throws IOException {
+        ConfigOptions options = config.options();
+        if (!options.getBoolean("journal.enabled", true)) {
+            return null;
+        }
+        Path dir = outputDir.resolve(options.getString("journal.dir", ".journal"));
+        if (fresh && Files.isDirectory(dir)) {
+            try (Stream<Path> walk = Files.walk(dir)) {
+                for (Path path : walk.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(path);
+                }
+            }
+        }
+        return GenerationJournal.open(dir, options.getBoolean("journal.sync", true));
+    }
+
+    private int run(List<BatchEntry> entries, GenerationJournal journal) throws InterruptedException {
+        ConfigOptions options = PluginGenerator.generationOptions(config);
+        ProjectOutput output = ProjectOutput.fromOptions(outputDir, options);
+        AtomicInteger succeeded = new AtomicInteger();
+        ConcurrentLinkedQueue<String> compileFailures = new ConcurrentLinkedQueue<>();
+        ConcurrentLinkedQueue<String> failures = new ConcurrentLinkedQueue<>();
+
+        System.out.println("-> Пакетная генерация: " + entries.size() + " плагинов, папка: " + outputDir.toAbsolutePath());
+        int skipped = 0;
+        int resumed = 0;
+        long start = System.nanoTime();
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (BatchEntry entry : entries) {
+                GenerationJournal.JobState state = journal != null ? journal.state(entry.name()) : null;
+                // Готовый по журналу проект пропускаем, если его папка (или архив) на месте
+                if (state != null && state.written() && output.exists(entry.name())) {
+                    skipped++;
+                    continue;
+                }
+                if (state != null) {
+                    resumed++;
+                } else if (journal != null) {
+                    journal.queued(entry.name(), entry.description(), entry.provider());
+                }
+
+                AiClient client;
+                Semaphore semaphore;
+                try {
+                    client = clientFor(entry.provider());
+                    semaphore = permitsFor(entry.provider());
+                } catch (IllegalArgumentException e) {
+                    failures.add(entry.name() + ": " + e.getMessage());
+                    continue;
+                }
+                AiClient jobClient = journal != null ? journal.wrap(client, entry.name()) : client;
+
+                executor.submit(() -> {
+                    try {
+                        semaphore.acquire();
+                        try {
+                            ProjectCreator creator = new ProjectCreator(output, entry.name());
+                            creator.quiet();
+                            // Срок отсчитывается с начала генерации, а не с постановки в очередь
+                            CompileValidator.Result result;
+                            try (Deadline deadline = Deadline.fromOptions(options)) {
+                                result = new PluginPipeline(jobClient, options, deadline)
+                                        .generate(entry.description(), entry.name(), creator);
+                            }
+                            if (journal != null) {
+                                journal.written(entry.name());
+                            }
+                            succeeded.incrementAndGet();
+                            if (result != null && !result.success()) {
+                                compileFailures.add(entry.name() + ": ошибок компиляции " + result.errors());
+                            }
+                        } finally {
+                            semaphore.release();
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        failures.add(entry.name() + ": прервано");
+                    } catch (Exception e) {
+                        failures.add(entry.name() + ": " + e.getMessage());
+                        if (journal != null) {
+                            journal.failed(entry.name(), String.valueOf(e.getMessage()));
+                        }
+                    }
+                });
+            }
+            if (skipped > 0 || resumed > 0) {
+                System.out.printf("-> По журналу генерации: готово и пропущено %d, продолжено %d%n", skipped, resumed);
+            }
+        }
+
+        double minutes = (System.nanoTime() - start) / 60_000_000_000.0;
+        System.out.println("\n=====================================");
+        System.out.println("  Итоги пакетной генерации");
+        System.out.println("=====================================");
+        System.out.println("   Успешно: " + succeeded.get());
+        System.out.println("   Ошибок: " + failures.size());
+        if (options.getBoolean("validate.enabled", false)) {
+            System.out.println("   Не прошли проверку компиляции: " + compileFailures.size());
+        }
+        System.out.printf("   Время: %.1f с%n", minutes * 60);
+        System.out.printf("   Пропускная способность: %.2f плагинов/мин%n", minutes > 0 ? succeeded.get() / minutes : 0.0);
+        if (skipped > 0) {
+            System.out.println("   Пропущено (готовы по журналу): " + skipped);
+        }
+        if (journal != null) {
+            System.out.printf("   Журнал: записей %d, групповых фиксаций %d%n", journal.recordCount(), journal.commitCount());
+        }
+        for (String failure : failures) {
+            System.err.println("   ❌ " + failure);
+        }
+        for (String failure : compileFailures) {
+            System.err.println("   ⚠ " + failure);
+        }
+        return failures.size();
+    }
+
+    private synchronized AiClient clientFor(String provider) {
+        return clients.computeIfAbsent(provider, p -> PluginGenerator.createClient(config, p));
+    }
+
+    private synchronized Semaphore permitsFor(String provider) {
+        return permits.computeIfAbsent(provider, p -> {
+            int limit = concurrencyOverride != null ? concurrencyOverride
+                    : config.options().getInt("batch.provider-concurrency." + p,
+                    config.options().getInt("batch.concurrency", DEFAULT_CONCURRENCY));
+            return new Semaphore(Math.max(1, limit));
+        });
+    }
+}
@@ -0,0 +1,339 @@
+package xyz.dartpower.BukkitAI;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Декоратор {@link AiClient}, распределяющий контекст модели между промптом и ответом.
+ * <ul>
+ *     <li>Оценивает размер промпта ({@link TokenEstimator}) и задаёт max_tokens так, чтобы ответ поместился в контекст.</li>
+ *     <li>Если на ответ остаётся меньше budget.min-output-tokens, сжимает последнее сообщение пользователя
+ *     (лишние пробелы и пустые строки, затем середину текста); если и это не помогает — ошибка до отправки запроса.</li>
+ *     <li>Если ответ обрезан по длине (finish_reason = length), запрашивает продолжение и склеивает части,
+ *     не больше budget.max-continuations раз.</li>
+ * </ul>
+ */
+public class BudgetingAiClient implements AiClient {
+
+    private static final String CONTINUE_PROMPT = "Your previous response was cut off because of the length limit. "
+            + "Continue exactly from the point where it stopped. Do not repeat anything, do not add any preface, "
+            + "do not restart code blocks that are already open.";
+    // Сколько символов в начале продолжения проверяется на повтор конца предыдущей части
+    private static final int OVERLAP_WINDOW = 400;
+    private static final int MIN_OVERLAP = 8;
+    private static final String TRIM_MARKER = "\n...[сокращено]...\n";
+
+    // Модели, о неизвестности которых уже предупреждали (клиент создаётся для каждого провайдера и задания)
+    private static final Set<String> warnedModels = ConcurrentHashMap.newKeySet();
+
+    private final AiClient delegate;
+    private final int contextWindow;
+    private final int maxOutput;
+    private final int minOutput;
+    private final double safetyMargin;
+    private final int maxContinuations;
+
+    public BudgetingAiClient(AiClient delegate, ConfigOptions options) {
+        this.delegate = delegate;
+        String model = delegate.model();
+        TokenEstimator.Family family = TokenEstimator.Family.of(model);
+        // Пределы из budget.models важнее общих budget.context-window и budget.max-output-tokens
+        ConfigOptions limits = modelLimits(options, model);
+        this.contextWindow = limits.getInt("context-window", options.getInt("budget.context-window", family.contextWindow()));
+        this.maxOutput = limits.getInt("max-output-tokens", options.getInt("budget.max-output-tokens", family.maxOutput()));
+        if (!family.known() && limits.get("context-window") == null && options.get("budget.context-window") == null
+                && warnedModels.add(String.valueOf(model))) {
+            System.out.printf("   [Предупреждение] Модель '%s' неизвестна: размер контекста принят %d токенов"
+                    + "%s. Задайте её пределы в budget.models в config.yaml.%n", model, contextWindow,
+                    maxOutput > 0 ? "" : ", max_tokens не передаётся");
+        }
+        this.minOutput = options.getInt("budget.min-output-tokens", 1024);
+        this.safetyMargin = options.getDouble("budget.safety-margin", 0.1);
+        this.maxContinuations = options.getInt("budget.max-continuations", 2);
+    }
+
+    /**
+     * Ищет пределы модели в списке budget.models (элементы с полями name, context-window, max-output-tokens).
+     * Имя сравнивается без учёта регистра с полным именем модели или с ним же без префикса поставщика.
+     * @return Пределы модели или {@link ConfigOptions#EMPTY}, если модели нет в списке.
+     */
+    @SuppressWarnings("unchecked")
+    private static ConfigOptions modelLimits(ConfigOptions options, String model) {
+        if (model == null || !(options.get("budget.models") instanceof List<?> list)) {
+            return ConfigOptions.EMPTY;
+        }
+        String base = model.substring(model.lastIndexOf('/') + 1);
+        for (Object item : list) {
+            if (item instanceof Map<?, ?> map && map.get("name") instanceof String name
+                    && (name.trim().equalsIgnoreCase(model) || name.trim().equalsIgnoreCase(base))) {
+                return new ConfigOptions((Map<String, Object>) map);
+            }
+        }
+        return ConfigOptions.EMPTY;
+    }
+
+    /**
+     * Оборачивает клиента, если бюджет не отключён настройкой budget.enabled.
+     */
+    public static AiClient wrap(AiClient client, ConfigOptions options) {
+        return options.getBoolean("budget.enabled", true) ? new BudgetingAiClient(client, options) : client;
+    }
+
+    @Override
+    public String provider() {
+        return delegate.provider();
+    }
+
+    @Override
+    public String model() {
+        return delegate.model();
+    }
+
+    @Override
+    public Completion complete(ChatRequest request) throws IOException, InterruptedException {
+        ChatRequest budgeted = budget(request);
+        Completion completion = observe(budgeted, delegate.complete(budgeted));
+        StringBuilder content = new StringBuilder(completion.content());
+        int completionTokens = completion.completionTokens();
+
+        for (int part = 1; "length".equals(completion.finishReason()); part++) {
+            ChatRequest continuation = continuation(budgeted, content, part);
+            if (continuation == null) {
+                break;
+            }
+            completion = observe(continuation, delegate.complete(continuation));
+            content.append(stripRepeated(content, completion.content()));
+            completionTokens = sumTokens(completionTokens, completion.completionTokens());
+        }
+        return merged(content, completion, completionTokens);
+    }
+
+    @Override
+    public Completion stream(ChatRequest request, StreamListener listener) throws IOException, InterruptedException {
+        ChatRequest budgeted = budget(request);
+        // Текст первой части нужен для запроса продолжения. Его собирает нижний клиент (одна копия на ответ,
+        // общая с кэшем и журналом); получатель узнаёт о конце ответа только после последнего продолжения
+        Completion first = observe(budgeted, delegate.stream(
+                maxContinuations > 0 ? budgeted.withKeepText(true) : budgeted, listener::onDelta));
+        Completion completion = first;
+        int completionTokens = completion.completionTokens();
+        StringBuilder content = null;
+
+        for (int part = 1; "length".equals(completion.finishReason()); part++) {
+            if (content == null) {
+                // Без продолжений (max-continuations: 0) текст не собирался, и запрос ниже не отправится
+                content = new StringBuilder(first.content() != null ? first.content() : "");
+            }
+            ChatRequest continuation = continuation(budgeted, content, part);
+            if (continuation == null) {
+                break;
+            }
+            ContinuationListener tail = new ContinuationListener(content, forwarding(content::append, listener));
+            completion = observe(continuation, delegate.stream(continuation, tail));
+            tail.flush();
+            completionTokens = sumTokens(completionTokens, completion.completionTokens());
+        }
+        listener.onComplete();
+        if (completion == first) {
+            return first;
+        }
+        return new Completion(budgeted.keepText() ? content.toString() : null, completion.finishReason(), -1, completionTokens);
+    }
+
+    /**
+     * Ответ из нескольких частей; usage.prompt_tokens у частей разный, поэтому не сообщается.
+     */
+    private static Completion merged(StringBuilder content, Completion last, int completionTokens) {
+        if (content.length() == last.content().length() && content.toString().equals(last.content())) {
+            return last;
+        }
+        return new Completion(content.toString(), last.finishReason(), -1, completionTokens);
+    }
+
+    /**
+     * Задаёт max_tokens и при необходимости сжимает промпт.
+     * @throws IOException Если промпт не помещается в контекст модели даже после сжатия.
+     */
+    ChatRequest budget(ChatRequest request) throws IOException {
+        int limit = (int) (contextWindow * (1 - safetyMargin));
+        int prompt = TokenEstimator.estimate(request, model());
+        if (limit - prompt < minOutput) {
+            ChatRequest trimmed = trim(request, prompt - (limit - minOutput));
+            int trimmedPrompt = TokenEstimator.estimate(trimmed, model());
+            if (limit - trimmedPrompt < minOutput) {
+                throw new IOException(String.format("Промпт (~%d токенов) не помещается в контекст модели %s (%d токенов)"
+                        + " вместе с ответом. Сократите описание плагина или выберите модель с большим контекстом.",
+                        prompt, model(), contextWindow));
+            }
+            System.out.printf("-> [Бюджет] промпт сокращён с ~%d до ~%d токенов, чтобы оставить место для ответа%n",
+                    prompt, trimmedPrompt);
+            request = trimmed;
+            prompt = trimmedPrompt;
+        }
+        int available = limit - prompt;
+        int maxTokens = maxOutput > 0 ? Math.min(maxOutput, available) : 0;
+        return maxTokens > 0 ? request.withMaxTokens(maxTokens) : request;
+    }
+
+    /**
+     * Сжимает последнее сообщение пользователя примерно на excess токенов.
+     */
+    private ChatRequest trim(ChatRequest request, int excess) {
+        List<ChatRequest.Message> messages = new ArrayList<>(request.messages());
+        int index = messages.size() - 1;
+        while (index >= 0 && !"user".equals(messages.get(index).role())) {
+            index--;
+        }
+        if (index < 0) {
+            return request;
+        }
+        String text = messages.get(index).content();
+        int tokens = TokenEstimator.estimate(text, model());
+        String compacted = compact(text);
+        int compactedTokens = TokenEstimator.estimate(compacted, model());
+        if (tokens - compactedTokens < excess && compactedTokens > 0) {
+            // Вырезаем середину: начало (задание) и конец (последние требования) обычно важнее
+            int need = excess - (tokens - compactedTokens);
+            double keepRatio = Math.max(0, (compactedTokens - need) / (double) compactedTokens);
+            int keep = (int) (compacted.length() * keepRatio * 0.95);
+            if (keep <= TRIM_MARKER.length()) {
+                // Сжимать нечего: вызывающий код сообщит, что промпт не помещается
+                return request;
+            }
+            int head = keep * 3 / 5;
+            compacted = compacted.substring(0, head) + TRIM_MARKER + compacted.substring(compacted.length() - (keep - head));
+        }
+        messages.set(index, new ChatRequest.Message("user", compacted));
+        return request.withMessages(messages);
+    }
+
+    /**
+     * Убирает пробелы в концах строк, повторяющиеся пробелы и лишние пустые строки.
+     */
+    static String compact(String text) {
+        return text.replaceAll("[ \\t]+\\n", "\n")
+                .replaceAll("(?m)^[ \\t]+", "")
+                .replaceAll("[ \\t]{2,}", " ")
+                .replaceAll("\\n{3,}", "\n\n")
+                .strip();
+    }
+
+    /**
+     * @return Запрос продолжения или null, если лимит продолжений исчерпан или продолжение не помещается в контекст.
+     */
+    private ChatRequest continuation(ChatRequest budgeted, CharSequence content, int part) {
+        if (part > maxContinuations) {
+            System.out.println("   [Предупреждение] Ответ обрезан по длине, лимит продолжений (budget.max-continuations) исчерпан.");
+            return null;
+        }
+        List<ChatRequest.Message> messages = new ArrayList<>(budgeted.messages());
+        messages.add(new ChatRequest.Message("assistant", content.toString()));
+        messages.add(new ChatRequest.Message("user", CONTINUE_PROMPT));
+        ChatRequest request = new ChatRequest(budgeted.pluginName() + ":cont" + part, budgeted.prompt(),
+                messages, budgeted.cacheable()).withDeadline(budgeted.deadline());
+
+        int available = (int) (contextWindow * (1 - safetyMargin)) - TokenEstimator.estimate(request, model());
+        if (available < minOutput) {
+            System.out.println("   [Предупреждение] Ответ обрезан по длине, а для продолжения не осталось места в контексте.");
+            return null;
+        }
+        System.out.printf("-> [Бюджет] ответ обрезан по длине, запрос продолжения %d из %d...%n", part, maxContinuations);
+        return maxOutput > 0 ? request.withMaxTokens(Math.min(maxOutput, available)) : request;
+    }
+
+    private Completion observe(ChatRequest request, Completion completion) {
+        if (completion.promptTokens() > 0) {
+            TokenEstimator.calibrate(model(), TokenEstimator.estimate(request, model()), completion.promptTokens());
+        }
+        return completion;
+    }
+
+    private static int sumTokens(int a, int b) {
+        return a < 0 || b < 0 ? -1 : a + b;
+    }
+
+    /**
+     * Отрезает от начала продолжения текст, повторяющий конец предыдущей части,
+     * и заново открытый блок кода, если предыдущая часть оборвалась внутри блока.
+     */
+    static String stripRepeated(CharSequence previous, String next) {
+        String result = next;
+        if (insideCodeBlock(previous) && result.stripLeading().startsWith("```")) {
+            String stripped = result.stripLeading();
+            int lineEnd = stripped.indexOf('\n');
+            result = lineEnd >= 0 ? stripped.substring(lineEnd + 1) : "";
+        }
+        String tail = previous.subSequence(Math.max(0, previous.length() - OVERLAP_WINDOW), previous.length()).toString();
+        for (int k = Math.min(tail.length(), result.length()); k >= MIN_OVERLAP; k--) {
+            if (tail.endsWith(result.substring(0, k))) {
+                return result.substring(k);
+            }
+        }
+        return result;
+    }
+
+    private static boolean insideCodeBlock(CharSequence text) {
+        int fences = 0;
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            if ((i == 0 || text.charAt(i - 1) == '\n') && i + 2 < length
+                    && text.charAt(i) == '`' && text.charAt(i + 1) == '`' && text.charAt(i + 2) == '`') {
+                fences++;
+            }
+        }
+        return fences % 2 == 1;
+    }
+
+    /**
+     * Передаёт фрагменты и в собранный ответ, и получателю, не сообщая ему о завершении.
+     */
+    private static StreamListener forwarding(StreamListener parts, StreamListener listener) {
+        return delta -> {
+            parts.onDelta(delta);
+            listener.onDelta(delta);
+        };
+    }
+
+    /**
+     * Придерживает начало продолжения, пока не станет ясно, сколько в нём повторено из предыдущей части.
+     */
+    private static class ContinuationListener implements StreamListener {
+
+        private final CharSequence previous;
+        private final StreamListener target;
+        private final StringBuilder head = new StringBuilder();
+        private boolean flushed;
+
+        ContinuationListener(CharSequence previous, StreamListener target) {
+            this.previous = previous;
+            this.target = target;
+        }
+
+        @Override
+        public void onDelta(String delta) throws IOException {
+            if (flushed) {
+                target.onDelta(delta);
+                return;
+            }
+            head.append(delta);
+            if (head.length() >= OVERLAP_WINDOW) {
+                flush();
+            }
+        }
+
+        void flush() throws IOException {
+            if (flushed) {
+                return;
+            }
+            flushed = true;
+            String rest = stripRepeated(previous, head.toString());
+            if (!rest.isEmpty()) {
+                target.onDelta(rest);
+            }
+        }
+    }
+}
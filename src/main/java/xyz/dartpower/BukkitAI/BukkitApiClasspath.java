@@ -0,0 +1,164 @@
+package xyz.dartpower.BukkitAI;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Classpath с Bukkit API для проверочной компиляции сгенерированных плагинов.
+ * <p>
+ * Jar-файлы берутся из настройки validate.classpath либо один раз скачиваются из Maven-репозиториев
+ * (validate.repositories) вместе с прямыми зависимостями API и сохраняются в кэше (validate.cache-dir).
+ * Дальше проверка работает без сети.
+ */
+public class BukkitApiClasspath {
+
+    private static final String DEFAULT_ARTIFACT = "org.spigotmc:spigot-api:1.20.4-R0.1-SNAPSHOT";
+    private static final List<String> DEFAULT_REPOSITORIES = List.of(
+            "https://hub.spigotmc.org/nexus/content/repositories/snapshots/",
+            "https://repo.maven.apache.org/maven2/"
+    );
+    private static final String CLASSPATH_FILE = "classpath.txt";
+
+    private static final Pattern DEPENDENCY = Pattern.compile("<dependency>(.*?)</dependency>", Pattern.DOTALL);
+    private static final Pattern SNAPSHOT_VERSION = Pattern.compile(
+            "<snapshotVersion>\\s*(?:<classifier>[^<]*</classifier>\\s*)?<extension>jar</extension>\\s*<value>([^<]+)</value>");
+
+    private static List<Path> cached;
+
+    private BukkitApiClasspath() {
+    }
+
+    /**
+     * @return Jar-файлы API; при первом вызове они могут быть скачаны.
+     * @throws IOException Если API нет в кэше и скачать его не удалось.
+     */
+    public static synchronized List<Path> resolve(ConfigOptions options) throws IOException {
+        if (cached != null) {
+            return cached;
+        }
+        Object configured = options.get("validate.classpath");
+        if (configured instanceof List<?> jars && !jars.isEmpty()) {
+            cached = jars.stream().map(jar -> Path.of(jar.toString())).toList();
+            return cached;
+        }
+
+        String artifact = options.getString("validate.api-artifact", DEFAULT_ARTIFACT);
+        Path cacheDir = Path.of(options.getString("validate.cache-dir", "cache/bukkit-api"), artifact.replace(':', '_'));
+        Path classpathFile = cacheDir.resolve(CLASSPATH_FILE);
+        if (Files.isRegularFile(classpathFile)) {
+            cached = Files.readAllLines(classpathFile).stream().filter(line -> !line.isBlank()).map(Path::of).toList();
+            return cached;
+        }
+
+        List<String> repositories = DEFAULT_REPOSITORIES;
+        if (options.get("validate.repositories") instanceof List<?> list && !list.isEmpty()) {
+            repositories = list.stream().map(Object::toString).toList();
+        }
+        System.out.println("-> Загрузка Bukkit API для проверки компиляции (" + artifact + "), выполняется один раз...");
+        Files.createDirectories(cacheDir);
+        List<Path> jars = download(artifact, repositories, cacheDir);
+        // Файл со списком пишется последним: его наличие означает, что кэш полный
+        Files.write(classpathFile, jars.stream().map(jar -> jar.toAbsolutePath().toString()).toList());
+        cached = jars;
+        return cached;
+    }
+
+    private static List<Path> download(String artifact, List<String> repositories, Path cacheDir) throws IOException {
+        String[] coordinates = artifact.split(":");
+        if (coordinates.length != 3) {
+            throw new IOException("validate.api-artifact должен иметь вид group:artifact:version: " + artifact);
+        }
+        List<Path> jars = new ArrayList<>();
+        jars.add(fetch(coordinates[0], coordinates[1], coordinates[2], "jar", repositories, cacheDir));
+
+        // Прямые зависимости API (guava, gson, bungeecord-chat...) встречаются в сигнатурах его методов
+        String pom = Files.readString(fetch(coordinates[0], coordinates[1], coordinates[2], "pom", repositories, cacheDir));
+        Set<String> seen = new LinkedHashSet<>();
+        Matcher dependency = DEPENDENCY.matcher(pom);
+        while (dependency.find()) {
+            String body = dependency.group(1);
+            String scope = tag(body, "scope");
+            if ("test".equals(scope) || "provided".equals(scope) || "true".equals(tag(body, "optional"))) {
+                continue;
+            }
+            String group = tag(body, "groupId");
+            String name = tag(body, "artifactId");
+            String version = tag(body, "version");
+            // Версии из свойств и parent-pom не разрешаем: такие зависимости можно указать в validate.classpath
+            if (group == null || name == null || version == null || version.contains("${") || !seen.add(group + ":" + name)) {
+                continue;
+            }
+            try {
+                jars.add(fetch(group, name, version, "jar", repositories, cacheDir));
+            } catch (IOException e) {
+                System.out.println("   [Предупреждение] Зависимость API недоступна: " + group + ":" + name + ":" + version);
+            }
+        }
+        return jars;
+    }
+
+    private static Path fetch(String group, String artifact, String version, String extension,
+                              List<String> repositories, Path cacheDir) throws IOException {
+        Path target = cacheDir.resolve(artifact + "-" + version + "." + extension);
+        if (Files.isRegularFile(target)) {
+            return target;
+        }
+        IOException last = null;
+        for (String repository : repositories) {
+            String base = (repository.endsWith("/") ? repository : repository + "/")
+                    + group.replace('.', '/') + "/" + artifact + "/" + version + "/";
+            try {
+                String fileVersion = version;
+                if (version.endsWith("-SNAPSHOT")) {
+                    // Снапшоты лежат под именем с отметкой времени из maven-metadata.xml
+                    Matcher snapshot = SNAPSHOT_VERSION.matcher(new String(get(base + "maven-metadata.xml").readAllBytes()));
+                    if (snapshot.find()) {
+                        fileVersion = snapshot.group(1);
+                    }
+                }
+                Path partial = target.resolveSibling(target.getFileName() + ".part");
+                try (InputStream in = get(base + artifact + "-" + fileVersion + "." + extension)) {
+                    Files.copy(in, partial, StandardCopyOption.REPLACE_EXISTING);
+                }
+                Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                return target;
+            } catch (IOException e) {
+                last = e;
+            }
+        }
+        throw new IOException("Не удалось скачать " + group + ":" + artifact + ":" + version + "." + extension
+                + (last != null ? ": " + last.getMessage() : ""), last);
+    }
+
+    private static InputStream get(String url) throws IOException {
+        try {
+            HttpTransport.Response response = HttpTransport.shared().send(HttpRequest.newBuilder(URI.create(url))
+                    .timeout(Duration.ofSeconds(60)).GET());
+            if (response.statusCode() != 200) {
+                response.body().close();
+                throw new IOException("HTTP " + response.statusCode() + " для " + url);
+            }
+            return response.body();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Загрузка прервана: " + url, e);
+        }
+    }
+
+    private static String tag(String xml, String name) {
+        Matcher matcher = Pattern.compile("<" + name + ">\\s*([^<]*?)\\s*</" + name + ">").matcher(xml);
+        return matcher.find() ? matcher.group(1) : null;
+    }
+}
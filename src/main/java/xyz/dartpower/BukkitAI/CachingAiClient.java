@@ -0,0 +1,99 @@
+package xyz.dartpower.BukkitAI;
+
+import java.io.IOException;
+
+/**
+ * Декоратор {@link AiClient}, отдающий сохранённый ответ на повторный одинаковый запрос
+ * без обращения к модели.
+ */
+public class CachingAiClient implements AiClient {
+
+    private final AiClient delegate;
+    private final ResponseCache cache;
+    private final boolean bypass;
+
+    /**
+     * @param delegate Клиент, выполняющий реальные запросы.
+     * @param cache Хранилище ответов.
+     * @param bypass Не читать из кэша (но сохранять свежие ответы), например для принудительной перегенерации.
+     */
+    public CachingAiClient(AiClient delegate, ResponseCache cache, boolean bypass) {
+        this.delegate = delegate;
+        this.cache = cache;
+        this.bypass = bypass;
+    }
+
+    /**
+     * Оборачивает клиента в кэш, если он не отключён настройкой cache.enabled.
+     */
+    public static AiClient wrap(AiClient client, ConfigOptions options) {
+        if (!options.getBoolean("cache.enabled", true)) {
+            return client;
+        }
+        return new CachingAiClient(client, ResponseCache.shared(options), options.getBoolean("cache.bypass", false));
+    }
+
+    @Override
+    public String provider() {
+        return delegate.provider();
+    }
+
+    @Override
+    public String model() {
+        return delegate.model();
+    }
+
+    @Override
+    public Completion complete(ChatRequest request) throws IOException, InterruptedException {
+        if (!request.cacheable()) {
+            return delegate.complete(request);
+        }
+        Completion cached = lookup(request);
+        if (cached != null) {
+            return cached;
+        }
+        return store(request, delegate.complete(request));
+    }
+
+    @Override
+    public Completion stream(ChatRequest request, StreamListener listener) throws IOException, InterruptedException {
+        if (!request.cacheable()) {
+            return delegate.stream(request, listener);
+        }
+        Completion cached = lookup(request);
+        if (cached != null) {
+            listener.onDelta(cached.content());
+            listener.onComplete();
+            return cached;
+        }
+        return store(request, delegate.stream(request.withKeepText(true), listener));
+    }
+
+    /**
+     * Ищет ответ любой из моделей, которые могли бы ответить на запрос (у пула эндпоинтов их может быть несколько).
+     */
+    private Completion lookup(ChatRequest request) {
+        if (bypass) {
+            return null;
+        }
+        for (String model : delegate.models()) {
+            String key = ResponseCache.key(provider(), model, request);
+            Completion cached = cache.get(key);
+            if (cached != null) {
+                System.out.println("-> Ответ взят из кэша (" + key.substring(0, 12) + ")");
+                return cached;
+            }
+        }
+        return null;
+    }
+
+    private Completion store(ChatRequest request, Completion completion) {
+        // Обрезанные по лимиту токенов ответы не сохраняем, чтобы не закрепить неполный результат
+        if (!"length".equals(completion.finishReason())) {
+            // Ключ — модель, которая действительно ответила (эндпоинт пула может использовать свою)
+            String model = completion.model() != null ? completion.model() : model();
+            cache.put(ResponseCache.key(provider(), model, request), completion);
+        }
+        return completion;
+    }
+}
@@ -0,0 +1,249 @@
+package xyz.dartpower.BukkitAI;
+
+import com.google.gson.stream.MalformedJsonException;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Общая реализация клиента для OpenAI-совместимого эндпоинта chat/completions.
+ * Наследники задают адрес, имя провайдера и дополнительные заголовки.
+ */
+public abstract class ChatCompletionsClient implements AiClient {
+
+    // Ожидание заголовков ответа для запросов без срока генерации (Deadline.NONE);
+    // для остальных его задаёт timeouts.response-seconds
+    private static final Duration DEFAULT_RESPONSE_TIMEOUT = Duration.ofSeconds(120);
+
+    private final String apiKey;
+    private final String model;
+    private final HttpTransport transport;
+    private volatile ResponseListener responseListener;
+
+    /**
+     * Получатель кода и заголовков каждого ответа (например, для учёта x-ratelimit-*).
+     */
+    public interface ResponseListener {
+        void onResponse(int statusCode, HttpHeaders headers);
+    }
+
+    protected ChatCompletionsClient(String apiKey, String model, HttpTransport transport) {
+        this.apiKey = apiKey;
+        this.model = model;
+        this.transport = transport;
+    }
+
+    /**
+     * @return Полный адрес эндпоинта chat/completions.
+     */
+    protected abstract String endpoint();
+
+    /**
+     * @return Название провайдера для сообщений пользователю.
+     */
+    protected abstract String displayName();
+
+    /**
+     * Добавляет заголовки, специфичные для провайдера.
+     */
+    protected void addHeaders(HttpRequest.Builder builder) {
+    }
+
+    /**
+     * Собирает адрес chat/completions из базового URL с учётом завершающего "/".
+     */
+    protected static String chatCompletionsUrl(String baseUrl) {
+        return baseUrl.endsWith("/") ? baseUrl + "chat/completions" : baseUrl + "/chat/completions";
+    }
+
+    @Override
+    public String model() {
+        return model;
+    }
+
+    public void setResponseListener(ResponseListener responseListener) {
+        this.responseListener = responseListener;
+    }
+
+    @Override
+    public Completion complete(ChatRequest chatRequest) throws IOException, InterruptedException {
+        byte[] requestBody = chatRequest.toJson(model, false).toString().getBytes(StandardCharsets.UTF_8);
+        Metrics.Exchange exchange = Metrics.shared().start(provider(), model, requestBody.length);
+        Completion completion = null;
+        try {
+            completion = complete(chatRequest, requestBody, exchange).withModel(model);
+            return completion;
+        } finally {
+            if (completion != null) {
+                exchange.finish(completion);
+            } else {
+                exchange.fail();
+            }
+        }
+    }
+
+    private Completion complete(ChatRequest chatRequest, byte[] requestBody, Metrics.Exchange exchange)
+            throws IOException, InterruptedException {
+        System.out.println("-> Отправка запроса к " + displayName() + " (модель: " + model + ", URL: " + endpoint() + ")...");
+
+        HttpTransport.Response response = send(requestBody, "application/json", exchange, chatRequest.deadline());
+        if (response.statusCode() != 200) {
+            String rawBody = response.bodyAsString();
+            exchange.responseBytes(rawBody.getBytes(StandardCharsets.UTF_8).length);
+            System.out.println("-> Код ответа: " + response.statusCode() + ", длина ответа: " + rawBody.length());
+            LoggerUtil.log(chatRequest.pluginName(), chatRequest.prompt(), rawBody);
+            throw new ApiException(displayName() + " API вернул ошибку: " + response.statusCode() + " " + rawBody,
+                    response.statusCode(), response.headers());
+        }
+
+        // Тело разбирается потоково; прочитанные байты одновременно копируются для журнала
+        TeeInputStream body = new TeeInputStream(chatRequest.deadline().guard(response.body()),
+                response.headers().firstValueAsLong("Content-Length").orElse(-1));
+        try {
+            return CompletionReader.read(body);
+        } catch (IOException | RuntimeException e) {
+            if (e instanceof DeadlineExceededException || e instanceof HttpTimeoutException) {
+                throw e;
+            }
+            if (e instanceof EOFException && new String(body.captured(), StandardCharsets.UTF_8).isBlank()) {
+                throw new IOException(displayName() + " API вернул пустой ответ. Это может быть связано со сложностью запроса или сбоем модели. Попробуйте упростить промпт или сменить модель.", e);
+            }
+            if (e instanceof MalformedJsonException || e instanceof EOFException || e instanceof IllegalStateException) {
+                throw new IOException(displayName() + " API вернул невалидный JSON. " + e.getMessage(), e);
+            }
+            throw e;
+        } finally {
+            // Сохраняем лог независимо от результата разбора
+            drainQuietly(body);
+            exchange.responseBytes(body.size());
+            System.out.println("-> Код ответа: " + response.statusCode() + ", длина ответа: " + body.size() + " байт");
+            LoggerUtil.log(chatRequest.pluginName(), chatRequest.prompt(), body.captured());
+        }
+    }
+
+    private static void drainQuietly(TeeInputStream body) {
+        try (body) {
+            body.drain();
+        } catch (IOException ignored) {
+            // Журнал получит то, что успели прочитать
+        }
+    }
+
+    @Override
+    public Completion stream(ChatRequest chatRequest, StreamListener listener) throws IOException, InterruptedException {
+        byte[] requestBody = chatRequest.toJson(model, true).toString().getBytes(StandardCharsets.UTF_8);
+        Metrics.Exchange exchange = Metrics.shared().start(provider(), model, requestBody.length);
+        Completion completion = null;
+        try {
+            completion = stream(chatRequest, requestBody, exchange, listener).withModel(model);
+            return completion;
+        } finally {
+            if (completion != null) {
+                exchange.finish(completion);
+            } else {
+                exchange.fail();
+            }
+        }
+    }
+
+    private Completion stream(ChatRequest chatRequest, byte[] requestBody, Metrics.Exchange exchange, StreamListener listener)
+            throws IOException, InterruptedException {
+        System.out.println("-> Отправка потокового запроса к " + displayName() + " (модель: " + model + ", URL: " + endpoint() + ")...");
+
+        HttpTransport.Response response = send(requestBody, "text/event-stream", exchange, chatRequest.deadline());
+        System.out.println("-> Код ответа: " + response.statusCode());
+
+        if (response.statusCode() != 200) {
+            String rawBody = response.bodyAsString();
+            exchange.responseBytes(rawBody.getBytes(StandardCharsets.UTF_8).length);
+            LoggerUtil.log(chatRequest.pluginName(), chatRequest.prompt(), rawBody);
+            throw new ApiException(displayName() + " API вернул ошибку: " + response.statusCode() + " " + rawBody,
+                    response.statusCode(), response.headers());
+        }
+
+        // Полный текст собирается, только если он нужен вызывающему коду или журналу взаимодействий;
+        // иначе фрагменты лишь передаются получателю (например, сразу в файлы проекта)
+        boolean logged = InteractionLog.keepsStreamedResponses();
+        StringBuilder text = chatRequest.keepText() || logged ? new StringBuilder() : null;
+        Completion meta = SseReader.readCompletionDeltas(exchange.count(chatRequest.deadline().guard(response.body())), new StreamListener() {
+            @Override
+            public void onDelta(String delta) throws IOException {
+                exchange.firstToken();
+                if (text != null) {
+                    text.append(delta);
+                }
+                listener.onDelta(delta);
+            }
+
+            @Override
+            public void onComplete() throws IOException {
+                listener.onComplete();
+            }
+        });
+        if (text == null) {
+            return meta;
+        }
+        Completion completion = new Completion(text.toString(), meta.finishReason(), meta.promptTokens(), meta.completionTokens());
+        if (logged) {
+            LoggerUtil.log(chatRequest.pluginName(), chatRequest.prompt(), completion.content());
+        }
+        return completion;
+    }
+
+    private HttpTransport.Response send(byte[] requestBody, String accept, Metrics.Exchange exchange, Deadline deadline)
+            throws IOException, InterruptedException {
+        deadline.check();
+        // В потоковом режиме таймаут ограничивает только ожидание заголовков ответа, а не всю генерацию;
+        // паузы в передаче тела ограничивает срок (timeouts.idle-seconds)
+        Duration responseTimeout = deadline.responseTimeout(DEFAULT_RESPONSE_TIMEOUT);
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
+                .uri(URI.create(endpoint()))
+                .header("Authorization", "Bearer " + apiKey)
+                .header("Content-Type", "application/json; charset=UTF-8")
+                .header("Accept", accept)
+                .timeout(responseTimeout)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(requestBody));
+        addHeaders(builder);
+
+        // Отмена срока отменяет HTTP-обмен сразу, не дожидаясь ответа сервера
+        CompletableFuture<HttpTransport.Response> future = transport.sendAsync(builder);
+        try (Deadline.Registration ignored = deadline.onCancel(() -> future.cancel(true))) {
+            HttpTransport.Response response = future.get();
+            exchange.headers(response.statusCode());
+            ResponseListener listener = responseListener;
+            if (listener != null) {
+                listener.onResponse(response.statusCode(), response.headers());
+            }
+            return response;
+        } catch (CancellationException e) {
+            throw new DeadlineExceededException(deadline.reason() != null ? deadline.reason() : "запрос отменён", e);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            // Отмена могла дойти до HTTP-клиента раньше, чем до future, и прийти как его ошибка
+            if (deadline.isCancelled()) {
+                throw new DeadlineExceededException(deadline.reason(), cause);
+            }
+            if (cause instanceof HttpTimeoutException) {
+                deadline.check();
+                throw new IOException("Сервер " + displayName() + " не ответил в течение " + responseTimeout.toSeconds()
+                        + " секунд. Возможно, он перегружен, выключен или есть проблемы с сетью.", cause);
+            }
+            if (cause instanceof IOException io) {
+                throw io;
+            }
+            throw new IOException(cause);
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package xyz.dartpower.BukkitAI;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.util.List;
+
+/**
+ * Запрос к chat/completions, не зависящий от провайдера.
+ * @param pluginName Название плагина или идентификатор запроса (для логов).
+ * @param prompt Промпт пользователя в исходном виде (для логов).
+ * @param messages Сообщения, отправляемые модели.
+ * @param cacheable Можно ли отдавать сохранённый ранее ответ на такой же запрос.
+ * @param maxTokens Ограничение длины ответа в токенах или 0, если оно не задано (см. {@link BudgetingAiClient}).
+ * @param deadline Срок генерации, в который должен уложиться запрос вместе с повторами (не входит в тело запроса).
+ * @param keepText Собирать ли в потоковом режиме полный текст ответа в {@link Completion#content()}
+ *                 (нужен кэшу и журналу пакетной генерации); фрагменты получатель получает в любом случае.
+ */
+public record ChatRequest(String pluginName, String prompt, List<Message> messages, boolean cacheable, int maxTokens,
+                          Deadline deadline, boolean keepText) {
+
+    public record Message(String role, String content) {}
+
+    public ChatRequest(String pluginName, String prompt, List<Message> messages, boolean cacheable) {
+        this(pluginName, prompt, messages, cacheable, 0, Deadline.NONE, false);
+    }
+
+    public ChatRequest withMaxTokens(int maxTokens) {
+        return new ChatRequest(pluginName, prompt, messages, cacheable, maxTokens, deadline, keepText);
+    }
+
+    public ChatRequest withMessages(List<Message> messages) {
+        return new ChatRequest(pluginName, prompt, messages, cacheable, maxTokens, deadline, keepText);
+    }
+
+    public ChatRequest withDeadline(Deadline deadline) {
+        return new ChatRequest(pluginName, prompt, messages, cacheable, maxTokens, deadline, keepText);
+    }
+
+    public ChatRequest withKeepText(boolean keepText) {
+        return new ChatRequest(pluginName, prompt, messages, cacheable, maxTokens, deadline, keepText);
+    }
+
+    // pom.xml и plugin.yml создаются по шаблонам (ProjectTemplates), поэтому модель пишет только Java
+    public static final String CODE_SYSTEM_PROMPT = """
+You are an expert Bukkit/Spigot plugin developer. Generate a complete, functional Bukkit plugin based on the user's request.
+Provide all Java classes in separate ```java code blocks, and config.yml in a ```yaml block only if the plugin needs it.
+Do not write pom.xml or plugin.yml: they are generated from the code. Register every command with getCommand("name").
+            """;
+
+    // Прежний промпт для templates.enabled: false — модель пишет весь проект
+    public static final String PROJECT_SYSTEM_PROMPT = """
+You are an expert Bukkit/Spigot plugin developer. Generate a complete, functional Bukkit plugin based on the user's request.
+Provide the code for pom.xml, plugin.yml, and all Java classes in separate code blocks.
+            """;
+
+    // Префикс пользовательского сообщения перед описанием плагина
+    public static final String CODE_USER_PREFIX = "Generate a Bukkit plugin with the following functionality: ";
+
+    public static final String IDEA_PROMPT = "Generate a short, creative, and interesting idea for a new Minecraft Bukkit plugin. The idea should be suitable for implementation. Respond with only the idea itself, no extra text.";
+
+    /**
+     * Запрос на генерацию кода плагина.
+     * @param templates true — только Java-классы (pom.xml и plugin.yml создаются по шаблонам), false — весь проект.
+     */
+    public static ChatRequest pluginCode(String userPrompt, String pluginName, boolean templates) {
+        return new ChatRequest(pluginName, userPrompt, List.of(
+                new Message("system", templates ? CODE_SYSTEM_PROMPT : PROJECT_SYSTEM_PROMPT),
+                new Message("user", CODE_USER_PREFIX + userPrompt)
+        ), true);
+    }
+
+    private static final String PLAN_SYSTEM_PROMPT = """
+You are an expert Bukkit/Spigot plugin architect. Plan the structure of a Bukkit plugin for the user's request.
+Respond with JSON only, no code and no explanations, in exactly this format:
+{"package": "com.example.myplugin", "mainClass": "MyPlugin",
+ "classes": [{"name": "MyPlugin", "description": "what the class does and its public methods"}],
+ "commands": [{"name": "example", "description": "what the command does"}],
+ "config": false}
+Include the main class extending JavaPlugin. Describe public methods precisely so that each class can be written independently.
+            """;
+
+    /**
+     * Запрос плана плагина: список классов и их обязанностей в виде JSON.
+     */
+    public static ChatRequest pluginPlan(String userPrompt, String pluginName) {
+        return new ChatRequest(pluginName + ":plan", userPrompt, List.of(
+                new Message("system", PLAN_SYSTEM_PROMPT),
+                new Message("user", "Plugin name: " + pluginName + "\n" + CODE_USER_PREFIX + userPrompt)
+        ), true);
+    }
+
+    /**
+     * Запрос одного Java-класса по плану плагина.
+     * @param plan План плагина в JSON (общий контекст для всех классов).
+     */
+    public static ChatRequest pluginClass(String userPrompt, String pluginName, String plan, String packageName, String className) {
+        return new ChatRequest(pluginName + ":" + className, userPrompt, List.of(
+                new Message("system", CODE_SYSTEM_PROMPT),
+                new Message("user", CODE_USER_PREFIX + userPrompt
+                        + "\n\nThe plugin is split into classes according to this plan:\n" + plan
+                        + "\n\nWrite ONLY the class " + packageName + "." + className
+                        + " following the plan exactly, as a single ```java code block. Do not write other classes, pom.xml or plugin.yml.")
+        ), true);
+    }
+
+    /**
+     * Запрос pom.xml, plugin.yml и (при необходимости) config.yml по плану плагина.
+     */
+    public static ChatRequest pluginResources(String userPrompt, String pluginName, String plan) {
+        return new ChatRequest(pluginName + ":resources", userPrompt, List.of(
+                new Message("system", PROJECT_SYSTEM_PROMPT),
+                new Message("user", CODE_USER_PREFIX + userPrompt
+                        + "\n\nThe plugin is split into classes according to this plan:\n" + plan
+                        + "\n\nWrite ONLY pom.xml, plugin.yml and, if the plan needs it, config.yml, each in its own code block. Do not write Java classes.")
+        ), true);
+    }
+
+    /**
+     * Запрос config.yml по плану плагина, когда pom.xml и plugin.yml создаются по шаблонам.
+     */
+    public static ChatRequest pluginConfig(String userPrompt, String pluginName, String plan) {
+        return new ChatRequest(pluginName + ":config", userPrompt, List.of(
+                new Message("system", CODE_SYSTEM_PROMPT),
+                new Message("user", CODE_USER_PREFIX + userPrompt
+                        + "\n\nThe plugin is split into classes according to this plan:\n" + plan
+                        + "\n\nWrite ONLY the default config.yml as a single ```yaml code block. Do not write Java classes.")
+        ), true);
+    }
+
+    /**
+     * Запрос исправления файлов, которые не прошли проверочную компиляцию.
+     * Такие ответы не кэшируются: повтор того же запроса должен давать новую попытку.
+     * @param sources Текущий текст файлов с ошибками в виде блоков кода.
+     * @param errors Сообщения компилятора.
+     */
+    public static ChatRequest pluginRepair(String userPrompt, String pluginName, String sources, String errors) {
+        return new ChatRequest(pluginName + ":repair", userPrompt, List.of(
+                new Message("system", CODE_SYSTEM_PROMPT),
+                new Message("user", CODE_USER_PREFIX + userPrompt
+                        + "\n\nThe generated plugin does not compile against the Bukkit API. Current files:\n" + sources
+                        + "\nCompiler errors:\n" + errors
+                        + "\nFix the errors and respond with the complete corrected version of every file listed above,"
+                        + " each as a single ```java code block. Do not write pom.xml or plugin.yml.")
+        ), false);
+    }
+
+    /**
+     * Запрос случайной идеи, не похожей на перечисленные (уже отклонённые как повторы).
+     * Такие ответы не кэшируются: каждый раз нужна новая идея.
+     */
+    public static ChatRequest randomIdea(String pluginName, List<String> avoid) {
+        if (avoid.isEmpty()) {
+            return new ChatRequest(pluginName, "Generate a random plugin idea",
+                    List.of(new Message("user", IDEA_PROMPT)), false);
+        }
+        StringBuilder prompt = new StringBuilder(IDEA_PROMPT)
+                .append("\n\nThe idea must be clearly different from these ideas, which already exist:");
+        for (String idea : avoid) {
+            prompt.append("\n- ").append(idea);
+        }
+        return new ChatRequest(pluginName, "Generate a random plugin idea",
+                List.of(new Message("user", prompt.toString())), false);
+    }
+
+    /**
+     * Формирует тело запроса в формате OpenAI chat/completions.
+     * @param model Имя модели.
+     * @param stream Включить ли потоковую передачу ответа.
+     */
+    public JsonObject toJson(String model, boolean stream) {
+        JsonObject requestBody = new JsonObject();
+        requestBody.addProperty("model", model);
+
+        JsonArray jsonMessages = new JsonArray();
+        for (Message message : messages) {
+            JsonObject jsonMessage = new JsonObject();
+            jsonMessage.addProperty("role", message.role());
+            jsonMessage.addProperty("content", message.content());
+            jsonMessages.add(jsonMessage);
+        }
+        requestBody.add("messages", jsonMessages);
+
+        if (maxTokens > 0) {
+            requestBody.addProperty(TokenEstimator.Family.of(model).maxTokensField(), maxTokens);
+        }
+        if (stream) {
+            requestBody.addProperty("stream", true);
+        }
+        return requestBody;
+    }
+}
@@ -0,0 +1,475 @@
+package xyz.dartpower.BukkitAI;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Locale;
+
+/**
+ * Однопроходный разборщик блоков кода (```) в ответе модели.
+ * <p>
+ * Работает как конечный автомат: текст можно подавать целиком или фрагментами (в том числе из потока),
+ * в памяти хранится только текущий блок. Блок закрывается строкой, состоящей из не меньшего числа
+ * обратных кавычек, чем открывающая, поэтому ``` внутри строки кода блок не закрывает.
+ * Открывающая ``` может стоять и после текста в той же строке ("Вот код: ```java"), если сразу за ней
+ * идёт язык, а в строке информации нет обратных кавычек (иначе это встроенный код, а не блок).
+ * Для Java-блоков в том же проходе определяются пакет и имя типа (class/interface/enum/record).
+ */
+public class CodeFenceParser {
+
+    /**
+     * Получатель завершённых блоков кода.
+     */
+    public interface BlockHandler {
+        void onBlock(CodeBlock block) throws IOException;
+    }
+
+    /**
+     * Завершённый блок кода.
+     * @param language Нормализованный язык ("java", "xml", "yaml", "properties" и т.п.).
+     * @param fileName Имя файла, если оно указано после языка (```yaml plugin.yml), иначе null.
+     * @param code Содержимое блока.
+     * @param packageName Пакет Java-класса или null.
+     * @param typeName Имя публичного (или первого) типа верхнего уровня Java-класса или null.
+     */
+    public record CodeBlock(String language, String fileName, String code, String packageName, String typeName) {}
+
+    private enum State { LINE_START, FENCE_OPEN, INFO, TEXT, CODE }
+
+    private static final String[] TYPE_KEYWORDS = {"class", "interface", "enum", "record"};
+
+    private final BlockHandler handler;
+
+    private State state = State.LINE_START;
+    private int fenceLength;
+    private int pendingBackticks;
+    // Блок открыт ``` после текста в той же строке
+    private boolean midLine;
+    private final StringBuilder info = new StringBuilder();
+    private final StringBuilder code = new StringBuilder();
+    private int lineStart;
+
+    // Состояние разбора Java внутри блока
+    private boolean java;
+    private boolean inBlockComment;
+    private int braceDepth;
+    private String packageName;
+    private String typeName;
+    private boolean typeIsPublic;
+
+    public CodeFenceParser(BlockHandler handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * Разбирает текст целиком.
+     * @return true, если текст закончился внутри незакрытого блока.
+     */
+    public static boolean parse(CharSequence content, BlockHandler handler) throws IOException {
+        CodeFenceParser parser = new CodeFenceParser(handler);
+        parser.feed(content);
+        return parser.finish();
+    }
+
+    /**
+     * Разбирает текст из потока символов, не загружая его в память целиком.
+     * @return true, если текст закончился внутри незакрытого блока.
+     */
+    public static boolean parse(Reader reader, BlockHandler handler) throws IOException {
+        CodeFenceParser parser = new CodeFenceParser(handler);
+        char[] buffer = new char[8192];
+        int read;
+        while ((read = reader.read(buffer)) != -1) {
+            parser.feed(buffer, 0, read);
+        }
+        return parser.finish();
+    }
+
+    public void feed(CharSequence chunk) throws IOException {
+        for (int i = 0; i < chunk.length(); i++) {
+            accept(chunk.charAt(i));
+        }
+    }
+
+    public void feed(char[] chunk, int offset, int length) throws IOException {
+        for (int i = offset; i < offset + length; i++) {
+            accept(chunk[i]);
+        }
+    }
+
+    /**
+     * Завершает разбор. Последняя строка без перевода строки тоже может закрыть блок.
+     * @return true, если текст закончился внутри незакрытого блока.
+     */
+    public boolean finish() throws IOException {
+        if (state == State.CODE) {
+            endCodeLine();
+        }
+        boolean unterminated = state == State.CODE || state == State.INFO;
+        state = State.LINE_START;
+        pendingBackticks = 0;
+        return unterminated;
+    }
+
+    private void accept(char c) throws IOException {
+        switch (state) {
+            case LINE_START -> {
+                if (c == '`') {
+                    pendingBackticks = 1;
+                    state = State.FENCE_OPEN;
+                } else if (c == '\n') {
+                    state = State.LINE_START;
+                } else if (c != ' ' && c != '\t' && c != '\r') {
+                    pendingBackticks = 0;
+                    state = State.TEXT;
+                }
+            }
+            case FENCE_OPEN -> {
+                if (c == '`') {
+                    pendingBackticks++;
+                } else if (pendingBackticks >= 3) {
+                    openFence(false);
+                    accept(c);
+                } else {
+                    pendingBackticks = 0;
+                    state = c == '\n' ? State.LINE_START : State.TEXT;
+                }
+            }
+            case TEXT -> {
+                if (c == '`') {
+                    pendingBackticks++;
+                } else if (pendingBackticks >= 3 && Character.isLetter(c)) {
+                    openFence(true);
+                    accept(c);
+                } else {
+                    pendingBackticks = 0;
+                    if (c == '\n') {
+                        state = State.LINE_START;
+                    }
+                }
+            }
+            case INFO -> {
+                if (c == '\n') {
+                    startBlock();
+                } else if (c == '`' && midLine) {
+                    // ```java``` посреди текста — встроенный код, а не начало блока
+                    pendingBackticks = 1;
+                    state = State.TEXT;
+                } else if (c != '\r') {
+                    info.append(c);
+                }
+            }
+            case CODE -> {
+                if (c == '\n') {
+                    endCodeLine();
+                } else if (c != '\r') {
+                    code.append(c);
+                }
+            }
+        }
+    }
+
+    private void openFence(boolean afterText) {
+        fenceLength = pendingBackticks;
+        pendingBackticks = 0;
+        midLine = afterText;
+        info.setLength(0);
+        state = State.INFO;
+    }
+
+    private void startBlock() {
+        code.setLength(0);
+        lineStart = 0;
+        inBlockComment = false;
+        braceDepth = 0;
+        packageName = null;
+        typeName = null;
+        typeIsPublic = false;
+
+        String language = normalizeLanguage(firstWord(info));
+        java = "java".equals(language) || language.isEmpty();
+        state = State.CODE;
+    }
+
+    /**
+     * Обрабатывает завершённую строку внутри блока: либо закрывает блок, либо анализирует Java-код.
+     */
+    private void endCodeLine() throws IOException {
+        if (isClosingFence(lineStart, code.length())) {
+            code.setLength(lineStart);
+            emitBlock();
+            state = State.LINE_START;
+            return;
+        }
+        if (java) {
+            scanJavaLine(lineStart, code.length());
+        }
+        code.append('\n');
+        lineStart = code.length();
+    }
+
+    private boolean isClosingFence(int from, int to) {
+        int i = from;
+        while (i < to && (code.charAt(i) == ' ' || code.charAt(i) == '\t')) {
+            i++;
+        }
+        int backticks = 0;
+        while (i < to && code.charAt(i) == '`') {
+            backticks++;
+            i++;
+        }
+        while (i < to && Character.isWhitespace(code.charAt(i))) {
+            i++;
+        }
+        return backticks >= fenceLength && i == to;
+    }
+
+    private void emitBlock() throws IOException {
+        String language = normalizeLanguage(firstWord(info));
+        String body = code.toString().strip();
+        if (language.isEmpty()) {
+            language = guessLanguage(body);
+        }
+        boolean isJava = "java".equals(language);
+        handler.onBlock(new CodeBlock(
+                language,
+                fileNameHint(info),
+                body,
+                isJava ? packageName : null,
+                isJava ? typeName : null
+        ));
+    }
+
+    // --- Разбор Java-строк (пакет, тип верхнего уровня) без регулярных выражений ---
+
+    private void scanJavaLine(int from, int to) {
+        int depthAtLineStart = braceDepth;
+        int i = from;
+        // Пропускаем ведущие пробелы
+        while (i < to && Character.isWhitespace(code.charAt(i))) {
+            i++;
+        }
+
+        if (!inBlockComment && depthAtLineStart == 0) {
+            if (packageName == null && startsWithWord(i, to, "package")) {
+                int start = skipSpaces(i + "package".length(), to);
+                int end = start;
+                while (end < to && (Character.isJavaIdentifierPart(code.charAt(end)) || code.charAt(end) == '.')) {
+                    end++;
+                }
+                if (end > start) {
+                    packageName = code.substring(start, end);
+                }
+            } else if (!typeIsPublic) {
+                detectTypeDeclaration(i, to);
+            }
+        }
+
+        countBraces(i, to);
+    }
+
+    private void detectTypeDeclaration(int from, int to) {
+        int i = from;
+        boolean isPublic = false;
+        while (i < to) {
+            char c = code.charAt(i);
+            if (c == '@') {
+                // Аннотация, в том числе @interface
+                if (startsWithWord(i + 1, to, "interface")) {
+                    int nameStart = skipSpaces(i + 1 + "interface".length(), to);
+                    recordType(nameStart, to, isPublic);
+                    return;
+                }
+                i = skipAnnotation(i + 1, to);
+                continue;
+            }
+            if (!Character.isJavaIdentifierStart(c)) {
+                return;
+            }
+            int end = i;
+            while (end < to && Character.isJavaIdentifierPart(code.charAt(end))) {
+                end++;
+            }
+            if (isModifier(i, end)) {
+                isPublic |= regionEquals(i, end, "public");
+                i = skipSpaces(end, to);
+                if (i < to && code.charAt(i) == '-') {
+                    // non-sealed
+                    i = skipWord(i + 1, to);
+                    i = skipSpaces(i, to);
+                }
+                continue;
+            }
+            for (String keyword : TYPE_KEYWORDS) {
+                if (regionEquals(i, end, keyword)) {
+                    recordType(skipSpaces(end, to), to, isPublic);
+                    return;
+                }
+            }
+            return;
+        }
+    }
+
+    private void recordType(int nameStart, int to, boolean isPublic) {
+        int end = nameStart;
+        while (end < to && Character.isJavaIdentifierPart(code.charAt(end))) {
+            end++;
+        }
+        if (end == nameStart) {
+            return;
+        }
+        if (typeName == null || isPublic) {
+            typeName = code.substring(nameStart, end);
+            typeIsPublic = isPublic;
+        }
+    }
+
+    private void countBraces(int from, int to) {
+        char quote = 0;
+        for (int i = from; i < to; i++) {
+            char c = code.charAt(i);
+            if (inBlockComment) {
+                if (c == '*' && i + 1 < to && code.charAt(i + 1) == '/') {
+                    inBlockComment = false;
+                    i++;
+                }
+            } else if (quote != 0) {
+                if (c == '\\') {
+                    i++;
+                } else if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+            } else if (c == '/' && i + 1 < to && code.charAt(i + 1) == '/') {
+                return;
+            } else if (c == '/' && i + 1 < to && code.charAt(i + 1) == '*') {
+                inBlockComment = true;
+                i++;
+            } else if (c == '{') {
+                braceDepth++;
+            } else if (c == '}' && braceDepth > 0) {
+                braceDepth--;
+            }
+        }
+    }
+
+    private boolean isModifier(int from, int to) {
+        return regionEquals(from, to, "public") || regionEquals(from, to, "abstract")
+                || regionEquals(from, to, "final") || regionEquals(from, to, "static")
+                || regionEquals(from, to, "sealed") || regionEquals(from, to, "strictfp")
+                || regionEquals(from, to, "non");
+    }
+
+    private int skipAnnotation(int i, int to) {
+        i = skipWord(i, to);
+        while (i < to && code.charAt(i) == '.') {
+            i = skipWord(i + 1, to);
+        }
+        if (i < to && code.charAt(i) == '(') {
+            int depth = 0;
+            for (; i < to; i++) {
+                char c = code.charAt(i);
+                if (c == '(') {
+                    depth++;
+                } else if (c == ')' && --depth == 0) {
+                    i++;
+                    break;
+                }
+            }
+        }
+        return skipSpaces(i, to);
+    }
+
+    private int skipWord(int i, int to) {
+        while (i < to && Character.isJavaIdentifierPart(code.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private int skipSpaces(int i, int to) {
+        while (i < to && Character.isWhitespace(code.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private boolean startsWithWord(int i, int to, String word) {
+        int end = i + word.length();
+        return end <= to && regionEquals(i, end, word)
+                && (end == to || !Character.isJavaIdentifierPart(code.charAt(end)));
+    }
+
+    private boolean regionEquals(int from, int to, String word) {
+        if (to - from != word.length()) {
+            return false;
+        }
+        for (int i = 0; i < word.length(); i++) {
+            if (code.charAt(from + i) != word.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // --- Строка информации после ``` ---
+
+    private static String firstWord(CharSequence info) {
+        int start = 0;
+        while (start < info.length() && Character.isWhitespace(info.charAt(start))) {
+            start++;
+        }
+        int end = start;
+        while (end < info.length() && !Character.isWhitespace(info.charAt(end))
+                && info.charAt(end) != ':' && info.charAt(end) != '{') {
+            end++;
+        }
+        return info.subSequence(start, end).toString();
+    }
+
+    /**
+     * Приводит язык блока к одному из известных: java-17 → java, yml → yaml, pom → xml и т.п.
+     */
+    static String normalizeLanguage(String language) {
+        String lower = language.toLowerCase(Locale.ROOT);
+        if (lower.startsWith("java") && !lower.startsWith("javascript")) {
+            return "java";
+        }
+        return switch (lower) {
+            case "yml", "yaml", "plugin.yml", "config.yml" -> "yaml";
+            case "xml", "pom", "pom.xml", "maven" -> "xml";
+            case "properties", "props", "ini" -> "properties";
+            default -> lower;
+        };
+    }
+
+    private static String guessLanguage(String body) {
+        if (body.startsWith("<?xml") || body.startsWith("<project")) {
+            return "xml";
+        }
+        if (body.startsWith("package ") || body.startsWith("import ") || body.contains("class ")) {
+            return "java";
+        }
+        if (body.contains("main:") && body.contains("name:")) {
+            return "yaml";
+        }
+        return "";
+    }
+
+    /**
+     * Ищет имя файла в строке информации: ```yaml plugin.yml, ```java:Main.java, ```xml title="pom.xml".
+     */
+    private static String fileNameHint(CharSequence info) {
+        String text = info.toString().trim();
+        int colon = text.indexOf(':');
+        String rest = colon >= 0 ? text.substring(colon + 1) : text.substring(firstWord(text).length());
+        for (String token : rest.trim().split("[\\s=\"']+")) {
+            int slash = Math.max(token.lastIndexOf('/'), token.lastIndexOf('\\'));
+            String name = token.substring(slash + 1);
+            if (name.indexOf('.') > 0 && !name.endsWith(".")) {
+                return name;
+            }
+        }
+        return null;
+    }
+}
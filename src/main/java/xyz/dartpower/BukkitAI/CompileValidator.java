@@ -0,0 +1,243 @@
+package xyz.dartpower.BukkitAI;
+
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * Проверочная компиляция сгенерированных исходников внутри процесса (javax.tools) против Bukkit API
+ * из {@link BukkitApiClasspath}, без запуска Maven.
+ * <p>
+ * Исходники и байт-код держатся в памяти: на диск ничего не пишется. Файловые менеджеры с открытыми
+ * jar-файлами API переиспользуются между компиляциями, поэтому проверка одного проекта после первой
+ * занимает доли секунды. Несколько проектов компилируются параллельно ({@link #validateAll}).
+ */
+public class CompileValidator {
+
+    /**
+     * Сообщение компилятора.
+     * @param file Путь к файлу относительно src/main/java (или null, если сообщение не относится к файлу).
+     * @param kind ERROR, WARNING, MANDATORY_WARNING, NOTE или OTHER.
+     * @param code Код сообщения javac, например compiler.err.cant.resolve.location.
+     */
+    public record Diagnostic(String file, long line, long column, String kind, String code, String message) {
+
+        public boolean isError() {
+            return "ERROR".equals(kind);
+        }
+
+        public String format() {
+            return (file != null ? file + ":" + line + ":" + column + ": " : "") + kind.toLowerCase(Locale.ROOT) + ": " + message;
+        }
+    }
+
+    /**
+     * Итог проверки одного проекта.
+     * @param sources Число скомпилированных файлов.
+     */
+    public record Result(String project, boolean success, int sources, int errors, int warnings,
+                         List<Diagnostic> diagnostics, long millis) {
+
+        public List<Diagnostic> errorDiagnostics() {
+            return diagnostics.stream().filter(Diagnostic::isError).toList();
+        }
+    }
+
+    private static CompileValidator shared;
+
+    private final JavaCompiler compiler;
+    private final List<Path> classpath;
+    private final List<String> compilerOptions;
+    private final ConcurrentLinkedQueue<StandardJavaFileManager> idleFileManagers = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @param classpath Jar-файлы API.
+     * @throws IOException Если программа запущена без компилятора (на JRE, а не JDK).
+     */
+    public CompileValidator(List<Path> classpath, ConfigOptions options) throws IOException {
+        this.compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new IOException("Компилятор Java недоступен: для проверки компиляции запустите генератор на JDK, а не JRE.");
+        }
+        this.classpath = List.copyOf(classpath);
+        this.compilerOptions = List.of(
+                "-proc:none",
+                "--release", String.valueOf(options.getInt("validate.release", 17)),
+                "-Xlint:" + options.getString("validate.lint", "none"),
+                "-Xmaxerrs", "100");
+    }
+
+    /**
+     * Общий экземпляр; при первом вызове готовит classpath API (при необходимости скачивает его).
+     */
+    public static synchronized CompileValidator shared(ConfigOptions options) throws IOException {
+        if (shared == null) {
+            shared = new CompileValidator(BukkitApiClasspath.resolve(options), options);
+        }
+        return shared;
+    }
+
+    /**
+     * Компилирует исходники из src/main/java проекта.
+     */
+    public Result validate(Path projectDir) throws IOException {
+        Path javaDir = projectDir.resolve("src/main/java");
+        Map<String, String> sources = new LinkedHashMap<>();
+        if (Files.isDirectory(javaDir)) {
+            try (Stream<Path> files = Files.walk(javaDir)) {
+                for (Path file : files.filter(f -> f.toString().endsWith(".java")).sorted().toList()) {
+                    sources.put(javaDir.relativize(file).toString().replace('\\', '/'), Files.readString(file));
+                }
+            }
+        }
+        return validate(String.valueOf(projectDir.getFileName()), sources);
+    }
+
+    /**
+     * Компилирует исходники из памяти.
+     * @param sources Путь файла относительно корня исходников -> текст файла.
+     */
+    public Result validate(String project, Map<String, String> sources) {
+        long start = System.nanoTime();
+        if (sources.isEmpty()) {
+            Diagnostic missing = new Diagnostic(null, 0, 0, "ERROR", "bukkitai.no.sources", "В проекте нет Java-файлов");
+            return new Result(project, false, 0, 1, 0, List.of(missing), 0);
+        }
+        List<JavaFileObject> units = new ArrayList<>();
+        sources.forEach((path, code) -> units.add(new SourceFile(path, code)));
+
+        DiagnosticCollector<JavaFileObject> collector = new DiagnosticCollector<>();
+        StandardJavaFileManager fileManager = borrowFileManager();
+        try {
+            compiler.getTask(null, new InMemoryOutput(fileManager), collector, compilerOptions, null, units).call();
+        } finally {
+            idleFileManagers.add(fileManager);
+        }
+
+        List<Diagnostic> diagnostics = new ArrayList<>();
+        int errors = 0;
+        int warnings = 0;
+        for (javax.tools.Diagnostic<? extends JavaFileObject> d : collector.getDiagnostics()) {
+            String kind = d.getKind().name();
+            if (d.getKind() == javax.tools.Diagnostic.Kind.ERROR) {
+                errors++;
+            } else if (kind.endsWith("WARNING")) {
+                warnings++;
+            }
+            String file = d.getSource() instanceof SourceFile source ? source.path : null;
+            diagnostics.add(new Diagnostic(file, d.getLineNumber(), d.getColumnNumber(), kind, d.getCode(),
+                    d.getMessage(Locale.ROOT)));
+        }
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        return new Result(project, errors == 0, sources.size(), errors, warnings, List.copyOf(diagnostics), millis);
+    }
+
+    /**
+     * Проверяет несколько проектов параллельно.
+     * @return Результаты в порядке входного списка.
+     */
+    public List<Result> validateAll(List<Path> projects, int parallelism) throws IOException, InterruptedException {
+        // javac нагружает процессор, поэтому используем ограниченный пул обычных потоков
+        List<Future<Result>> futures = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, parallelism),
+                Thread.ofPlatform().name("javac-", 0).daemon().factory())) {
+            for (Path project : projects) {
+                futures.add(executor.submit(() -> validate(project)));
+            }
+        }
+        List<Result> results = new ArrayList<>();
+        for (Future<Result> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                throw cause instanceof IOException io ? io : new IOException(cause.getMessage(), cause);
+            }
+        }
+        return results;
+    }
+
+    private StandardJavaFileManager borrowFileManager() {
+        StandardJavaFileManager fileManager = idleFileManagers.poll();
+        if (fileManager != null) {
+            return fileManager;
+        }
+        fileManager = compiler.getStandardFileManager(null, Locale.ROOT, null);
+        try {
+            fileManager.setLocationFromPaths(StandardLocation.CLASS_PATH, classpath);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return fileManager;
+    }
+
+    /**
+     * Исходный файл из памяти.
+     */
+    private static class SourceFile extends SimpleJavaFileObject {
+
+        private final String path;
+        private final String code;
+
+        SourceFile(String path, String code) {
+            super(URI.create("memory:///" + path.replace(" ", "%20")), Kind.SOURCE);
+            this.path = path;
+            this.code = code;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return code;
+        }
+    }
+
+    /**
+     * Файловый менеджер, отбрасывающий результаты компиляции вместо записи .class на диск.
+     */
+    private static class InMemoryOutput extends ForwardingJavaFileManager<JavaFileManager> {
+
+        InMemoryOutput(JavaFileManager fileManager) {
+            super(fileManager);
+        }
+
+        @Override
+        public JavaFileObject getJavaFileForOutput(Location location, String className, JavaFileObject.Kind kind,
+                                                   FileObject sibling) {
+            return new SimpleJavaFileObject(URI.create("memory:///out/" + className.replace('.', '/') + kind.extension), kind) {
+                @Override
+                public OutputStream openOutputStream() {
+                    return OutputStream.nullOutputStream();
+                }
+            };
+        }
+
+        @Override
+        public void close() {
+            // Базовый менеджер переиспользуется и закрывается вместе с процессом
+        }
+    }
+}
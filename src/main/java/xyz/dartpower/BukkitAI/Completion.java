@@ -0,0 +1,66 @@
+package xyz.dartpower.BukkitAI;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.io.IOException;
+
+/**
+ * Результат запроса к chat/completions.
+ * @param content Текст ответа модели; в потоковом режиме null, если он не запрошен ({@link ChatRequest#keepText()}).
+ * @param finishReason Причина завершения генерации ("stop", "length" и т.п.), может быть null.
+ * @param promptTokens Количество токенов промпта или -1, если API его не сообщил.
+ * @param completionTokens Количество токенов ответа или -1, если API его не сообщил.
+ * @param model Модель, которая дала ответ (у пула эндпоинтов она может отличаться от {@link AiClient#model()}),
+ *              или null, если неизвестна (ответ из кэша или журнала).
+ */
+public record Completion(String content, String finishReason, int promptTokens, int completionTokens, String model) {
+
+    public Completion(String content, String finishReason, int promptTokens, int completionTokens) {
+        this(content, finishReason, promptTokens, completionTokens, null);
+    }
+
+    public static Completion of(String content) {
+        return new Completion(content, null, -1, -1);
+    }
+
+    public Completion withModel(String model) {
+        return new Completion(content, finishReason, promptTokens, completionTokens, model);
+    }
+
+    /**
+     * Извлекает choices[0].message.content, finish_reason и usage из ответа API.
+     * @throws IOException Если в ответе нет ожидаемых полей.
+     */
+    public static Completion fromResponse(JsonObject responseBody) throws IOException {
+        if (responseBody == null || !responseBody.has("choices") || responseBody.getAsJsonArray("choices").isEmpty()) {
+            throw new IOException("API вернул некорректный JSON-ответ без поля 'choices'.");
+        }
+        JsonObject choice = responseBody.getAsJsonArray("choices").get(0).getAsJsonObject();
+        JsonObject message = choice.getAsJsonObject("message");
+        if (message == null || message.get("content") == null || message.get("content").isJsonNull()) {
+            throw new IOException("API вернул ответ без текста (choices[0].message.content).");
+        }
+
+        JsonElement finishReason = choice.get("finish_reason");
+        int promptTokens = -1;
+        int completionTokens = -1;
+        JsonObject usage = responseBody.has("usage") && responseBody.get("usage").isJsonObject()
+                ? responseBody.getAsJsonObject("usage") : null;
+        if (usage != null) {
+            if (usage.has("prompt_tokens")) {
+                promptTokens = usage.get("prompt_tokens").getAsInt();
+            }
+            if (usage.has("completion_tokens")) {
+                completionTokens = usage.get("completion_tokens").getAsInt();
+            }
+        }
+
+        return new Completion(
+                message.get("content").getAsString(),
+                finishReason == null || finishReason.isJsonNull() ? null : finishReason.getAsString(),
+                promptTokens,
+                completionTokens
+        );
+    }
+}
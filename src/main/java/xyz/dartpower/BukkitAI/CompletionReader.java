@@ -0,0 +1,150 @@
+package xyz.dartpower.BukkitAI;
+
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Потоковый разбор ответов chat/completions через {@link JsonReader}: за один проход извлекает
+ * текст ответа, finish_reason и usage, не строя дерево JSON и не держа тело ответа целиком в строке.
+ */
+public final class CompletionReader {
+
+    /**
+     * Поля одного ответа или одного фрагмента потока.
+     * @param hasChoices Был ли в объекте непустой массив choices.
+     * @param error Содержимое поля "error" в виде JSON или null.
+     */
+    public record Parsed(String content, String finishReason, int promptTokens, int completionTokens,
+                         boolean hasChoices, String error) {}
+
+    private CompletionReader() {
+    }
+
+    /**
+     * Читает ответ chat/completions без потоковой передачи (choices[0].message).
+     * Поток не закрывается: вызывающий код может дочитать остаток тела.
+     * @throws IOException Если тело пустое, не является JSON или в нём нет текста ответа.
+     */
+    public static Completion read(InputStream body) throws IOException {
+        Parsed parsed = readObject(new JsonReader(new InputStreamReader(body, StandardCharsets.UTF_8)), "message");
+        if (parsed.error() != null) {
+            throw new IOException("API вернул ошибку: " + parsed.error());
+        }
+        if (!parsed.hasChoices()) {
+            throw new IOException("API вернул некорректный JSON-ответ без поля 'choices'.");
+        }
+        if (parsed.content() == null) {
+            throw new IOException("API вернул ответ без текста (choices[0].message.content).");
+        }
+        return new Completion(parsed.content(), parsed.finishReason(), parsed.promptTokens(), parsed.completionTokens());
+    }
+
+    /**
+     * Читает один фрагмент потокового ответа (choices[0].delta).
+     */
+    public static Parsed readChunk(String data) throws IOException {
+        try (JsonReader reader = new JsonReader(new StringReader(data))) {
+            return readObject(reader, "delta");
+        }
+    }
+
+    private static Parsed readObject(JsonReader reader, String messageField) throws IOException {
+        String content = null;
+        String finishReason = null;
+        int promptTokens = -1;
+        int completionTokens = -1;
+        boolean hasChoices = false;
+        String error = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "choices" -> {
+                    if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+                        reader.skipValue();
+                        continue;
+                    }
+                    reader.beginArray();
+                    if (reader.hasNext()) {
+                        hasChoices = true;
+                        // Нужен только первый вариант ответа
+                        reader.beginObject();
+                        while (reader.hasNext()) {
+                            String name = reader.nextName();
+                            if (name.equals(messageField) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                                content = readContent(reader);
+                            } else if (name.equals("finish_reason")) {
+                                finishReason = nextStringOrNull(reader);
+                            } else {
+                                reader.skipValue();
+                            }
+                        }
+                        reader.endObject();
+                    }
+                    while (reader.hasNext()) {
+                        reader.skipValue();
+                    }
+                    reader.endArray();
+                }
+                case "usage" -> {
+                    if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                        reader.skipValue();
+                        continue;
+                    }
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        switch (reader.nextName()) {
+                            case "prompt_tokens" -> promptTokens = nextIntOrDefault(reader);
+                            case "completion_tokens" -> completionTokens = nextIntOrDefault(reader);
+                            default -> reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                }
+                // Ошибки короткие, их можно разобрать целиком
+                case "error" -> error = JsonParser.parseReader(reader).toString();
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new Parsed(content, finishReason, promptTokens, completionTokens, hasChoices, error);
+    }
+
+    private static String readContent(JsonReader reader) throws IOException {
+        String content = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals("content")) {
+                content = nextStringOrNull(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return content;
+    }
+
+    private static String nextStringOrNull(JsonReader reader) throws IOException {
+        JsonToken token = reader.peek();
+        if (token == JsonToken.STRING) {
+            return reader.nextString();
+        }
+        reader.skipValue();
+        return null;
+    }
+
+    private static int nextIntOrDefault(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.NUMBER) {
+            reader.skipValue();
+            return -1;
+        }
+        return reader.nextInt();
+    }
+}
@@ -5,12 +5,14 @@ import org.yaml.snakeyaml.Yaml;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 public class ConfigManager {
 
-    private static final Path CONFIG_PATH = Path.of("config.yaml");
-    private final Yaml yaml = new Yaml();
+    static final Path CONFIG_PATH = Path.of("config.yaml");
+    // SnakeYAML загружает много классов, поэтому создаётся только при первом обращении к файлу
+    private Yaml yaml;
 
     public boolean configExists() {
         return Files.exists(CONFIG_PATH);
@@ -19,7 +21,7 @@ public class ConfigManager {
     public ConfigData loadConfig() {
         try {
             String content = Files.readString(CONFIG_PATH);
-            Map<String, Object> data = yaml.load(content);
+            Map<String, Object> data = yaml().load(content);
 
             if (data == null || !data.containsKey("active-provider")) {
                 System.err.println("Ошибка: config.yaml имеет неверную структуру (отсутствует 'active-provider').");
@@ -53,11 +55,12 @@ public class ConfigManager {
                 activeBaseUrl = oaiBaseUrl;
             }
 
-            // Создаем объект ConfigData со ВСЕМИ 9 параметрами
+            // Создаем объект ConfigData со ВСЕМИ параметрами, включая дополнительные настройки
             return new ConfigData(
                     activeProvider, activeApiKey, activeModel, activeBaseUrl,
                     orApiKey, orModel,
-                    oaiApiKey, oaiModel, oaiBaseUrl
+                    oaiApiKey, oaiModel, oaiBaseUrl,
+                    new ConfigOptions(data)
             );
 
         } catch (IOException | ClassCastException e) {
@@ -67,22 +70,38 @@ public class ConfigManager {
     }
 
     public void saveConfig(ConfigData config) throws IOException {
-        Map<String, Object> data = Map.of(
-                "active-provider", config.provider(),
-                "openrouter", Map.of(
-                        "api-key", config.openrouterApiKey(),
-                        "model", config.openrouterModel()
-                ),
-                "openai", Map.of(
-                        "api-key", config.openaiApiKey(),
-                        "model", config.openaiModel(),
-                        "base-url", config.openaiBaseUrl()
-                )
-        );
-        String yamlContent = yaml.dump(data);
+        // Сохраняем дополнительные настройки (stream и т.п.), перезаписывая только ключи провайдеров
+        Map<String, Object> data = new LinkedHashMap<>(config.options().raw());
+        data.put("active-provider", config.provider());
+        data.put("openrouter", mergeSection(data.get("openrouter"), Map.of(
+                "api-key", config.openrouterApiKey(),
+                "model", config.openrouterModel()
+        )));
+        data.put("openai", mergeSection(data.get("openai"), Map.of(
+                "api-key", config.openaiApiKey(),
+                "model", config.openaiModel(),
+                "base-url", config.openaiBaseUrl()
+        )));
+        String yamlContent = yaml().dump(data);
         Files.writeString(CONFIG_PATH, yamlContent);
     }
 
+    private synchronized Yaml yaml() {
+        if (yaml == null) {
+            yaml = new Yaml();
+        }
+        return yaml;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> mergeSection(Object existing, Map<String, Object> values) {
+        Map<String, Object> section = existing instanceof Map
+                ? new LinkedHashMap<>((Map<String, Object>) existing)
+                : new LinkedHashMap<>();
+        section.putAll(values);
+        return section;
+    }
+
     // Запись для хранения всех настроек
     public record ConfigData(
             String provider,
@@ -95,6 +114,16 @@ public class ConfigManager {
             String openrouterModel,
             String openaiApiKey,
             String openaiModel,
-            String openaiBaseUrl
-    ) {}
+            String openaiBaseUrl,
+
+            // Необязательные настройки (stream и т.п.)
+            ConfigOptions options
+    ) {
+        public ConfigData(String provider, String apiKey, String model, String baseUrl,
+                          String openrouterApiKey, String openrouterModel,
+                          String openaiApiKey, String openaiModel, String openaiBaseUrl) {
+            this(provider, apiKey, model, baseUrl, openrouterApiKey, openrouterModel,
+                    openaiApiKey, openaiModel, openaiBaseUrl, ConfigOptions.EMPTY);
+        }
+    }
 }
\ No newline at end of file
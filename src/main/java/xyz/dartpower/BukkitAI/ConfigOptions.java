@@ -0,0 +1,117 @@
+package xyz.dartpower.BukkitAI;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Дополнительные (необязательные) настройки из config.yaml.
+ * Ключи задаются через точку, например "cache.ttl-hours".
+ */
+public class ConfigOptions {
+
+    public static final ConfigOptions EMPTY = new ConfigOptions(Map.of());
+
+    private final Map<String, Object> raw;
+
+    public ConfigOptions(Map<String, Object> raw) {
+        this.raw = raw == null ? Map.of() : raw;
+    }
+
+    /**
+     * @return Исходное дерево настроек (для сохранения обратно в config.yaml).
+     */
+    public Map<String, Object> raw() {
+        return raw;
+    }
+
+    public Object get(String path) {
+        Object current = raw;
+        for (String part : path.split("\\.")) {
+            if (!(current instanceof Map<?, ?> map)) {
+                return null;
+            }
+            current = map.get(part);
+        }
+        return current;
+    }
+
+    public String getString(String path, String defaultValue) {
+        Object value = get(path);
+        return value == null ? defaultValue : value.toString();
+    }
+
+    public boolean getBoolean(String path, boolean defaultValue) {
+        Object value = get(path);
+        if (value instanceof Boolean b) {
+            return b;
+        }
+        return value == null ? defaultValue : Boolean.parseBoolean(value.toString());
+    }
+
+    public int getInt(String path, int defaultValue) {
+        Object value = get(path);
+        if (value instanceof Number n) {
+            return n.intValue();
+        }
+        try {
+            return value == null ? defaultValue : Integer.parseInt(value.toString().trim());
+        } catch (NumberFormatException e) {
+            System.err.println("   [Предупреждение] Некорректное значение '" + path + "' в config.yaml: " + value);
+            return defaultValue;
+        }
+    }
+
+    public long getLong(String path, long defaultValue) {
+        Object value = get(path);
+        if (value instanceof Number n) {
+            return n.longValue();
+        }
+        try {
+            return value == null ? defaultValue : Long.parseLong(value.toString().trim());
+        } catch (NumberFormatException e) {
+            System.err.println("   [Предупреждение] Некорректное значение '" + path + "' в config.yaml: " + value);
+            return defaultValue;
+        }
+    }
+
+    public double getDouble(String path, double defaultValue) {
+        Object value = get(path);
+        if (value instanceof Number n) {
+            return n.doubleValue();
+        }
+        try {
+            return value == null ? defaultValue : Double.parseDouble(value.toString().trim());
+        } catch (NumberFormatException e) {
+            System.err.println("   [Предупреждение] Некорректное значение '" + path + "' в config.yaml: " + value);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Возвращает копию настроек с переопределённым значением (например, из аргументов командной строки).
+     */
+    @SuppressWarnings("unchecked")
+    public ConfigOptions with(String path, Object value) {
+        Map<String, Object> copy = deepCopy(raw);
+        Map<String, Object> current = copy;
+        String[] parts = path.split("\\.");
+        for (int i = 0; i < parts.length - 1; i++) {
+            Object next = current.get(parts[i]);
+            if (!(next instanceof Map)) {
+                next = new LinkedHashMap<String, Object>();
+                current.put(parts[i], next);
+            }
+            current = (Map<String, Object>) next;
+        }
+        current.put(parts[parts.length - 1], value);
+        return new ConfigOptions(copy);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> deepCopy(Map<String, Object> source) {
+        Map<String, Object> copy = new LinkedHashMap<>();
+        source.forEach((key, value) -> copy.put(key,
+                value instanceof Map ? deepCopy((Map<String, Object>) value) : value));
+        return copy;
+    }
+}
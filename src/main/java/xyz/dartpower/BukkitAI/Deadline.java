@@ -0,0 +1,340 @@
+package xyz.dartpower.BukkitAI;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Срок генерации одного плагина, общий для всех его запросов (план, классы, продолжения, исправления, повторы).
+ * Передаётся в {@link ChatRequest} через все обёртки {@link AiClient} до HTTP-клиента.
+ * <p>
+ * Срок работает и как отмена: когда время вышло или вызван {@link #cancel}, выполняющиеся запросы прерываются
+ * сразу (отменяется future HTTP-обмена, закрывается тело ответа), ожидание лимита и пауза перед повтором
+ * заканчиваются, а новые запросы не отправляются. Так обработчик освобождается, не дожидаясь ответа сервера.
+ * <p>
+ * Кроме общего срока задаёт таймауты отдельного запроса: ожидание заголовков ответа (response) и паузу
+ * в передаче тела (idle), в том числе между фрагментами потока.
+ */
+public final class Deadline implements AutoCloseable {
+
+    /**
+     * Без срока: запросы ограничены только таймаутами клиента. Отменить его нельзя.
+     */
+    public static final Deadline NONE = new Deadline(0, null, null);
+
+    // Незавершённые сроки: при остановке программы (Ctrl+C) они отменяются
+    private static final Set<Deadline> ACTIVE = ConcurrentHashMap.newKeySet();
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().daemon().name("deadline-timer").factory());
+
+    // Момент истечения по System.nanoTime(); 0 — без срока
+    private final long expiresAt;
+    private final Duration responseTimeout;
+    private final Duration idleTimeout;
+    private final CountDownLatch cancelled = new CountDownLatch(1);
+    private final List<Runnable> listeners = new ArrayList<>();
+    private volatile String reason;
+    private ScheduledFuture<?> timer;
+
+    private Deadline(long expiresAt, Duration responseTimeout, Duration idleTimeout) {
+        this.expiresAt = expiresAt;
+        this.responseTimeout = responseTimeout;
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * Новый срок по секции "timeouts" config.yaml. Его нужно закрыть ({@link #close}), когда генерация закончена.
+     */
+    public static Deadline fromOptions(ConfigOptions options) {
+        long total = options.getLong("timeouts.total-seconds", 900);
+        long response = options.getLong("timeouts.response-seconds", 120);
+        long idle = options.getLong("timeouts.idle-seconds", 60);
+        return start(total > 0 ? Duration.ofSeconds(total) : null,
+                response > 0 ? Duration.ofSeconds(response) : null,
+                idle > 0 ? Duration.ofSeconds(idle) : null);
+    }
+
+    /**
+     * @param total Общий срок или null, если срок не ограничен (отменить такой срок всё равно можно).
+     * @param responseTimeout Ожидание заголовков ответа или null — таймаут клиента.
+     * @param idleTimeout Допустимая пауза в передаче тела ответа или null — без ограничения.
+     */
+    public static Deadline start(Duration total, Duration responseTimeout, Duration idleTimeout) {
+        // 0 зарезервирован для "без срока"
+        long expiresAt = total == null ? 0 : (System.nanoTime() + total.toNanos()) | 1;
+        Deadline deadline = new Deadline(expiresAt, responseTimeout, idleTimeout);
+        ACTIVE.add(deadline);
+        if (total != null) {
+            deadline.timer = TIMER.schedule(
+                    () -> deadline.cancel("истёк срок генерации (" + total.toSeconds() + " с)"),
+                    total.toNanos(), TimeUnit.NANOSECONDS);
+        }
+        return deadline;
+    }
+
+    /**
+     * Отменяет все незавершённые сроки и ждёт, пока их генерации завершатся, но не дольше grace.
+     * @return true, если все генерации успели завершиться.
+     */
+    public static boolean cancelAll(String reason, Duration grace) {
+        ACTIVE.forEach(deadline -> deadline.cancel(reason));
+        long until = System.nanoTime() + grace.toNanos();
+        while (!ACTIVE.isEmpty() && until - System.nanoTime() > 0) {
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return ACTIVE.isEmpty();
+    }
+
+    /**
+     * Отменяет срок: выполняющиеся запросы прерываются, новые не отправляются. Повторный вызов ничего не делает.
+     */
+    public void cancel(String reason) {
+        if (this == NONE) {
+            return;
+        }
+        List<Runnable> toRun;
+        synchronized (this) {
+            if (this.reason != null) {
+                return;
+            }
+            this.reason = reason;
+            toRun = new ArrayList<>(listeners);
+            listeners.clear();
+        }
+        cancelled.countDown();
+        toRun.forEach(Runnable::run);
+    }
+
+    /**
+     * @return true, если срок истёк или отменён.
+     */
+    public boolean isCancelled() {
+        return reason != null;
+    }
+
+    /**
+     * @return Почему срок отменён, или null.
+     */
+    public String reason() {
+        return reason;
+    }
+
+    /**
+     * @return Сколько осталось до истечения срока; для срока без ограничения — null.
+     */
+    public Duration remaining() {
+        if (expiresAt == 0) {
+            return null;
+        }
+        return Duration.ofNanos(Math.max(0, expiresAt - System.nanoTime()));
+    }
+
+    /**
+     * @return Таймаут ожидания заголовков ответа, не больше оставшегося срока.
+     * @param clientDefault Таймаут клиента, если в настройках он не задан.
+     */
+    public Duration responseTimeout(Duration clientDefault) {
+        Duration timeout = responseTimeout != null ? responseTimeout : clientDefault;
+        Duration remaining = remaining();
+        // HttpRequest не принимает нулевой таймаут
+        return remaining != null && remaining.compareTo(timeout) < 0 ? remaining.plusMillis(1) : timeout;
+    }
+
+    /**
+     * @throws DeadlineExceededException Если срок истёк или отменён.
+     */
+    public void check() throws DeadlineExceededException {
+        String current = reason;
+        if (current == null && expiresAt != 0 && expiresAt - System.nanoTime() <= 0) {
+            // Таймер ещё не успел сработать
+            cancel("истёк срок генерации");
+            current = reason;
+        }
+        if (current != null) {
+            throw new DeadlineExceededException(current);
+        }
+    }
+
+    /**
+     * Ждёт указанное время, но не дольше срока. Пауза, которая заведомо не укладывается в срок, не начинается.
+     * @throws DeadlineExceededException Если срок истёк или отменён до или во время ожидания.
+     */
+    public void sleep(long millis) throws DeadlineExceededException, InterruptedException {
+        check();
+        Duration remaining = remaining();
+        if (remaining != null && remaining.toMillis() < millis) {
+            throw new DeadlineExceededException("до истечения срока генерации осталось меньше паузы перед повтором ("
+                    + millis + " мс)");
+        }
+        if (cancelled.await(millis, TimeUnit.MILLISECONDS)) {
+            check();
+        }
+    }
+
+    /**
+     * Выполняет action при отмене срока (сразу, если срок уже отменён).
+     * @return Регистрация; её нужно закрыть, когда отмена больше не нужна.
+     */
+    public Registration onCancel(Runnable action) {
+        if (this == NONE) {
+            return () -> { };
+        }
+        synchronized (this) {
+            if (reason == null) {
+                listeners.add(action);
+                return () -> {
+                    synchronized (Deadline.this) {
+                        listeners.remove(action);
+                    }
+                };
+            }
+        }
+        action.run();
+        return () -> { };
+    }
+
+    /**
+     * Тело ответа под контролем срока: при отмене поток закрывается, а чтение завершается
+     * {@link DeadlineExceededException}; если данные не приходят дольше idle-таймаута — {@link HttpTimeoutException}.
+     */
+    public InputStream guard(InputStream body) {
+        if (this == NONE) {
+            return body;
+        }
+        return new GuardedInputStream(body);
+    }
+
+    /**
+     * Генерация закончена: таймер срока больше не нужен.
+     */
+    @Override
+    public void close() {
+        if (timer != null) {
+            timer.cancel(false);
+        }
+        synchronized (this) {
+            listeners.clear();
+        }
+        ACTIVE.remove(this);
+    }
+
+    /**
+     * Регистрация действия при отмене.
+     */
+    @FunctionalInterface
+    public interface Registration extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private final class GuardedInputStream extends FilterInputStream {
+
+        private final Registration registration;
+        private final ScheduledFuture<?> watchdog;
+        private volatile long lastRead = System.nanoTime();
+        private volatile boolean idle;
+
+        GuardedInputStream(InputStream in) {
+            super(in);
+            this.registration = onCancel(this::closeQuietly);
+            if (idleTimeout != null) {
+                long period = Math.max(50, idleTimeout.toMillis() / 4);
+                this.watchdog = TIMER.scheduleAtFixedRate(() -> {
+                    if (System.nanoTime() - lastRead > idleTimeout.toNanos()) {
+                        idle = true;
+                        closeQuietly();
+                    }
+                }, period, period, TimeUnit.MILLISECONDS);
+            } else {
+                this.watchdog = null;
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            try {
+                int value = super.read();
+                lastRead = System.nanoTime();
+                return value < 0 ? endOfStream() : value;
+            } catch (IOException e) {
+                throw translate(e);
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            try {
+                int count = super.read(b, off, len);
+                lastRead = System.nanoTime();
+                return count < 0 ? endOfStream() : count;
+            } catch (IOException e) {
+                throw translate(e);
+            }
+        }
+
+        /**
+         * Закрытое из другого потока тело ответа HTTP-клиента читается как конец данных:
+         * обрыв по сроку не должен выглядеть как полный ответ.
+         */
+        private int endOfStream() throws IOException {
+            IOException error = translate(null);
+            if (error != null) {
+                throw error;
+            }
+            return -1;
+        }
+
+        private IOException translate(IOException e) {
+            if (reason != null) {
+                return new DeadlineExceededException(reason, e);
+            }
+            if (idle) {
+                HttpTimeoutException timeout = new HttpTimeoutException(
+                        "Сервер не передавал данные дольше " + idleTimeout.toSeconds() + " с");
+                if (e != null) {
+                    timeout.initCause(e);
+                }
+                return timeout;
+            }
+            return e;
+        }
+
+        @Override
+        public void close() throws IOException {
+            stopWatching();
+            super.close();
+        }
+
+        private void stopWatching() {
+            registration.close();
+            if (watchdog != null) {
+                watchdog.cancel(false);
+            }
+        }
+
+        private void closeQuietly() {
+            stopWatching();
+            try {
+                in.close();
+            } catch (IOException ignored) {
+                // Поток закрывается, чтобы прервать чтение; ошибка закрытия ничего не меняет
+            }
+        }
+    }
+}
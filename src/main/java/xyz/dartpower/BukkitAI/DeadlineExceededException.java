@@ -0,0 +1,18 @@
+package xyz.dartpower.BukkitAI;
+
+import java.io.IOException;
+
+/**
+ * Срок генерации ({@link Deadline}) истёк или отменён. Такую ошибку не повторяют:
+ * ни планировщик, ни пул эндпоинтов не отправляют запрос заново.
+ */
+public class DeadlineExceededException extends IOException {
+
+    public DeadlineExceededException(String message) {
+        super(message);
+    }
+
+    public DeadlineExceededException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
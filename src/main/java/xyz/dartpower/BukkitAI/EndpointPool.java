@@ -0,0 +1,545 @@
+package xyz.dartpower.BukkitAI;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Пул OpenAI-совместимых эндпоинтов одного провайдера (openai.endpoints), например нескольких серверов LM Studio.
+ * <ul>
+ *     <li>Выбор эндпоинта: наименьшее число запросов в работе с учётом веса (least-outstanding) или,
+ *     стратегией ewma, ещё и с учётом сглаженной задержки ответа.</li>
+ *     <li>Не больше max-concurrency одновременных запросов на эндпоинт; если все заняты, запрос ждёт.</li>
+ *     <li>Пассивная проверка: после failure-threshold ошибок подряд (сеть, 429, 5xx) эндпоинт исключается
+ *     на eject-seconds (при повторных исключениях время удваивается), затем возвращается с малой долей
+ *     трафика, которая за slow-start-seconds растёт до полной.</li>
+ *     <li>При ошибке запрос сразу повторяется на другом эндпоинте (pool.failover раз), не дожидаясь паузы планировщика.</li>
+ *     <li>Список эндпоинтов и настройки пула перечитываются из config.yaml при его изменении, без перезапуска.</li>
+ * </ul>
+ */
+public class EndpointPool implements AiClient {
+
+    public enum Strategy {
+        LEAST_OUTSTANDING, EWMA;
+
+        static Strategy parse(String value) {
+            return switch (value) {
+                case "least-outstanding" -> LEAST_OUTSTANDING;
+                case "ewma" -> EWMA;
+                default -> throw new IllegalArgumentException(
+                        "Неизвестная стратегия pool.strategy: " + value + " (ожидается least-outstanding или ewma)");
+            };
+        }
+    }
+
+    /**
+     * Настройки пула (секция "pool" config.yaml).
+     * @param failureThreshold Ошибок подряд до исключения эндпоинта.
+     * @param ejectMillis Время первого исключения; каждое следующее подряд вдвое дольше, но не больше maxEjectMillis.
+     * @param slowStartMillis За какое время вернувшийся эндпоинт выходит на полный вес.
+     * @param failover Сколько раз повторить запрос на другом эндпоинте после ошибки.
+     * @param reloadMillis Как часто проверять, изменился ли config.yaml (0 — не проверять).
+     */
+    public record Settings(Strategy strategy, int failureThreshold, long ejectMillis, long maxEjectMillis,
+                           long slowStartMillis, int failover, long reloadMillis) {
+
+        public static Settings fromOptions(ConfigOptions options) {
+            return new Settings(
+                    Strategy.parse(options.getString("pool.strategy", "least-outstanding")),
+                    Math.max(1, options.getInt("pool.failure-threshold", 3)),
+                    Math.max(1, options.getLong("pool.eject-seconds", 10)) * 1000,
+                    Math.max(1, options.getLong("pool.max-eject-seconds", 300)) * 1000,
+                    Math.max(0, options.getLong("pool.slow-start-seconds", 30)) * 1000,
+                    Math.max(0, options.getInt("pool.failover", 1)),
+                    Math.max(0, options.getLong("pool.reload-seconds", 5)) * 1000
+            );
+        }
+    }
+
+    // Доля веса, с которой эндпоинт возвращается после исключения
+    private static final double SLOW_START_FLOOR = 0.1;
+    // Коэффициент сглаживания задержки: вес нового замера
+    private static final double EWMA_ALPHA = 0.3;
+
+    /**
+     * Один эндпоинт пула. Поля меняются только под блокировкой пула.
+     */
+    static final class Endpoint {
+        final String url;
+        String apiKey;
+        String model;
+        AiClient client;
+        int weight;
+        int maxConcurrency;
+
+        int inFlight;
+        double ewmaMillis;
+        int consecutiveFailures;
+        int ejections;
+        long ejectedUntil;
+        long readmittedAt = -1;
+        boolean removed;
+
+        Endpoint(String url) {
+            this.url = url;
+        }
+
+        String label() {
+            return url;
+        }
+    }
+
+    private final String provider;
+    private final HttpTransport transport;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    private final AtomicBoolean reloading = new AtomicBoolean();
+
+    private String defaultModel;
+    private Settings settings;
+    private List<Endpoint> endpoints = new ArrayList<>();
+    private ChatCompletionsClient.ResponseListener responseListener;
+    // Сдвиг начала обхода: при равной оценке запросы расходятся по эндпоинтам по кругу
+    private int rotation;
+
+    private volatile long nextReloadCheck;
+    private volatile FileTime configModified;
+
+    public EndpointPool(String provider, ConfigOptions options, HttpTransport transport) {
+        this.provider = provider;
+        this.transport = transport;
+        this.configModified = modifiedTime();
+        configure(options);
+        System.out.printf("-> Пул эндпоинтов %s: %d (%s)%n", provider, endpoints.size(),
+                settings.strategy().name().toLowerCase(Locale.ROOT).replace('_', '-'));
+    }
+
+    /**
+     * @return true, если в настройках провайдера задан список эндпоинтов.
+     */
+    public static boolean isConfigured(ConfigOptions options, String provider) {
+        return options.get(provider + ".endpoints") instanceof List<?> list && !list.isEmpty();
+    }
+
+    @Override
+    public String provider() {
+        return provider;
+    }
+
+    @Override
+    public String model() {
+        lock.lock();
+        try {
+            return defaultModel;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Модели эндпоинтов пула (у эндпоинта может быть своя модель вместо openai.model).
+     */
+    @Override
+    public List<String> models() {
+        lock.lock();
+        try {
+            return endpoints.stream().map(endpoint -> endpoint.model).distinct().toList();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Передаёт получателя ответов (заголовки x-ratelimit-* для планировщика) всем эндпоинтам, в том числе будущим.
+     */
+    public void setResponseListener(ChatCompletionsClient.ResponseListener listener) {
+        lock.lock();
+        try {
+            responseListener = listener;
+            for (Endpoint endpoint : endpoints) {
+                if (endpoint.client instanceof ChatCompletionsClient chatClient) {
+                    chatClient.setResponseListener(listener);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Completion complete(ChatRequest request) throws IOException, InterruptedException {
+        return execute(request.deadline(), client -> client.complete(request), null);
+    }
+
+    @Override
+    public Completion stream(ChatRequest request, StreamListener listener) throws IOException, InterruptedException {
+        // Повтор на другом эндпоинте возможен, только пока слушателю не передан ни один фрагмент
+        // started[1] — ошибка получателя (запись файла, отмена проигравшего хеджированного запроса), а не эндпоинта
+        boolean[] started = new boolean[2];
+        StreamListener tracking = new StreamListener() {
+            @Override
+            public void onDelta(String delta) throws IOException {
+                started[0] = true;
+                try {
+                    listener.onDelta(delta);
+                } catch (IOException | RuntimeException e) {
+                    started[1] = true;
+                    throw e;
+                }
+            }
+
+            @Override
+            public void onComplete() throws IOException {
+                try {
+                    listener.onComplete();
+                } catch (IOException | RuntimeException e) {
+                    started[1] = true;
+                    throw e;
+                }
+            }
+        };
+        return execute(request.deadline(), client -> client.stream(request, tracking), started);
+    }
+
+    private interface Call {
+        Completion run(AiClient client) throws IOException, InterruptedException;
+    }
+
+    /**
+     * Итог запроса для статистики эндпоинта: NEUTRAL — запрос прерван или отменён не по вине сервера,
+     * его время и результат не учитываются.
+     */
+    enum Outcome {
+        SUCCESS, FAILURE, NEUTRAL
+    }
+
+    private Completion execute(Deadline deadline, Call call, boolean[] started) throws IOException, InterruptedException {
+        reloadIfChanged();
+        Endpoint previous = null;
+        for (int attempt = 0; ; attempt++) {
+            Endpoint endpoint = acquire(previous, deadline);
+            long start = System.nanoTime();
+            try {
+                Completion completion = call.run(endpoint.client);
+                release(endpoint, Outcome.SUCCESS, System.nanoTime() - start);
+                return completion;
+            } catch (IOException e) {
+                Outcome outcome = outcomeOf(e, started);
+                release(endpoint, outcome, System.nanoTime() - start);
+                boolean canRetry = outcome == Outcome.FAILURE && attempt < settings().failover()
+                        && (started == null || !started[0]) && size() > 1;
+                if (!canRetry) {
+                    throw e;
+                }
+                System.out.printf("-> [Пул] %s: %s, повтор на другом эндпоинте%n", endpoint.label(), describe(e));
+                previous = endpoint;
+            } catch (RuntimeException | Error | InterruptedException e) {
+                release(endpoint, Outcome.NEUTRAL, System.nanoTime() - start);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Ошибки сети и ответы 429/5xx говорят о проблеме эндпоинта; остальные 4xx — о проблеме запроса (но сервер
+     * ответил, это успех). Истёкший или отменённый срок, прерывание потока и ошибка получателя фрагментов
+     * ничего не говорят о сервере.
+     */
+    private static Outcome outcomeOf(IOException e, boolean[] started) {
+        if (e instanceof DeadlineExceededException || Thread.currentThread().isInterrupted()
+                || (started != null && started[1])) {
+            return Outcome.NEUTRAL;
+        }
+        return !(e instanceof ApiException api) || api.isRetryable() ? Outcome.FAILURE : Outcome.SUCCESS;
+    }
+
+    private static String describe(IOException e) {
+        return e instanceof ApiException api ? "код " + api.statusCode() : "нет соединения";
+    }
+
+    /**
+     * Выбирает эндпоинт и занимает на нём место; ждёт, если все доступные эндпоинты заняты.
+     * @param avoid Эндпоинт, на котором запрос только что не удался (выбирается, только если других нет).
+     * @throws DeadlineExceededException Если срок генерации истёк или отменён во время ожидания.
+     */
+    Endpoint acquire(Endpoint avoid, Deadline deadline) throws InterruptedException, DeadlineExceededException {
+        lock.lock();
+        try {
+            while (true) {
+                deadline.check();
+                long now = System.currentTimeMillis();
+                Endpoint best = choose(now, avoid, false);
+                if (best == null) {
+                    // Все эндпоинты исключены: лучше попробовать исключённый, чем не отправлять запрос вовсе
+                    best = choose(now, avoid, true);
+                }
+                if (best != null) {
+                    best.inFlight++;
+                    return best;
+                }
+                // Все заняты; исключение может закончиться раньше, чем освободится место
+                released.await(250, TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Endpoint choose(long now, Endpoint avoid, boolean includeEjected) {
+        Endpoint best = null;
+        double bestScore = Double.MAX_VALUE;
+        double fallbackLatency = averageLatency();
+        int size = endpoints.size();
+        rotation = size == 0 ? 0 : (rotation + 1) % size;
+        for (int pass = 0; pass < 2 && best == null; pass++) {
+            for (int i = 0; i < size; i++) {
+                Endpoint endpoint = endpoints.get((rotation + i) % size);
+                if ((pass == 0 && endpoint == avoid) || !hasCapacity(endpoint)) {
+                    continue;
+                }
+                if (!includeEjected && endpoint.ejectedUntil > now) {
+                    continue;
+                }
+                double score = score(endpoint, now, fallbackLatency);
+                if (score < bestScore) {
+                    bestScore = score;
+                    best = endpoint;
+                }
+            }
+        }
+        return best;
+    }
+
+    private static boolean hasCapacity(Endpoint endpoint) {
+        return endpoint.maxConcurrency <= 0 || endpoint.inFlight < endpoint.maxConcurrency;
+    }
+
+    /**
+     * Оценка эндпоинта (меньше — лучше): запросы в работе (с учётом нового) на единицу эффективного веса,
+     * для ewma — умноженные на сглаженную задержку.
+     */
+    private double score(Endpoint endpoint, long now, double fallbackLatency) {
+        double score = (endpoint.inFlight + 1) / effectiveWeight(endpoint, now);
+        if (settings.strategy() == Strategy.EWMA) {
+            // Эндпоинт без замеров оцениваем по среднему, чтобы на него не ушли все запросы сразу
+            score *= endpoint.ewmaMillis > 0 ? endpoint.ewmaMillis : fallbackLatency;
+        }
+        return score;
+    }
+
+    private double effectiveWeight(Endpoint endpoint, long now) {
+        double weight = Math.max(1, endpoint.weight);
+        if (endpoint.readmittedAt >= 0 && settings.slowStartMillis() > 0) {
+            double progress = (double) (now - endpoint.readmittedAt) / settings.slowStartMillis();
+            if (progress >= 1) {
+                endpoint.readmittedAt = -1;
+            } else {
+                weight *= Math.max(SLOW_START_FLOOR, progress);
+            }
+        }
+        return weight;
+    }
+
+    private double averageLatency() {
+        double sum = 0;
+        int count = 0;
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint.ewmaMillis > 0) {
+                sum += endpoint.ewmaMillis;
+                count++;
+            }
+        }
+        return count == 0 ? 1 : sum / count;
+    }
+
+    /**
+     * Освобождает место на эндпоинте и учитывает результат запроса.
+     */
+    void release(Endpoint endpoint, Outcome result, long nanos) {
+        String outcome = switch (result) {
+            case SUCCESS -> "ok";
+            case FAILURE -> "error";
+            case NEUTRAL -> "aborted";
+        };
+        lock.lock();
+        try {
+            endpoint.inFlight--;
+            long now = System.currentTimeMillis();
+            if (result == Outcome.SUCCESS) {
+                double millis = nanos / 1e6;
+                endpoint.ewmaMillis = endpoint.ewmaMillis == 0 ? millis
+                        : EWMA_ALPHA * millis + (1 - EWMA_ALPHA) * endpoint.ewmaMillis;
+                endpoint.consecutiveFailures = 0;
+                if (endpoint.readmittedAt < 0) {
+                    // Полностью восстановился: следующее исключение снова будет коротким
+                    endpoint.ejections = 0;
+                }
+            } else if (result == Outcome.FAILURE) {
+                endpoint.consecutiveFailures++;
+                // Вернувшийся после исключения эндпоинт исключается снова после первой же ошибки
+                boolean onProbation = endpoint.readmittedAt >= 0;
+                if (!endpoint.removed && endpoint.ejectedUntil <= now
+                        && (onProbation || endpoint.consecutiveFailures >= settings.failureThreshold())) {
+                    eject(endpoint, now);
+                }
+            }
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        Metrics.shared().increment("endpoint_requests_total", "provider", provider, "endpoint", endpoint.label(),
+                "outcome", outcome);
+    }
+
+    private void eject(Endpoint endpoint, long now) {
+        long duration = Math.min(settings.maxEjectMillis(), settings.ejectMillis() << Math.min(endpoint.ejections, 20));
+        endpoint.ejections++;
+        endpoint.ejectedUntil = now + duration;
+        // Отсчёт плавного возврата начнётся по окончании исключения
+        endpoint.readmittedAt = endpoint.ejectedUntil;
+        endpoint.consecutiveFailures = 0;
+        Metrics.shared().increment("endpoint_ejections_total", "provider", provider, "endpoint", endpoint.label());
+        System.out.printf("-> [Пул] Эндпоинт %s исключён на %d с (ошибок подряд, исключение №%d)%n",
+                endpoint.label(), duration / 1000, endpoint.ejections);
+    }
+
+    private Settings settings() {
+        lock.lock();
+        try {
+            return settings;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int size() {
+        lock.lock();
+        try {
+            return endpoints.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // --- Настройки и перезагрузка ---
+
+    /**
+     * Применяет настройки: эндпоинты с тем же адресом сохраняют статистику и запросы в работе,
+     * новые добавляются, исчезнувшие перестают получать запросы (начатые завершаются как обычно).
+     */
+    void configure(ConfigOptions options) {
+        Settings newSettings = Settings.fromOptions(options);
+        String apiKey = options.getString(provider + ".api-key", "");
+        String model = options.getString(provider + ".model", "");
+        Map<String, Map<String, Object>> specs = endpointSpecs(options);
+        if (specs.isEmpty()) {
+            // Без списка остаётся единственный base-url
+            specs.put(options.getString(provider + ".base-url", "https://api.openai.com/v1/"), Map.of());
+        }
+
+        lock.lock();
+        try {
+            Map<String, Endpoint> current = new LinkedHashMap<>();
+            for (Endpoint endpoint : endpoints) {
+                current.put(endpoint.url, endpoint);
+            }
+            List<Endpoint> updated = new ArrayList<>();
+            for (var spec : specs.entrySet()) {
+                Endpoint endpoint = current.remove(spec.getKey());
+                if (endpoint == null) {
+                    endpoint = new Endpoint(spec.getKey());
+                }
+                ConfigOptions values = new ConfigOptions(spec.getValue());
+                String endpointKey = values.getString("api-key", apiKey);
+                String endpointModel = values.getString("model", model);
+                if (endpoint.client == null || !endpointKey.equals(endpoint.apiKey) || !endpointModel.equals(endpoint.model)) {
+                    endpoint.apiKey = endpointKey;
+                    endpoint.model = endpointModel;
+                    OpenAiClient client = new OpenAiClient(endpointKey, endpointModel, endpoint.url, transport);
+                    if (responseListener != null) {
+                        client.setResponseListener(responseListener);
+                    }
+                    endpoint.client = client;
+                }
+                endpoint.weight = Math.max(1, values.getInt("weight", 1));
+                endpoint.maxConcurrency = Math.max(0, values.getInt("max-concurrency", 0));
+                updated.add(endpoint);
+            }
+            for (Endpoint removed : current.values()) {
+                removed.removed = true;
+            }
+            endpoints = updated;
+            settings = newSettings;
+            defaultModel = model;
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Map<String, Object>> endpointSpecs(ConfigOptions options) {
+        Map<String, Map<String, Object>> specs = new LinkedHashMap<>();
+        if (!(options.get(provider + ".endpoints") instanceof List<?> list)) {
+            return specs;
+        }
+        for (Object item : list) {
+            // Элемент списка — адрес строкой или словарь с url, weight, max-concurrency, model, api-key
+            if (item instanceof String url && !url.isBlank()) {
+                specs.put(url.trim(), Map.of());
+            } else if (item instanceof Map<?, ?> map && map.get("url") instanceof String url && !url.isBlank()) {
+                specs.put(url.trim(), (Map<String, Object>) map);
+            } else {
+                System.out.println("   [Предупреждение] Пропущен эндпоинт без url в " + provider + ".endpoints: " + item);
+            }
+        }
+        return specs;
+    }
+
+    /**
+     * Перечитывает config.yaml, если он изменился; проверка выполняется не чаще pool.reload-seconds.
+     */
+    private void reloadIfChanged() {
+        long interval = settings().reloadMillis();
+        long now = System.currentTimeMillis();
+        if (interval <= 0 || now < nextReloadCheck || !reloading.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            nextReloadCheck = now + interval;
+            FileTime modified = modifiedTime();
+            if (modified == null || modified.equals(configModified)) {
+                return;
+            }
+            configModified = modified;
+            ConfigManager.ConfigData config = new ConfigManager().loadConfig();
+            if (config == null) {
+                System.out.println("   [Предупреждение] config.yaml изменён, но не прочитан; пул работает с прежними настройками.");
+                return;
+            }
+            configure(config.options());
+            System.out.printf("-> [Пул] config.yaml перечитан: эндпоинтов %s: %d%n", provider, size());
+        } catch (IllegalArgumentException e) {
+            System.out.println("   [Предупреждение] Новые настройки пула не применены: " + e.getMessage());
+        } finally {
+            reloading.set(false);
+        }
+    }
+
+    private static FileTime modifiedTime() {
+        try {
+            return Files.getLastModifiedTime(ConfigManager.CONFIG_PATH);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,408 @@
+package xyz.dartpower.BukkitAI;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Журнал упреждающей записи пакетной генерации: после сбоя (OOM, Ctrl+C, перезагрузка) повторный запуск
+ * пропускает готовые плагины, а уже полученные ответы модели берёт с диска вместо повторных запросов.
+ * <p>
+ * Файл journal.wal дописывается строками "crc32 json". Шаги задания: queued, requested (запрос отправлен),
+ * response (ответ сохранён в responses/&lt;sha256&gt;.txt), written (файлы проекта записаны), failed
+ * (сохранённые ответы задания больше не используются).
+ * Строки из разных потоков собираются фоновым потоком в группы и фиксируются одним fsync на группу,
+ * поэтому запись журнала не выстраивает параллельную генерацию в очередь.
+ * Оборванная при сбое последняя строка отбрасывается при открытии.
+ */
+public class GenerationJournal implements AutoCloseable {
+
+    private static final String FILE_NAME = "journal.wal";
+
+    /**
+     * Состояние задания после воспроизведения журнала.
+     * @param step Последний записанный шаг.
+     * @param responses Сохранённые ответы по ключу вызова (имя запроса и номер повторения).
+     */
+    public record JobState(String step, Map<String, StoredResponse> responses) {
+
+        public boolean written() {
+            return "written".equals(step);
+        }
+    }
+
+    // Ссылка на сохранённый ответ: файл определяется хешем содержимого
+    public record StoredResponse(String ref, String finishReason) {}
+
+    // Элемент очереди: строка журнала и признак её фиксации на диске
+    private record Pending(byte[] line, CompletableFuture<Void> committed) {}
+
+    private final Path dir;
+    private final Path responsesDir;
+    private final boolean sync;
+    private final FileChannel channel;
+    private final Map<String, JobState> jobs;
+    private final LinkedBlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final Thread writerThread;
+    private final AtomicLong records = new AtomicLong();
+    private final AtomicLong commits = new AtomicLong();
+    private volatile boolean closed;
+
+    private GenerationJournal(Path dir, boolean sync, Map<String, JobState> jobs, long validLength) throws IOException {
+        this.dir = dir;
+        this.responsesDir = dir.resolve("responses");
+        this.sync = sync;
+        this.jobs = jobs;
+        Files.createDirectories(responsesDir);
+        this.channel = FileChannel.open(dir.resolve(FILE_NAME),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.READ);
+        // Отрезаем оборванную при сбое строку, чтобы новые записи не склеились с ней
+        channel.truncate(validLength);
+        channel.position(validLength);
+        this.writerThread = Thread.ofPlatform().daemon().name("generation-journal").start(this::writeLoop);
+    }
+
+    /**
+     * Открывает журнал в папке (создаёт, если его нет) и воспроизводит записанные шаги.
+     * @param sync Фиксировать ли записи на диске (fsync); без этого журнал переживает падение программы, но не ОС.
+     */
+    public static GenerationJournal open(Path dir, boolean sync) throws IOException {
+        Files.createDirectories(dir);
+        Path file = dir.resolve(FILE_NAME);
+        Map<String, JobState> jobs = new HashMap<>();
+        long validLength = 0;
+        if (Files.exists(file)) {
+            byte[] bytes = Files.readAllBytes(file);
+            int start = 0;
+            for (int i = 0; i < bytes.length; i++) {
+                if (bytes[i] != '\n') {
+                    continue;
+                }
+                JsonObject record = parseLine(new String(bytes, start, i - start, StandardCharsets.UTF_8));
+                if (record == null) {
+                    // Повреждённая строка: всё после неё считается незаписанным
+                    break;
+                }
+                apply(jobs, record);
+                start = i + 1;
+                validLength = start;
+            }
+        }
+        return new GenerationJournal(dir, sync, jobs, validLength);
+    }
+
+    private static JsonObject parseLine(String line) {
+        int space = line.indexOf(' ');
+        if (space != 8) {
+            return null;
+        }
+        String json = line.substring(space + 1);
+        CRC32 crc = new CRC32();
+        crc.update(json.getBytes(StandardCharsets.UTF_8));
+        if (!String.format("%08x", crc.getValue()).equals(line.substring(0, space))) {
+            return null;
+        }
+        try {
+            return JsonParser.parseString(json).getAsJsonObject();
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static void apply(Map<String, JobState> jobs, JsonObject record) {
+        String job = record.get("job").getAsString();
+        String step = record.get("step").getAsString();
+        JobState previous = jobs.get(job);
+        Map<String, StoredResponse> responses = previous != null ? previous.responses() : new ConcurrentHashMap<>();
+        if ("failed".equals(step)) {
+            // Ошибку мог вызвать и сохранённый ответ (например, неразборчивый): повторный запуск запрашивает всё заново
+            responses = new ConcurrentHashMap<>();
+        } else if ("response".equals(step)) {
+            responses.put(record.get("call").getAsString(), new StoredResponse(record.get("ref").getAsString(),
+                    record.has("finishReason") ? record.get("finishReason").getAsString() : null));
+        }
+        jobs.put(job, new JobState(step, responses));
+    }
+
+    /**
+     * @return Состояние задания по журналу или null, если о нём нет записей.
+     */
+    public synchronized JobState state(String job) {
+        return jobs.get(job);
+    }
+
+    public long recordCount() {
+        return records.get();
+    }
+
+    public long commitCount() {
+        return commits.get();
+    }
+
+    // --- Шаги заданий ---
+
+    public void queued(String job, String description, String provider) {
+        JsonObject record = record(job, "queued");
+        record.addProperty("description", description);
+        record.addProperty("provider", provider);
+        append(record);
+    }
+
+    /**
+     * Отмечает, что файлы проекта записаны; возвращается после фиксации записи на диске.
+     */
+    public void written(String job) throws IOException, InterruptedException {
+        await(append(record(job, "written")));
+    }
+
+    public void failed(String job, String error) {
+        JsonObject record = record(job, "failed");
+        record.addProperty("error", error);
+        append(record);
+    }
+
+    /**
+     * Сохраняет ответ модели: сначала файл ответа, затем строку журнала со ссылкой на него.
+     * Возвращается после фиксации обоих на диске.
+     */
+    void response(String job, String call, Completion completion) throws IOException, InterruptedException {
+        byte[] content = completion.content().getBytes(StandardCharsets.UTF_8);
+        String ref = sha256(content);
+        Path file = responsesDir.resolve(ref + ".txt");
+        if (!Files.exists(file)) {
+            Path tmp = Files.createTempFile(responsesDir, ref, ".tmp");
+            try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.wrap(content);
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+                if (sync) {
+                    out.force(true);
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        JsonObject record = record(job, "response");
+        record.addProperty("call", call);
+        record.addProperty("ref", ref);
+        if (completion.finishReason() != null) {
+            record.addProperty("finishReason", completion.finishReason());
+        }
+        await(append(record));
+    }
+
+    /**
+     * @return Сохранённый ответ или null, если файла ответа нет (сбой между записью файла и журнала).
+     */
+    Completion load(StoredResponse stored) {
+        Path file = responsesDir.resolve(stored.ref() + ".txt");
+        try {
+            byte[] content = Files.readAllBytes(file);
+            if (!stored.ref().equals(sha256(content))) {
+                return null;
+            }
+            return new Completion(new String(content, StandardCharsets.UTF_8), stored.finishReason(), -1, -1);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static JsonObject record(String job, String step) {
+        JsonObject record = new JsonObject();
+        record.addProperty("job", job);
+        record.addProperty("step", step);
+        record.addProperty("time", System.currentTimeMillis());
+        return record;
+    }
+
+    private CompletableFuture<Void> append(JsonObject record) {
+        synchronized (this) {
+            apply(jobs, record);
+        }
+        if (closed) {
+            return CompletableFuture.failedFuture(new IOException("Журнал генерации закрыт"));
+        }
+        String json = record.toString();
+        CRC32 crc = new CRC32();
+        crc.update(json.getBytes(StandardCharsets.UTF_8));
+        byte[] line = (String.format("%08x", crc.getValue()) + " " + json + "\n").getBytes(StandardCharsets.UTF_8);
+        CompletableFuture<Void> committed = new CompletableFuture<>();
+        queue.add(new Pending(line, committed));
+        return committed;
+    }
+
+    private static void await(CompletableFuture<Void> committed) throws IOException, InterruptedException {
+        try {
+            committed.get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+        }
+    }
+
+    // --- Групповая запись ---
+
+    private void writeLoop() {
+        List<Pending> group = new ArrayList<>();
+        while (!closed || !queue.isEmpty()) {
+            try {
+                Pending first = queue.poll(200, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                group.add(first);
+            } catch (InterruptedException e) {
+                // Поток записи не прерывается: иначе FileChannel закрылся бы посреди записи
+                continue;
+            }
+            // Всё, что накопилось, пока шёл предыдущий fsync, фиксируется одним вызовом
+            queue.drainTo(group);
+            try {
+                int size = group.stream().mapToInt(pending -> pending.line().length).sum();
+                ByteBuffer buffer = ByteBuffer.allocate(size);
+                group.forEach(pending -> buffer.put(pending.line()));
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                if (sync) {
+                    channel.force(false);
+                }
+                records.addAndGet(group.size());
+                commits.incrementAndGet();
+                group.forEach(pending -> pending.committed().complete(null));
+            } catch (IOException e) {
+                System.err.println("   [Ошибка] Не удалось записать журнал генерации: " + e.getMessage());
+                group.forEach(pending -> pending.committed().completeExceptionally(e));
+            }
+            group.clear();
+        }
+    }
+
+    /**
+     * Дописывает очередь и закрывает файл журнала.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            writerThread.join(TimeUnit.SECONDS.toMillis(10));
+            channel.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            System.err.println("   [Предупреждение] Не удалось закрыть журнал генерации " + dir + ": " + e.getMessage());
+        }
+    }
+
+    private static String sha256(byte[] content) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 недоступен", e);
+        }
+    }
+
+    /**
+     * Оборачивает клиента для одного задания: ответы, сохранённые в журнале, возвращаются без запроса к модели,
+     * новые ответы сохраняются до передачи дальше.
+     */
+    public AiClient wrap(AiClient client, String job) {
+        return new JournalingClient(client, job);
+    }
+
+    private class JournalingClient implements AiClient {
+
+        private final AiClient delegate;
+        private final String job;
+        // Сколько раз уже выполнялся запрос с таким именем (повторные исправления ошибок компиляции)
+        private final Map<String, Integer> occurrences = new HashMap<>();
+
+        JournalingClient(AiClient delegate, String job) {
+            this.delegate = delegate;
+            this.job = job;
+        }
+
+        @Override
+        public String provider() {
+            return delegate.provider();
+        }
+
+        @Override
+        public String model() {
+            return delegate.model();
+        }
+
+        @Override
+        public Completion complete(ChatRequest request) throws IOException, InterruptedException {
+            String call = callKey(request);
+            Completion stored = replay(call);
+            if (stored != null) {
+                return stored;
+            }
+            Completion completion = delegate.complete(request);
+            response(job, call, completion);
+            return completion;
+        }
+
+        @Override
+        public Completion stream(ChatRequest request, StreamListener listener) throws IOException, InterruptedException {
+            String call = callKey(request);
+            Completion stored = replay(call);
+            if (stored != null) {
+                listener.onDelta(stored.content());
+                listener.onComplete();
+                return stored;
+            }
+            Completion completion = delegate.stream(request.withKeepText(true), listener);
+            response(job, call, completion);
+            return completion;
+        }
+
+        private String callKey(ChatRequest request) {
+            int occurrence;
+            synchronized (occurrences) {
+                occurrence = occurrences.merge(request.pluginName(), 1, Integer::sum) - 1;
+            }
+            return request.pluginName() + "#" + occurrence;
+        }
+
+        private Completion replay(String call) {
+            JobState state = state(job);
+            StoredResponse stored = state != null ? state.responses().get(call) : null;
+            Completion completion = stored != null ? load(stored) : null;
+            if (completion != null) {
+                System.out.println("-> Ответ взят из журнала генерации (" + call + ")");
+                return completion;
+            }
+            JsonObject record = record(job, "requested");
+            record.addProperty("call", call);
+            append(record);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,744 @@
+package xyz.dartpower.BukkitAI;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Режим сервера (--serve): локальный HTTP/JSON API для генерации плагинов.
+ * <ul>
+ *     <li>POST /jobs — поставить задание в очередь, ответ 202 с id (429, если очередь его класса заполнена);</li>
+ *     <li>GET /jobs, GET /jobs/{id} — состояние заданий;</li>
+ *     <li>GET /jobs/{id}/events — ход генерации (text/event-stream), включая уже прошедшие события;</li>
+ *     <li>GET /jobs/{id}/project.zip — готовый проект архивом;</li>
+ *     <li>DELETE /jobs/{id} — отменить задание в очереди или прервать выполняющееся;</li>
+ *     <li>GET /metrics — метрики в формате Prometheus, GET /health — проверка готовности.</li>
+ * </ul>
+ * Задания выполняет ограниченное число обработчиков (serve.workers). Все они используют общих клиентов API,
+ * а значит общий пул соединений, планировщик запросов и кэш ответов. Интерактивные задания всегда берутся
+ * раньше пакетных (bulk), а serve.reserved-interactive-workers обработчиков пакетные задания не занимают вовсе.
+ */
+public class GenerationServer implements AutoCloseable {
+
+    private static final int MAX_BODY_BYTES = 64 * 1024;
+    private static final long EVENT_POLL_MILLIS = 15_000;
+
+    /**
+     * Класс приоритета задания.
+     */
+    enum Priority {
+        INTERACTIVE, BULK;
+
+        static Priority parse(String value) {
+            if (value == null) {
+                return INTERACTIVE;
+            }
+            for (Priority priority : values()) {
+                if (priority.label().equalsIgnoreCase(value.trim())) {
+                    return priority;
+                }
+            }
+            throw new IllegalArgumentException("неизвестный приоритет '" + value + "' (interactive или bulk)");
+        }
+
+        String label() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    enum State {
+        QUEUED, RUNNING, SUCCEEDED, FAILED, CANCELLED;
+
+        boolean finished() {
+            return this != QUEUED && this != RUNNING;
+        }
+
+        String label() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * Параметры сервера (секция "serve" config.yaml).
+     * @param workers Число одновременно выполняемых заданий.
+     * @param reservedInteractive Сколько обработчиков не берут пакетные задания.
+     * @param interactiveQueueLimit Предел очереди интерактивных заданий.
+     * @param bulkQueueLimit Предел очереди пакетных заданий.
+     * @param token Если задан, запросы должны содержать заголовок "Authorization: Bearer &lt;token&gt;".
+     * @param outputDir Папка для копий проектов на диске или null, если проекты хранятся только в памяти.
+     * @param maxFinishedJobs Сколько завершённых заданий хранить в памяти (файлы проектов не удаляются).
+     */
+    public record Settings(String host, int port, int workers, int reservedInteractive, int interactiveQueueLimit,
+                           int bulkQueueLimit, Path outputDir, String token, int maxFinishedJobs) {
+
+        public static Settings fromOptions(ConfigOptions options) {
+            int workers = Math.max(1, options.getInt("serve.workers", 4));
+            String token = options.getString("serve.token", "");
+            String outputDir = options.getString("serve.output-dir", "server-output");
+            return new Settings(
+                    options.getString("serve.host", "127.0.0.1"),
+                    options.getInt("serve.port", 8090),
+                    workers,
+                    Math.max(0, Math.min(workers - 1, options.getInt("serve.reserved-interactive-workers", 1))),
+                    options.getInt("serve.queue-limit.interactive", 16),
+                    options.getInt("serve.queue-limit.bulk", 256),
+                    outputDir.isBlank() ? null : Path.of(outputDir),
+                    token.isBlank() ? null : token,
+                    options.getInt("serve.max-finished-jobs", 500)
+            );
+        }
+    }
+
+    /**
+     * Задание на генерацию одного плагина. Сообщения, напечатанные во время генерации, становятся его событиями.
+     */
+    static final class Job implements JobConsole.Sink {
+
+        final String id;
+        final long sequence;
+        final String name;
+        final String description;
+        final String provider;
+        final Priority priority;
+        final Boolean parallel;
+        final Boolean verify;
+        final Instant created = Instant.now();
+        private final List<String> events = new ArrayList<>();
+
+        private State state = State.QUEUED;
+        private Instant started;
+        private Instant finished;
+        private String error;
+        private CompileValidator.Result compile;
+        // Файлы готового проекта: архив project.zip отдаётся из памяти, без чтения диска
+        private SortedMap<String, String> files;
+        private Thread runner;
+        private Deadline deadline;
+        private boolean cancelRequested;
+
+        Job(long sequence, String name, String description, String provider, Priority priority,
+            Boolean parallel, Boolean verify) {
+            this.sequence = sequence;
+            this.id = String.format("j%06d", sequence);
+            this.name = name;
+            this.description = description;
+            this.provider = provider;
+            this.priority = priority;
+            this.parallel = parallel;
+            this.verify = verify;
+        }
+
+        @Override
+        public String id() {
+            return id;
+        }
+
+        @Override
+        public synchronized void line(String text) {
+            events.add(text);
+            notifyAll();
+        }
+
+        synchronized State state() {
+            return state;
+        }
+
+        /**
+         * Ждёт событий, начиная с номера from, не дольше timeoutMillis.
+         * @return Новые события (возможно, пустой список, если задание завершено или время вышло).
+         */
+        synchronized List<String> eventsFrom(int from, long timeoutMillis) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + timeoutMillis;
+            while (events.size() <= from && !state.finished()) {
+                long left = deadline - System.currentTimeMillis();
+                if (left <= 0) {
+                    break;
+                }
+                wait(left);
+            }
+            return events.size() > from ? List.copyOf(events.subList(from, events.size())) : List.of();
+        }
+
+        synchronized void finish(State result, String message) {
+            if (state.finished()) {
+                return;
+            }
+            state = result;
+            error = message;
+            finished = Instant.now();
+            runner = null;
+            events.add(result == State.SUCCEEDED ? "Задание выполнено." : "Задание завершено: " + result.label()
+                    + (message != null ? " (" + message + ")" : ""));
+            notifyAll();
+        }
+
+        synchronized JsonObject toJson() {
+            JsonObject json = new JsonObject();
+            json.addProperty("id", id);
+            json.addProperty("name", name);
+            json.addProperty("provider", provider);
+            json.addProperty("priority", priority.label());
+            json.addProperty("state", state.label());
+            json.addProperty("createdAt", created.toString());
+            if (started != null) {
+                json.addProperty("startedAt", started.toString());
+                json.addProperty("queueMillis", started.toEpochMilli() - created.toEpochMilli());
+            }
+            if (finished != null) {
+                json.addProperty("finishedAt", finished.toString());
+                if (started != null) {
+                    json.addProperty("runMillis", finished.toEpochMilli() - started.toEpochMilli());
+                }
+            }
+            if (error != null) {
+                json.addProperty("error", error);
+            }
+            if (compile != null) {
+                JsonObject result = new JsonObject();
+                result.addProperty("success", compile.success());
+                result.addProperty("errors", compile.errors());
+                result.addProperty("warnings", compile.warnings());
+                json.add("compile", result);
+            }
+            json.addProperty("events", events.size());
+            if (state == State.SUCCEEDED) {
+                json.addProperty("project", "/jobs/" + id + "/project.zip");
+            }
+            return json;
+        }
+    }
+
+    private final Settings settings;
+    private final ConfigManager.ConfigData config;
+    private final HttpServer server;
+    private final ExecutorService httpExecutor;
+    private final List<Thread> workers = new ArrayList<>();
+    private final Map<String, AiClient> clients = new HashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+
+    // Очереди и реестр заданий защищены одной блокировкой
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private final ArrayDeque<Job> interactiveQueue = new ArrayDeque<>();
+    private final ArrayDeque<Job> bulkQueue = new ArrayDeque<>();
+    private final Map<String, Job> jobs = new LinkedHashMap<>();
+    private int runningBulk;
+    private volatile boolean closed;
+
+    public GenerationServer(ConfigManager.ConfigData config, Settings settings) throws IOException {
+        this.config = config;
+        this.settings = settings;
+        this.httpExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        this.server = HttpServer.create(new InetSocketAddress(settings.host(), settings.port()), 256);
+        server.setExecutor(httpExecutor);
+        server.createContext("/", this::handle);
+    }
+
+    public void start() {
+        JobConsole.install();
+        for (int i = 0; i < settings.workers(); i++) {
+            workers.add(Thread.ofPlatform().name("job-worker-" + i).start(this::workLoop));
+        }
+        server.start();
+        InetSocketAddress address = server.getAddress();
+        System.out.printf("-> Сервер генерации запущен: http://%s:%d (обработчиков: %d, из них только для интерактивных: %d)%n",
+                address.getHostString(), address.getPort(), settings.workers(), settings.reservedInteractive());
+        System.out.println(settings.outputDir() != null
+                ? "   Проекты сохраняются в " + settings.outputDir().toAbsolutePath()
+                : "   Проекты хранятся только в памяти (serve.output-dir не задан)");
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        server.stop(0);
+        lock.lock();
+        try {
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        workers.forEach(Thread::interrupt);
+        httpExecutor.shutdownNow();
+    }
+
+    // --- Очередь и обработчики ---
+
+    /**
+     * @return Новое задание или null, если очередь его класса заполнена.
+     */
+    Job submit(String name, String description, String provider, Priority priority, Boolean parallel, Boolean verify) {
+        lock.lock();
+        try {
+            ArrayDeque<Job> queue = priority == Priority.INTERACTIVE ? interactiveQueue : bulkQueue;
+            int limit = priority == Priority.INTERACTIVE ? settings.interactiveQueueLimit() : settings.bulkQueueLimit();
+            if (queue.size() >= limit) {
+                return null;
+            }
+            Job job = new Job(sequence.incrementAndGet(), name, description, provider, priority, parallel, verify);
+            queue.addLast(job);
+            jobs.put(job.id, job);
+            forgetFinished();
+            available.signal();
+            return job;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void workLoop() {
+        while (!closed) {
+            Job job;
+            lock.lock();
+            try {
+                job = next();
+                while (job == null && !closed) {
+                    available.await();
+                    job = next();
+                }
+                if (job == null) {
+                    return;
+                }
+                if (job.priority == Priority.BULK) {
+                    runningBulk++;
+                }
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            try {
+                run(job);
+            } finally {
+                lock.lock();
+                try {
+                    if (job.priority == Priority.BULK) {
+                        runningBulk--;
+                        // Освободилось место для пакетного задания
+                        available.signal();
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * Выбирает следующее задание; вызывается под блокировкой.
+     */
+    private Job next() {
+        if (!interactiveQueue.isEmpty()) {
+            return interactiveQueue.pollFirst();
+        }
+        if (!bulkQueue.isEmpty() && runningBulk < settings.workers() - settings.reservedInteractive()) {
+            return bulkQueue.pollFirst();
+        }
+        return null;
+    }
+
+    private void run(Job job) {
+        synchronized (job) {
+            if (job.state != State.QUEUED) {
+                return;
+            }
+            // Отмена пришла, когда задание уже взято из очереди, но ещё не запущено
+            if (job.cancelRequested) {
+                job.finish(State.CANCELLED, "отменено до начала");
+                Metrics.shared().increment("jobs_total", "priority", job.priority.label(), "state", State.CANCELLED.label());
+                return;
+            }
+            job.state = State.RUNNING;
+            job.started = Instant.now();
+            job.runner = Thread.currentThread();
+        }
+        Metrics.shared().observe("job_queue_seconds", seconds(job.created, job.started), "priority", job.priority.label());
+
+        JobConsole.attach(job);
+        State result = State.FAILED;
+        String error = null;
+        try {
+            ConfigOptions options = PluginGenerator.generationOptions(config);
+            if (job.parallel != null) {
+                options = options.with("generation.parallel", job.parallel);
+            }
+            if (job.verify != null) {
+                options = options.with("validate.enabled", job.verify);
+            }
+            System.out.println("-> Генерация плагина " + job.name + " (" + job.provider + ")...");
+            ProjectOutput output = settings.outputDir() != null
+                    ? ProjectOutput.fromOptions(settings.outputDir().resolve(job.id), options)
+                    : (name, files) -> { };
+            ProjectCreator creator = new ProjectCreator(output, job.name);
+            creator.quiet();
+            CompileValidator.Result compile;
+            try (Deadline deadline = Deadline.fromOptions(options)) {
+                synchronized (job) {
+                    job.deadline = deadline;
+                    if (job.cancelRequested) {
+                        deadline.cancel("отменено");
+                    }
+                }
+                compile = new PluginPipeline(clientFor(job.provider), options, deadline)
+                        .generate(job.description, job.name, creator);
+            }
+            synchronized (job) {
+                job.compile = compile;
+                job.files = creator.files();
+            }
+            result = State.SUCCEEDED;
+        } catch (InterruptedException e) {
+            result = State.CANCELLED;
+            error = "прервано";
+        } catch (Exception e) {
+            error = e.getMessage() != null ? e.getMessage() : e.toString();
+            System.out.println("Ошибка: " + error);
+        } finally {
+            synchronized (job) {
+                // Прерывание могло прийти в виде IOException из HTTP-клиента или записи файлов
+                if (job.cancelRequested) {
+                    result = State.CANCELLED;
+                    error = "прервано";
+                }
+            }
+            JobConsole.detach();
+            // Прерывание, пришедшее после завершения генерации, не должно задеть следующее задание
+            Thread.interrupted();
+        }
+        job.finish(result, error);
+        Metrics.shared().observe("job_duration_seconds", seconds(job.started, job.finished), "priority", job.priority.label());
+        Metrics.shared().increment("jobs_total", "priority", job.priority.label(), "state", job.state().label());
+    }
+
+    private synchronized AiClient clientFor(String provider) {
+        return clients.computeIfAbsent(provider, p -> PluginGenerator.createClient(config, p));
+    }
+
+    /**
+     * Отменяет задание в очереди или прерывает выполняющееся.
+     * @return false, если задание уже завершено.
+     */
+    boolean cancel(Job job) {
+        lock.lock();
+        try {
+            if (interactiveQueue.remove(job) || bulkQueue.remove(job)) {
+                job.finish(State.CANCELLED, "отменено до начала");
+                Metrics.shared().increment("jobs_total", "priority", job.priority.label(), "state", State.CANCELLED.label());
+                return true;
+            }
+        } finally {
+            lock.unlock();
+        }
+        synchronized (job) {
+            if (job.state.finished()) {
+                return false;
+            }
+            // Задание, взятое из очереди, но ещё не запущенное, проверит флаг перед началом (см. run)
+            job.cancelRequested = true;
+            if (job.runner != null) {
+                // Отмена срока сразу прерывает все запросы задания, в том числе параллельные части
+                if (job.deadline != null) {
+                    job.deadline.cancel("отменено");
+                }
+                job.runner.interrupt();
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Забывает самые старые завершённые задания сверх serve.max-finished-jobs; вызывается под блокировкой.
+     */
+    private void forgetFinished() {
+        long finishedCount = jobs.values().stream().filter(job -> job.state().finished()).count();
+        Iterator<Job> iterator = jobs.values().iterator();
+        while (finishedCount > settings.maxFinishedJobs() && iterator.hasNext()) {
+            if (iterator.next().state().finished()) {
+                iterator.remove();
+                finishedCount--;
+            }
+        }
+    }
+
+    private int queuePosition(Job job) {
+        lock.lock();
+        try {
+            int position = 0;
+            for (Job queued : interactiveQueue) {
+                position++;
+                if (queued == job) {
+                    return position;
+                }
+            }
+            for (Job queued : bulkQueue) {
+                position++;
+                if (queued == job) {
+                    return position;
+                }
+            }
+            return 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Job find(String id) {
+        lock.lock();
+        try {
+            return jobs.get(id);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static double seconds(Instant from, Instant to) {
+        return (to.toEpochMilli() - from.toEpochMilli()) / 1000.0;
+    }
+
+    // --- Обработка HTTP-запросов ---
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (settings.token() != null
+                    && !("Bearer " + settings.token()).equals(exchange.getRequestHeaders().getFirst("Authorization"))) {
+                sendJson(exchange, 401, error("Нужен заголовок Authorization: Bearer <token>"));
+                return;
+            }
+            String method = exchange.getRequestMethod();
+            String[] path = exchange.getRequestURI().getPath().replaceAll("^/+|/+$", "").split("/");
+
+            if (path.length == 1 && path[0].equals("health") && method.equals("GET")) {
+                JsonObject body = new JsonObject();
+                body.addProperty("status", closed ? "stopping" : "ok");
+                sendJson(exchange, 200, body);
+            } else if (path.length == 1 && path[0].equals("metrics") && method.equals("GET")) {
+                sendText(exchange, 200, "text/plain; version=0.0.4; charset=utf-8", Metrics.shared().toPrometheus());
+            } else if (path.length == 1 && path[0].equals("jobs") && method.equals("POST")) {
+                createJob(exchange);
+            } else if (path.length == 1 && path[0].equals("jobs") && method.equals("GET")) {
+                listJobs(exchange);
+            } else if (path.length >= 2 && path[0].equals("jobs")) {
+                Job job = find(path[1]);
+                if (job == null) {
+                    sendJson(exchange, 404, error("Задание не найдено: " + path[1]));
+                } else if (path.length == 2 && method.equals("GET")) {
+                    JsonObject body = job.toJson();
+                    if (job.state() == State.QUEUED) {
+                        body.addProperty("queuePosition", queuePosition(job));
+                    }
+                    sendJson(exchange, 200, body);
+                } else if (path.length == 2 && method.equals("DELETE")) {
+                    sendJson(exchange, cancel(job) ? 202 : 409, job.toJson());
+                } else if (path.length == 3 && path[2].equals("events") && method.equals("GET")) {
+                    streamEvents(exchange, job);
+                } else if (path.length == 3 && path[2].equals("project.zip") && method.equals("GET")) {
+                    sendProject(exchange, job);
+                } else {
+                    sendJson(exchange, 404, error("Неизвестный адрес: " + exchange.getRequestURI().getPath()));
+                }
+            } else {
+                sendJson(exchange, 404, error("Неизвестный адрес: " + exchange.getRequestURI().getPath()));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void createJob(HttpExchange exchange) throws IOException {
+        byte[] bytes;
+        try (InputStream in = exchange.getRequestBody()) {
+            bytes = in.readNBytes(MAX_BODY_BYTES + 1);
+        }
+        if (bytes.length > MAX_BODY_BYTES) {
+            sendJson(exchange, 413, error("Тело запроса больше " + MAX_BODY_BYTES + " байт"));
+            return;
+        }
+
+        JsonObject request;
+        Priority priority;
+        String name;
+        String description;
+        String provider;
+        Boolean parallel;
+        Boolean verify;
+        try {
+            request = JsonParser.parseString(new String(bytes, StandardCharsets.UTF_8)).getAsJsonObject();
+            priority = Priority.parse(stringField(request, "priority", null));
+            name = stringField(request, "name", "").trim();
+            description = stringField(request, "description", "").trim();
+            provider = stringField(request, "provider", config.provider());
+            parallel = booleanField(request, "parallel");
+            verify = booleanField(request, "verify");
+        } catch (RuntimeException e) {
+            sendJson(exchange, 400, error("Некорректный запрос: " + e.getMessage()));
+            return;
+        }
+        // Имя плагина становится именем каталога проекта: те же правила, что у пакетной генерации
+        try {
+            ProjectOutput.checkName(name);
+        } catch (IllegalArgumentException e) {
+            sendJson(exchange, 400, error("Поле 'name': " + e.getMessage()));
+            return;
+        }
+        if (description.isEmpty()) {
+            sendJson(exchange, 400, error("Нужно поле 'description'"));
+            return;
+        }
+        if (!"openai".equals(provider) && !"openrouter".equals(provider)) {
+            sendJson(exchange, 400, error("Неизвестный провайдер: " + provider));
+            return;
+        }
+
+        Job job = submit(name, description, provider, priority, parallel, verify);
+        if (job == null) {
+            exchange.getResponseHeaders().add("Retry-After", "5");
+            sendJson(exchange, 429, error("Очередь заданий класса " + priority.label() + " заполнена"));
+            return;
+        }
+        JsonObject body = job.toJson();
+        body.addProperty("queuePosition", queuePosition(job));
+        exchange.getResponseHeaders().add("Location", "/jobs/" + job.id);
+        sendJson(exchange, 202, body);
+    }
+
+    // Строковое поле запроса; отсутствующее или null — значение по умолчанию
+    private static String stringField(JsonObject request, String key, String fallback) {
+        JsonElement value = request.get(key);
+        if (value == null || value.isJsonNull()) {
+            return fallback;
+        }
+        if (!value.isJsonPrimitive() || !value.getAsJsonPrimitive().isString()) {
+            throw new IllegalArgumentException("поле '" + key + "' должно быть строкой");
+        }
+        return value.getAsString();
+    }
+
+    // Логическое поле запроса; отсутствующее или null — не задано
+    private static Boolean booleanField(JsonObject request, String key) {
+        JsonElement value = request.get(key);
+        if (value == null || value.isJsonNull()) {
+            return null;
+        }
+        if (!value.isJsonPrimitive() || !value.getAsJsonPrimitive().isBoolean()) {
+            throw new IllegalArgumentException("поле '" + key + "' должно быть true или false");
+        }
+        return value.getAsBoolean();
+    }
+
+    private void listJobs(HttpExchange exchange) throws IOException {
+        List<Job> snapshot;
+        JsonObject body = new JsonObject();
+        lock.lock();
+        try {
+            snapshot = new ArrayList<>(jobs.values());
+            body.addProperty("queuedInteractive", interactiveQueue.size());
+            body.addProperty("queuedBulk", bulkQueue.size());
+        } finally {
+            lock.unlock();
+        }
+        JsonArray array = new JsonArray();
+        snapshot.forEach(job -> array.add(job.toJson()));
+        body.add("jobs", array);
+        sendJson(exchange, 200, body);
+    }
+
+    /**
+     * Передаёт события задания (text/event-stream): сначала уже накопленные, затем новые по мере появления.
+     * Поток закрывается событием "state" после завершения задания.
+     */
+    private void streamEvents(HttpExchange exchange, Job job) throws IOException, InterruptedException {
+        exchange.getResponseHeaders().add("Content-Type", "text/event-stream; charset=utf-8");
+        exchange.getResponseHeaders().add("Cache-Control", "no-cache");
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream out = exchange.getResponseBody();
+        int sent = 0;
+        while (true) {
+            List<String> lines = job.eventsFrom(sent, EVENT_POLL_MILLIS);
+            StringBuilder chunk = new StringBuilder();
+            for (String line : lines) {
+                JsonObject data = new JsonObject();
+                data.addProperty("seq", sent++);
+                data.addProperty("text", line);
+                chunk.append("event: log\ndata: ").append(data).append("\n\n");
+            }
+            boolean done = lines.isEmpty() && job.state().finished();
+            if (done) {
+                chunk.append("event: state\ndata: ").append(job.toJson()).append("\n\n");
+            } else if (lines.isEmpty()) {
+                // Комментарий не даёт прокси и клиентам закрыть простаивающее соединение
+                chunk.append(": keep-alive\n\n");
+            }
+            out.write(chunk.toString().getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            if (done) {
+                return;
+            }
+        }
+    }
+
+    private void sendProject(HttpExchange exchange, Job job) throws IOException {
+        SortedMap<String, String> files;
+        synchronized (job) {
+            files = job.state == State.SUCCEEDED ? job.files : null;
+        }
+        if (files == null) {
+            sendJson(exchange, 409, error("Проект ещё не готов (состояние: " + job.state().label() + ")"));
+            return;
+        }
+        exchange.getResponseHeaders().add("Content-Type", "application/zip");
+        // Имя может быть не латинским: filename — запасной вариант в ASCII, filename* — точное имя (RFC 6266)
+        String asciiName = job.name.replaceAll("[^\\x20-\\x7E]", "_");
+        String encodedName = URLEncoder.encode(job.name + ".zip", StandardCharsets.UTF_8).replace("+", "%20");
+        exchange.getResponseHeaders().add("Content-Disposition",
+                "attachment; filename=\"" + asciiName + ".zip\"; filename*=UTF-8''" + encodedName);
+        exchange.sendResponseHeaders(200, 0);
+        // Архив пишется сразу в ответ, без временного файла
+        try (OutputStream body = exchange.getResponseBody()) {
+            ProjectOutput.writeArchive(body, job.name, files, false);
+        }
+    }
+
+    private static JsonObject error(String message) {
+        JsonObject body = new JsonObject();
+        body.addProperty("error", message);
+        return body;
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, JsonObject body) throws IOException {
+        sendText(exchange, status, "application/json; charset=utf-8", body.toString());
+    }
+
+    private static void sendText(HttpExchange exchange, int status, String contentType, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+}
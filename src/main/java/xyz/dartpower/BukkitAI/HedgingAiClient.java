@@ -0,0 +1,302 @@
+package xyz.dartpower.BukkitAI;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Декоратор {@link AiClient}, выполняющий "хеджированные" запросы к двум провайдерам.
+ * <p>
+ * Запрос отправляется основному провайдеру; если ответа нет дольше заданной задержки
+ * (фиксированной или равной наблюдаемому перцентилю задержки основного провайдера),
+ * тот же запрос отправляется резервному. Используется первый успешный ответ, второй запрос отменяется.
+ * В потоковом режиме победителем считается запрос, первым приславший фрагмент текста.
+ * Доля дополнительных запросов ограничена настройкой hedge.max-extra-ratio.
+ */
+public class HedgingAiClient implements AiClient {
+
+    private static final ExecutorService EXECUTOR =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("hedge-", 0).factory());
+
+    private final AiClient primary;
+    private final AiClient backup;
+    private final long fixedDelayMillis;
+    private final double percentile;
+    private final int minSamples;
+    private final double maxExtraRatio;
+
+    // Задержки основного провайдера: полного ответа и первого фрагмента потока
+    private final LatencyWindow completeLatency = new LatencyWindow(128);
+    private final LatencyWindow firstTokenLatency = new LatencyWindow(128);
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong hedges = new AtomicLong();
+
+    public HedgingAiClient(AiClient primary, AiClient backup, ConfigOptions options) {
+        this.primary = primary;
+        this.backup = backup;
+        this.fixedDelayMillis = options.getLong("hedge.delay-ms", 10_000);
+        this.percentile = options.getDouble("hedge.percentile", 90);
+        this.minSamples = options.getInt("hedge.min-samples", 10);
+        this.maxExtraRatio = options.getDouble("hedge.max-extra-ratio", 0.2);
+    }
+
+    @Override
+    public String provider() {
+        return primary.provider();
+    }
+
+    @Override
+    public String model() {
+        return primary.model();
+    }
+
+    @Override
+    public List<String> models() {
+        return primary.models();
+    }
+
+    @Override
+    public Completion complete(ChatRequest request) throws IOException, InterruptedException {
+        return race(request, null);
+    }
+
+    @Override
+    public Completion stream(ChatRequest request, StreamListener listener) throws IOException, InterruptedException {
+        return race(request, listener);
+    }
+
+    /**
+     * Задержка перед резервным запросом: перцентиль наблюдаемых задержек основного провайдера,
+     * пока данных мало — значение hedge.delay-ms.
+     */
+    long hedgeDelayMillis(boolean streaming) {
+        LatencyWindow window = streaming ? firstTokenLatency : completeLatency;
+        if (percentile <= 0 || window.size() < minSamples) {
+            return fixedDelayMillis;
+        }
+        return window.percentile(percentile);
+    }
+
+    private Completion race(ChatRequest request, StreamListener listener) throws IOException, InterruptedException {
+        requests.incrementAndGet();
+        Race race = new Race(listener);
+        long delay = hedgeDelayMillis(listener != null);
+        race.start(0, primary, request);
+        try {
+            Outcome outcome = race.outcomes.poll(delay, TimeUnit.MILLISECONDS);
+            if (outcome == null) {
+                // Основной провайдер не успел; в потоковом режиме он мог уже начать передавать текст
+                if (!race.hasWinner() && allowHedge()) {
+                    System.out.printf("-> [Хеджирование] %s/%s не ответил за %d мс, запрос продублирован в %s/%s%n",
+                            primary.provider(), primary.model(), delay, backup.provider(), backup.model());
+                    race.start(1, backup, request);
+                }
+                outcome = race.outcomes.take();
+            }
+
+            List<Exception> failures = new ArrayList<>();
+            int finished = 0;
+            while (true) {
+                finished++;
+                if (outcome.completion() != null) {
+                    race.cancelAllExcept(outcome.attempt());
+                    if (outcome.attempt() == 1) {
+                        if (listener == null) {
+                            // Основной запрос отменён; его задержка не меньше прошедшего времени
+                            completeLatency.add(race.elapsedMillis(0));
+                        }
+                        System.out.printf("-> [Хеджирование] ответ получен от %s/%s%n", backup.provider(), backup.model());
+                    }
+                    return outcome.completion();
+                }
+                failures.add(outcome.error());
+                if (finished == race.startedCount()) {
+                    // Основной запрос завершился ошибкой до начала передачи текста — пробуем резервный
+                    // (но не после истечения срока генерации: резервный запрос его не продлит)
+                    if (!race.started(1) && !race.hasWinner() && !(outcome.error() instanceof DeadlineExceededException)) {
+                        System.out.printf("-> [Хеджирование] ошибка %s/%s, запрос передан в %s/%s%n",
+                                primary.provider(), primary.model(), backup.provider(), backup.model());
+                        race.start(1, backup, request);
+                    } else {
+                        throw combine(failures);
+                    }
+                }
+                outcome = race.outcomes.take();
+            }
+        } catch (InterruptedException e) {
+            race.cancelAllExcept(-1);
+            throw e;
+        }
+    }
+
+    private boolean allowHedge() {
+        // Дополнительных запросов не больше заданной доли от всех запросов
+        long current = hedges.get();
+        while (current < maxExtraRatio * requests.get()) {
+            if (hedges.compareAndSet(current, current + 1)) {
+                return true;
+            }
+            current = hedges.get();
+        }
+        return false;
+    }
+
+    private static IOException combine(List<Exception> failures) {
+        // Основная ошибка — настоящая, а не отмена проигравшего запроса
+        failures.sort((a, b) -> Boolean.compare(a instanceof LostRaceException, b instanceof LostRaceException));
+        Exception first = failures.get(0);
+        IOException result = first instanceof IOException io ? io : new IOException(first.getMessage(), first);
+        for (int i = 1; i < failures.size(); i++) {
+            result.addSuppressed(failures.get(i));
+        }
+        return result;
+    }
+
+    // Результат одной попытки: ответ или ошибка
+    private record Outcome(int attempt, Completion completion, Exception error) {}
+
+    /**
+     * Ошибка, которой проигравший потоковый запрос прерывает чтение своего ответа.
+     */
+    private static class LostRaceException extends IOException {
+        LostRaceException() {
+            super("Ответ уже получен от другого провайдера");
+        }
+    }
+
+    /**
+     * Состояние одной гонки запросов.
+     */
+    private class Race {
+
+        private final StreamListener listener;
+        private final BlockingQueue<Outcome> outcomes = new LinkedBlockingQueue<>();
+        private final Future<?>[] futures = new Future<?>[2];
+        private final long[] startedAt = new long[2];
+        private final AtomicInteger winner = new AtomicInteger(-1);
+
+        Race(StreamListener listener) {
+            this.listener = listener;
+        }
+
+        synchronized void start(int attempt, AiClient client, ChatRequest request) {
+            startedAt[attempt] = System.nanoTime();
+            JobConsole.Sink sink = JobConsole.current();
+            futures[attempt] = EXECUTOR.submit(() -> {
+                // Каждая попытка сообщает ровно один результат, в том числе после отмены
+                JobConsole.attach(sink);
+                try {
+                    Completion completion = listener == null
+                            ? client.complete(request)
+                            : client.stream(request, gate(attempt));
+                    if (attempt == 0 && listener == null) {
+                        completeLatency.add(elapsedMillis(0));
+                    }
+                    outcomes.add(new Outcome(attempt, completion, null));
+                } catch (Exception e) {
+                    outcomes.add(new Outcome(attempt, null, e));
+                } finally {
+                    JobConsole.detach();
+                }
+            });
+        }
+
+        synchronized boolean started(int attempt) {
+            return futures[attempt] != null;
+        }
+
+        synchronized int startedCount() {
+            return (futures[0] != null ? 1 : 0) + (futures[1] != null ? 1 : 0);
+        }
+
+        boolean hasWinner() {
+            return winner.get() >= 0;
+        }
+
+        synchronized void cancelAllExcept(int attempt) {
+            for (int i = 0; i < futures.length; i++) {
+                if (i != attempt && futures[i] != null) {
+                    // Прерывание потока попытки прерывает ожидание ответа в ChatCompletionsClient.send,
+                    // и тот отменяет HTTP-обмен через future из sendAsync; уже идущее чтение потока
+                    // останавливает на следующем фрагменте получатель проигравшей попытки (gate)
+                    futures[i].cancel(true);
+                }
+            }
+        }
+
+        private long elapsedMillis(int attempt) {
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt[attempt]);
+        }
+
+        /**
+         * Получатель фрагментов для попытки: первая попытка, приславшая текст, становится победителем
+         * и передаёт фрагменты дальше, остальные прекращают чтение.
+         */
+        private StreamListener gate(int attempt) {
+            return new StreamListener() {
+                @Override
+                public void onDelta(String delta) throws IOException {
+                    claim();
+                    listener.onDelta(delta);
+                }
+
+                @Override
+                public void onComplete() throws IOException {
+                    claim();
+                    listener.onComplete();
+                }
+
+                private void claim() throws IOException {
+                    if (winner.get() == attempt) {
+                        return;
+                    }
+                    if (!winner.compareAndSet(-1, attempt)) {
+                        throw new LostRaceException();
+                    }
+                    // Если победил резервный запрос, время основного — лишь нижняя оценка его задержки
+                    firstTokenLatency.add(elapsedMillis(0));
+                    cancelAllExcept(attempt);
+                }
+            };
+        }
+    }
+
+    /**
+     * Скользящее окно последних задержек для оценки перцентиля.
+     */
+    static class LatencyWindow {
+
+        private final long[] values;
+        private int count;
+        private int next;
+
+        LatencyWindow(int capacity) {
+            this.values = new long[capacity];
+        }
+
+        synchronized void add(long millis) {
+            values[next] = millis;
+            next = (next + 1) % values.length;
+            count = Math.min(count + 1, values.length);
+        }
+
+        synchronized int size() {
+            return count;
+        }
+
+        synchronized long percentile(double p) {
+            long[] sorted = Arrays.copyOf(values, count);
+            Arrays.sort(sorted);
+            return LoadDriver.percentile(sorted, p);
+        }
+    }
+}
@@ -0,0 +1,974 @@
+package xyz.dartpower.BukkitAI;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+/**
+ * Индекс истории генераций: поиск по журналу взаимодействий ({@link InteractionLog}) без чтения ответов.
+ * <p>
+ * Записи журнала объединяются в генерации: все запросы одного плагина (план, классы, config.yml, исправления,
+ * продолжения) идут в одну генерацию, пока не начнётся новая с тем же именем или не пройдёт
+ * history.session-gap-minutes. По генерации индексируются слова промпта, имя плагина, модель и имена классов.
+ * <p>
+ * На диске (history.dir, по умолчанию &lt;log.dir&gt;/index):
+ * <ul>
+ *   <li>run-NNNNNN.idx — неизменяемые части инвертированного индекса: отсортированный словарь терминов и списки
+ *   номеров генераций (разности в varint). Каждое пополнение добавляет часть; когда частей больше
+ *   history.max-runs, они сливаются в одну;</li>
+ *   <li>records.dat — записи по 32 байта: генерация, файл журнала, смещение записи в нём, время, описание;</li>
+ *   <li>generations.dat — по 8 байт на генерацию: первая и последняя её запись;</li>
+ *   <li>meta.dat — описания записей: имя, модель, классы, начало промпта;</li>
+ *   <li>state.json — счётчики, части индекса и сколько прочитано из каждого файла журнала. Заменяется атомарно
+ *   последним шагом пополнения; всё, что записано после него, при следующем пополнении отбрасывается,
+ *   поэтому прерванное пополнение просто повторяется.</li>
+ * </ul>
+ * Файлы отображаются в память: запрос читает только нужные термины и описания найденных генераций.
+ */
+public class HistoryIndex implements AutoCloseable {
+
+    private static final int RUN_MAGIC = 0x48494458; // "HIDX"
+    private static final int RUN_HEADER_BYTES = 16;
+    private static final int TERM_ENTRY_BYTES = 16;
+    private static final int RECORD_BYTES = 32;
+    private static final int GENERATION_BYTES = 8;
+    private static final int MIN_TOKEN = 2;
+    private static final int MAX_TOKEN = 64;
+    private static final String STATE_FILE = "state.json";
+    private static final String RECORDS_FILE = "records.dat";
+    private static final String GENERATIONS_FILE = "generations.dat";
+    private static final String META_FILE = "meta.dat";
+    private static final String LOCK_FILE = "lock";
+
+    // Поля индекса — префиксы терминов
+    private static final String PROMPT = "p:";
+    private static final String NAME = "n:";
+    private static final String MODEL = "m:";
+    private static final String CLASS = "c:";
+    private static final List<String> ALL_FIELDS = List.of(PROMPT, NAME, CLASS, MODEL);
+
+    private static final Gson GSON = new Gson();
+
+    /**
+     * Настройки индекса из секции "history" config.yaml.
+     * @param logDir Папка журнала (log.dir).
+     * @param dir Папка индекса.
+     * @param sessionGapMillis Пауза, после которой записи с тем же именем плагина считаются новой генерацией.
+     * @param maxRuns Сколько частей индекса допускается до слияния.
+     * @param previewChars Сколько символов промпта хранится для вывода результатов.
+     */
+    public record Settings(Path logDir, Path dir, long sessionGapMillis, int maxRuns, int previewChars) {
+
+        public static Settings fromOptions(ConfigOptions options) {
+            Path logDir = Path.of(options.getString("log.dir", "docs"));
+            String dir = options.getString("history.dir", "");
+            return new Settings(logDir, dir.isBlank() ? logDir.resolve("index") : Path.of(dir),
+                    Math.max(0, options.getLong("history.session-gap-minutes", 30)) * 60_000,
+                    Math.max(1, options.getInt("history.max-runs", 8)),
+                    Math.max(0, options.getInt("history.preview-chars", 160)));
+        }
+    }
+
+    /**
+     * Найденная генерация.
+     * @param id Номер генерации в индексе (для {@link #restore}).
+     * @param timestamp Время первой записи.
+     * @param model Модель из первого ответа, в котором она указана, или пустая строка (потоковые ответы).
+     * @param records Число записей журнала: план, классы, исправления, продолжения.
+     * @param errors Сколько из них — ответы API с ошибкой.
+     */
+    public record Hit(int id, long timestamp, String pluginName, String model, List<String> classes, String prompt,
+                      int records, int errors) {}
+
+    private final Settings settings;
+    private State state = new State();
+    private ByteBuffer records = ByteBuffer.allocate(0);
+    private ByteBuffer generations = ByteBuffer.allocate(0);
+    private ByteBuffer meta = ByteBuffer.allocate(0);
+    private List<Run> runs = List.of();
+
+    private HistoryIndex(Settings settings) {
+        this.settings = settings;
+    }
+
+    /**
+     * Открывает индекс для поиска в том состоянии, в котором его оставило последнее пополнение.
+     * Чтобы учесть новые записи журнала, вызовите {@link #ingest}.
+     */
+    public static HistoryIndex open(Settings settings) throws IOException {
+        HistoryIndex index = new HistoryIndex(settings);
+        index.load();
+        return index;
+    }
+
+    /**
+     * Добавляет в индекс записи журнала, появившиеся после прошлого пополнения. Уже прочитанные файлы
+     * не перечитываются: сегмент дочитывается с места, где остановилось прошлое пополнение.
+     * @return Сколько записей добавлено.
+     */
+    public int ingest() throws IOException {
+        return update(false);
+    }
+
+    /**
+     * Строит индекс заново по всему журналу.
+     * @return Сколько записей проиндексировано.
+     */
+    public int rebuild() throws IOException {
+        return update(true);
+    }
+
+    /**
+     * @return Число генераций в индексе.
+     */
+    public int size() {
+        return state.generations;
+    }
+
+    /**
+     * Ищет генерации по запросу. Слова запроса объединяются по И; слово ищется в промпте, имени плагина,
+     * именах классов и модели, а с префиксом name:, prompt:, class: или model: — только в этом поле.
+     * Звёздочка в конце слова — поиск по началу (telep*).
+     * @return Генерации, новые первыми, не больше limit; пустой запрос — последние генерации.
+     */
+    public List<Hit> search(String query, int limit) {
+        int[] found = null;
+        boolean any = false;
+        for (String word : query.trim().split("\\s+")) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            any = true;
+            List<String> fields = ALL_FIELDS;
+            String value = word;
+            int colon = word.indexOf(':');
+            if (colon > 0) {
+                String field = switch (word.substring(0, colon).toLowerCase(Locale.ROOT)) {
+                    case "name" -> NAME;
+                    case "prompt" -> PROMPT;
+                    case "class" -> CLASS;
+                    case "model" -> MODEL;
+                    default -> null;
+                };
+                if (field != null) {
+                    fields = List.of(field);
+                    value = word.substring(colon + 1);
+                }
+            }
+            boolean prefix = value.endsWith("*");
+            if (prefix) {
+                value = value.substring(0, value.length() - 1);
+            }
+            // Имя, модель и класс проиндексированы и целиком, и по словам
+            List<String> terms = fields.size() == 1 && !fields.get(0).equals(PROMPT)
+                    ? List.of(fold(value)) : tokens(value);
+            for (String term : terms) {
+                if (term.isEmpty()) {
+                    continue;
+                }
+                int[] matches = lookup(fields, term, prefix);
+                found = found == null ? matches : intersect(found, matches);
+            }
+        }
+        List<Hit> hits = new ArrayList<>();
+        if (found == null) {
+            if (any) {
+                // В запросе только слишком короткие слова
+                return hits;
+            }
+            for (int id = state.generations - 1; id >= 0 && hits.size() < limit; id--) {
+                hits.add(describe(id));
+            }
+            return hits;
+        }
+        for (int i = found.length - 1; i >= 0 && hits.size() < limit; i--) {
+            hits.add(describe(found[i]));
+        }
+        return hits;
+    }
+
+    /**
+     * @return Описание генерации или null, если такой нет.
+     */
+    public Hit describe(int id) {
+        if (id < 0 || id >= state.generations) {
+            return null;
+        }
+        String pluginName = null;
+        String model = "";
+        String prompt = "";
+        long timestamp = 0;
+        Set<String> classes = new LinkedHashSet<>();
+        int count = 0;
+        int errors = 0;
+        for (int record : recordsOf(id)) {
+            Meta description = readMeta(records.getLong(record * RECORD_BYTES + 24));
+            if (count++ == 0) {
+                pluginName = baseName(description.pluginName());
+                timestamp = records.getLong(record * RECORD_BYTES + 16);
+                prompt = description.prompt();
+            }
+            if (model.isEmpty()) {
+                model = description.model();
+            }
+            classes.addAll(description.classes());
+            if (description.error()) {
+                errors++;
+            }
+        }
+        return new Hit(id, timestamp, pluginName, model, List.copyOf(classes), prompt, count, errors);
+    }
+
+    /**
+     * Восстанавливает проект генерации из записей журнала, не обращаясь к модели. Ответы разбираются в порядке
+     * записи: план даёт описания команд, продолжения дописываются к своему ответу, исправления заменяют файлы.
+     * Если pom.xml или plugin.yml в ответах нет (генерация по шаблонам), они создаются {@link ProjectTemplates}.
+     * Проект записывается через {@link ProjectCreator#commit()}.
+     */
+    public void restore(int id, ProjectCreator creator, ConfigOptions options) throws IOException {
+        if (id < 0 || id >= state.generations) {
+            throw new IOException("Генерация #" + id + " не найдена в индексе");
+        }
+        String prompt = null;
+        Map<String, String> commands = Map.of();
+        StringBuilder pending = null;
+        for (int index : recordsOf(id)) {
+            int source = records.getInt(index * RECORD_BYTES + 4);
+            long offset = records.getLong(index * RECORD_BYTES + 8);
+            Path file = settings.logDir().resolve(state.sources.get(source).name);
+            InteractionLog.Record record = Files.exists(file) ? InteractionLog.readAt(file, offset) : null;
+            if (record == null) {
+                System.out.println("   [Предупреждение] Запись журнала не найдена: " + file.getFileName() + " @" + offset);
+                continue;
+            }
+            Analysis analysis = analyze(record.responseText());
+            if (analysis.error()) {
+                continue;
+            }
+            if (prompt == null) {
+                prompt = record.prompt();
+            }
+            String name = record.pluginName();
+            if (name.endsWith(":plan")) {
+                PluginPipeline.Plan plan = PluginPipeline.parsePlan(analysis.content());
+                if (plan != null) {
+                    commands = plan.commands();
+                }
+            } else if (isContinuation(name) && pending != null) {
+                pending.append(BudgetingAiClient.stripRepeated(pending, analysis.content()));
+            } else {
+                if (pending != null) {
+                    creator.addFiles(pending.toString());
+                }
+                pending = new StringBuilder(analysis.content());
+            }
+        }
+        if (pending != null) {
+            creator.addFiles(pending.toString());
+        }
+        SortedMap<String, String> files = creator.files();
+        if (files.isEmpty()) {
+            throw new IOException("В записях генерации #" + id + " нет файлов проекта");
+        }
+        if (!files.containsKey("pom.xml") || !files.containsKey("src/main/resources/plugin.yml")) {
+            ProjectTemplates.render(creator, prompt, commands, options);
+        }
+        creator.commit();
+    }
+
+    @Override
+    public void close() {
+        // Отображения освобождает сборщик мусора; здесь только отпускаем ссылки
+        records = generations = meta = ByteBuffer.allocate(0);
+        runs = List.of();
+    }
+
+    // --- Пополнение ---
+
+    private int update(boolean rebuild) throws IOException {
+        Files.createDirectories(settings.dir());
+        try (FileChannel lockChannel = FileChannel.open(settings.dir().resolve(LOCK_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock ignored = lockChannel.lock()) {
+            // Индекс мог пополнить другой процесс
+            load();
+            if (rebuild) {
+                state = new State();
+            } else if (upToDate()) {
+                return 0;
+            }
+            discardUncommitted();
+            int added = append();
+            load();
+            return added;
+        }
+    }
+
+    /**
+     * Быстрая проверка без чтения журнала: в папке не появилось файлов, а последний сегмент не дописан.
+     */
+    private boolean upToDate() throws IOException {
+        Path logDir = settings.logDir();
+        if (!Files.isDirectory(logDir)) {
+            return true;
+        }
+        if (Files.getLastModifiedTime(logDir).toMillis() != state.dirModified) {
+            return false;
+        }
+        if (state.tailName == null) {
+            return true;
+        }
+        Path tail = logDir.resolve(state.tailName);
+        return Files.exists(tail) && Files.size(tail) == state.tailBytes;
+    }
+
+    /**
+     * Отбрасывает данные, записанные прерванным пополнением после последней замены state.json.
+     */
+    private void discardUncommitted() throws IOException {
+        truncate(RECORDS_FILE, (long) state.records * RECORD_BYTES);
+        truncate(GENERATIONS_FILE, (long) state.generations * GENERATION_BYTES);
+        truncate(META_FILE, state.metaBytes);
+        deleteRunsExcept(Set.copyOf(state.runs));
+    }
+
+    private void truncate(String file, long size) throws IOException {
+        Path path = settings.dir().resolve(file);
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            if (channel.size() > size) {
+                channel.truncate(size);
+            }
+        }
+    }
+
+    private void deleteRunsExcept(Set<String> keep) throws IOException {
+        try (Stream<Path> files = Files.list(settings.dir())) {
+            for (Path file : files.toList()) {
+                String name = file.getFileName().toString();
+                if (name.startsWith("run-") && name.endsWith(".idx") && !keep.contains(name)) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    private int append() throws IOException {
+        Path logDir = settings.logDir();
+        // Время изменения папки берём до чтения: файл, созданный во время пополнения, будет замечен в следующий раз
+        state.dirModified = Files.isDirectory(logDir) ? Files.getLastModifiedTime(logDir).toMillis() : 0;
+        Map<String, Integer> sourceIds = new HashMap<>();
+        for (int i = 0; i < state.sources.size(); i++) {
+            sourceIds.put(state.sources.get(i).name, i);
+        }
+
+        int before = state.records;
+        Appender appender = new Appender();
+        try (appender) {
+            for (Path legacy : InteractionLog.legacyFiles(logDir)) {
+                String name = legacy.getFileName().toString();
+                // Файлы старого формата не меняются: каждый читается один раз
+                if (sourceIds.containsKey(name)) {
+                    continue;
+                }
+                int id = addSource(sourceIds, name);
+                InteractionLog.Record record = InteractionLog.readLegacy(legacy);
+                if (record != null) {
+                    appender.add(id, 0, record);
+                }
+                state.sources.get(id).bytes = Files.size(legacy);
+            }
+            state.tailName = null;
+            state.tailBytes = 0;
+            for (Path segment : InteractionLog.segments(logDir)) {
+                String name = segment.getFileName().toString();
+                Integer known = sourceIds.get(name);
+                int id = known != null ? known : addSource(sourceIds, name);
+                Source source = state.sources.get(id);
+                long size = Files.size(segment);
+                state.tailName = name;
+                state.tailBytes = size;
+                if (size == source.bytes) {
+                    continue;
+                }
+                source.bytes = InteractionLog.readSegment(segment, source.bytes, (record, offset) -> {
+                    appender.add(id, offset, record);
+                    return true;
+                });
+            }
+        }
+
+        Set<String> obsolete = Set.of();
+        if (!appender.postings.isEmpty()) {
+            state.runs.add(writeRun(appender.postings));
+        }
+        if (state.runs.size() > settings.maxRuns()) {
+            obsolete = new HashSet<>(state.runs);
+            String merged = compact(state.runs);
+            state.runs = new ArrayList<>(List.of(merged));
+        }
+        state.open = appender.openGenerations();
+        writeState();
+        if (!obsolete.isEmpty()) {
+            deleteRunsExcept(Set.copyOf(state.runs));
+        }
+        return state.records - before;
+    }
+
+    private int addSource(Map<String, Integer> sourceIds, String name) {
+        Source source = new Source();
+        source.name = name;
+        state.sources.add(source);
+        sourceIds.put(name, state.sources.size() - 1);
+        return state.sources.size() - 1;
+    }
+
+    /**
+     * Дописывает записи в records.dat и meta.dat, распределяет их по генерациям и собирает термины новой части.
+     */
+    private final class Appender implements AutoCloseable {
+
+        final Map<String, IntList> postings = new HashMap<>();
+        private final Map<String, OpenGeneration> open = new HashMap<>();
+        // Генерация -> {первая, последняя запись}; записываются в generations.dat в конце пополнения
+        private final TreeMap<Integer, int[]> spans = new TreeMap<>();
+        private final DataOutputStream recordsOut;
+        private final DataOutputStream metaOut;
+        private final ByteArrayOutputStream metaBuffer = new ByteArrayOutputStream(512);
+
+        Appender() throws IOException {
+            for (OpenGeneration generation : state.open) {
+                open.put(generation.name, generation);
+            }
+            recordsOut = appendStream(RECORDS_FILE);
+            metaOut = appendStream(META_FILE);
+        }
+
+        void add(int source, long offset, InteractionLog.Record record) throws IOException {
+            String pluginName = record.pluginName();
+            String base = baseName(pluginName);
+            boolean plan = pluginName.endsWith(":plan");
+            boolean full = pluginName.indexOf(':') < 0;
+            int index = state.records;
+            OpenGeneration generation = open.get(base);
+            // Второй план или второй полный запрос — следующая генерация того же плагина;
+            // полный запрос после плана (план не разобран) относится к той же генерации
+            if (generation == null || record.timestamp() - generation.last > settings.sessionGapMillis()
+                    || plan && (generation.planned || generation.complete) || full && generation.complete) {
+                generation = new OpenGeneration();
+                generation.name = base;
+                generation.id = state.generations++;
+                open.put(base, generation);
+                spans.put(generation.id, new int[] {index, index});
+            } else {
+                spans.computeIfAbsent(generation.id, HistoryIndex.this::span)[1] = index;
+            }
+            generation.last = Math.max(generation.last, record.timestamp());
+            generation.planned |= plan;
+            generation.complete |= full;
+
+            Analysis analysis = analyze(record.responseText());
+            if (plan) {
+                // Классы из плана: ответ с классом может оборваться и закончиться только в продолжении
+                PluginPipeline.Plan parsed = PluginPipeline.parsePlan(analysis.content());
+                if (parsed != null) {
+                    List<String> classes = new ArrayList<>(analysis.classes());
+                    parsed.classes().forEach(spec -> classes.add(spec.name()));
+                    analysis = new Analysis(analysis.content(), analysis.model(), classes, analysis.error());
+                }
+            }
+            recordsOut.writeInt(generation.id);
+            recordsOut.writeInt(source);
+            recordsOut.writeLong(offset);
+            recordsOut.writeLong(record.timestamp());
+            recordsOut.writeLong(state.metaBytes);
+            state.metaBytes += writeMeta(pluginName, analysis, record.prompt());
+            state.records++;
+
+            int id = generation.id;
+            String name = splitCamelCase(base);
+            term(NAME + fold(base), id);
+            tokens(name).forEach(token -> term(NAME + token, id));
+            tokens(record.prompt()).forEach(token -> term(PROMPT + token, id));
+            if (!analysis.model().isEmpty()) {
+                term(MODEL + fold(analysis.model()), id);
+                tokens(analysis.model()).forEach(token -> term(MODEL + token, id));
+            }
+            for (String className : analysis.classes()) {
+                term(CLASS + fold(className), id);
+                tokens(splitCamelCase(className)).forEach(token -> term(CLASS + token, id));
+            }
+        }
+
+        private void term(String term, int id) {
+            postings.computeIfAbsent(term, key -> new IntList()).addIfNew(id);
+        }
+
+        private int writeMeta(String pluginName, Analysis analysis, String prompt) throws IOException {
+            metaBuffer.reset();
+            DataOutputStream data = new DataOutputStream(metaBuffer);
+            String preview = prompt.replace('\n', ' ').strip();
+            if (preview.length() > settings.previewChars()) {
+                preview = preview.substring(0, settings.previewChars()) + "...";
+            }
+            data.writeUTF(pluginName);
+            data.writeUTF(analysis.model());
+            data.writeBoolean(analysis.error());
+            data.writeShort(analysis.classes().size());
+            for (String className : analysis.classes()) {
+                data.writeUTF(className);
+            }
+            data.writeUTF(preview);
+            metaOut.writeInt(metaBuffer.size());
+            metaBuffer.writeTo(metaOut);
+            return 4 + metaBuffer.size();
+        }
+
+        /**
+         * Генерации, к которым ещё могут добавиться записи (в пределах паузы от самой новой записи).
+         */
+        List<OpenGeneration> openGenerations() {
+            long newest = open.values().stream().mapToLong(generation -> generation.last).max().orElse(0);
+            return open.values().stream()
+                    .filter(generation -> newest - generation.last <= settings.sessionGapMillis())
+                    .toList();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try (recordsOut; metaOut;
+                 FileChannel channel = FileChannel.open(settings.dir().resolve(GENERATIONS_FILE),
+                         StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                ByteBuffer entry = ByteBuffer.allocate(GENERATION_BYTES);
+                for (Map.Entry<Integer, int[]> span : spans.entrySet()) {
+                    entry.clear();
+                    entry.putInt(span.getValue()[0]).putInt(span.getValue()[1]).flip();
+                    channel.write(entry, (long) span.getKey() * GENERATION_BYTES);
+                }
+            }
+        }
+    }
+
+    private DataOutputStream appendStream(String file) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(settings.dir().resolve(file),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND), 64 * 1024));
+    }
+
+    private int[] span(int id) {
+        return new int[] {generations.getInt(id * GENERATION_BYTES), generations.getInt(id * GENERATION_BYTES + 4)};
+    }
+
+    private void writeState() throws IOException {
+        Path file = settings.dir().resolve(STATE_FILE);
+        Path temp = settings.dir().resolve(STATE_FILE + ".tmp");
+        Files.writeString(temp, GSON.toJson(state));
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // --- Части индекса ---
+
+    /**
+     * Записывает часть индекса: заголовок (magic, число терминов, смещение словаря), списки генераций
+     * (число и разности номеров в varint), словарь по 16 байт (смещение списка, смещение и длина термина)
+     * и байты терминов.
+     */
+    private String writeRun(Map<String, IntList> postings) throws IOException {
+        String name = String.format("run-%06d.idx", state.nextRun++);
+        String[] terms = postings.keySet().toArray(new String[0]);
+        Arrays.sort(terms);
+        ByteArrayOutputStream lists = new ByteArrayOutputStream(terms.length * 8);
+        long[] positions = new long[terms.length];
+        byte[][] encoded = new byte[terms.length][];
+        for (int i = 0; i < terms.length; i++) {
+            positions[i] = RUN_HEADER_BYTES + lists.size();
+            encoded[i] = terms[i].getBytes(StandardCharsets.UTF_8);
+            int[] ids = postings.get(terms[i]).sortedDistinct();
+            writeVarInt(lists, ids.length);
+            int previous = 0;
+            for (int id : ids) {
+                writeVarInt(lists, id - previous);
+                previous = id;
+            }
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(settings.dir().resolve(name)), 64 * 1024))) {
+            out.writeInt(RUN_MAGIC);
+            out.writeInt(terms.length);
+            out.writeLong(RUN_HEADER_BYTES + lists.size());
+            lists.writeTo(out);
+            int termOffset = 0;
+            for (int i = 0; i < terms.length; i++) {
+                out.writeLong(positions[i]);
+                out.writeInt(termOffset);
+                out.writeInt(encoded[i].length);
+                termOffset += encoded[i].length;
+            }
+            for (byte[] term : encoded) {
+                out.write(term);
+            }
+        }
+        return name;
+    }
+
+    private String compact(List<String> names) throws IOException {
+        Map<String, IntList> merged = new HashMap<>();
+        for (String name : names) {
+            Run run = Run.open(settings.dir().resolve(name));
+            for (int i = 0; i < run.termCount; i++) {
+                run.postings(i, merged.computeIfAbsent(run.term(i), key -> new IntList()));
+            }
+        }
+        return writeRun(merged);
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    /**
+     * Часть индекса, отображённая в память.
+     */
+    private static final class Run {
+
+        private final ByteBuffer map;
+        final int termCount;
+        private final int dictionary;
+        private final int termBytes;
+
+        private Run(ByteBuffer map) {
+            this.map = map;
+            this.termCount = map.getInt(4);
+            this.dictionary = (int) map.getLong(8);
+            this.termBytes = dictionary + termCount * TERM_ENTRY_BYTES;
+        }
+
+        static Run open(Path file) throws IOException {
+            ByteBuffer map;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            if (map.capacity() < RUN_HEADER_BYTES || map.getInt(0) != RUN_MAGIC) {
+                throw new IOException("Повреждённая часть индекса истории: " + file.getFileName()
+                        + ". Перестройте индекс (--history --rebuild).");
+            }
+            return new Run(map);
+        }
+
+        String term(int i) {
+            int entry = dictionary + i * TERM_ENTRY_BYTES;
+            byte[] bytes = new byte[map.getInt(entry + 12)];
+            map.get(termBytes + map.getInt(entry + 8), bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * @return Номер первого термина, не меньшего term.
+         */
+        int lowerBound(String term) {
+            int low = 0;
+            int high = termCount;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (term(middle).compareTo(term) < 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        void collect(String term, boolean prefix, IntList into) {
+            for (int i = lowerBound(term); i < termCount; i++) {
+                String current = term(i);
+                if (prefix ? !current.startsWith(term) : !current.equals(term)) {
+                    break;
+                }
+                postings(i, into);
+            }
+        }
+
+        void postings(int i, IntList into) {
+            int[] position = {(int) map.getLong(dictionary + i * TERM_ENTRY_BYTES)};
+            int count = readVarInt(position);
+            int id = 0;
+            for (int k = 0; k < count; k++) {
+                id += readVarInt(position);
+                into.add(id);
+            }
+        }
+
+        private int readVarInt(int[] position) {
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = map.get(position[0]++);
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        }
+    }
+
+    private int[] lookup(List<String> fields, String term, boolean prefix) {
+        IntList matches = new IntList();
+        for (String field : fields) {
+            for (Run run : runs) {
+                run.collect(field + term, prefix, matches);
+            }
+        }
+        return matches.sortedDistinct();
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int count = 0;
+        for (int i = 0, j = 0; i < a.length && j < b.length; ) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[count++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    // --- Чтение состояния и отображение файлов ---
+
+    private void load() throws IOException {
+        Path file = settings.dir().resolve(STATE_FILE);
+        state = Files.exists(file) ? GSON.fromJson(Files.readString(file), State.class) : new State();
+        records = map(RECORDS_FILE, (long) state.records * RECORD_BYTES);
+        generations = map(GENERATIONS_FILE, (long) state.generations * GENERATION_BYTES);
+        meta = map(META_FILE, state.metaBytes);
+        List<Run> opened = new ArrayList<>();
+        for (String name : state.runs) {
+            opened.add(Run.open(settings.dir().resolve(name)));
+        }
+        runs = opened;
+    }
+
+    private ByteBuffer map(String file, long size) throws IOException {
+        if (size == 0) {
+            return ByteBuffer.allocate(0);
+        }
+        try (FileChannel channel = FileChannel.open(settings.dir().resolve(file), StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+    }
+
+    /**
+     * @return Номера записей генерации по порядку.
+     */
+    private List<Integer> recordsOf(int id) {
+        int[] span = span(id);
+        // Диапазон обновляется на месте и может опережать состояние, которое мы читаем
+        int last = Math.min(span[1], state.records - 1);
+        List<Integer> result = new ArrayList<>();
+        for (int index = span[0]; index <= last; index++) {
+            if (records.getInt(index * RECORD_BYTES) == id) {
+                result.add(index);
+            }
+        }
+        return result;
+    }
+
+    private record Meta(String pluginName, String model, boolean error, List<String> classes, String prompt) {}
+
+    private Meta readMeta(long offset) {
+        int position = (int) offset;
+        byte[] bytes = new byte[meta.getInt(position)];
+        meta.get(position + 4, bytes);
+        try {
+            DataInputStream data = new DataInputStream(new ByteArrayInputStream(bytes));
+            String pluginName = data.readUTF();
+            String model = data.readUTF();
+            boolean error = data.readBoolean();
+            List<String> classes = new ArrayList<>();
+            for (int i = data.readUnsignedShort(); i > 0; i--) {
+                classes.add(data.readUTF());
+            }
+            return new Meta(pluginName, model, error, classes, data.readUTF());
+        } catch (IOException e) {
+            // Массив в памяти: ошибка означает повреждённый meta.dat
+            throw new IllegalStateException("Повреждённое описание записи в индексе истории", e);
+        }
+    }
+
+    // --- Разбор записей ---
+
+    /**
+     * Разобранный ответ: текст модели, модель, имена Java-классов и признак ответа с ошибкой.
+     */
+    private record Analysis(String content, String model, List<String> classes, boolean error) {}
+
+    /**
+     * В журнале хранится сырое тело ответа API (JSON) либо, для потоковых запросов, собранный текст модели.
+     */
+    private static Analysis analyze(String response) {
+        String content = response;
+        String model = "";
+        boolean error = false;
+        if (response.stripLeading().startsWith("{")) {
+            try {
+                JsonObject json = JsonParser.parseString(response).getAsJsonObject();
+                JsonElement modelField = json.get("model");
+                if (modelField != null && modelField.isJsonPrimitive()) {
+                    model = modelField.getAsString();
+                }
+                if (json.has("choices")) {
+                    content = Completion.fromResponse(json).content();
+                } else if (json.has("error")) {
+                    content = "";
+                    error = true;
+                }
+            } catch (IOException | RuntimeException ignored) {
+                // Не ответ API (например, план из потокового запроса): оставляем текст как есть
+            }
+        }
+        List<String> classes = new ArrayList<>();
+        try {
+            CodeFenceParser.parse(content, block -> {
+                if (block.language().equals("java") && block.typeName() != null && !classes.contains(block.typeName())) {
+                    classes.add(block.typeName());
+                }
+            });
+        } catch (IOException ignored) {
+            // Разбор строки в памяти не выполняет ввода-вывода
+        }
+        return new Analysis(content, model, classes, error);
+    }
+
+    /**
+     * Имя плагина без суффикса запроса: "Teleport:plan", "Teleport:Main:cont1" -> "Teleport".
+     */
+    private static String baseName(String pluginName) {
+        int colon = pluginName.indexOf(':');
+        return colon < 0 ? pluginName : pluginName.substring(0, colon);
+    }
+
+    private static boolean isContinuation(String pluginName) {
+        return pluginName.matches(".*:cont\\d+");
+    }
+
+    private static String splitCamelCase(String name) {
+        return name.replaceAll("(?<=[a-z0-9])(?=[A-Z])", " ");
+    }
+
+    /**
+     * Имя, модель или класс целиком: нижний регистр, ё -> е.
+     */
+    private static String fold(String value) {
+        return value.toLowerCase(Locale.ROOT).replace('ё', 'е');
+    }
+
+    private static List<String> tokens(String text) {
+        List<String> result = new ArrayList<>();
+        for (String token : IdeaIndex.normalize(text).split(" ")) {
+            if (token.length() >= MIN_TOKEN && token.length() <= MAX_TOKEN) {
+                result.add(token);
+            }
+        }
+        return result;
+    }
+
+    // --- Состояние (state.json) ---
+
+    private static final class State {
+        int records;
+        int generations;
+        long metaBytes;
+        int nextRun;
+        List<String> runs = new ArrayList<>();
+        // Файлы журнала; номер источника в records.dat — индекс в этом списке
+        List<Source> sources = new ArrayList<>();
+        List<OpenGeneration> open = new ArrayList<>();
+        long dirModified;
+        String tailName;
+        long tailBytes;
+    }
+
+    private static final class Source {
+        String name;
+        // Сколько байт прочитано: для сегмента — смещение после последней целой записи
+        long bytes;
+    }
+
+    private static final class OpenGeneration {
+        String name;
+        int id;
+        long last;
+        // В генерации уже есть план / полный запрос проекта
+        boolean planned;
+        boolean complete;
+    }
+
+    private static final class IntList {
+
+        private int[] values = new int[4];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        void addIfNew(int value) {
+            if (size == 0 || values[size - 1] != value) {
+                add(value);
+            }
+        }
+
+        int[] sortedDistinct() {
+            int[] sorted = Arrays.copyOf(values, size);
+            Arrays.sort(sorted);
+            int count = 0;
+            for (int value : sorted) {
+                if (count == 0 || sorted[count - 1] != value) {
+                    sorted[count++] = value;
+                }
+            }
+            return Arrays.copyOf(sorted, count);
+        }
+    }
+}
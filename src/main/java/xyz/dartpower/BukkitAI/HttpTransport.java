@@ -0,0 +1,148 @@
+package xyz.dartpower.BukkitAI;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Общий HTTP-транспорт для всех клиентов AI-провайдеров.
+ * <p>
+ * Один {@link HttpClient} на процесс: соединения (и потоки HTTP/2) переиспользуются между запросами
+ * и клиентами, поэтому пакетные и параллельные запуски не платят за TCP+TLS рукопожатие на каждый запрос.
+ */
+public class HttpTransport {
+
+    private static HttpTransport shared;
+
+    private final HttpClient httpClient;
+    private final ExecutorService executor;
+
+    // Ответ с уже распакованным телом
+    public record Response(int statusCode, HttpHeaders headers, InputStream body) {
+
+        public String bodyAsString() throws IOException {
+            try (InputStream in = body) {
+                return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            }
+        }
+    }
+
+    private HttpTransport(ConfigOptions options) {
+        // Параметры пула соединений JDK читаются один раз при первом создании HttpClient
+        setDefaultProperty("jdk.httpclient.connectionPoolSize", options.getInt("http.pool-size", 0));
+        setDefaultProperty("jdk.httpclient.keepalive.timeout", options.getInt("http.keepalive-seconds", 120));
+
+        int threads = options.getInt("http.executor-threads", 0);
+        this.executor = threads > 0
+                ? Executors.newFixedThreadPool(threads, Thread.ofPlatform().daemon().name("http-", 0).factory())
+                : Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("http-", 0).factory());
+
+        HttpClient.Version version = "http1.1".equalsIgnoreCase(options.getString("http.version", "auto"))
+                ? HttpClient.Version.HTTP_1_1
+                : HttpClient.Version.HTTP_2;
+
+        this.httpClient = HttpClient.newBuilder()
+                // HTTP/2 согласуется через ALPN, при его отсутствии клиент сам переходит на HTTP/1.1
+                .version(version)
+                .connectTimeout(Duration.ofSeconds(options.getInt("http.connect-timeout-seconds", 30)))
+                .executor(executor)
+                .build();
+    }
+
+    /**
+     * Возвращает общий транспорт, создавая его при первом обращении по настройкам секции "http".
+     */
+    public static synchronized HttpTransport shared(ConfigOptions options) {
+        if (shared == null) {
+            shared = new HttpTransport(options);
+        }
+        return shared;
+    }
+
+    /**
+     * @return Общий транспорт с настройками по умолчанию, если он ещё не создан.
+     */
+    public static HttpTransport shared() {
+        return shared(ConfigOptions.EMPTY);
+    }
+
+    /**
+     * @return Общий пул потоков транспорта (для асинхронных задач клиентов).
+     */
+    public ExecutorService executor() {
+        return executor;
+    }
+
+    /**
+     * Отправляет запрос с поддержкой сжатия ответа (Accept-Encoding: gzip).
+     * Если ожидающий поток прерван, запрос отменяется, а соединение освобождается.
+     * @param builder Подготовленный запрос.
+     * @return Ответ с распакованным телом; тело нужно прочитать или закрыть.
+     * @throws IOException В случае ошибки сети.
+     * @throws InterruptedException В случае прерывания запроса.
+     */
+    public Response send(HttpRequest.Builder builder) throws IOException, InterruptedException {
+        CompletableFuture<Response> future = sendAsync(builder);
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io) {
+                throw io;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Асинхронная отправка запроса. cancel(true) у возвращённого future прерывает обмен с сервером.
+     */
+    public CompletableFuture<Response> sendAsync(HttpRequest.Builder builder) {
+        HttpRequest request = builder.header("Accept-Encoding", "gzip").build();
+        CompletableFuture<HttpResponse<InputStream>> exchange = httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofInputStream());
+        CompletableFuture<Response> response = exchange.thenApply(HttpTransport::toResponse);
+        // Отмена производного future должна дойти до самого обмена
+        response.whenComplete((result, error) -> {
+            if (response.isCancelled()) {
+                exchange.cancel(true);
+            }
+        });
+        return response;
+    }
+
+    private static Response toResponse(HttpResponse<InputStream> response) {
+        try {
+            return new Response(response.statusCode(), response.headers(), decode(response));
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private static InputStream decode(HttpResponse<InputStream> response) throws IOException {
+        String encoding = response.headers().firstValue("Content-Encoding").orElse("");
+        if ("gzip".equalsIgnoreCase(encoding.trim())) {
+            return new GZIPInputStream(response.body(), 64 * 1024);
+        }
+        return response.body();
+    }
+
+    private static void setDefaultProperty(String name, int value) {
+        if (System.getProperty(name) == null) {
+            System.setProperty(name, Integer.toString(value));
+        }
+    }
+}
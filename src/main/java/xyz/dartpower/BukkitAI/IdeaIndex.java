@@ -0,0 +1,374 @@
+package xyz.dartpower.BukkitAI;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Постоянный индекс похожести идей и описаний плагинов (MinHash + LSH).
+ * <p>
+ * Текст нормализуется и разбивается на символьные 5-граммы; подпись — минимумы 64 хеш-функций по 5-граммам.
+ * Подпись делится на 16 полос по 4 значения; идеи с совпадающей полосой — кандидаты, для них сходство
+ * (оценка коэффициента Жаккара) считается по сохранённым младшим байтам подписей.
+ * В памяти на идею хранится ~200 байт: 64 байта подписи и по 8 байт в отсортированном массиве каждой полосы,
+ * поэтому поиск среди сотен тысяч идей — это 16 двоичных поисков, доли миллисекунды.
+ * <p>
+ * На диске: ideas.sig — записи фиксированной длины (смещение текста, ключи полос, подпись),
+ * ideas.jsonl — тексты и имена проектов. Оборванная при сбое последняя запись отбрасывается при открытии.
+ */
+public class IdeaIndex implements AutoCloseable {
+
+    private static final int SHINGLE = 5;
+    private static final int HASHES = 64;
+    private static final int BANDS = 16;
+    private static final int ROWS = HASHES / BANDS;
+    private static final int RECORD_BYTES = 8 + BANDS * 4 + HASHES;
+    // Новые идеи сначала попадают в небольшой неотсортированный буфер, затем вливаются в массивы полос
+    private static final int DELTA_MAX = 4096;
+
+    private static final long[] MULTIPLIERS = new long[HASHES];
+    private static final long[] ADDENDS = new long[HASHES];
+
+    static {
+        // Фиксированное зерно: подписи должны совпадать между запусками
+        SplittableRandom random = new SplittableRandom(0x5EED_1DEA);
+        for (int i = 0; i < HASHES; i++) {
+            MULTIPLIERS[i] = random.nextLong() | 1;
+            ADDENDS[i] = random.nextLong();
+        }
+    }
+
+    /**
+     * Похожая идея из индекса.
+     * @param similarity Оценка коэффициента Жаккара по 5-граммам (0..1).
+     * @param project Имя проекта, для которого идея использовалась.
+     */
+    public record Match(String text, String project, double similarity) {}
+
+    private final FileChannel signatures;
+    private final FileChannel texts;
+
+    private int count;
+    private long[] textOffsets = new long[1024];
+    private byte[] sigBytes = new byte[1024 * HASHES];
+    // Для каждой полосы: отсортированные (ключ << 32 | номер идеи) для идей [0, sortedCount)
+    private final long[][] bands = new long[BANDS][0];
+    private int sortedCount;
+    private final int[] deltaKeys = new int[DELTA_MAX * BANDS];
+
+    private IdeaIndex(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        this.signatures = FileChannel.open(dir.resolve("ideas.sig"),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.texts = FileChannel.open(dir.resolve("ideas.jsonl"),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Открывает индекс в папке (создаёт, если его нет) и загружает подписи в память.
+     */
+    public static IdeaIndex open(Path dir) throws IOException {
+        IdeaIndex index = new IdeaIndex(dir);
+        index.load();
+        return index;
+    }
+
+    private void load() throws IOException {
+        long textLength = texts.size();
+        int records = (int) (signatures.size() / RECORD_BYTES);
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_BYTES * 1024);
+        long[][] entries = new long[BANDS][records];
+        signatures.position(0);
+        int loaded = 0;
+        while (loaded < records) {
+            buffer.clear();
+            buffer.limit(Math.min(buffer.capacity(), (records - loaded) * RECORD_BYTES));
+            while (buffer.hasRemaining()) {
+                if (signatures.read(buffer) < 0) {
+                    break;
+                }
+            }
+            buffer.flip();
+            boolean truncated = false;
+            while (buffer.remaining() >= RECORD_BYTES) {
+                long offset = buffer.getLong();
+                if (offset < 0 || offset >= textLength) {
+                    // Текст записи не успел попасть на диск
+                    truncated = true;
+                    break;
+                }
+                ensureCapacity(loaded + 1);
+                textOffsets[loaded] = offset;
+                for (int band = 0; band < BANDS; band++) {
+                    entries[band][loaded] = entry(buffer.getInt(), loaded);
+                }
+                buffer.get(sigBytes, loaded * HASHES, HASHES);
+                loaded++;
+            }
+            if (truncated) {
+                break;
+            }
+        }
+        count = loaded;
+        sortedCount = loaded;
+        for (int band = 0; band < BANDS; band++) {
+            long[] sorted = Arrays.copyOf(entries[band], loaded);
+            Arrays.parallelSort(sorted);
+            bands[band] = sorted;
+        }
+        // Отбрасываем неполную или осиротевшую запись в конце
+        signatures.truncate((long) count * RECORD_BYTES);
+        signatures.position(signatures.size());
+        texts.position(textLength);
+    }
+
+    public synchronized int size() {
+        return count;
+    }
+
+    /**
+     * Ищет самую похожую сохранённую идею.
+     * @param threshold Минимальное сходство (0..1).
+     * @return Самая похожая идея со сходством не ниже порога или null.
+     */
+    public Match findSimilar(String text, double threshold) throws IOException {
+        int[] signature = signature(text);
+        int[] keys = bandKeys(signature);
+        byte[] low = lowBytes(signature);
+
+        int best = -1;
+        double bestSimilarity = threshold;
+        synchronized (this) {
+            for (int band = 0; band < BANDS; band++) {
+                long[] sorted = bands[band];
+                long from = entry(keys[band], 0);
+                int position = Arrays.binarySearch(sorted, from);
+                for (int i = position < 0 ? -position - 1 : position;
+                     i < sorted.length && (int) (sorted[i] >> 32) == keys[band]; i++) {
+                    int id = (int) sorted[i];
+                    double similarity = similarity(low, id);
+                    if (similarity >= bestSimilarity) {
+                        best = id;
+                        bestSimilarity = similarity;
+                    }
+                }
+            }
+            for (int id = sortedCount; id < count; id++) {
+                int delta = id - sortedCount;
+                for (int band = 0; band < BANDS; band++) {
+                    if (deltaKeys[delta * BANDS + band] == keys[band]) {
+                        double similarity = similarity(low, id);
+                        if (similarity >= bestSimilarity) {
+                            best = id;
+                            bestSimilarity = similarity;
+                        }
+                        break;
+                    }
+                }
+            }
+            if (best < 0) {
+                return null;
+            }
+            JsonObject stored = readText(textOffsets[best]);
+            return new Match(stored.get("text").getAsString(), stored.get("project").getAsString(), bestSimilarity);
+        }
+    }
+
+    /**
+     * Добавляет идею (или описание) плагина в индекс и на диск.
+     */
+    public synchronized void add(String text, String project) throws IOException {
+        int[] signature = signature(text);
+        int[] keys = bandKeys(signature);
+
+        JsonObject json = new JsonObject();
+        json.addProperty("project", project);
+        json.addProperty("text", text);
+        json.addProperty("time", System.currentTimeMillis());
+        byte[] line = (json + "\n").getBytes(StandardCharsets.UTF_8);
+        long offset = texts.size();
+        writeFully(texts, ByteBuffer.wrap(line), offset);
+
+        ByteBuffer record = ByteBuffer.allocate(RECORD_BYTES);
+        record.putLong(offset);
+        for (int key : keys) {
+            record.putInt(key);
+        }
+        record.put(lowBytes(signature));
+        record.flip();
+        // Подпись пишется после текста: запись без текста при открытии отбрасывается
+        writeFully(signatures, record, (long) count * RECORD_BYTES);
+
+        ensureCapacity(count + 1);
+        textOffsets[count] = offset;
+        System.arraycopy(lowBytes(signature), 0, sigBytes, count * HASHES, HASHES);
+        System.arraycopy(keys, 0, deltaKeys, (count - sortedCount) * BANDS, BANDS);
+        count++;
+        if (count - sortedCount == DELTA_MAX) {
+            mergeDelta();
+        }
+    }
+
+    private void mergeDelta() {
+        int added = count - sortedCount;
+        for (int band = 0; band < BANDS; band++) {
+            long[] delta = new long[added];
+            for (int i = 0; i < added; i++) {
+                delta[i] = entry(deltaKeys[i * BANDS + band], sortedCount + i);
+            }
+            Arrays.sort(delta);
+            long[] old = bands[band];
+            long[] merged = new long[old.length + added];
+            int a = 0;
+            int b = 0;
+            for (int i = 0; i < merged.length; i++) {
+                merged[i] = b >= added || (a < old.length && old[a] <= delta[b]) ? old[a++] : delta[b++];
+            }
+            bands[band] = merged;
+        }
+        sortedCount = count;
+    }
+
+    private void ensureCapacity(int needed) {
+        if (needed > textOffsets.length) {
+            int capacity = Math.max(needed, textOffsets.length * 2);
+            textOffsets = Arrays.copyOf(textOffsets, capacity);
+            sigBytes = Arrays.copyOf(sigBytes, capacity * HASHES);
+        }
+    }
+
+    private JsonObject readText(long offset) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(512);
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        long position = offset;
+        int read;
+        while ((read = texts.read(buffer.clear(), position)) > 0) {
+            position += read;
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    line.write(buffer.array(), 0, i);
+                    return JsonParser.parseString(line.toString(StandardCharsets.UTF_8)).getAsJsonObject();
+                }
+            }
+            line.write(buffer.array(), 0, read);
+        }
+        return JsonParser.parseString(line.toString(StandardCharsets.UTF_8)).getAsJsonObject();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        signatures.close();
+        texts.close();
+    }
+
+    // --- MinHash ---
+
+    /**
+     * Оценка сходства по младшим байтам подписей: совпадение байта случайно с вероятностью 1/256,
+     * поэтому доля совпадений m переводится в оценку Жаккара как (m - 1/256) / (1 - 1/256).
+     */
+    private double similarity(byte[] low, int id) {
+        int offset = id * HASHES;
+        int equal = 0;
+        for (int i = 0; i < HASHES; i++) {
+            if (sigBytes[offset + i] == low[i]) {
+                equal++;
+            }
+        }
+        double matched = equal / (double) HASHES;
+        return Math.max(0, (matched - 1 / 256.0) / (1 - 1 / 256.0));
+    }
+
+    static int[] signature(String text) {
+        String normalized = normalize(text);
+        int[] minimums = new int[HASHES];
+        Arrays.fill(minimums, Integer.MAX_VALUE);
+        int shingles = Math.max(1, normalized.length() - SHINGLE + 1);
+        for (int start = 0; start < shingles; start++) {
+            long hash = shingleHash(normalized, start, Math.min(normalized.length(), start + SHINGLE));
+            for (int i = 0; i < HASHES; i++) {
+                // Старшие 31 бит произведения — равномерно распределённое значение хеш-функции i
+                int value = (int) ((hash * MULTIPLIERS[i] + ADDENDS[i]) >>> 33);
+                if (value < minimums[i]) {
+                    minimums[i] = value;
+                }
+            }
+        }
+        return minimums;
+    }
+
+    /**
+     * Нижний регистр, только буквы и цифры, одиночные пробелы.
+     */
+    static String normalize(String text) {
+        StringBuilder result = new StringBuilder(text.length());
+        boolean space = true;
+        for (int i = 0; i < text.length(); i++) {
+            char c = Character.toLowerCase(text.charAt(i));
+            if (Character.isLetterOrDigit(c)) {
+                result.append(c == 'ё' ? 'е' : c);
+                space = false;
+            } else if (!space) {
+                result.append(' ');
+                space = true;
+            }
+        }
+        int length = result.length();
+        if (length > 0 && result.charAt(length - 1) == ' ') {
+            result.setLength(length - 1);
+        }
+        return result.toString();
+    }
+
+    private static long shingleHash(String text, int from, int to) {
+        // FNV-1a и перемешивание splitmix64
+        long hash = 0xcbf29ce484222325L;
+        for (int i = from; i < to; i++) {
+            hash = (hash ^ text.charAt(i)) * 0x100000001b3L;
+        }
+        hash = (hash ^ (hash >>> 30)) * 0xbf58476d1ce4e5b9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94d049bb133111ebL;
+        return hash ^ (hash >>> 31);
+    }
+
+    private static int[] bandKeys(int[] signature) {
+        int[] keys = new int[BANDS];
+        for (int band = 0; band < BANDS; band++) {
+            int key = band * 0x9E3779B9;
+            for (int row = 0; row < ROWS; row++) {
+                key = key * 31 + signature[band * ROWS + row];
+            }
+            keys[band] = key;
+        }
+        return keys;
+    }
+
+    private static byte[] lowBytes(int[] signature) {
+        byte[] low = new byte[HASHES];
+        for (int i = 0; i < HASHES; i++) {
+            low[i] = (byte) signature[i];
+        }
+        return low;
+    }
+
+    private static long entry(int key, int id) {
+        // Ключ со знаком в старших битах: порядок long совпадает с порядком ключей
+        return ((long) key << 32) | (id & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,571 @@
+package xyz.dartpower.BukkitAI;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Асинхронный журнал взаимодействий с ИИ.
+ * <p>
+ * Записи ставятся в ограниченную очередь и пишутся фоновым потоком в сегменты
+ * docs/interactions-NNNNNN.seg. Формат записи: magic (int), флаги (byte), длина (int),
+ * данные (при флаге сжатия — deflate), CRC32 (int) исходных данных.
+ */
+public class InteractionLog implements AutoCloseable {
+
+    private static final int MAGIC = 0x42414931; // "BAI1"
+    private static final byte FLAG_DEFLATE = 1;
+    private static final String SEGMENT_PREFIX = "interactions-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    // После стольких неудачных попыток записи подряд журнал отключается
+    private static final int MAX_FAILED_BATCHES = 3;
+
+    private static ConfigOptions sharedOptions = ConfigOptions.EMPTY;
+    private static InteractionLog shared;
+
+    private final Path dir;
+    private final long segmentMaxBytes;
+    private final boolean compress;
+    private final boolean dropWhenFull;
+    private final BlockingQueue<Entry> queue;
+    private final Thread writerThread;
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile boolean closed;
+    // Запись на диск невозможна: новые записи отбрасываются, чтобы не блокировать генерацию
+    private volatile boolean failed;
+
+    // Состояние фонового потока записи
+    private OutputStream out;
+    private long segmentBytes;
+    private int segmentIndex;
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+    private final CRC32 crc = new CRC32();
+    private final ByteArrayOutputStream payload = new ByteArrayOutputStream(8192);
+    private byte[] compressed = new byte[8192];
+
+    /**
+     * Запись журнала.
+     * @param timestamp Время записи (мс Unix).
+     * @param pluginName Название плагина или идентификатор запроса.
+     * @param prompt Промпт, отправленный ИИ.
+     * @param response Сырой ответ (тело) от API в UTF-8.
+     */
+    public record Record(long timestamp, String pluginName, String prompt, byte[] response) {
+
+        public String responseText() {
+            return new String(response, StandardCharsets.UTF_8);
+        }
+    }
+
+    // Элемент очереди: ответ может прийти строкой или уже готовыми байтами
+    private record Entry(long timestamp, String pluginName, String prompt, String text, byte[] bytes) {}
+
+    public InteractionLog(Path dir, int queueSize, long segmentMaxBytes, boolean compress, boolean dropWhenFull) {
+        this.dir = dir;
+        this.segmentMaxBytes = segmentMaxBytes;
+        this.compress = compress;
+        this.dropWhenFull = dropWhenFull;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, queueSize));
+        this.writerThread = Thread.ofPlatform().daemon().name("interaction-log").start(this::writeLoop);
+    }
+
+    /**
+     * Задаёт настройки (секция "log" config.yaml) для общего журнала. Вызывается до первой записи.
+     */
+    public static synchronized void configure(ConfigOptions options) {
+        sharedOptions = options;
+    }
+
+    /**
+     * @return Сохранять ли в общий журнал потоковые ответы (log.stream-responses, по умолчанию нет). Для этого
+     * их текст собирается в памяти целиком; без журнала, кэша и журнала пакетной генерации он только
+     * передаётся получателю.
+     */
+    public static synchronized boolean keepsStreamedResponses() {
+        return sharedOptions.getBoolean("log.stream-responses", false);
+    }
+
+    /**
+     * Возвращает общий журнал; при завершении программы он дописывает очередь и закрывает файлы.
+     */
+    public static synchronized InteractionLog shared() {
+        if (shared == null) {
+            shared = new InteractionLog(
+                    Path.of(sharedOptions.getString("log.dir", "docs")),
+                    sharedOptions.getInt("log.queue-size", 1024),
+                    sharedOptions.getLong("log.segment-max-mb", 64) * 1024 * 1024,
+                    !"none".equalsIgnoreCase(sharedOptions.getString("log.compression", "deflate")),
+                    "drop".equalsIgnoreCase(sharedOptions.getString("log.overflow", "block"))
+            );
+            InteractionLog log = shared;
+            Runtime.getRuntime().addShutdownHook(new Thread(log::close, "interaction-log-shutdown"));
+        }
+        return shared;
+    }
+
+    public void append(String pluginName, String prompt, String response) {
+        enqueue(new Entry(System.currentTimeMillis(), pluginName, prompt, response, null));
+    }
+
+    public void append(String pluginName, String prompt, byte[] response) {
+        enqueue(new Entry(System.currentTimeMillis(), pluginName, prompt, null, response));
+    }
+
+    private void enqueue(Entry entry) {
+        if (closed || failed) {
+            return;
+        }
+        if (dropWhenFull) {
+            if (!queue.offer(entry)) {
+                long count = dropped.incrementAndGet();
+                // Не засоряем вывод: сообщаем о 1, 2, 4, 8... пропущенных записях
+                if (Long.bitCount(count) == 1 || count % 1000 == 0) {
+                    System.err.println("   [Лог] Очередь журнала переполнена, пропущено записей: " + count);
+                }
+            }
+            return;
+        }
+        try {
+            queue.put(entry);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return Количество записей, отброшенных из-за переполнения очереди.
+     */
+    public long droppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Прекращает приём записей, дописывает очередь на диск и закрывает текущий сегмент.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        // Поток записи не прерываем: прерывание закрыло бы файловый канал посреди записи
+        closed = true;
+        try {
+            writerThread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // --- Фоновая запись ---
+
+    private void writeLoop() {
+        List<Entry> batch = new ArrayList<>();
+        try {
+            Files.createDirectories(dir);
+            segmentIndex = lastSegmentIndex(dir);
+        } catch (IOException | RuntimeException e) {
+            fail(e);
+        }
+        int failedBatches = 0;
+        try {
+            while (!closed || !queue.isEmpty()) {
+                Entry first;
+                try {
+                    first = queue.poll(200, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    first = queue.poll();
+                }
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch);
+                if (failed) {
+                    // Очередь продолжаем разбирать: потоки, ждущие места в ней, не должны зависнуть
+                    batch.clear();
+                    continue;
+                }
+                try {
+                    for (Entry entry : batch) {
+                        writeRecord(entry);
+                    }
+                    // Сбрасываем буфер, только когда очередь опустела
+                    if (queue.isEmpty() && out != null) {
+                        out.flush();
+                    }
+                    failedBatches = 0;
+                } catch (IOException | RuntimeException e) {
+                    System.err.println("   [Ошибка] Не удалось записать журнал взаимодействий: " + e.getMessage());
+                    // Следующие записи пойдут в новый сегмент: хвост текущего может быть оборван
+                    closeSegment();
+                    if (++failedBatches >= MAX_FAILED_BATCHES) {
+                        fail(e);
+                    }
+                }
+                batch.clear();
+            }
+        } finally {
+            closeSegment();
+            deflater.end();
+        }
+    }
+
+    private void fail(Exception e) {
+        failed = true;
+        System.err.println("   [Ошибка] Журнал взаимодействий отключён, записи больше не сохраняются: " + e.getMessage());
+    }
+
+    private void writeRecord(Entry entry) throws IOException {
+        payload.reset();
+        DataOutputStream data = new DataOutputStream(payload);
+        data.writeLong(entry.timestamp());
+        writeBytes(data, entry.pluginName() == null ? new byte[0] : entry.pluginName().getBytes(StandardCharsets.UTF_8));
+        writeBytes(data, entry.prompt() == null ? new byte[0] : entry.prompt().getBytes(StandardCharsets.UTF_8));
+        byte[] response = entry.bytes() != null ? entry.bytes()
+                : entry.text() == null ? new byte[0] : entry.text().getBytes(StandardCharsets.UTF_8);
+        writeBytes(data, response);
+
+        byte[] raw = payload.toByteArray();
+        crc.reset();
+        crc.update(raw);
+
+        byte[] body = raw;
+        int bodyLength = raw.length;
+        if (compress) {
+            deflater.reset();
+            deflater.setInput(raw);
+            deflater.finish();
+            bodyLength = 0;
+            while (!deflater.finished()) {
+                if (bodyLength == compressed.length) {
+                    compressed = Arrays.copyOf(compressed, compressed.length * 2);
+                }
+                bodyLength += deflater.deflate(compressed, bodyLength, compressed.length - bodyLength);
+            }
+            body = compressed;
+        }
+
+        if (out == null || segmentBytes >= segmentMaxBytes) {
+            openNextSegment();
+        }
+        DataOutputStream stream = new DataOutputStream(out);
+        stream.writeInt(MAGIC);
+        stream.writeByte(compress ? FLAG_DEFLATE : 0);
+        stream.writeInt(bodyLength);
+        stream.write(body, 0, bodyLength);
+        stream.writeInt((int) crc.getValue());
+        segmentBytes += 13 + bodyLength;
+    }
+
+    private static void writeBytes(DataOutputStream data, byte[] bytes) throws IOException {
+        data.writeInt(bytes.length);
+        data.write(bytes);
+    }
+
+    private void openNextSegment() throws IOException {
+        closeSegment();
+        segmentIndex++;
+        Path segment = dir.resolve(String.format("%s%06d%s", SEGMENT_PREFIX, segmentIndex, SEGMENT_SUFFIX));
+        out = new BufferedOutputStream(Files.newOutputStream(segment,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND), 64 * 1024);
+        segmentBytes = Files.size(segment);
+    }
+
+    private void closeSegment() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                System.err.println("   [Ошибка] Не удалось закрыть сегмент журнала: " + e.getMessage());
+            }
+            out = null;
+        }
+    }
+
+    private static int lastSegmentIndex(Path dir) throws IOException {
+        // Новые записи начинаем в новом сегменте, не трогая возможно оборванный хвост предыдущего
+        int last = 0;
+        for (Path segment : segments(dir)) {
+            String name = segment.getFileName().toString();
+            try {
+                last = Math.max(last, Integer.parseInt(
+                        name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+            } catch (NumberFormatException e) {
+                // Посторонний файл с похожим именем
+            }
+        }
+        return last;
+    }
+
+    // --- Чтение журнала ---
+
+    /**
+     * Получатель записей журнала.
+     */
+    public interface RecordHandler {
+        /**
+         * @return false, чтобы прекратить чтение.
+         */
+        boolean onRecord(Record record) throws IOException;
+    }
+
+    /**
+     * @return Сегменты журнала в порядке записи.
+     */
+    public static List<Path> segments(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(p -> {
+                        String name = p.getFileName().toString();
+                        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+                    })
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    /**
+     * Читает все записи журнала: сначала старые файлы *.log (по одному на запрос), затем сегменты.
+     * Оборванная последняя запись сегмента (например, после аварийного завершения) пропускается.
+     */
+    public static void read(Path dir, RecordHandler handler) throws IOException {
+        for (Path legacy : legacyFiles(dir)) {
+            Record record = readLegacy(legacy);
+            if (record != null && !handler.onRecord(record)) {
+                return;
+            }
+        }
+        for (Path segment : segments(dir)) {
+            boolean[] stopped = new boolean[1];
+            readSegment(segment, 0, (record, offset) -> {
+                stopped[0] = !handler.onRecord(record);
+                return !stopped[0];
+            });
+            if (stopped[0]) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Получатель записей сегмента вместе с их смещением в файле.
+     */
+    public interface PositionedHandler {
+        /**
+         * @param offset Смещение начала записи в сегменте (для {@link #readAt}).
+         * @return false, чтобы прекратить чтение.
+         */
+        boolean onRecord(Record record, long offset) throws IOException;
+    }
+
+    /**
+     * Читает записи сегмента, начиная со смещения from (начала записи).
+     * @return Смещение после последней целой записи: с него продолжается чтение, когда сегмент допишется.
+     */
+    public static long readSegment(Path segment, long from, PositionedHandler handler) throws IOException {
+        try (InputStream in = Files.newInputStream(segment)) {
+            long size = Files.size(segment);
+            in.skipNBytes(from);
+            return readSegment(new DataInputStream(new BufferedInputStream(in, 64 * 1024)), segment, size, from, handler);
+        }
+    }
+
+    /**
+     * Читает одну запись: из сегмента по смещению или из файла старого формата (смещение 0).
+     * @return Запись или null, если по смещению нет целой записи.
+     */
+    public static Record readAt(Path source, long offset) throws IOException {
+        if (!source.getFileName().toString().endsWith(SEGMENT_SUFFIX)) {
+            return readLegacy(source);
+        }
+        Record[] found = new Record[1];
+        readSegment(source, offset, (record, position) -> {
+            found[0] = record;
+            return false;
+        });
+        return found[0];
+    }
+
+    /**
+     * @param size Размер сегмента при открытии: длина записи из файла не может превышать остаток.
+     */
+    private static long readSegment(DataInputStream in, Path segment, long size, long position, PositionedHandler handler)
+            throws IOException {
+        Inflater inflater = new Inflater(true);
+        CRC32 checksum = new CRC32();
+        try {
+            while (true) {
+                int magic;
+                try {
+                    magic = in.readInt();
+                } catch (EOFException e) {
+                    return position;
+                }
+                if (magic != MAGIC) {
+                    reportCorrupt(segment);
+                    return position;
+                }
+                byte[] raw;
+                int length;
+                int expectedCrc;
+                try {
+                    byte flags = in.readByte();
+                    length = in.readInt();
+                    // Длина прочитана с диска: проверяем её до выделения памяти.
+                    // Сегмент мог дописаться после открытия, поэтому размер перед отказом уточняется
+                    if (length > size - position - 13) {
+                        size = Files.size(segment);
+                    }
+                    if (length < 0 || length > size - position - 13) {
+                        reportCorrupt(segment);
+                        return position;
+                    }
+                    byte[] body = new byte[length];
+                    in.readFully(body);
+                    expectedCrc = in.readInt();
+                    raw = (flags & FLAG_DEFLATE) != 0 ? inflate(inflater, body) : body;
+                    checksum.reset();
+                    checksum.update(raw);
+                } catch (EOFException e) {
+                    // Оборванная запись в конце сегмента
+                    return position;
+                } catch (IOException e) {
+                    reportCorrupt(segment);
+                    return position;
+                }
+                long offset = position;
+                position += 13 + length;
+                if ((int) checksum.getValue() != expectedCrc) {
+                    System.err.println("   [Лог] Запись с неверной контрольной суммой в " + segment.getFileName() + " пропущена.");
+                    continue;
+                }
+                Record record;
+                try {
+                    record = decode(raw);
+                } catch (IOException e) {
+                    reportCorrupt(segment);
+                    return offset;
+                }
+                if (!handler.onRecord(record, offset)) {
+                    return position;
+                }
+            }
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static void reportCorrupt(Path segment) {
+        System.err.println("   [Лог] Повреждённый сегмент " + segment.getFileName() + ", чтение остановлено.");
+    }
+
+    private static byte[] inflate(Inflater inflater, byte[] body) throws IOException {
+        inflater.reset();
+        inflater.setInput(body);
+        ByteArrayOutputStream result = new ByteArrayOutputStream(body.length * 4);
+        byte[] buffer = new byte[16 * 1024];
+        try {
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                result.write(buffer, 0, n);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Повреждённые сжатые данные журнала", e);
+        }
+        return result.toByteArray();
+    }
+
+    private static Record decode(byte[] raw) throws IOException {
+        DataInputStream data = new DataInputStream(new ByteArrayInputStream(raw));
+        long timestamp = data.readLong();
+        String pluginName = new String(readBytes(data), StandardCharsets.UTF_8);
+        String prompt = new String(readBytes(data), StandardCharsets.UTF_8);
+        byte[] response = readBytes(data);
+        return new Record(timestamp, pluginName, prompt, response);
+    }
+
+    private static byte[] readBytes(DataInputStream data) throws IOException {
+        int length = data.readInt();
+        // Поток читает массив в памяти, поэтому available() — точный остаток записи
+        if (length < 0 || length > data.available()) {
+            throw new IOException("Повреждённая запись журнала: длина поля " + length);
+        }
+        byte[] bytes = new byte[length];
+        data.readFully(bytes);
+        return bytes;
+    }
+
+    // --- Старый формат: один файл <имя>_<время>.log на запрос ---
+
+    /**
+     * @return Файлы старого формата в порядке изменения.
+     */
+    public static List<Path> legacyFiles(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(p -> p.getFileName().toString().endsWith(".log"))
+                    .sorted((a, b) -> Long.compare(a.toFile().lastModified(), b.toFile().lastModified()))
+                    .toList();
+        }
+    }
+
+    static Record readLegacy(Path file) throws IOException {
+        String text = Files.readString(file);
+        int promptStart = text.indexOf("--- PROMPT ---\n");
+        int responseStart = text.indexOf("\n\n--- RAW AI RESPONSE ---\n");
+        if (!text.startsWith("Plugin Name: ") || promptStart < 0 || responseStart < 0) {
+            return null;
+        }
+        String pluginName = text.substring("Plugin Name: ".length(), text.indexOf('\n'));
+        long timestamp = Files.getLastModifiedTime(file).toMillis();
+        int timestampStart = text.indexOf("Timestamp: ");
+        if (timestampStart >= 0) {
+            try {
+                String value = text.substring(timestampStart + "Timestamp: ".length(), text.indexOf('\n', timestampStart));
+                timestamp = LocalDateTime.parse(value, DateTimeFormatter.ISO_LOCAL_DATE_TIME)
+                        .atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            } catch (RuntimeException ignored) {
+                // Оставляем время изменения файла
+            }
+        }
+        String prompt = text.substring(promptStart + "--- PROMPT ---\n".length(), responseStart);
+        String response = text.substring(responseStart + "\n\n--- RAW AI RESPONSE ---\n".length());
+        if (response.endsWith("\n")) {
+            response = response.substring(0, response.length() - 1);
+        }
+        return new Record(timestamp, pluginName, prompt, response.getBytes(StandardCharsets.UTF_8));
+    }
+}
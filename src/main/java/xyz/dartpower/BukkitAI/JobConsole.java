@@ -0,0 +1,123 @@
+package xyz.dartpower.BukkitAI;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Поток вывода, который направляет сообщения, напечатанные во время задания, в его журнал событий.
+ * <p>
+ * Задание привязывается к потоку исполнения. Дочерние потоки задания (части параллельной генерации,
+ * хеджированные запросы) привязываются явно: получатель не наследуется, иначе его унаследовали бы
+ * и долгоживущие служебные потоки, созданные во время задания (журнал, таймер сроков, метрики).
+ * Строки вне заданий выводятся как есть, строки заданий — с префиксом [id].
+ */
+final class JobConsole extends OutputStream {
+
+    /**
+     * Получатель строк задания.
+     */
+    interface Sink {
+        String id();
+
+        void line(String text);
+    }
+
+    private static final ThreadLocal<Sink> CURRENT = new ThreadLocal<>();
+
+    private final PrintStream original;
+    private final Charset charset;
+    // Незавершённая строка для каждого задания и для вывода вне заданий
+    private final Map<Object, ByteArrayOutputStream> pending = new HashMap<>();
+
+    private JobConsole(PrintStream original) {
+        this.original = original;
+        this.charset = original.charset();
+    }
+
+    /**
+     * Подменяет System.out; повторный вызов ничего не делает.
+     */
+    static synchronized void install() {
+        if (!(System.out instanceof Routed)) {
+            System.setOut(new Routed(new JobConsole(System.out)));
+        }
+    }
+
+    /**
+     * Привязывает задание к текущему потоку; null — отвязывает.
+     */
+    static void attach(Sink sink) {
+        if (sink != null) {
+            CURRENT.set(sink);
+        } else {
+            CURRENT.remove();
+        }
+    }
+
+    /**
+     * Задание текущего потока — для передачи в потоки, которые он запускает; null вне заданий.
+     */
+    static Sink current() {
+        return CURRENT.get();
+    }
+
+    static void detach() {
+        CURRENT.remove();
+    }
+
+    @Override
+    public void write(int b) {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public synchronized void write(byte[] bytes, int offset, int length) {
+        Sink sink = CURRENT.get();
+        Object key = sink != null ? sink : this;
+        ByteArrayOutputStream line = pending.computeIfAbsent(key, k -> new ByteArrayOutputStream());
+        int start = offset;
+        for (int i = offset; i < offset + length; i++) {
+            if (bytes[i] == '\n') {
+                line.write(bytes, start, i - start);
+                emit(sink, line.toString(charset));
+                line.reset();
+                start = i + 1;
+            }
+        }
+        line.write(bytes, start, offset + length - start);
+        if (line.size() == 0) {
+            pending.remove(key);
+        } else if (sink == null) {
+            // Приглашения ввода печатаются без перевода строки — их нельзя задерживать
+            original.print(line.toString(charset));
+            line.reset();
+        }
+    }
+
+    private void emit(Sink sink, String text) {
+        if (sink == null) {
+            original.println(text);
+            return;
+        }
+        sink.line(text);
+        original.println("[" + sink.id() + "] " + text);
+    }
+
+    @Override
+    public void flush() {
+        original.flush();
+    }
+
+    /**
+     * PrintStream, по которому install() узнаёт, что вывод уже перенаправлен.
+     */
+    private static final class Routed extends PrintStream {
+        Routed(JobConsole console) {
+            super(console, true, console.charset);
+        }
+    }
+}
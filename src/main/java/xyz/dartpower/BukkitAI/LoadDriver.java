@@ -0,0 +1,163 @@
+package xyz.dartpower.BukkitAI;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Нагрузочный прогон клиента OpenAI против OpenAI-совместимого сервера (обычно {@link MockAiServer}).
+ * <p>
+ * Клиент создаётся так же, как в обычном режиме (общий транспорт и планировщик с повторами),
+ * меняется только base-url. Кэш ответов отключается. По итогам выводятся пропускная способность
+ * и перцентили полной задержки и времени до первого токена.
+ */
+public class LoadDriver {
+
+    private final ConfigManager.ConfigData config;
+    private final int requests;
+    private final int concurrency;
+    private final boolean stream;
+    private final boolean templates;
+
+    // Результат одного запроса; ttftNanos = -1, если первый фрагмент не получен
+    private record Sample(long latencyNanos, long ttftNanos, int chars, String error) {}
+
+    /**
+     * @param baseConfig Загруженные настройки (или null — тогда настройки по умолчанию).
+     * @param baseUrl Адрес сервера для base-url клиента OpenAI.
+     */
+    public LoadDriver(ConfigManager.ConfigData baseConfig, String baseUrl, int requests, int concurrency, boolean stream) {
+        ConfigOptions options = baseConfig != null ? baseConfig.options() : ConfigOptions.EMPTY;
+        String model = baseConfig != null && baseConfig.openaiModel() != null ? baseConfig.openaiModel() : "mock-model";
+        String apiKey = baseConfig != null && baseConfig.openaiApiKey() != null ? baseConfig.openaiApiKey() : "mock";
+        this.config = new ConfigManager.ConfigData("openai", apiKey, model, baseUrl,
+                null, null, apiKey, model, baseUrl, options.with("cache.enabled", false));
+        this.requests = requests;
+        this.concurrency = Math.max(1, concurrency);
+        this.stream = stream;
+        this.templates = options.getBoolean("templates.enabled", true);
+    }
+
+    /**
+     * Выполняет прогон и печатает отчёт.
+     * @return Количество запросов, завершившихся ошибкой.
+     */
+    public int run() throws IOException, InterruptedException {
+        // Журнал прогона пишем отдельно, чтобы не смешивать его с записями docs/
+        Path logDir = Files.createTempDirectory("bukkitai-loadtest");
+        InteractionLog.configure(config.options().with("log.dir", logDir.toString()).with("log.overflow", "drop"));
+        Metrics.configure(config.options());
+        AiClient client = PluginGenerator.createClient(config, "openai");
+
+        System.out.printf("-> Нагрузочный прогон: %d запросов, параллельно %d, режим %s, сервер %s%n",
+                requests, concurrency, stream ? "stream" : "обычный", config.baseUrl());
+
+        ConcurrentLinkedQueue<Sample> samples = new ConcurrentLinkedQueue<>();
+        AtomicInteger next = new AtomicInteger();
+        PrintStream console = System.out;
+        // Клиент печатает сообщения о каждом запросе; на время прогона они только мешают
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        long started = System.nanoTime();
+        try (ExecutorService workers = Executors.newFixedThreadPool(concurrency, Thread.ofVirtual().name("load-", 0).factory())) {
+            for (int w = 0; w < concurrency; w++) {
+                workers.submit(() -> {
+                    int index;
+                    while ((index = next.getAndIncrement()) < requests) {
+                        samples.add(execute(client, index));
+                    }
+                });
+            }
+        } finally {
+            System.setOut(console);
+        }
+        long elapsed = System.nanoTime() - started;
+
+        InteractionLog.shared().close();
+        return report(new ArrayList<>(samples), elapsed, logDir);
+    }
+
+    private Sample execute(AiClient client, int index) {
+        ChatRequest request = ChatRequest.pluginCode("load test plugin #" + index, "LoadTest_" + index, templates);
+        long start = System.nanoTime();
+        long[] firstDelta = {-1};
+        int[] streamed = {0};
+        try {
+            Completion completion = stream
+                    ? client.stream(request, delta -> {
+                        if (firstDelta[0] < 0) {
+                            firstDelta[0] = System.nanoTime() - start;
+                        }
+                        streamed[0] += delta.length();
+                    })
+                    : client.complete(request);
+            long latency = System.nanoTime() - start;
+            return new Sample(latency, stream ? firstDelta[0] : latency,
+                    stream ? streamed[0] : completion.content().length(), null);
+        } catch (ApiException e) {
+            return new Sample(System.nanoTime() - start, -1, 0, "HTTP " + e.statusCode());
+        } catch (IOException e) {
+            return new Sample(System.nanoTime() - start, -1, 0, e.getClass().getSimpleName());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new Sample(System.nanoTime() - start, -1, 0, "interrupted");
+        }
+    }
+
+    private int report(List<Sample> samples, long elapsedNanos, Path logDir) {
+        double seconds = elapsedNanos / 1e9;
+        long[] latencies = samples.stream().filter(s -> s.error() == null).mapToLong(Sample::latencyNanos).sorted().toArray();
+        long[] ttfts = samples.stream().filter(s -> s.error() == null && s.ttftNanos() >= 0).mapToLong(Sample::ttftNanos).sorted().toArray();
+        long chars = samples.stream().mapToLong(Sample::chars).sum();
+        Map<String, Integer> errors = new TreeMap<>();
+        samples.stream().filter(s -> s.error() != null).forEach(s -> errors.merge(s.error(), 1, Integer::sum));
+        int failed = errors.values().stream().mapToInt(Integer::intValue).sum();
+
+        System.out.println("\n--- Результаты нагрузочного прогона ---");
+        System.out.printf("Запросов: %d, успешно: %d, с ошибкой: %d, время: %.2f с%n",
+                samples.size(), latencies.length, failed, seconds);
+        System.out.printf("Пропускная способность: %.1f запросов/с, %.0f символов ответа/с%n",
+                latencies.length / seconds, chars / seconds);
+        printPercentiles("Задержка", latencies);
+        if (stream) {
+            printPercentiles("До первого токена", ttfts);
+        }
+        errors.forEach((error, count) -> System.out.println("Ошибка " + error + ": " + count));
+        System.out.println("Журнал прогона: " + logDir.toAbsolutePath());
+        return failed;
+    }
+
+    private static void printPercentiles(String title, long[] sortedNanos) {
+        if (sortedNanos.length == 0) {
+            System.out.println(title + ": нет данных");
+            return;
+        }
+        System.out.printf("%s, мс: p50 %.1f, p90 %.1f, p95 %.1f, p99 %.1f, max %.1f, среднее %.1f%n", title,
+                millis(percentile(sortedNanos, 50)), millis(percentile(sortedNanos, 90)),
+                millis(percentile(sortedNanos, 95)), millis(percentile(sortedNanos, 99)),
+                millis(sortedNanos[sortedNanos.length - 1]), Arrays.stream(sortedNanos).average().orElse(0) / 1e6);
+    }
+
+    /**
+     * Перцентиль по методу ближайшего ранга.
+     */
+    static long percentile(long[] sorted, double p) {
+        int rank = (int) Math.ceil(p / 100.0 * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length - 1, rank - 1))];
+    }
+
+    private static double millis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,398 @@
+package xyz.dartpower.BukkitAI;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Метрики запросов к API и создания проектов: гистограммы с фиксированными границами корзин
+ * и счётчики, разделённые по провайдеру и модели.
+ * <p>
+ * Запись значения — поиск корзины и несколько атомарных инкрементов, без блокировок.
+ * Снимок выгружается в текстовом формате Prometheus или в JSON (секция metrics config.yaml):
+ * при завершении программы и, в долгих режимах, периодически.
+ */
+public final class Metrics {
+
+    // Границы корзин: секунды, байты, токены, токены в секунду
+    private static final double[] SECONDS = {0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 20, 30, 60, 120, 300, 600};
+    private static final double[] BYTES = {256, 1024, 4096, 16384, 65536, 262144, 1048576, 4194304, 16777216};
+    private static final double[] TOKENS = {16, 64, 256, 512, 1024, 2048, 4096, 8192, 16384, 32768, 65536};
+    private static final double[] RATE = {1, 5, 10, 20, 50, 100, 200, 500, 1000};
+
+    private static final String PREFIX = "bukkitai_";
+
+    private static final Metrics SHARED = new Metrics();
+    private static boolean exporting;
+
+    private final Map<String, Family> families = new ConcurrentHashMap<>();
+
+    // Описание метрики: тип, подсказка и границы корзин (для гистограмм)
+    private record Family(String name, String type, String help, double[] bounds, Map<String, Series> series) {}
+
+    private Metrics() {
+        define("request_duration_seconds", "histogram", "Полное время запроса к API", SECONDS);
+        define("time_to_headers_seconds", "histogram", "Время до заголовков ответа (соединение, отправка, ожидание сервера)", SECONDS);
+        define("time_to_first_token_seconds", "histogram", "Время до первого фрагмента текста в потоковом режиме", SECONDS);
+        define("request_bytes", "histogram", "Размер тела запроса", BYTES);
+        define("response_bytes", "histogram", "Размер тела ответа", BYTES);
+        define("prompt_tokens", "histogram", "usage.prompt_tokens", TOKENS);
+        define("completion_tokens", "histogram", "usage.completion_tokens", TOKENS);
+        define("tokens_per_second", "histogram", "Скорость генерации (completion_tokens / время ответа)", RATE);
+        define("requests_total", "counter", "Запросы к API по коду ответа", null);
+        define("parse_seconds", "histogram", "Разбор ответа на блоки кода в ProjectCreator (без записи файлов)", SECONDS);
+        define("file_write_seconds", "histogram", "Запись одного файла проекта", SECONDS);
+        define("job_queue_seconds", "histogram", "Ожидание задания в очереди сервера до начала генерации", SECONDS);
+        define("job_duration_seconds", "histogram", "Генерация проекта по заданию сервера", SECONDS);
+        define("jobs_total", "counter", "Завершённые задания сервера по итогу", null);
+        define("endpoint_requests_total", "counter", "Запросы к эндпоинтам пула по итогу", null);
+        define("endpoint_ejections_total", "counter", "Исключения эндпоинтов пула после ошибок подряд", null);
+    }
+
+    public static Metrics shared() {
+        return SHARED;
+    }
+
+    private void define(String name, String type, String help, double[] bounds) {
+        families.put(name, new Family(PREFIX + name, type, help, bounds, new ConcurrentHashMap<>()));
+    }
+
+    /**
+     * Добавляет значение в гистограмму.
+     * @param labels Пары имя-значение меток, например "provider", "openai", "model", "gpt-4o".
+     */
+    public void observe(String name, double value, String... labels) {
+        series(name, labels).observe(value);
+    }
+
+    /**
+     * Увеличивает счётчик на 1.
+     */
+    public void increment(String name, String... labels) {
+        series(name, labels).observe(1);
+    }
+
+    private Series series(String name, String[] labels) {
+        Family family = families.get(name);
+        if (family == null) {
+            throw new IllegalArgumentException("Неизвестная метрика: " + name);
+        }
+        String key = labels.length == 0 ? "" : String.join("\u0000", labels);
+        Series series = family.series().get(key);
+        if (series == null) {
+            series = family.series().computeIfAbsent(key, k -> new Series(labels, family.bounds()));
+        }
+        return series;
+    }
+
+    /**
+     * Начинает учёт одного HTTP-запроса к API.
+     */
+    public Exchange start(String provider, String model, long requestBytes) {
+        return new Exchange(provider, model, requestBytes);
+    }
+
+    /**
+     * Замеры одного обмена с API. Значения попадают в гистограммы при вызове {@link #finish} или {@link #fail}.
+     */
+    public final class Exchange {
+
+        private final String[] labels;
+        private final long startNanos = System.nanoTime();
+        private final long requestBytes;
+        private long headersNanos = -1;
+        private long firstTokenNanos = -1;
+        private int status = -1;
+        private final LongAdder responseBytes = new LongAdder();
+
+        private Exchange(String provider, String model, long requestBytes) {
+            this.labels = new String[]{"provider", provider, "model", model};
+            this.requestBytes = requestBytes;
+        }
+
+        public void headers(int statusCode) {
+            headersNanos = System.nanoTime() - startNanos;
+            status = statusCode;
+        }
+
+        public void firstToken() {
+            if (firstTokenNanos < 0) {
+                firstTokenNanos = System.nanoTime() - startNanos;
+            }
+        }
+
+        /**
+         * Оборачивает тело ответа, подсчитывая прочитанные байты.
+         */
+        public InputStream count(InputStream body) {
+            return new FilterInputStream(body) {
+                @Override
+                public int read() throws IOException {
+                    int b = super.read();
+                    if (b >= 0) {
+                        responseBytes.increment();
+                    }
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] buffer, int offset, int length) throws IOException {
+                    int n = super.read(buffer, offset, length);
+                    if (n > 0) {
+                        responseBytes.add(n);
+                    }
+                    return n;
+                }
+            };
+        }
+
+        public void responseBytes(long bytes) {
+            responseBytes.add(bytes);
+        }
+
+        public void finish(Completion completion) {
+            double total = (System.nanoTime() - startNanos) / 1e9;
+            record(total);
+            if (completion.promptTokens() >= 0) {
+                observe("prompt_tokens", completion.promptTokens(), labels);
+            }
+            if (completion.completionTokens() >= 0) {
+                observe("completion_tokens", completion.completionTokens(), labels);
+                // В потоковом режиме генерация идёт от первого фрагмента до конца, иначе — всё время запроса
+                double seconds = firstTokenNanos >= 0 ? total - firstTokenNanos / 1e9 : total;
+                if (seconds > 0) {
+                    observe("tokens_per_second", completion.completionTokens() / seconds, labels);
+                }
+            }
+        }
+
+        public void fail() {
+            if (status == 200) {
+                // Ответ получен, но не прочитан или не разобран
+                status = -1;
+            }
+            record((System.nanoTime() - startNanos) / 1e9);
+        }
+
+        private void record(double totalSeconds) {
+            observe("request_duration_seconds", totalSeconds, labels);
+            observe("request_bytes", requestBytes, labels);
+            if (headersNanos >= 0) {
+                observe("time_to_headers_seconds", headersNanos / 1e9, labels);
+                observe("response_bytes", responseBytes.sum(), labels);
+            }
+            if (firstTokenNanos >= 0) {
+                observe("time_to_first_token_seconds", firstTokenNanos / 1e9, labels);
+            }
+            increment("requests_total", labels[0], labels[1], labels[2], labels[3],
+                    "status", status >= 0 ? String.valueOf(status) : "error");
+        }
+    }
+
+    /**
+     * Гистограмма или счётчик с конкретным набором меток.
+     */
+    private static final class Series {
+
+        private final String[] labels;
+        private final double[] bounds;
+        private final AtomicLongArray buckets;
+        private final LongAdder count = new LongAdder();
+        private final DoubleAdder sum = new DoubleAdder();
+        private final LongAccumulator maxBits = new LongAccumulator(Math::max, Double.doubleToLongBits(0));
+
+        Series(String[] labels, double[] bounds) {
+            this.labels = labels.clone();
+            this.bounds = bounds;
+            this.buckets = bounds != null ? new AtomicLongArray(bounds.length + 1) : null;
+        }
+
+        void observe(double value) {
+            count.increment();
+            sum.add(value);
+            if (buckets != null) {
+                int index = Arrays.binarySearch(bounds, value);
+                buckets.incrementAndGet(index >= 0 ? index : -index - 1);
+                // Для неотрицательных double порядок битов совпадает с порядком чисел
+                maxBits.accumulate(Double.doubleToLongBits(Math.max(value, 0)));
+            }
+        }
+
+        double max() {
+            return Double.longBitsToDouble(maxBits.get());
+        }
+
+        /**
+         * Оценка перцентиля: верхняя граница корзины, в которую он попадает (для последней корзины — максимум).
+         */
+        double percentile(double p) {
+            long total = count.sum();
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(p / 100.0 * total);
+            long seen = 0;
+            for (int i = 0; i < buckets.length(); i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) {
+                    return i < bounds.length ? Math.min(bounds[i], max()) : max();
+                }
+            }
+            return max();
+        }
+    }
+
+    /**
+     * @return Снимок в текстовом формате Prometheus (text exposition 0.0.4).
+     */
+    public String toPrometheus() {
+        StringBuilder out = new StringBuilder();
+        for (Family family : new TreeMap<>(families).values()) {
+            if (family.series().isEmpty()) {
+                continue;
+            }
+            out.append("# HELP ").append(family.name()).append(' ').append(family.help()).append('\n');
+            out.append("# TYPE ").append(family.name()).append(' ').append(family.type()).append('\n');
+            for (Series series : new TreeMap<>(family.series()).values()) {
+                if (series.buckets == null) {
+                    out.append(family.name()).append(labels(series.labels, null)).append(' ')
+                            .append(series.count.sum()).append('\n');
+                    continue;
+                }
+                long cumulative = 0;
+                for (int i = 0; i <= series.bounds.length; i++) {
+                    cumulative += series.buckets.get(i);
+                    String le = i < series.bounds.length ? number(series.bounds[i]) : "+Inf";
+                    out.append(family.name()).append("_bucket").append(labels(series.labels, le)).append(' ')
+                            .append(cumulative).append('\n');
+                }
+                out.append(family.name()).append("_sum").append(labels(series.labels, null)).append(' ')
+                        .append(number(series.sum.sum())).append('\n');
+                out.append(family.name()).append("_count").append(labels(series.labels, null)).append(' ')
+                        .append(series.count.sum()).append('\n');
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * @return Снимок в JSON: для каждой серии количество, сумма, максимум и оценки перцентилей.
+     */
+    public String toJson() {
+        JsonObject root = new JsonObject();
+        root.addProperty("timestamp", System.currentTimeMillis());
+        JsonArray metrics = new JsonArray();
+        for (Family family : new TreeMap<>(families).values()) {
+            for (Series series : new TreeMap<>(family.series()).values()) {
+                JsonObject item = new JsonObject();
+                item.addProperty("name", family.name());
+                item.addProperty("type", family.type());
+                JsonObject labels = new JsonObject();
+                for (int i = 0; i + 1 < series.labels.length; i += 2) {
+                    labels.addProperty(series.labels[i], series.labels[i + 1]);
+                }
+                item.add("labels", labels);
+                item.addProperty("count", series.count.sum());
+                if (series.buckets != null) {
+                    item.addProperty("sum", series.sum.sum());
+                    item.addProperty("max", series.max());
+                    item.addProperty("p50", series.percentile(50));
+                    item.addProperty("p90", series.percentile(90));
+                    item.addProperty("p99", series.percentile(99));
+                }
+                metrics.add(item);
+            }
+        }
+        root.add("metrics", metrics);
+        return new GsonBuilder().setPrettyPrinting().create().toJson(root);
+    }
+
+    private static String labels(String[] pairs, String le) {
+        if (pairs.length == 0 && le == null) {
+            return "";
+        }
+        StringBuilder out = new StringBuilder("{");
+        for (int i = 0; i + 1 < pairs.length; i += 2) {
+            if (out.length() > 1) {
+                out.append(',');
+            }
+            out.append(pairs[i]).append("=\"").append(pairs[i + 1].replace("\\", "\\\\").replace("\"", "\\\"")
+                    .replace("\n", "\\n")).append('"');
+        }
+        if (le != null) {
+            out.append(out.length() > 1 ? "," : "").append("le=\"").append(le).append('"');
+        }
+        return out.append('}').toString();
+    }
+
+    private static String number(double value) {
+        return value == Math.rint(value) && Math.abs(value) < 1e15
+                ? String.valueOf((long) value)
+                : Double.toString(value);
+    }
+
+    /**
+     * Записывает снимок в файл атомарно (через временный файл), чтобы сборщик не прочитал его наполовину.
+     * Формат определяется расширением: .json — JSON, иначе Prometheus.
+     * Выгрузки идут по очереди: периодическая и завершающая пишут один временный файл, а последний
+     * снимок не должен затереться более старым.
+     */
+    public synchronized void writeTo(Path file) throws IOException {
+        String content = file.toString().endsWith(".json") ? toJson() : toPrometheus();
+        Path absolute = file.toAbsolutePath();
+        Files.createDirectories(absolute.getParent());
+        Path temp = absolute.resolveSibling(absolute.getFileName() + ".tmp");
+        Files.writeString(temp, content);
+        Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Включает выгрузку по настройкам секции metrics: снимок пишется при завершении программы
+     * и, если задан metrics.interval-seconds, периодически.
+     */
+    public static synchronized void configure(ConfigOptions options) {
+        String file = options.getString("metrics.file", null);
+        if (!options.getBoolean("metrics.enabled", false) || file == null || exporting) {
+            return;
+        }
+        exporting = true;
+        Path path = Path.of(file);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> export(path), "metrics-final"));
+        long interval = options.getLong("metrics.interval-seconds", 0);
+        if (interval > 0) {
+            Thread.ofPlatform().daemon().name("metrics-export").start(() -> {
+                try {
+                    while (true) {
+                        Thread.sleep(interval * 1000);
+                        export(path);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+    }
+
+    private static void export(Path path) {
+        try {
+            SHARED.writeTo(path);
+        } catch (IOException e) {
+            System.err.println("[Предупреждение] Не удалось записать метрики в " + path + ": " + e.getMessage());
+        }
+    }
+}
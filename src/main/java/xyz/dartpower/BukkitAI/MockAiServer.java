@@ -0,0 +1,564 @@
+package xyz.dartpower.BukkitAI;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Локальный OpenAI-совместимый сервер (POST .../chat/completions) для нагрузочного тестирования
+ * без обращения к настоящим провайдерам.
+ * <p>
+ * Поддерживает обычные и потоковые (SSE) ответы, задержку до ответа, время до первого токена,
+ * скорость генерации в токенах в секунду, а также случайные ошибки 5xx и 429 с Retry-After.
+ * Тексты ответов берутся из журнала взаимодействий (docs/), если в нём есть записи.
+ * <p>
+ * Для проверки режима --batch-api сервер также принимает файлы (/files) и пакеты (/batches) Batch API:
+ * пакет обрабатывается в фоне построчно, ответы и ошибки складываются в файлы результатов.
+ */
+public class MockAiServer implements AutoCloseable {
+
+    // Примерное количество символов в одном токене
+    private static final int CHARS_PER_TOKEN = 4;
+    // Минимальный интервал между отправками фрагментов потока
+    private static final long MIN_FLUSH_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private static final String FALLBACK_RESPONSE = """
+            ```xml
+            <project>
+                <modelVersion>4.0.0</modelVersion>
+                <groupId>com.example</groupId>
+                <artifactId>MockPlugin</artifactId>
+                <version>1.0.0</version>
+            </project>
+            ```
+
+            ```yaml
+            name: MockPlugin
+            version: 1.0.0
+            main: com.example.mock.MockPlugin
+            ```
+
+            ```java
+            package com.example.mock;
+
+            import org.bukkit.plugin.java.JavaPlugin;
+
+            public class MockPlugin extends JavaPlugin {
+
+                @Override
+                public void onEnable() {
+                    getLogger().info("MockPlugin enabled");
+                }
+            }
+            ```
+            """;
+
+    /**
+     * Параметры сервера (секция "mock" config.yaml).
+     * @param errorRate Доля запросов, на которые сервер отвечает ошибкой 500.
+     * @param rateLimitRate Доля запросов, на которые сервер отвечает 429.
+     * @param replayDir Каталог журнала, из которого берутся ответы; null — всегда встроенный ответ.
+     * @param batchLimit Сколько запросов пакета обработать, прежде чем пакет "истечёт" (expired); 0 — все.
+     */
+    public record Settings(String host, int port, long latencyMs, long ttftMs, double tokensPerSecond,
+                           double errorRate, double rateLimitRate, int retryAfterSeconds, Path replayDir,
+                           int batchLimit) {
+
+        public static Settings fromOptions(ConfigOptions options) {
+            String replay = options.getString("mock.replay-dir", options.getString("log.dir", "docs"));
+            return new Settings(
+                    options.getString("mock.host", "127.0.0.1"),
+                    options.getInt("mock.port", 8089),
+                    options.getLong("mock.latency-ms", 50),
+                    options.getLong("mock.ttft-ms", 200),
+                    options.getDouble("mock.tokens-per-second", 200),
+                    options.getDouble("mock.error-rate", 0),
+                    options.getDouble("mock.rate-limit-rate", 0),
+                    options.getInt("mock.retry-after-seconds", 1),
+                    replay.isBlank() || "none".equalsIgnoreCase(replay) ? null : Path.of(replay),
+                    Math.max(0, options.getInt("mock.batch-limit", 0))
+            );
+        }
+    }
+
+    private final Settings settings;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final List<String> responses;
+    private final Map<String, String> responsesByPrompt;
+    private final AtomicLong requestCounter = new AtomicLong();
+    // Batch API: загруженные и созданные файлы (id -> содержимое) и пакеты (id -> объект пакета)
+    private final Map<String, byte[]> files = new ConcurrentHashMap<>();
+    private final Map<String, JsonObject> batches = new ConcurrentHashMap<>();
+
+    public MockAiServer(Settings settings) throws IOException {
+        this.settings = settings;
+        this.responses = new ArrayList<>();
+        this.responsesByPrompt = new HashMap<>();
+        loadReplay();
+
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        this.server = HttpServer.create(new InetSocketAddress(settings.host(), settings.port()), 1024);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+    }
+
+    public void start() {
+        server.start();
+        System.out.println("-> Тестовый сервер запущен: " + baseUrl() + " (ответов для воспроизведения: "
+                + responses.size() + ")");
+    }
+
+    /**
+     * @return Адрес для настройки base-url клиента OpenAI.
+     */
+    public String baseUrl() {
+        InetSocketAddress address = server.getAddress();
+        return "http://" + address.getHostString() + ":" + address.getPort() + "/v1";
+    }
+
+    public long requestCount() {
+        return requestCounter.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    // --- Воспроизведение записанных ответов ---
+
+    private void loadReplay() throws IOException {
+        if (settings.replayDir() != null && Files.isDirectory(settings.replayDir())) {
+            InteractionLog.read(settings.replayDir(), record -> {
+                String content = extractContent(record.responseText());
+                if (content != null) {
+                    responses.add(content);
+                    responsesByPrompt.putIfAbsent(record.prompt(), content);
+                }
+                return true;
+            });
+        }
+        if (responses.isEmpty()) {
+            responses.add(FALLBACK_RESPONSE);
+        }
+    }
+
+    /**
+     * В журнале хранится либо полное тело ответа API, либо уже собранный текст потокового ответа.
+     * @return Текст ответа модели или null для записей с ошибками и пустых ответов.
+     */
+    static String extractContent(String recorded) {
+        String trimmed = recorded.trim();
+        if (trimmed.isEmpty()) {
+            return null;
+        }
+        if (!trimmed.startsWith("{")) {
+            return recorded;
+        }
+        try {
+            JsonObject body = JsonParser.parseString(trimmed).getAsJsonObject();
+            if (body.has("error")) {
+                return null;
+            }
+            return Completion.fromResponse(body).content();
+        } catch (RuntimeException | IOException e) {
+            return recorded;
+        }
+    }
+
+    private String pickResponse(JsonObject request, long number) {
+        JsonArray messages = request.has("messages") ? request.getAsJsonArray("messages") : new JsonArray();
+        for (JsonElement message : messages) {
+            JsonElement content = message.getAsJsonObject().get("content");
+            if (content == null || content.isJsonNull()) {
+                continue;
+            }
+            // В журнале хранится исходный текст пользователя, без префикса запроса
+            String text = content.getAsString();
+            if (text.startsWith(ChatRequest.CODE_USER_PREFIX)) {
+                text = text.substring(ChatRequest.CODE_USER_PREFIX.length());
+            }
+            String recorded = responsesByPrompt.get(text);
+            if (recorded != null) {
+                return recorded;
+            }
+        }
+        return responses.get((int) (number % responses.size()));
+    }
+
+    // --- Обработка запросов ---
+
+    private void handle(HttpExchange exchange) throws IOException {
+        long number = requestCounter.getAndIncrement();
+        try (exchange) {
+            byte[] body;
+            try (InputStream in = exchange.getRequestBody()) {
+                body = in.readAllBytes();
+            }
+            String path = exchange.getRequestURI().getPath();
+            if (path.contains("/files") || path.contains("/batches")) {
+                handleBatchApi(exchange, path, body);
+                return;
+            }
+            if (!"POST".equals(exchange.getRequestMethod()) || !path.endsWith("/chat/completions")) {
+                sendJson(exchange, 404, error("Not found: " + exchange.getRequestURI().getPath(), "invalid_request_error"));
+                return;
+            }
+
+            JsonObject request;
+            try {
+                request = JsonParser.parseString(new String(body, StandardCharsets.UTF_8)).getAsJsonObject();
+            } catch (RuntimeException e) {
+                sendJson(exchange, 400, error("Invalid JSON: " + e.getMessage(), "invalid_request_error"));
+                return;
+            }
+
+            sleepMillis(settings.latencyMs());
+            double roll = ThreadLocalRandom.current().nextDouble();
+            if (roll < settings.rateLimitRate()) {
+                exchange.getResponseHeaders().add("Retry-After", String.valueOf(settings.retryAfterSeconds()));
+                exchange.getResponseHeaders().add("x-ratelimit-remaining-requests", "0");
+                sendJson(exchange, 429, error("Rate limit exceeded (injected)", "rate_limit_exceeded"));
+                return;
+            }
+            if (roll < settings.rateLimitRate() + settings.errorRate()) {
+                sendJson(exchange, 500, error("Internal server error (injected)", "server_error"));
+                return;
+            }
+
+            String model = request.has("model") ? request.get("model").getAsString() : "mock-model";
+            String content = pickResponse(request, number);
+            boolean stream = request.has("stream") && request.get("stream").getAsBoolean();
+            if (stream) {
+                streamResponse(exchange, model, content);
+            } else {
+                sleepMillis(settings.ttftMs());
+                sleepNanos(generationNanos(tokenCount(content)));
+                sendJson(exchange, 200, completion(model, content));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // --- Batch API ---
+
+    private void handleBatchApi(HttpExchange exchange, String path, byte[] body) throws IOException {
+        String method = exchange.getRequestMethod();
+        String[] parts = path.substring(path.indexOf(path.contains("/files") ? "/files" : "/batches") + 1).split("/");
+        if (parts[0].equals("files") && parts.length == 1 && method.equals("POST")) {
+            byte[] content = multipartFile(exchange.getRequestHeaders().getFirst("Content-Type"), body);
+            if (content == null) {
+                sendJson(exchange, 400, error("Expected multipart/form-data with a file part", "invalid_request_error"));
+                return;
+            }
+            String id = "file-mock-" + Long.toHexString(ThreadLocalRandom.current().nextLong());
+            files.put(id, content);
+            JsonObject file = new JsonObject();
+            file.addProperty("id", id);
+            file.addProperty("object", "file");
+            file.addProperty("bytes", content.length);
+            file.addProperty("purpose", "batch");
+            sendJson(exchange, 200, file);
+        } else if (parts[0].equals("files") && parts.length == 3 && parts[2].equals("content") && method.equals("GET")) {
+            byte[] content = files.get(parts[1]);
+            if (content == null) {
+                sendJson(exchange, 404, error("No such file: " + parts[1], "invalid_request_error"));
+                return;
+            }
+            exchange.getResponseHeaders().add("Content-Type", "application/jsonl");
+            exchange.sendResponseHeaders(200, content.length);
+            exchange.getResponseBody().write(content);
+        } else if (parts[0].equals("batches") && parts.length == 1 && method.equals("POST")) {
+            JsonObject request;
+            try {
+                request = JsonParser.parseString(new String(body, StandardCharsets.UTF_8)).getAsJsonObject();
+            } catch (RuntimeException e) {
+                sendJson(exchange, 400, error("Invalid JSON: " + e.getMessage(), "invalid_request_error"));
+                return;
+            }
+            String inputFileId = request.has("input_file_id") ? request.get("input_file_id").getAsString() : "";
+            byte[] input = files.get(inputFileId);
+            if (input == null) {
+                sendJson(exchange, 400, error("No such file: " + inputFileId, "invalid_request_error"));
+                return;
+            }
+            String id = "batch_mock_" + Long.toHexString(ThreadLocalRandom.current().nextLong());
+            JsonObject batch = new JsonObject();
+            batch.addProperty("id", id);
+            batch.addProperty("object", "batch");
+            batch.addProperty("endpoint", "/v1/chat/completions");
+            batch.addProperty("input_file_id", inputFileId);
+            batch.addProperty("status", "validating");
+            batch.addProperty("created_at", System.currentTimeMillis() / 1000);
+            batch.add("request_counts", requestCounts(0, 0, 0));
+            batches.put(id, batch);
+            executor.execute(() -> processBatch(id, new String(input, StandardCharsets.UTF_8)));
+            sendJson(exchange, 200, snapshot(batch));
+        } else if (parts[0].equals("batches") && parts.length == 2 && method.equals("GET")) {
+            JsonObject batch = batches.get(parts[1]);
+            if (batch == null) {
+                sendJson(exchange, 404, error("No such batch: " + parts[1], "invalid_request_error"));
+                return;
+            }
+            sendJson(exchange, 200, snapshot(batch));
+        } else {
+            sendJson(exchange, 404, error("Not found: " + path, "invalid_request_error"));
+        }
+    }
+
+    /**
+     * Обрабатывает пакет построчно: каждая строка — запрос к chat/completions, ответ попадает в файл
+     * результатов, а внесённая ошибка (error-rate) — в файл ошибок. С mock.batch-limit пакет истекает,
+     * обработав только часть строк, как настоящий пакет, не уложившийся в completion_window.
+     */
+    private void processBatch(String id, String input) {
+        JsonObject batch = batches.get(id);
+        List<String> lines = input.lines().filter(line -> !line.isBlank()).toList();
+        StringBuilder output = new StringBuilder();
+        StringBuilder errors = new StringBuilder();
+        int completed = 0;
+        int failed = 0;
+        try {
+            sleepMillis(settings.latencyMs());
+            update(batch, "in_progress", requestCounts(lines.size(), 0, 0));
+            for (String text : lines) {
+                if (settings.batchLimit() > 0 && completed + failed >= settings.batchLimit()) {
+                    break;
+                }
+                JsonObject line = JsonParser.parseString(text).getAsJsonObject();
+                JsonObject request = line.getAsJsonObject("body");
+                JsonObject response = new JsonObject();
+                JsonObject result = new JsonObject();
+                result.addProperty("id", "batch_req_" + Long.toHexString(ThreadLocalRandom.current().nextLong()));
+                result.add("custom_id", line.get("custom_id"));
+                if (ThreadLocalRandom.current().nextDouble() < settings.errorRate()) {
+                    response.addProperty("status_code", 500);
+                    response.add("body", error("Internal server error (injected)", "server_error"));
+                    result.add("response", response);
+                    errors.append(result).append('\n');
+                    failed++;
+                } else {
+                    String model = request.has("model") ? request.get("model").getAsString() : "mock-model";
+                    String content = pickResponse(request, requestCounter.getAndIncrement());
+                    sleepNanos(generationNanos(tokenCount(content)) / Math.max(1, lines.size()));
+                    response.addProperty("status_code", 200);
+                    response.add("body", completion(model, content));
+                    result.add("response", response);
+                    output.append(result).append('\n');
+                    completed++;
+                }
+                update(batch, null, requestCounts(lines.size(), completed, failed));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            System.out.println("[mock] Ошибка обработки пакета " + id + ": " + e.getMessage());
+        }
+        synchronized (batch) {
+            if (!output.isEmpty()) {
+                String fileId = "file-mock-" + Long.toHexString(ThreadLocalRandom.current().nextLong());
+                files.put(fileId, output.toString().getBytes(StandardCharsets.UTF_8));
+                batch.addProperty("output_file_id", fileId);
+            }
+            if (!errors.isEmpty()) {
+                String fileId = "file-mock-" + Long.toHexString(ThreadLocalRandom.current().nextLong());
+                files.put(fileId, errors.toString().getBytes(StandardCharsets.UTF_8));
+                batch.addProperty("error_file_id", fileId);
+            }
+            batch.addProperty("status", completed + failed < lines.size() ? "expired" : "completed");
+        }
+    }
+
+    private static void update(JsonObject batch, String status, JsonObject counts) {
+        synchronized (batch) {
+            if (status != null) {
+                batch.addProperty("status", status);
+            }
+            batch.add("request_counts", counts);
+        }
+    }
+
+    private static JsonObject snapshot(JsonObject batch) {
+        synchronized (batch) {
+            return batch.deepCopy();
+        }
+    }
+
+    private static JsonObject requestCounts(int total, int completed, int failed) {
+        JsonObject counts = new JsonObject();
+        counts.addProperty("total", total);
+        counts.addProperty("completed", completed);
+        counts.addProperty("failed", failed);
+        return counts;
+    }
+
+    /**
+     * Достаёт содержимое части "file" из тела multipart/form-data.
+     * @return Байты файла или null, если такой части нет.
+     */
+    private static byte[] multipartFile(String contentType, byte[] body) {
+        int at = contentType != null ? contentType.indexOf("boundary=") : -1;
+        if (at < 0) {
+            return null;
+        }
+        // ISO-8859-1 переводит байты в символы один к одному, поэтому смещения совпадают
+        String text = new String(body, StandardCharsets.ISO_8859_1);
+        String delimiter = "--" + contentType.substring(at + "boundary=".length()).replace("\"", "");
+        for (String part : text.split(Pattern.quote(delimiter))) {
+            int headerEnd = part.indexOf("\r\n\r\n");
+            if (headerEnd < 0 || !part.substring(0, headerEnd).contains("name=\"file\"")) {
+                continue;
+            }
+            String content = part.substring(headerEnd + 4);
+            if (content.endsWith("\r\n")) {
+                content = content.substring(0, content.length() - 2);
+            }
+            return content.getBytes(StandardCharsets.ISO_8859_1);
+        }
+        return null;
+    }
+
+    private void streamResponse(HttpExchange exchange, String model, String content) throws IOException, InterruptedException {
+        exchange.getResponseHeaders().add("Content-Type", "text/event-stream; charset=utf-8");
+        exchange.getResponseHeaders().add("Cache-Control", "no-cache");
+        exchange.sendResponseHeaders(200, 0);
+        sleepMillis(settings.ttftMs());
+
+        OutputStream out = exchange.getResponseBody();
+        int tokens = tokenCount(content);
+        long start = System.nanoTime();
+        int sent = 0;
+        while (sent < tokens) {
+            // Отправляем все токены, которые к этому моменту "сгенерированы" при заданной скорости
+            long elapsed = System.nanoTime() - start;
+            int due = settings.tokensPerSecond() <= 0
+                    ? tokens
+                    : (int) Math.min(tokens, Math.max(sent + 1, (long) (elapsed / 1e9 * settings.tokensPerSecond()) + 1));
+            StringBuilder frames = new StringBuilder();
+            for (; sent < due; sent++) {
+                int from = sent * CHARS_PER_TOKEN;
+                String piece = content.substring(from, Math.min(content.length(), from + CHARS_PER_TOKEN));
+                JsonObject delta = new JsonObject();
+                delta.addProperty("content", piece);
+                frames.append("data: ").append(chunk(model, delta, null)).append("\n\n");
+            }
+            out.write(frames.toString().getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            if (sent < tokens) {
+                long nextDue = start + generationNanos(sent);
+                sleepNanos(Math.max(MIN_FLUSH_NANOS, nextDue - System.nanoTime()));
+            }
+        }
+        JsonObject finalChunk = chunk(model, new JsonObject(), "stop");
+        finalChunk.add("usage", usage(content));
+        out.write(("data: " + finalChunk + "\n\ndata: " + SseReader.DONE + "\n\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private long generationNanos(int tokens) {
+        return settings.tokensPerSecond() <= 0 ? 0 : (long) (tokens / settings.tokensPerSecond() * 1e9);
+    }
+
+    private static int tokenCount(String content) {
+        return (content.length() + CHARS_PER_TOKEN - 1) / CHARS_PER_TOKEN;
+    }
+
+    private static JsonObject completion(String model, String content) {
+        JsonObject message = new JsonObject();
+        message.addProperty("role", "assistant");
+        message.addProperty("content", content);
+        JsonObject choice = new JsonObject();
+        choice.addProperty("index", 0);
+        choice.add("message", message);
+        choice.addProperty("finish_reason", "stop");
+        JsonArray choices = new JsonArray();
+        choices.add(choice);
+
+        JsonObject body = header(model, "chat.completion");
+        body.add("choices", choices);
+        body.add("usage", usage(content));
+        return body;
+    }
+
+    private static JsonObject chunk(String model, JsonObject delta, String finishReason) {
+        JsonObject choice = new JsonObject();
+        choice.addProperty("index", 0);
+        choice.add("delta", delta);
+        choice.addProperty("finish_reason", finishReason);
+        JsonArray choices = new JsonArray();
+        choices.add(choice);
+
+        JsonObject body = header(model, "chat.completion.chunk");
+        body.add("choices", choices);
+        return body;
+    }
+
+    private static JsonObject header(String model, String object) {
+        JsonObject body = new JsonObject();
+        body.addProperty("id", "chatcmpl-mock-" + Long.toHexString(ThreadLocalRandom.current().nextLong()));
+        body.addProperty("object", object);
+        body.addProperty("created", System.currentTimeMillis() / 1000);
+        body.addProperty("model", model);
+        return body;
+    }
+
+    private static JsonObject usage(String content) {
+        JsonObject usage = new JsonObject();
+        usage.addProperty("prompt_tokens", 0);
+        usage.addProperty("completion_tokens", tokenCount(content));
+        return usage;
+    }
+
+    private static JsonObject error(String message, String type) {
+        JsonObject error = new JsonObject();
+        error.addProperty("message", message);
+        error.addProperty("type", type);
+        JsonObject body = new JsonObject();
+        body.add("error", error);
+        return body;
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, JsonObject body) throws IOException {
+        byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    private static void sleepMillis(long millis) throws InterruptedException {
+        if (millis > 0) {
+            Thread.sleep(millis);
+        }
+    }
+
+    private static void sleepNanos(long nanos) throws InterruptedException {
+        if (nanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        }
+    }
+}
@@ -1,67 +1,149 @@
 package xyz.dartpower.BukkitAI;
 
+import com.google.gson.GsonBuilder;
+
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 
 public class PluginGenerator {
 
+    // Числовые параметры --mock-server (и --mock-* у --load-test)
+    private static final Set<String> MOCK_INTEGER_FLAGS = Set.of("port", "latency-ms", "ttft-ms", "retry-after-seconds", "batch-limit");
+    private static final Set<String> MOCK_DECIMAL_FLAGS = Set.of("tokens-per-second", "error-rate", "rate-limit-rate");
+    // Числовые параметры --serve
+    private static final Set<String> SERVE_INTEGER_FLAGS = Set.of("port", "workers", "reserved-interactive-workers",
+            "queue-limit.interactive", "queue-limit.bulk", "max-finished-jobs");
+
+    // Флаги командной строки, переопределяющие настройки config.yaml
+    private static boolean noCache;
+    private static boolean refreshCache;
+    private static boolean parallel;
+    private static boolean verify;
+    // Формат вывода из флагов --zip/--jar или null, если берётся из output.format
+    private static String outputFormat;
+    // Сколько ждать завершения отменённых генераций при остановке программы
+    private static final Duration SHUTDOWN_GRACE = Duration.ofSeconds(10);
+
     public static void main(String[] args) {
-		System.out.println("Default Charset: " + java.nio.charset.Charset.defaultCharset());
-		System.out.println("File Encoding: " + System.getProperty("file.encoding"));
+        args = parseGlobalFlags(args);
+        // Ctrl+C: выполняющиеся запросы отменяются, а недописанные проекты не записываются
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            if (!Deadline.cancelAll("программа остановлена", SHUTDOWN_GRACE)) {
+                System.err.println("Не все генерации успели завершиться до остановки программы.");
+            }
+        }, "deadline-shutdown"));
+        if (args.length > 0 && args[0].equals(Startup.PROBE_FLAG)) {
+            System.exit(Startup.probe());
+        }
+        if (args.length > 0 && args[0].equals("--cds")) {
+            System.exit(Startup.createCdsArchive(args.length > 1 ? args[1] : null));
+        }
+        if (args.length > 0 && args[0].equals("--batch")) {
+            System.exit(runBatch(args));
+        }
+        if (args.length > 0 && args[0].equals("--log")) {
+            System.exit(runLogBrowser(args));
+        }
+        if (args.length > 0 && args[0].equals("--history")) {
+            System.exit(runHistory(args));
+        }
+        if (args.length > 0 && args[0].equals("--mock-server")) {
+            System.exit(runMockServer(args));
+        }
+        if (args.length > 0 && args[0].equals("--load-test")) {
+            System.exit(runLoadTest(args));
+        }
+        if (args.length > 0 && args[0].equals("--validate")) {
+            System.exit(runValidate(args));
+        }
+        if (args.length > 0 && args[0].equals("--serve")) {
+            System.exit(runServer(args));
+        }
 
-        Scanner scanner = new Scanner(System.in);
+        // Сохранённые настройки читаются в фоне, пока выводится заголовок
         ConfigManager configManager = new ConfigManager();
+        CompletableFuture<ConfigManager.ConfigData> savedConfig = Startup.async("config.yaml",
+                () -> configManager.configExists() ? configManager.loadConfig() : null);
+        Scanner scanner = new Scanner(System.in);
 
         System.out.println("=====================================");
         System.out.println("  Генератор плагинов для Bukkit");
         System.out.println("  (Поддержка OpenRouter & OpenAI)");
         System.out.println("=====================================");
 
-        ConfigManager.ConfigData config = promptForConfiguration(scanner, configManager);
-
-        System.out.println("\n--- Режим генерации ---");
-        System.out.println("1. Описать плагин самому");
-        System.out.println("2. Удиви меня (идея от ИИ)");
-        System.out.print("Выберите режим (1 или 2): ");
-        String modeChoice = scanner.nextLine().trim();
+        try {
+            ConfigManager.ConfigData config = promptForConfiguration(scanner, configManager, Startup.await(savedConfig));
+            // Клиент (Gson, HttpClient, журнал) создаётся в фоне, пока пользователь описывает плагин
+            CompletableFuture<AiClient> clientFuture = Startup.async("клиент API", () -> {
+                InteractionLog.configure(config.options());
+                Metrics.configure(config.options());
+                Startup.warmUp(config.options());
+                return createClient(config);
+            });
+            CompletableFuture<IdeaIndex> ideasFuture = Startup.async("индекс идей", () -> openIdeaIndex(config.options()));
 
-        String pluginName;
-        String prompt;
+            System.out.println("\n--- Режим генерации ---");
+            System.out.println("1. Описать плагин самому");
+            System.out.println("2. Удиви меня (идея от ИИ)");
+            Startup.mark("первый вопрос");
+            System.out.print("Выберите режим (1 или 2): ");
+            String modeChoice = scanner.nextLine().trim();
 
-        try {
-            AiClient client = createClient(config);
+            String pluginName;
+            String prompt;
+            AiClient client;
 
             if (modeChoice.equals("2")) {
-                // Для случайной идеи используем уникальный идентификатор
-                String ideaId = "RandomIdea_" + System.currentTimeMillis();
-                String aiGeneratedIdea = client.generateRandomPluginIdea(ideaId);
+                client = Startup.await(clientFuture);
+                IdeaIndex ideas = Startup.await(ideasFuture);
+                IdeaChoice choice = requestNewIdea(client, ideas, config.options());
+                String aiGeneratedIdea = choice.idea();
+                if (choice.similar() != null) {
+                    IdeaIndex.Match similar = choice.similar();
+                    System.out.printf("%n-> Все предложенные идеи похожи на уже сгенерированные. Ближайшая (сходство %.0f%%):%n   \"%s\"%n",
+                            similar.similarity() * 100, similar.text());
+                    System.out.println("   Проект: " + Path.of(similar.project()).toAbsolutePath());
+                    System.out.print("Всё равно сгенерировать плагин по последней идее? (y/N): ");
+                    if (!scanner.nextLine().trim().equalsIgnoreCase("y")) {
+                        System.out.println("-> Генерация отменена, используйте существующий проект.");
+                        return;
+                    }
+                }
                 
                 System.out.println("\n-> ИИ сгенерировал идею: \"" + aiGeneratedIdea + "\"");
-                System.out.print("Введите название для этого плагина (или оставьте пустым для случайного): ");
-                String nameInput = scanner.nextLine().trim();
-                
-                if (nameInput.isEmpty()) {
-                    pluginName = "CustomPlugin" + (int)(Math.random() * 1000);
-                } else {
-                    pluginName = nameInput;
-                }
+                pluginName = askPluginName(scanner, "Введите название для этого плагина (или оставьте пустым для случайного): ",
+                        "CustomPlugin" + (int)(Math.random() * 1000));
                 
                 prompt = aiGeneratedIdea;
                 
             } else {
-                System.out.print("\nВведите название плагина (например, MyAwesomePlugin): ");
-                pluginName = scanner.nextLine();
+                pluginName = askPluginName(scanner, "\nВведите название плагина (например, MyAwesomePlugin): ", null);
 
                 System.out.print("Опишите функционал плагина: ");
                 prompt = scanner.nextLine();
+                client = Startup.await(clientFuture);
             }
             scanner.close();
+            Startup.printReport();
 
             System.out.println("\n-> Начинаю генерацию кода...");
-            // Передаем pluginName в метод генерации кода
-            String generatedCode = client.generatePluginCode(prompt, pluginName);
-            ProjectCreator creator = new ProjectCreator(".", pluginName);
-            creator.createProject(generatedCode);
+            ConfigOptions options = generationOptions(config);
+            ProjectCreator creator = new ProjectCreator(ProjectOutput.fromOptions(Path.of("."), options), pluginName);
+            try (Deadline deadline = Deadline.fromOptions(options)) {
+                new PluginPipeline(client, options, deadline).generate(prompt, pluginName, creator);
+            }
+            rememberIdea(Startup.await(ideasFuture), prompt, pluginName);
 
         } catch (IOException | InterruptedException e) {
             System.err.println("\n❌ Произошла ошибка во время генерации.");
@@ -73,13 +155,568 @@ public class PluginGenerator {
         }
     }
 
+    /**
+     * Спрашивает название плагина, пока не будет введено допустимое имя папки проекта.
+     * @param fallback Название для пустого ввода или null, если название обязательно.
+     */
+    private static String askPluginName(Scanner scanner, String question, String fallback) {
+        while (true) {
+            System.out.print(question);
+            String input = scanner.nextLine().trim();
+            if (input.isEmpty() && fallback != null) {
+                return fallback;
+            }
+            try {
+                return ProjectOutput.checkName(input);
+            } catch (IllegalArgumentException e) {
+                System.out.println("   " + e.getMessage());
+            }
+        }
+    }
+
+    // Идея для режима "Удиви меня"; similar — похожая уже сгенерированная, если новых идей получить не удалось
+    private record IdeaChoice(String idea, IdeaIndex.Match similar) {}
+
+    /**
+     * Открывает индекс похожести идей (секция "ideas" config.yaml).
+     * @return Индекс или null, если он отключён или не открылся.
+     */
+    private static IdeaIndex openIdeaIndex(ConfigOptions options) {
+        if (!options.getBoolean("ideas.enabled", true)) {
+            return null;
+        }
+        try {
+            return IdeaIndex.open(Path.of(options.getString("ideas.dir", "cache/ideas")));
+        } catch (IOException e) {
+            System.err.println("   [Предупреждение] Не удалось открыть индекс идей: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Запрашивает случайную идею; идеи, похожие на уже сгенерированные, отклоняются и запрашиваются заново
+     * (не больше ideas.max-attempts раз), причём отклонённые перечисляются в запросе.
+     */
+    private static IdeaChoice requestNewIdea(AiClient client, IdeaIndex ideas, ConfigOptions options)
+            throws IOException, InterruptedException {
+        double threshold = options.getDouble("ideas.threshold", 0.6);
+        int attempts = Math.max(1, options.getInt("ideas.max-attempts", 3));
+        List<String> rejected = new ArrayList<>();
+        String idea = null;
+        IdeaIndex.Match similar = null;
+        for (int attempt = 1; attempt <= attempts; attempt++) {
+            // Для случайной идеи используем уникальный идентификатор
+            try (Deadline deadline = Deadline.fromOptions(options)) {
+                idea = client.generateRandomPluginIdea("RandomIdea_" + System.currentTimeMillis(),
+                        AiClient.RequestOptions.fromOptions(options).withAvoid(rejected).withDeadline(deadline));
+            }
+            similar = ideas != null ? ideas.findSimilar(idea, threshold) : null;
+            if (similar == null) {
+                return new IdeaChoice(idea, null);
+            }
+            System.out.printf("-> Идея \"%s\" похожа на уже сгенерированную для проекта %s (сходство %.0f%%)%s%n",
+                    idea, similar.project(), similar.similarity() * 100, attempt < attempts ? ", запрашиваю другую..." : "");
+            rejected.add(idea);
+        }
+        return new IdeaChoice(idea, similar);
+    }
+
+    private static void rememberIdea(IdeaIndex ideas, String prompt, String pluginName) {
+        if (ideas == null) {
+            return;
+        }
+        try (ideas) {
+            ideas.add(prompt, pluginName);
+        } catch (IOException e) {
+            System.err.println("   [Предупреждение] Не удалось сохранить идею в индекс: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Извлекает общие флаги (--no-cache, --refresh-cache, --parallel, --verify, --zip, --jar, --startup-report)
+     * и возвращает остальные аргументы.
+     */
+    private static String[] parseGlobalFlags(String[] args) {
+        List<String> rest = new ArrayList<>();
+        for (String arg : args) {
+            switch (arg) {
+                case "--no-cache" -> noCache = true;
+                case "--refresh-cache" -> refreshCache = true;
+                case "--parallel" -> parallel = true;
+                case "--verify" -> verify = true;
+                case "--zip" -> outputFormat = "zip";
+                case "--jar" -> outputFormat = "jar";
+                case "--startup-report" -> Startup.enableReport();
+                default -> rest.add(arg);
+            }
+        }
+        return rest.toArray(String[]::new);
+    }
+
+    /**
+     * Пакетный режим: --batch <манифест> [--out <папка>] [--concurrency <N>] [--fresh] [--batch-api]
+     * Проекты записываются папками или, с флагами --zip/--jar (output.format), архивами.
+     * Повторный запуск с той же папкой продолжает прерванную генерацию по журналу; --fresh начинает заново.
+     * С --batch-api запросы отправляются одним пакетом OpenAI Batch API ({@link BatchApiRunner}).
+     */
+    private static int runBatch(String[] args) {
+        if (args.length < 2) {
+            System.err.println("Использование: --batch <манифест> [--out <папка>] [--concurrency <N>] [--fresh] [--batch-api]");
+            return 2;
+        }
+        Path manifest = Path.of(args[1]);
+        Path outputDir = Path.of(".");
+        Integer concurrency = null;
+        boolean fresh = false;
+        boolean batchApi = false;
+        for (int i = 2; i < args.length; i++) {
+            boolean flag = args[i].equals("--fresh") || args[i].equals("--batch-api");
+            if (!flag && i + 1 >= args.length) {
+                System.err.println("Не указано значение параметра " + args[i]);
+                return 2;
+            }
+            switch (args[i]) {
+                case "--fresh" -> fresh = true;
+                case "--batch-api" -> batchApi = true;
+                case "--out" -> outputDir = Path.of(args[++i]);
+                case "--concurrency" -> {
+                    try {
+                        concurrency = Integer.parseInt(args[++i]);
+                    } catch (NumberFormatException e) {
+                        System.err.println("Параметр --concurrency должен быть целым числом: " + args[i]);
+                        System.err.println("Использование: --batch <манифест> [--out <папка>] [--concurrency <N>] [--fresh] [--batch-api]");
+                        return 2;
+                    }
+                }
+                default -> {
+                    System.err.println("Неизвестный параметр: " + args[i]);
+                    return 2;
+                }
+            }
+        }
+
+        ConfigManager configManager = new ConfigManager();
+        ConfigManager.ConfigData config = configManager.configExists() ? configManager.loadConfig() : null;
+        if (config == null) {
+            System.err.println("Для пакетного режима нужен корректный config.yaml. Запустите программу без параметров для настройки.");
+            return 2;
+        }
+
+        InteractionLog.configure(config.options());
+        Metrics.configure(config.options());
+        try {
+            BatchRunner runner = new BatchRunner(config, outputDir, concurrency, fresh);
+            int failures = batchApi
+                    ? new BatchApiRunner(config, outputDir, fresh).run(runner.readManifest(manifest))
+                    : runner.run(runner.readManifest(manifest));
+            return failures == 0 ? 0 : 1;
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Ошибка пакетной генерации: " + e.getMessage());
+            return 2;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("Пакетная генерация прервана.");
+            return 1;
+        }
+    }
+
+    /**
+     * Значение параметра командной строки для настроек. Числовые параметры разбираются сразу:
+     * иначе ошибка в числе превратилась бы в значение по умолчанию с предупреждением про config.yaml.
+     * @throws NumberFormatException Если числовой параметр задан не числом.
+     */
+    private static Object flagValue(String key, String value, Set<String> integers, Set<String> decimals) {
+        if (integers.contains(key)) {
+            return Integer.parseInt(value);
+        }
+        if (decimals.contains(key)) {
+            return Double.parseDouble(value);
+        }
+        return value;
+    }
+
+    /**
+     * Тестовый OpenAI-совместимый сервер: --mock-server [--port N] [--latency-ms N] [--ttft-ms N]
+     * [--tokens-per-second N] [--error-rate X] [--rate-limit-rate X] [--replay-dir <папка>].
+     * Параметры переопределяют секцию "mock" config.yaml.
+     */
+    private static int runMockServer(String[] args) {
+        ConfigManager.ConfigData config = loadOptionalConfig();
+        ConfigOptions options = config != null ? config.options() : ConfigOptions.EMPTY;
+        String usage = "Использование: --mock-server [--port N] [--latency-ms N] [--ttft-ms N] [--tokens-per-second N]"
+                + " [--error-rate X] [--rate-limit-rate X] [--replay-dir <папка>]";
+        for (int i = 1; i < args.length; i += 2) {
+            String arg = args[i];
+            if (!arg.startsWith("--")) {
+                System.err.println("Неизвестный параметр: " + arg);
+                System.err.println(usage);
+                return 2;
+            }
+            if (i + 1 >= args.length) {
+                System.err.println("Не указано значение параметра: " + arg);
+                System.err.println(usage);
+                return 2;
+            }
+            String key = arg.substring(2);
+            try {
+                options = options.with("mock." + key, flagValue(key, args[i + 1], MOCK_INTEGER_FLAGS, MOCK_DECIMAL_FLAGS));
+            } catch (NumberFormatException e) {
+                System.err.println("Параметр " + arg + " должен быть " + (MOCK_DECIMAL_FLAGS.contains(key) ? "числом" : "целым числом")
+                        + ": " + args[i + 1]);
+                System.err.println(usage);
+                return 2;
+            }
+        }
+        try {
+            MockAiServer server = new MockAiServer(MockAiServer.Settings.fromOptions(options));
+            server.start();
+            System.out.println("Укажите этот адрес как base-url провайдера OpenAI. Для остановки нажмите Ctrl+C.");
+            Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+            Thread.currentThread().join();
+            return 0;
+        } catch (IOException e) {
+            System.err.println("Не удалось запустить тестовый сервер: " + e.getMessage());
+            return 1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 0;
+        }
+    }
+
+    /**
+     * Нагрузочный прогон: --load-test [--requests N] [--concurrency N] [--stream] [--base-url URL]
+     * [--mock-<параметр> значение]. Без --base-url поднимается встроенный тестовый сервер.
+     */
+    private static int runLoadTest(String[] args) {
+        ConfigManager.ConfigData config = loadOptionalConfig();
+        ConfigOptions options = config != null ? config.options() : ConfigOptions.EMPTY;
+        int requests = 200;
+        int concurrency = 16;
+        boolean stream = false;
+        String baseUrl = null;
+        for (int i = 1; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("--stream")) {
+                stream = true;
+                continue;
+            }
+            if (i + 1 >= args.length) {
+                System.err.println("Не указано значение параметра: " + arg);
+                return 2;
+            }
+            String value = args[++i];
+            try {
+                switch (arg) {
+                    case "--requests" -> requests = Integer.parseInt(value);
+                    case "--concurrency" -> concurrency = Integer.parseInt(value);
+                    case "--base-url" -> baseUrl = value;
+                    default -> {
+                        if (!arg.startsWith("--mock-")) {
+                            System.err.println("Неизвестный параметр: " + arg);
+                            return 2;
+                        }
+                        String key = arg.substring("--mock-".length());
+                        options = options.with("mock." + key, flagValue(key, value, MOCK_INTEGER_FLAGS, MOCK_DECIMAL_FLAGS));
+                    }
+                }
+            } catch (NumberFormatException e) {
+                boolean decimal = arg.startsWith("--mock-") && MOCK_DECIMAL_FLAGS.contains(arg.substring("--mock-".length()));
+                System.err.println("Параметр " + arg + " должен быть " + (decimal ? "числом" : "целым числом") + ": " + value);
+                System.err.println("Использование: --load-test [--requests N] [--concurrency N] [--stream] [--base-url URL]"
+                        + " [--mock-<параметр> значение]");
+                return 2;
+            }
+        }
+
+        MockAiServer server = null;
+        try {
+            if (baseUrl == null) {
+                // Встроенный сервер слушает свободный порт, если порт не задан явно
+                if (options.get("mock.port") == null) {
+                    options = options.with("mock.port", 0);
+                }
+                server = new MockAiServer(MockAiServer.Settings.fromOptions(options));
+                server.start();
+                baseUrl = server.baseUrl();
+            }
+            LoadDriver driver = new LoadDriver(config, baseUrl, requests, concurrency, stream);
+            return driver.run() == 0 ? 0 : 1;
+        } catch (IOException e) {
+            System.err.println("Ошибка нагрузочного прогона: " + e.getMessage());
+            return 1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 1;
+        } finally {
+            if (server != null) {
+                server.close();
+            }
+        }
+    }
+
+    /**
+     * Режим сервера: --serve [--port N] [--workers N] [--host адрес] [--output-dir папка].
+     * Параметры переопределяют секцию "serve" config.yaml; нужен настроенный провайдер.
+     */
+    private static int runServer(String[] args) {
+        ConfigManager.ConfigData config = loadOptionalConfig();
+        if (config == null) {
+            System.err.println("Файл config.yaml не найден. Запустите программу без параметров, чтобы настроить провайдера.");
+            return 2;
+        }
+        ConfigOptions options = config.options();
+        String usage = "Использование: --serve [--port N] [--workers N] [--host адрес] [--output-dir папка]";
+        for (int i = 1; i < args.length; i += 2) {
+            String arg = args[i];
+            if (!arg.startsWith("--")) {
+                System.err.println("Неизвестный параметр: " + arg);
+                System.err.println(usage);
+                return 2;
+            }
+            if (i + 1 >= args.length) {
+                System.err.println("Не указано значение параметра: " + arg);
+                System.err.println(usage);
+                return 2;
+            }
+            String key = arg.substring(2);
+            try {
+                options = options.with("serve." + key, flagValue(key, args[i + 1], SERVE_INTEGER_FLAGS, Set.of()));
+            } catch (NumberFormatException e) {
+                System.err.println("Параметр " + arg + " должен быть целым числом: " + args[i + 1]);
+                System.err.println(usage);
+                return 2;
+            }
+        }
+        try {
+            InteractionLog.configure(config.options());
+            Metrics.configure(config.options());
+            Startup.warmUp(config.options());
+            GenerationServer server = new GenerationServer(config, GenerationServer.Settings.fromOptions(options));
+            server.start();
+            System.out.println("Для остановки нажмите Ctrl+C.");
+            Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+            Thread.currentThread().join();
+            return 0;
+        } catch (IOException e) {
+            System.err.println("Не удалось запустить сервер: " + e.getMessage());
+            return 1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 0;
+        }
+    }
+
+    /**
+     * Проверочная компиляция готовых проектов: --validate <папка>... [--threads N] [--json].
+     * Папка — проект (с src/main/java) или каталог с проектами, например результат --batch.
+     */
+    private static int runValidate(String[] args) {
+        ConfigManager.ConfigData config = loadOptionalConfig();
+        ConfigOptions options = config != null ? config.options() : ConfigOptions.EMPTY;
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean json = false;
+        List<Path> projects = new ArrayList<>();
+        try {
+            for (int i = 1; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--json" -> json = true;
+                    case "--threads" -> {
+                        String value = i + 1 < args.length ? args[++i] : "";
+                        try {
+                            threads = Integer.parseInt(value);
+                        } catch (NumberFormatException e) {
+                            System.err.println("Параметр --threads должен быть целым числом: " + value);
+                            System.err.println("Использование: --validate <папка>... [--threads N] [--json]");
+                            return 2;
+                        }
+                    }
+                    default -> {
+                        Path dir = Path.of(args[i]);
+                        if (Files.isDirectory(dir.resolve("src/main/java"))) {
+                            projects.add(dir);
+                        } else {
+                            try (Stream<Path> children = Files.list(dir)) {
+                                children.filter(child -> Files.isDirectory(child.resolve("src/main/java")))
+                                        .sorted().forEach(projects::add);
+                            }
+                        }
+                    }
+                }
+            }
+            if (projects.isEmpty()) {
+                System.err.println("Использование: --validate <папка>... [--threads N] [--json]");
+                System.err.println("Проекты (папки с src/main/java) не найдены.");
+                return 2;
+            }
+
+            CompileValidator validator = CompileValidator.shared(options);
+            long start = System.nanoTime();
+            List<CompileValidator.Result> results = validator.validateAll(projects, threads);
+            long failed = results.stream().filter(result -> !result.success()).count();
+            if (json) {
+                System.out.println(new GsonBuilder().setPrettyPrinting().create().toJson(results));
+            } else {
+                results.forEach(PluginPipeline::printResult);
+                System.out.printf("%nПроверено проектов: %d, с ошибками: %d, время: %.1f с%n",
+                        results.size(), failed, (System.nanoTime() - start) / 1e9);
+            }
+            return failed == 0 ? 0 : 1;
+        } catch (IOException e) {
+            System.err.println("Ошибка проверки: " + e.getMessage());
+            return 2;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 1;
+        }
+    }
+
+    private static ConfigManager.ConfigData loadOptionalConfig() {
+        ConfigManager configManager = new ConfigManager();
+        return configManager.configExists() ? configManager.loadConfig() : null;
+    }
+
+    /**
+     * Просмотр журнала взаимодействий: --log выводит список записей, --log <номер> — запись целиком.
+     */
+    private static int runLogBrowser(String[] args) {
+        ConfigManager configManager = new ConfigManager();
+        ConfigManager.ConfigData config = configManager.configExists() ? configManager.loadConfig() : null;
+        Path dir = Path.of(config != null ? config.options().getString("log.dir", "docs") : "docs");
+        int wanted;
+        try {
+            wanted = args.length > 1 ? Integer.parseInt(args[1].replace("#", "")) : -1;
+        } catch (NumberFormatException e) {
+            System.err.println("Номер записи должен быть целым числом: " + args[1]);
+            System.err.println("Использование: --log (список записей) | --log <номер> (запись целиком)");
+            return 2;
+        }
+        int[] index = {0};
+        DateTimeFormatter format = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+        try {
+            InteractionLog.read(dir, record -> {
+                int current = ++index[0];
+                if (wanted < 0) {
+                    String prompt = record.prompt().replace('\n', ' ');
+                    System.out.printf("%5d  %s  %-24s  %7d байт  %s%n", current,
+                            format.format(Instant.ofEpochMilli(record.timestamp()).atZone(ZoneId.systemDefault())),
+                            record.pluginName(), record.response().length,
+                            prompt.length() > 60 ? prompt.substring(0, 60) + "..." : prompt);
+                    return true;
+                }
+                if (current == wanted) {
+                    System.out.println("Plugin Name: " + record.pluginName());
+                    System.out.println("Timestamp: " + Instant.ofEpochMilli(record.timestamp()));
+                    System.out.println("\n--- PROMPT ---\n" + record.prompt());
+                    System.out.println("\n--- RAW AI RESPONSE ---\n" + record.responseText());
+                    return false;
+                }
+                return true;
+            });
+            return 0;
+        } catch (IOException e) {
+            System.err.println("Ошибка чтения журнала: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    /**
+     * @throws NumberFormatException С сообщением для пользователя, если значение не целое число.
+     */
+    private static int parseIntFlag(String flag, String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new NumberFormatException("Параметр " + flag + " должен быть целым числом: " + value);
+        }
+    }
+
+    /**
+     * Поиск по истории генераций ({@link HistoryIndex}): --history [запрос...] [--limit N] выводит найденные
+     * генерации, --history --restore <номер> [--out <папка>] [--name <имя>] заново записывает проект генерации
+     * из журнала без обращения к модели, --history --rebuild строит индекс заново.
+     * Перед поиском индекс пополняется новыми записями журнала.
+     */
+    private static int runHistory(String[] args) {
+        StringBuilder query = new StringBuilder();
+        int limit = 20;
+        Integer restore = null;
+        Path outputDir = Path.of(".");
+        String name = null;
+        boolean rebuild = false;
+        try {
+            for (int i = 1; i < args.length; i++) {
+                boolean valued = args[i].equals("--limit") || args[i].equals("--restore")
+                        || args[i].equals("--out") || args[i].equals("--name");
+                if (valued && i + 1 >= args.length) {
+                    System.err.println("Не указано значение параметра " + args[i]);
+                    return 2;
+                }
+                String arg = args[i];
+                switch (arg) {
+                    case "--limit" -> limit = parseIntFlag(arg, args[++i]);
+                    case "--restore" -> restore = parseIntFlag(arg, args[++i].replace("#", ""));
+                    case "--out" -> outputDir = Path.of(args[++i]);
+                    case "--name" -> name = args[++i];
+                    case "--rebuild" -> rebuild = true;
+                    default -> query.append(query.isEmpty() ? "" : " ").append(arg);
+                }
+            }
+        } catch (NumberFormatException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Использование: --history [запрос...] [--limit N] | --history --restore <номер> "
+                    + "[--out <папка>] [--name <имя>] | --history --rebuild");
+            return 2;
+        }
+
+        ConfigManager.ConfigData config = loadOptionalConfig();
+        ConfigOptions options = config != null ? generationOptions(config) : ConfigOptions.EMPTY;
+        DateTimeFormatter format = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+        try (HistoryIndex index = HistoryIndex.open(HistoryIndex.Settings.fromOptions(options))) {
+            long start = System.nanoTime();
+            int added = rebuild ? index.rebuild() : index.ingest();
+            if (added > 0 || rebuild) {
+                System.out.printf("-> Проиндексировано записей журнала: %d (%d мс), генераций в индексе: %d%n",
+                        added, (System.nanoTime() - start) / 1_000_000, index.size());
+            }
+
+            if (restore != null) {
+                HistoryIndex.Hit hit = index.describe(restore);
+                if (hit == null) {
+                    System.err.println("Генерация #" + restore + " не найдена в индексе.");
+                    return 1;
+                }
+                ProjectCreator creator = new ProjectCreator(ProjectOutput.fromOptions(outputDir, options),
+                        name != null ? name : hit.pluginName());
+                System.out.println("-> Восстановление генерации #" + hit.id() + " (" + hit.pluginName() + ") из журнала...");
+                index.restore(restore, creator, options);
+                return 0;
+            }
+
+            start = System.nanoTime();
+            List<HistoryIndex.Hit> hits = index.search(query.toString(), limit);
+            double elapsed = (System.nanoTime() - start) / 1e6;
+            for (HistoryIndex.Hit hit : hits) {
+                System.out.printf("#%-5d %s  %-24s  %-20s  записей: %d%s%n", hit.id(),
+                        format.format(Instant.ofEpochMilli(hit.timestamp()).atZone(ZoneId.systemDefault())),
+                        hit.pluginName(), hit.model().isEmpty() ? "-" : hit.model(), hit.records(),
+                        hit.errors() > 0 ? " (с ошибкой: " + hit.errors() + ")" : "");
+                if (!hit.classes().isEmpty()) {
+                    System.out.println("       классы: " + String.join(", ", hit.classes()));
+                }
+                System.out.println("       " + hit.prompt());
+            }
+            System.out.printf("-> Найдено: %d (%.2f мс)%n", hits.size(), elapsed);
+            return 0;
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Ошибка индекса истории: " + e.getMessage());
+            return 1;
+        }
+    }
+
     // ... (остальные методы: promptForConfiguration, createClient, promptForApiKey, promptForModel) ...
     // Они остаются без изменений, просто скопируйте их сюда
-    private static ConfigManager.ConfigData promptForConfiguration(Scanner scanner, ConfigManager configManager) {
-        ConfigManager.ConfigData currentConfig = null;
-        if (configManager.configExists()) {
-            currentConfig = configManager.loadConfig();
-        }
+    private static ConfigManager.ConfigData promptForConfiguration(Scanner scanner, ConfigManager configManager,
+                                                                   ConfigManager.ConfigData currentConfig) {
 
         boolean useSaved = false;
         if (currentConfig != null) {
@@ -133,7 +770,8 @@ public class PluginGenerator {
             oaiBaseUrl = currentConfig.openaiBaseUrl();
         }
         
-        ConfigManager.ConfigData newConfig = new ConfigManager.ConfigData(provider, apiKey, model, baseUrl, orApiKey, orModel, oaiApiKey, oaiModel, oaiBaseUrl);
+        ConfigOptions options = currentConfig != null ? currentConfig.options() : ConfigOptions.EMPTY;
+        ConfigManager.ConfigData newConfig = new ConfigManager.ConfigData(provider, apiKey, model, baseUrl, orApiKey, orModel, oaiApiKey, oaiModel, oaiBaseUrl, options);
 
         try {
             configManager.saveConfig(newConfig);
@@ -146,12 +784,86 @@ public class PluginGenerator {
     }
     
     private static AiClient createClient(ConfigManager.ConfigData config) {
-        if ("openrouter".equals(config.provider())) {
-            return new OpenRouterClient(config.apiKey(), config.model());
-        } else if ("openai".equals(config.provider())) {
-            return new OpenAiClient(config.apiKey(), config.model(), config.baseUrl());
+        return createClient(config, config.provider());
+    }
+
+    /**
+     * Создаёт клиента для указанного провайдера, используя сохранённые для него настройки.
+     */
+    static AiClient createClient(ConfigManager.ConfigData config, String provider) {
+        ConfigOptions options = config.options();
+        if (noCache) {
+            options = options.with("cache.enabled", false);
+        }
+        if (refreshCache) {
+            options = options.with("cache.bypass", true);
+        }
+        RequestScheduler scheduler = RequestScheduler.shared(options);
+        AiClient client = scheduler.schedule(createProviderClient(config, provider));
+
+        if (options.getBoolean("hedge.enabled", false)) {
+            String backup = "openrouter".equals(provider) ? "openai" : "openrouter";
+            if (isProviderConfigured(config, backup)) {
+                client = new HedgingAiClient(client, scheduler.schedule(createProviderClient(config, backup)), options);
+            } else {
+                System.out.println("   [Предупреждение] Хеджирование включено, но провайдер " + backup + " не настроен.");
+            }
+        }
+        // Кэш стоит перед планировщиком: ответ из кэша не расходует лимит запросов
+        client = CachingAiClient.wrap(client, options);
+        // Бюджет — снаружи: max_tokens входит в ключ кэша, а части продолжения кэшируются по отдельности
+        return BudgetingAiClient.wrap(client, options);
+    }
+
+    /**
+     * Настройки генерации с учётом флагов командной строки.
+     */
+    static ConfigOptions generationOptions(ConfigManager.ConfigData config) {
+        ConfigOptions options = config.options();
+        if (parallel) {
+            options = options.with("generation.parallel", true);
+        }
+        if (verify) {
+            options = options.with("validate.enabled", true);
+        }
+        if (outputFormat != null) {
+            options = options.with("output.format", outputFormat);
+        }
+        return options;
+    }
+
+    private static AiClient createProviderClient(ConfigManager.ConfigData config, String provider) {
+        // Настройки активного провайдера берём из основных полей
+        boolean active = provider.equals(config.provider());
+        // Все клиенты используют общий пул соединений
+        HttpTransport transport = HttpTransport.shared(config.options());
+        if ("openrouter".equals(provider)) {
+            return new OpenRouterClient(
+                    active ? config.apiKey() : config.openrouterApiKey(),
+                    active ? config.model() : config.openrouterModel(),
+                    transport);
+        } else if ("openai".equals(provider)) {
+            // Несколько серверов (openai.endpoints) — пул с балансировкой вместо одного base-url
+            if (EndpointPool.isConfigured(config.options(), provider)) {
+                return new EndpointPool(provider, config.options(), transport);
+            }
+            return new OpenAiClient(
+                    active ? config.apiKey() : config.openaiApiKey(),
+                    active ? config.model() : config.openaiModel(),
+                    active ? config.baseUrl() : config.openaiBaseUrl(),
+                    transport);
+        }
+        throw new IllegalArgumentException("Неизвестный провайдер: " + provider);
+    }
+
+    private static boolean isProviderConfigured(ConfigManager.ConfigData config, String provider) {
+        if (provider.equals(config.provider())) {
+            return true;
         }
-        throw new IllegalArgumentException("Неизвестный провайдер: " + config.provider());
+        // Для OpenAI-совместимых серверов (LM Studio) ключ может быть не нужен, но адрес обязателен
+        return "openrouter".equals(provider)
+                ? config.openrouterApiKey() != null && !config.openrouterApiKey().isBlank()
+                : config.openaiBaseUrl() != null && !config.openaiBaseUrl().isBlank();
     }
 
     private static String promptForApiKey(Scanner scanner, String providerName) {
@@ -0,0 +1,313 @@
+package xyz.dartpower.BukkitAI;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Генерация проекта плагина одним из способов:
+ * <ul>
+ *     <li>одним запросом (весь проект в одном ответе), в том числе потоково;</li>
+ *     <li>параллельно (generation.parallel): короткий запрос плана со списком классов, затем
+ *     каждый класс (и config.yml, если он нужен) генерируются отдельными одновременными запросами.
+ *     Время генерации определяется самым большим классом, а не суммой всех.</li>
+ * </ul>
+ * pom.xml и plugin.yml по умолчанию создаются по шаблонам ({@link ProjectTemplates}) из готовых Java-файлов,
+ * поэтому модель пишет только код; templates.enabled: false возвращает прежнее поведение.
+ * Если включена проверка (validate.enabled), готовый проект компилируется в памяти ({@link CompileValidator}),
+ * а при ошибках модели отправляется запрос на исправление (не больше validate.repair-attempts раз).
+ * Все запросы одной генерации укладываются в общий срок ({@link Deadline}); если он истёк или отменён,
+ * проект не записывается.
+ */
+public class PluginPipeline {
+
+    private static final int MAX_REPAIR_ERRORS = 50;
+    private static final int MAX_PRINTED_ERRORS = 10;
+
+    private final AiClient client;
+    private final ConfigOptions options;
+    private final Deadline deadline;
+
+    // План плагина; raw — исходный JSON, который передаётся в запросы классов;
+    // commands — описания команд для plugin.yml, config — нужен ли плагину config.yml
+    record Plan(String packageName, String mainClass, List<ClassSpec> classes, Map<String, String> commands,
+                boolean config, String raw) {}
+
+    record ClassSpec(String name, String description) {}
+
+    public PluginPipeline(AiClient client, ConfigOptions options) {
+        this(client, options, Deadline.NONE);
+    }
+
+    /**
+     * @param deadline Срок генерации; обычно {@link Deadline#fromOptions}, закрывает его вызывающий код.
+     */
+    public PluginPipeline(AiClient client, ConfigOptions options, Deadline deadline) {
+        this.client = client;
+        this.options = options;
+        this.deadline = deadline;
+    }
+
+    /**
+     * Генерирует проект способом, выбранным в настройках.
+     * @return Результат проверочной компиляции или null, если проверка выключена или недоступна.
+     */
+    public CompileValidator.Result generate(String prompt, String pluginName, ProjectCreator creator)
+            throws IOException, InterruptedException {
+        boolean templates = options.getBoolean("templates.enabled", true);
+        if (templates) {
+            creator.useTemplates();
+        }
+        boolean committed = false;
+        try {
+            Plan plan = generateProject(prompt, pluginName, creator, templates);
+            if (templates) {
+                ProjectTemplates.render(creator, prompt, plan != null ? plan.commands() : Map.of(), options);
+            }
+            try {
+                return options.getBoolean("validate.enabled", false) ? validate(prompt, pluginName, creator) : null;
+            } finally {
+                // Проект записывается (при потоковом создании — дописывается), когда файлы окончательные
+                // (в том числе после исправлений); после отмены или истечения срока — не записывается
+                if (!deadline.isCancelled()) {
+                    creator.commit();
+                    committed = true;
+                }
+            }
+        } finally {
+            // Потоковое создание пишет файлы на диск по мере готовности: после любой неудачи
+            // (ошибка API, разбора или шаблона, прерывание) их нужно убрать, а не только после отмены
+            if (!committed) {
+                discard(creator);
+            }
+        }
+    }
+
+    /**
+     * Отказывается от незаписанного проекта. Ошибка удаления только выводится,
+     * чтобы не заменить собой исходную причину неудачи.
+     */
+    private void discard(ProjectCreator creator) {
+        try {
+            creator.discard(deadline.isCancelled() ? deadline.reason() : "генерация не завершена");
+        } catch (IOException e) {
+            System.out.println("   [Предупреждение] Не удалось удалить файлы незавершённого проекта: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return План, по которому шла параллельная генерация, или null для генерации одним запросом.
+     */
+    private Plan generateProject(String prompt, String pluginName, ProjectCreator creator, boolean templates)
+            throws IOException, InterruptedException {
+        if (options.getBoolean("generation.parallel", false)) {
+            Plan plan = requestPlan(prompt, pluginName);
+            if (plan != null && plan.classes().size() > 1) {
+                generateParallel(prompt, pluginName, plan, creator, templates);
+                return plan;
+            }
+            System.out.println("-> План содержит меньше двух классов, генерация одним запросом.");
+        }
+        generateSingle(prompt, pluginName, creator, templates);
+        return null;
+    }
+
+    private void generateSingle(String prompt, String pluginName, ProjectCreator creator, boolean templates)
+            throws IOException, InterruptedException {
+        AiClient.RequestOptions request = new AiClient.RequestOptions(templates, List.of(), deadline);
+        if (options.getBoolean("stream", false)) {
+            // Потоковый режим: файлы создаются по мере поступления ответа, папка проекта пишется сразу
+            client.streamPluginCode(prompt, pluginName, request, creator.createProjectIncrementally());
+        } else {
+            creator.createProject(client.generatePluginCode(prompt, pluginName, request));
+        }
+    }
+
+    /**
+     * @return План плагина или null, если модель вернула ответ, который не удалось разобрать.
+     */
+    Plan requestPlan(String prompt, String pluginName) throws IOException, InterruptedException {
+        System.out.println("-> Запрос плана плагина...");
+        String response = client.complete(ChatRequest.pluginPlan(prompt, pluginName).withDeadline(deadline)).content();
+        Plan plan = parsePlan(response);
+        if (plan == null) {
+            System.out.println("   [Предупреждение] Не удалось разобрать план плагина, генерация одним запросом.");
+        }
+        return plan;
+    }
+
+    /**
+     * Разбирает план из ответа модели. JSON может быть обёрнут в блок кода или окружён текстом.
+     */
+    static Plan parsePlan(String response) {
+        int start = response.indexOf('{');
+        int end = response.lastIndexOf('}');
+        if (start < 0 || end <= start) {
+            return null;
+        }
+        try {
+            JsonObject json = JsonParser.parseString(response.substring(start, end + 1)).getAsJsonObject();
+            String packageName = json.has("package") ? json.get("package").getAsString() : "com.example.plugin";
+            String mainClass = json.has("mainClass") ? json.get("mainClass").getAsString() : null;
+            List<ClassSpec> classes = new ArrayList<>();
+            JsonArray array = json.has("classes") ? json.getAsJsonArray("classes") : new JsonArray();
+            for (JsonElement element : array) {
+                JsonObject spec = element.getAsJsonObject();
+                String name = spec.has("name") ? spec.get("name").getAsString().trim() : "";
+                // Имя класса становится именем файла, поэтому принимаем только идентификаторы Java
+                if (!name.matches("[A-Za-z_$][A-Za-z0-9_$]*")) {
+                    return null;
+                }
+                classes.add(new ClassSpec(name, spec.has("description") ? spec.get("description").getAsString() : ""));
+            }
+            Map<String, String> commands = new TreeMap<>();
+            if (json.has("commands") && json.get("commands").isJsonArray()) {
+                for (JsonElement element : json.getAsJsonArray("commands")) {
+                    JsonObject command = element.getAsJsonObject();
+                    if (command.has("name")) {
+                        String name = command.get("name").getAsString().trim().replaceFirst("^/", "").toLowerCase(Locale.ROOT);
+                        commands.put(name, command.has("description") ? command.get("description").getAsString() : "");
+                    }
+                }
+            }
+            boolean config = json.has("config") && json.get("config").isJsonPrimitive() && json.get("config").getAsBoolean();
+            return new Plan(packageName, mainClass, classes, commands, config, json.toString());
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private void generateParallel(String prompt, String pluginName, Plan plan, ProjectCreator creator, boolean templates)
+            throws IOException, InterruptedException {
+        int parallelism = Math.max(1, options.getInt("generation.max-parallel", 8));
+        System.out.printf("-> План готов (классов: %d, пакет %s); параллельная генерация, одновременно до %d запросов...%n",
+                plan.classes().size(), plan.packageName(), parallelism);
+
+        List<ChatRequest> requests = new ArrayList<>();
+        if (!templates) {
+            requests.add(ChatRequest.pluginResources(prompt, pluginName, plan.raw()));
+        } else if (plan.config()) {
+            requests.add(ChatRequest.pluginConfig(prompt, pluginName, plan.raw()));
+        }
+        for (ClassSpec spec : plan.classes()) {
+            requests.add(ChatRequest.pluginClass(prompt, pluginName, plan.raw(), plan.packageName(), spec.name()));
+        }
+        requests.replaceAll(request -> request.withDeadline(deadline));
+
+        Semaphore permits = new Semaphore(parallelism);
+        ConcurrentLinkedQueue<String> failures = new ConcurrentLinkedQueue<>();
+        long start = System.nanoTime();
+        // Сообщения частей попадают в журнал того же задания (режим --serve)
+        JobConsole.Sink sink = JobConsole.current();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (ChatRequest request : requests) {
+                executor.submit(() -> {
+                    String part = request.pluginName().substring(pluginName.length() + 1);
+                    JobConsole.attach(sink);
+                    try {
+                        permits.acquire();
+                        try {
+                            long partStart = System.nanoTime();
+                            String content = client.complete(request).content();
+                            // Файлы добавляются в проект по готовности каждой части, на диск — в commit()
+                            creator.addFiles(content);
+                            System.out.printf("   Готово: %s (%d символов, %.1f с)%n", part, content.length(),
+                                    (System.nanoTime() - partStart) / 1e9);
+                        } finally {
+                            permits.release();
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        failures.add(part + ": прервано");
+                    } catch (Exception e) {
+                        failures.add(part + ": " + e.getMessage());
+                    } finally {
+                        JobConsole.detach();
+                    }
+                });
+            }
+        }
+        System.out.printf("-> Параллельная генерация заняла %.1f с%n", (System.nanoTime() - start) / 1e9);
+
+        // После отмены все части завершаются одной и той же причиной, её и сообщаем
+        deadline.check();
+        if (!failures.isEmpty()) {
+            throw new IOException("Не удалось сгенерировать части плагина: " + String.join("; ", failures));
+        }
+    }
+
+    private CompileValidator.Result validate(String prompt, String pluginName, ProjectCreator creator)
+            throws IOException, InterruptedException {
+        CompileValidator validator;
+        try {
+            validator = CompileValidator.shared(options);
+        } catch (IOException e) {
+            System.out.println("   [Предупреждение] Проверка компиляции недоступна: " + e.getMessage());
+            return null;
+        }
+        System.out.println("-> Проверочная компиляция...");
+        CompileValidator.Result result = creator.validate(validator);
+        printResult(result);
+
+        int attempts = options.getInt("validate.repair-attempts", 1);
+        for (int attempt = 1; !result.success() && result.sources() > 0 && attempt <= attempts; attempt++) {
+            System.out.printf("-> Запрос исправления ошибок компиляции (попытка %d из %d)...%n", attempt, attempts);
+            creator.addFiles(client.complete(repairRequest(prompt, pluginName, creator, result).withDeadline(deadline)).content());
+            result = creator.validate(validator);
+            printResult(result);
+        }
+        return result;
+    }
+
+    private static ChatRequest repairRequest(String prompt, String pluginName, ProjectCreator creator,
+                                             CompileValidator.Result result) throws IOException {
+        Map<String, String> javaSources = creator.javaSources();
+        // Модели отправляем только файлы с ошибками, чтобы не раздувать запрос
+        Set<String> files = new LinkedHashSet<>();
+        result.errorDiagnostics().stream().map(CompileValidator.Diagnostic::file).filter(Objects::nonNull).forEach(files::add);
+        StringBuilder sources = new StringBuilder();
+        for (String file : files) {
+            sources.append("File ").append(file).append(":\n```java\n")
+                    .append(javaSources.getOrDefault(file, "")).append("\n```\n");
+        }
+        return ChatRequest.pluginRepair(prompt, pluginName, sources.toString(), formatErrors(result, MAX_REPAIR_ERRORS));
+    }
+
+    /**
+     * @return Сообщения об ошибках по одному на строку, не больше limit.
+     */
+    static String formatErrors(CompileValidator.Result result, int limit) {
+        List<CompileValidator.Diagnostic> errors = result.errorDiagnostics();
+        StringBuilder text = new StringBuilder();
+        errors.stream().limit(limit).forEach(d -> text.append(d.format()).append('\n'));
+        if (errors.size() > limit) {
+            text.append("... ещё ").append(errors.size() - limit).append('\n');
+        }
+        return text.toString();
+    }
+
+    static void printResult(CompileValidator.Result result) {
+        if (result.success()) {
+            System.out.printf("   ✅ %s: компиляция без ошибок (%d файлов, предупреждений: %d, %d мс)%n",
+                    result.project(), result.sources(), result.warnings(), result.millis());
+            return;
+        }
+        System.out.printf("   ❌ %s: ошибок компиляции: %d (%d мс)%n", result.project(), result.errors(), result.millis());
+        System.out.print(formatErrors(result, MAX_PRINTED_ERRORS).indent(6));
+    }
+}
@@ -3,84 +3,357 @@ package xyz.dartpower.BukkitAI;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Stream;
 
+/**
+ * Собирает файлы проекта из ответов модели. Файлы хранятся в памяти (проверка компиляции, шаблоны
+ * и исправления работают с ними же) и записываются в {@link #commit()} через {@link ProjectOutput}.
+ * При потоковом создании ({@link #createProjectIncrementally()}) в папку проекта каждый файл записывается
+ * сразу, как закрылся его блок; commit() тогда дописывает только новые и изменённые файлы.
+ * Архив записывается за один проход в commit().
+ */
 public class ProjectCreator {
 
+    private static final String JAVA_ROOT = "src/main/java/";
+    private static final String RESOURCES_ROOT = "src/main/resources/";
+
     private final String pluginName;
-    private final String pluginNameLower;
-    private final Path projectDir;
-    private final Path srcMainJavaDir;
-    private final Path srcMainResourcesDir;
+    private final ProjectOutput output;
+    // Путь относительно корня проекта -> содержимое; порядок путей задаёт порядок записи
+    private final TreeMap<String, String> files = new TreeMap<>();
+    // Уже записанные потоковым созданием файлы: путь -> содержимое на диске
+    private final Map<String, String> written = new HashMap<>();
+    // Файлы, которых до потоковой записи не было на диске: при отмене они удаляются
+    private final Set<String> created = new HashSet<>();
+    // Каталоги, которых до потоковой записи не было (включая папку проекта): при отмене удаляются, если пусты
+    private final Set<Path> createdDirs = new HashSet<>();
+    // pom.xml и plugin.yml создаются по шаблонам, такие блоки из ответа модели пропускаются
+    private volatile boolean templates;
+    // Не выводить строку на каждый файл (пакетный режим и сервер)
+    private volatile boolean quiet;
 
     public ProjectCreator(String baseDir, String pluginName) {
-        this.pluginName = pluginName;
-        this.pluginNameLower = pluginName.toLowerCase();
-        this.projectDir = Path.of(baseDir, pluginName);
-        this.srcMainJavaDir = projectDir.resolve("src/main/java/com/example/" + pluginNameLower);
-        this.srcMainResourcesDir = projectDir.resolve("src/main/resources");
+        this(Path.of(baseDir), pluginName);
     }
 
-    public void createProject(String generatedContent) throws IOException {
-        System.out.println("-> Создание структуры проекта...");
-        createDirectoryStructure();
+    /**
+     * @param baseDir Каталог, в котором создаётся проект; может принадлежать любой файловой системе.
+     */
+    public ProjectCreator(Path baseDir, String pluginName) {
+        this(new ProjectOutput.Directory(baseDir, false), pluginName);
+    }
+
+    /**
+     * @throws IllegalArgumentException Если имя не годится для папки проекта ({@link ProjectOutput#checkName}).
+     */
+    public ProjectCreator(ProjectOutput output, String pluginName) {
+        this.pluginName = ProjectOutput.checkName(pluginName);
+        this.output = output;
+    }
 
+    public void createProject(String generatedContent) throws IOException {
         System.out.println("-> Создание файлов из сгенерированного контента...");
-        parseAndCreateFiles(generatedContent);
+        addFiles(generatedContent);
+    }
 
+    /**
+     * Создаёт файлы из отдельного фрагмента ответа (например, одного класса при параллельной генерации).
+     * Фрагменты разбираются независимо, поэтому незакрытый блок в одном не затрагивает другие.
+     * Метод можно вызывать из разных потоков.
+     */
+    public synchronized void addFiles(String generatedContent) throws IOException {
+        long start = System.nanoTime();
+        boolean unterminated = CodeFenceParser.parse(generatedContent, this::createFileFromBlock);
+        Metrics.shared().observe("parse_seconds", (System.nanoTime() - start) / 1e9);
+        if (unterminated) {
+            warnUnterminated();
+        }
+    }
+
+    /**
+     * Добавляет или заменяет файл проекта.
+     * @param path Путь относительно корня проекта через /, например "src/main/resources/plugin.yml".
+     */
+    public synchronized void putFile(String path, String content) {
+        store(path, content);
+    }
+
+    /**
+     * @return Путь добавленного файла или null, если путь недопустим.
+     */
+    private String store(String path, String content) {
+        // Имя файла приходит из ответа модели: не даём ему выйти за пределы проекта
+        if (path.startsWith("/") || path.contains("\\") || ("/" + path + "/").contains("/../")) {
+            System.out.println("   [Предупреждение] Недопустимый путь файла, он пропущен: " + path);
+            return null;
+        }
+        files.put(path, content);
+        if (!quiet) {
+            System.out.println("   Создан файл: " + path);
+        }
+        return path;
+    }
+
+    /**
+     * Записывает собранный проект через {@link ProjectOutput} и выводит итог.
+     */
+    public void commit() throws IOException {
+        SortedMap<String, String> snapshot = files();
+        TreeMap<String, String> changed = new TreeMap<>();
+        synchronized (this) {
+            snapshot.forEach((path, content) -> {
+                if (!content.equals(written.get(path))) {
+                    changed.put(path, content);
+                }
+            });
+        }
+        long start = System.nanoTime();
+        output.write(pluginName, changed);
+        Path location = output.location(pluginName);
+        if (quiet) {
+            System.out.printf("-> Проект записан: файлов %d (%d мс)%s%n", snapshot.size(),
+                    (System.nanoTime() - start) / 1_000_000, location != null ? ", " + location : "");
+            return;
+        }
         System.out.println("\n✅ Проект '" + pluginName + "' успешно сгенерирован!");
-        System.out.println("   Путь: " + projectDir.toAbsolutePath());
-        System.out.println("\nДля сборки плагина перейдите в папку проекта и выполните:");
-        System.out.println("   cd " + pluginName);
-        System.out.println("   mvn clean package");
+        if (location == null) {
+            return;
+        }
+        System.out.println("   Путь: " + location.toAbsolutePath().normalize());
+        if (output instanceof ProjectOutput.Directory) {
+            System.out.println("\nДля сборки плагина перейдите в папку проекта и выполните:");
+            System.out.println("   cd " + pluginName);
+            System.out.println("   mvn clean package");
+        }
+    }
+
+    /**
+     * Отказывается от проекта (генерация не удалась, отменена или истёк срок): файлы из памяти не записываются,
+     * созданные потоковой записью файлы (и оставшиеся пустыми каталоги) и остатки прерванной записи удаляются с диска.
+     * Файлы, которые потоковая запись заменила, остаются в новой версии.
+     */
+    public void discard(String reason) throws IOException {
+        Set<String> toDelete;
+        Set<Path> dirsToDelete;
+        synchronized (this) {
+            files.clear();
+            written.clear();
+            toDelete = new HashSet<>(created);
+            created.clear();
+            dirsToDelete = new TreeSet<>(Comparator.comparingInt(Path::getNameCount).reversed()
+                    .thenComparing(Comparator.naturalOrder()));
+            dirsToDelete.addAll(createdDirs);
+            createdDirs.clear();
+        }
+        Path location = output.location(pluginName);
+        for (String path : toDelete) {
+            Files.deleteIfExists(location.resolve(path));
+        }
+        // Созданные потоковой записью каталоги удаляются, если остались пустыми; вложенные — раньше родительских
+        for (Path dir : dirsToDelete) {
+            if (isEmptyDirectory(dir)) {
+                Files.delete(dir);
+            }
+        }
+        output.discard(pluginName);
+        System.out.println("-> Проект '" + pluginName + "' не записан: " + reason);
+    }
+
+    private static boolean isEmptyDirectory(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return false;
+        }
+        try (Stream<Path> entries = Files.list(dir)) {
+            return entries.findAny().isEmpty();
+        }
     }
 
-    private void createDirectoryStructure() throws IOException {
-        Files.createDirectories(srcMainJavaDir);
-        Files.createDirectories(srcMainResourcesDir);
+    /**
+     * Включает режим шаблонов: pom.xml и plugin.yml из ответа модели не записываются,
+     * их создаёт {@link ProjectTemplates} по готовым Java-файлам.
+     */
+    public void useTemplates() {
+        templates = true;
     }
 
-    private void parseAndCreateFiles(String content) throws IOException {
-        // Регулярное выражение для поиска блоков кода
-        Pattern codeBlockPattern = Pattern.compile("```(\\w+)\\s*([\\s\\S]*?)```");
-        Matcher matcher = codeBlockPattern.matcher(content);
+    /**
+     * Выводить одну строку на проект вместо строки на каждый файл.
+     */
+    public void quiet() {
+        quiet = true;
+    }
 
-        while (matcher.find()) {
-            String language = matcher.group(1);
-            String code = matcher.group(2).trim();
+    public String pluginName() {
+        return pluginName;
+    }
 
-            switch (language.toLowerCase()) {
-                case "xml" -> createFile("pom.xml", code);
-                case "yaml" -> createFile("plugin.yml", code);
-                case "java" -> createJavaFile(code);
-                default -> System.out.println("   [Предупреждение] Неизвестный тип блока: " + language);
+    /**
+     * @return Путь, по которому записывается проект, или null, если он не сохраняется на диск.
+     */
+    public Path projectDir() {
+        return output.location(pluginName);
+    }
+
+    /**
+     * @return Копия файлов проекта: путь относительно корня проекта -> содержимое.
+     */
+    public synchronized SortedMap<String, String> files() {
+        return Collections.unmodifiableSortedMap(new TreeMap<>(files));
+    }
+
+    /**
+     * @return Java-файлы: путь относительно src/main/java -> текст.
+     */
+    public synchronized SortedMap<String, String> javaSources() {
+        TreeMap<String, String> sources = new TreeMap<>();
+        files.subMap(JAVA_ROOT, JAVA_ROOT + Character.MAX_VALUE).forEach((path, code) -> {
+            if (path.endsWith(".java")) {
+                sources.put(path.substring(JAVA_ROOT.length()), code);
+            }
+        });
+        return sources;
+    }
+
+    /**
+     * Компилирует Java-файлы проекта в памяти, не запуская Maven.
+     * @return Результат со списком сообщений компилятора.
+     */
+    public CompileValidator.Result validate(CompileValidator validator) {
+        return validator.validate(pluginName, javaSources());
+    }
+
+    /**
+     * Начинает потоковое создание проекта: каждый файл добавляется сразу,
+     * как только во входящем потоке появляется закрывающая ``` его блока.
+     * Если вывод это поддерживает (папка проекта), файл сразу и записывается на диск.
+     * @return Получатель фрагментов ответа ИИ.
+     */
+    public StreamListener createProjectIncrementally() {
+        System.out.println("-> Создание файлов по мере получения ответа...");
+        return new IncrementalWriter();
+    }
+
+    private static void warnUnterminated() {
+        System.out.println("   [Предупреждение] Ответ закончился внутри незакрытого блока кода, он пропущен.");
+    }
+
+    /**
+     * @return Путь добавленного файла или null, если блок пропущен.
+     */
+    private synchronized String createFileFromBlock(CodeFenceParser.CodeBlock block) {
+        String hint = block.fileName();
+        switch (block.language()) {
+            case "xml" -> {
+                if (hint != null && !hint.equals("pom.xml")) {
+                    return store(RESOURCES_ROOT + hint, block.code());
+                }
+                if (templates) {
+                    skipTemplated("pom.xml");
+                    return null;
+                }
+                return store("pom.xml", block.code());
+            }
+            case "yaml" -> {
+                // plugin.yml отличаем от config.yml по обязательному ключу main
+                String fileName = hint != null ? hint : isPluginYml(block.code()) ? "plugin.yml" : "config.yml";
+                if (templates && fileName.equals("plugin.yml")) {
+                    skipTemplated(fileName);
+                    return null;
+                }
+                return store(RESOURCES_ROOT + fileName, block.code());
+            }
+            case "properties" -> {
+                return store(RESOURCES_ROOT + (hint != null ? hint : "config.properties"), block.code());
+            }
+            case "java" -> {
+                return createJavaFile(block);
+            }
+            default -> {
+                System.out.println("   [Предупреждение] Неизвестный тип блока: " + block.language());
+                return null;
             }
         }
     }
 
-    private void createJavaFile(String code) throws IOException {
-        // Извлекаем имя класса из кода
-        Pattern classNamePattern = Pattern.compile("public\\s+class\\s+(\\w+)");
-        Matcher classNameMatcher = classNamePattern.matcher(code);
-        if (classNameMatcher.find()) {
-            String className = classNameMatcher.group(1);
-            createFile(className + ".java", code);
-        } else {
+    private static void skipTemplated(String fileName) {
+        System.out.println("   Пропущен " + fileName + " из ответа: он создаётся по шаблону.");
+    }
+
+    private static boolean isPluginYml(String code) {
+        return code.startsWith("main:") || code.contains("\nmain:");
+    }
+
+    private String createJavaFile(CodeFenceParser.CodeBlock block) {
+        if (block.typeName() == null) {
             System.out.println("   [Ошибка] Не удалось определить имя класса в Java-файле.");
+            return null;
+        }
+        // Файл кладём в каталог объявленного пакета
+        String dir = block.packageName() == null ? "" : block.packageName().replace('.', '/') + "/";
+        return store(JAVA_ROOT + dir + block.typeName() + ".java", block.code());
+    }
+
+    /**
+     * Записывает готовый файл на диск сразу, не дожидаясь {@link #commit()}.
+     */
+    private synchronized void writeNow(ProjectOutput.Incremental incremental, String path) throws IOException {
+        String content = files.get(path);
+        Path file = output.location(pluginName).resolve(path);
+        boolean existed = Files.exists(file);
+        for (Path dir = file.getParent(); dir != null && !Files.exists(dir); dir = dir.getParent()) {
+            createdDirs.add(dir);
+        }
+        incremental.writeFile(pluginName, path, content);
+        written.put(path, content);
+        if (!existed) {
+            created.add(path);
         }
     }
 
-    private void createFile(String fileName, String content) throws IOException {
-        Path filePath;
-        if (fileName.equals("pom.xml")) {
-            filePath = projectDir.resolve(fileName);
-        } else if (fileName.equals("plugin.yml")) {
-            filePath = srcMainResourcesDir.resolve(fileName);
-        } else { // Java файлы
-            filePath = srcMainJavaDir.resolve(fileName);
+    /**
+     * Передаёт фрагменты ответа разборщику; завершённые блоки сразу добавляются в проект.
+     */
+    private class IncrementalWriter implements StreamListener {
+
+        private final CodeFenceParser parser = new CodeFenceParser(block -> {
+            String path = createFileFromBlock(block);
+            if (path != null && output instanceof ProjectOutput.Incremental incremental) {
+                writeNow(incremental, path);
+            }
+        });
+        // Суммарное время разбора фрагментов
+        private long parseNanos;
+
+        @Override
+        public void onDelta(String delta) throws IOException {
+            long start = System.nanoTime();
+            synchronized (ProjectCreator.this) {
+                parser.feed(delta);
+            }
+            parseNanos += System.nanoTime() - start;
+        }
+
+        @Override
+        public void onComplete() throws IOException {
+            long start = System.nanoTime();
+            boolean unterminated;
+            synchronized (ProjectCreator.this) {
+                unterminated = parser.finish();
+            }
+            parseNanos += System.nanoTime() - start;
+            Metrics.shared().observe("parse_seconds", parseNanos / 1e9);
+            if (unterminated) {
+                warnUnterminated();
+            }
         }
-        Files.writeString(filePath, content);
-        System.out.println("   Создан файл: " + filePath.getFileName());
     }
-}
\ No newline at end of file
+}
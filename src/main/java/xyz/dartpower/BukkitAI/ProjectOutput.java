@@ -0,0 +1,328 @@
+package xyz.dartpower.BukkitAI;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Куда записывается готовый проект. {@link ProjectCreator} собирает файлы в памяти и передаёт их сюда
+ * один раз, когда генерация (и проверка) закончена, поэтому незавершённый проект на диск не попадает.
+ * <ul>
+ *     <li>{@link Directory} — папка проекта: новая собирается во временной папке и переименовывается один раз,
+ *     в существующую файлы пишутся на свои места, остальное её содержимое сохраняется;
+ *     файлы можно записывать и по одному ({@link Incremental});</li>
+ *     <li>{@link Archive} — zip- или jar-архив на проект: один файл вместо дерева каталогов;</li>
+ *     <li>{@link #writeArchive} — архив прямо в поток (например, в ответ HTTP-сервера) без промежуточных файлов.</li>
+ * </ul>
+ */
+@FunctionalInterface
+public interface ProjectOutput {
+
+    // Фиксированное время записей архива: одинаковые файлы дают побайтно одинаковый архив
+    long ENTRY_TIME = 315_532_800_000L; // 1980-01-01T00:00:00Z
+
+    // Имя файла ограничено 255 байтами; временная папка ".имя.tmp-*" добавляет к имени ещё около 30,
+    // а символ кириллицы занимает в UTF-8 два байта
+    int MAX_NAME_LENGTH = 100;
+
+    /**
+     * Записывает проект целиком.
+     * @param files Путь файла относительно корня проекта (через /) -> содержимое.
+     */
+    void write(String projectName, SortedMap<String, String> files) throws IOException;
+
+    /**
+     * @return true, если проект с таким именем уже записан.
+     */
+    default boolean exists(String projectName) {
+        return false;
+    }
+
+    /**
+     * @return Путь записанного проекта или null, если проект не сохраняется на диск.
+     */
+    default Path location(String projectName) {
+        return null;
+    }
+
+    /**
+     * Удаляет остатки прерванной записи проекта (временные папки и файлы), не трогая записанную версию.
+     */
+    default void discard(String projectName) throws IOException {
+    }
+
+    /**
+     * Вывод, в который файлы проекта можно записывать по одному, по мере готовности
+     * (потоковое создание проекта в {@link ProjectCreator}).
+     */
+    interface Incremental extends ProjectOutput {
+
+        /**
+         * Записывает или заменяет один файл проекта.
+         * @param path Путь относительно корня проекта через /.
+         */
+        void writeFile(String projectName, String path, String content) throws IOException;
+    }
+
+    /**
+     * Проверяет имя проекта: оно становится именем папки или архива в baseDir.
+     * @return То же имя.
+     * @throws IllegalArgumentException Если имя пустое, длиннее {@link #MAX_NAME_LENGTH} символов,
+     * начинается с точки или содержит разделители пути.
+     */
+    static String checkName(String projectName) {
+        if (projectName != null && projectName.length() > MAX_NAME_LENGTH) {
+            throw new IllegalArgumentException("Слишком длинное имя проекта: " + projectName.length()
+                    + " символов, допускается до " + MAX_NAME_LENGTH);
+        }
+        if (projectName == null || projectName.isBlank() || !projectName.equals(projectName.strip())
+                || projectName.startsWith(".") || projectName.chars().anyMatch(c -> c < 0x20
+                || c == '/' || c == '\\' || c == ':' || c == '*' || c == '?' || c == '"' || c == '<' || c == '>' || c == '|')) {
+            throw new IllegalArgumentException("Недопустимое имя проекта: '" + projectName
+                    + "'. Имя не должно быть пустым, начинаться с точки и содержать символы / \\ : * ? \" < > |");
+        }
+        return projectName;
+    }
+
+    /**
+     * Вывод по секции "output" config.yaml: format (directory, zip или jar) и sync.
+     */
+    static ProjectOutput fromOptions(Path baseDir, ConfigOptions options) {
+        boolean sync = options.getBoolean("output.sync", false);
+        String format = options.getString("output.format", "directory");
+        return switch (format) {
+            case "directory" -> new Directory(baseDir, sync);
+            case "zip" -> new Archive(baseDir, false, sync);
+            case "jar" -> new Archive(baseDir, true, sync);
+            default -> throw new IllegalArgumentException(
+                    "Неизвестный формат вывода output.format: " + format + " (ожидается directory, zip или jar)");
+        };
+    }
+
+    /**
+     * Пишет проект zip- или jar-архивом в поток; записи лежат в папке projectName и идут в порядке путей.
+     * Поток не закрывается.
+     */
+    static void writeArchive(OutputStream out, String projectName, SortedMap<String, String> files, boolean jar)
+            throws IOException {
+        ZipOutputStream zip;
+        if (jar) {
+            Manifest manifest = new Manifest();
+            manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+            manifest.getMainAttributes().put(new Attributes.Name("Created-By"), "BukkitAI");
+            zip = new JarOutputStream(out, manifest);
+        } else {
+            zip = new ZipOutputStream(out, StandardCharsets.UTF_8);
+        }
+        for (var file : files.entrySet()) {
+            ZipEntry entry = new ZipEntry(projectName + "/" + file.getKey());
+            entry.setTime(ENTRY_TIME);
+            zip.putNextEntry(entry);
+            zip.write(file.getValue().getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+        }
+        zip.finish();
+        zip.flush();
+    }
+
+    /**
+     * Папка проекта в baseDir. Новый проект записывается во временную папку ".имя.tmp-*" в baseDir,
+     * которая один раз переименовывается в папку проекта, поэтому недописанный проект не появляется.
+     * В существующую папку файлы пишутся на свои места (открытие с усечением, без временного файла на каждый);
+     * файлы, которых нет в проекте (правки пользователя, .git, target), не удаляются.
+     */
+    final class Directory implements Incremental {
+
+        private final Path baseDir;
+        private final boolean sync;
+
+        /**
+         * @param baseDir Каталог, в котором создаются проекты; может принадлежать любой файловой системе.
+         * @param sync Сбрасывать ли каждый файл на диск (fsync) после записи.
+         */
+        public Directory(Path baseDir, boolean sync) {
+            this.baseDir = baseDir;
+            this.sync = sync;
+        }
+
+        @Override
+        public void write(String projectName, SortedMap<String, String> files) throws IOException {
+            Path root = location(projectName);
+            if (Files.isDirectory(root)) {
+                writeFiles(root, files);
+                return;
+            }
+            Files.createDirectories(baseDir);
+            Path staging = Files.createDirectory(baseDir.resolve("." + projectName + ".tmp-" + uniqueSuffix()));
+            try {
+                writeFiles(staging, files);
+                try {
+                    Files.move(staging, root, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(staging, root);
+                }
+            } catch (IOException | RuntimeException e) {
+                deleteTree(staging);
+                throw e;
+            }
+        }
+
+        @Override
+        public void writeFile(String projectName, String path, String content) throws IOException {
+            Path file = location(projectName).resolve(path);
+            Files.createDirectories(file.getParent());
+            writeFile(file, content);
+        }
+
+        private void writeFiles(Path root, SortedMap<String, String> files) throws IOException {
+            // Каталоги создаются один раз на каталог, а не на каждый файл
+            Set<Path> createdDirs = new HashSet<>();
+            createdDirs.add(root);
+            for (var entry : files.entrySet()) {
+                Path file = root.resolve(entry.getKey());
+                if (createdDirs.add(file.getParent())) {
+                    Files.createDirectories(file.getParent());
+                }
+                writeFile(file, entry.getValue());
+            }
+        }
+
+        private void writeFile(Path file, String content) throws IOException {
+            long start = System.nanoTime();
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE,
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer buffer = ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8));
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                if (sync) {
+                    channel.force(false);
+                }
+            }
+            Metrics.shared().observe("file_write_seconds", (System.nanoTime() - start) / 1e9);
+        }
+
+        @Override
+        public void discard(String projectName) throws IOException {
+            for (Path leftover : leftovers(baseDir, "." + checkName(projectName) + ".tmp-")) {
+                deleteTree(leftover);
+            }
+        }
+
+        @Override
+        public boolean exists(String projectName) {
+            return Files.isDirectory(location(projectName));
+        }
+
+        @Override
+        public Path location(String projectName) {
+            return baseDir.resolve(checkName(projectName));
+        }
+    }
+
+    /**
+     * Архив "имя.zip" или "имя.jar" в baseDir: пишется во временный файл и переименовывается.
+     */
+    final class Archive implements ProjectOutput {
+
+        private final Path baseDir;
+        private final boolean jar;
+        private final boolean sync;
+
+        public Archive(Path baseDir, boolean jar, boolean sync) {
+            this.baseDir = baseDir;
+            this.jar = jar;
+            this.sync = sync;
+        }
+
+        @Override
+        public void write(String projectName, SortedMap<String, String> files) throws IOException {
+            Files.createDirectories(baseDir);
+            Path temp = Files.createFile(baseDir.resolve("." + checkName(projectName) + "." + uniqueSuffix() + ".tmp"));
+            try {
+                long start = System.nanoTime();
+                try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                     OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024)) {
+                    writeArchive(out, projectName, files, jar);
+                    out.flush();
+                    if (sync) {
+                        channel.force(false);
+                    }
+                }
+                Metrics.shared().observe("file_write_seconds", (System.nanoTime() - start) / 1e9);
+                try {
+                    Files.move(temp, location(projectName), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(temp, location(projectName), StandardCopyOption.REPLACE_EXISTING);
+                }
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(temp);
+                throw e;
+            }
+        }
+
+        @Override
+        public void discard(String projectName) throws IOException {
+            for (Path leftover : leftovers(baseDir, "." + projectName + ".")) {
+                if (leftover.getFileName().toString().endsWith(".tmp")) {
+                    Files.deleteIfExists(leftover);
+                }
+            }
+        }
+
+        @Override
+        public boolean exists(String projectName) {
+            return Files.isRegularFile(location(projectName));
+        }
+
+        @Override
+        public Path location(String projectName) {
+            return baseDir.resolve(projectName + (jar ? ".jar" : ".zip"));
+        }
+    }
+
+    private static List<Path> leftovers(Path baseDir, String prefix) throws IOException {
+        if (!Files.isDirectory(baseDir)) {
+            return List.of();
+        }
+        try (Stream<Path> list = Files.list(baseDir)) {
+            return list.filter(path -> path.getFileName().toString().startsWith(prefix)).toList();
+        }
+    }
+
+    private static void deleteTree(Path root) throws IOException {
+        if (!Files.exists(root)) {
+            return;
+        }
+        try (Stream<Path> walk = Files.walk(root)) {
+            for (Path path : walk.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    private static String uniqueSuffix() {
+        return Long.toHexString(System.nanoTime()) + Integer.toHexString(ThreadLocalRandom.current().nextInt());
+    }
+}
@@ -0,0 +1,372 @@
+package xyz.dartpower.BukkitAI;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Создание pom.xml и plugin.yml по шаблонам вместо запроса их у модели.
+ * <p>
+ * Данные для шаблонов извлекаются из сгенерированных Java-файлов: главный класс (наследник JavaPlugin),
+ * команды (getCommand("...") и сравнения имени команды в onCommand), права (hasPermission("...")),
+ * а также известные библиотеки по импортам (Vault, PlaceholderAPI). Результат детерминирован:
+ * одинаковые исходники дают побайтно одинаковые файлы.
+ * <p>
+ * Шаблоны можно заменить своими: файлы pom.xml и plugin.yml в папке templates.dir.
+ * Синтаксис: {{имя}} — значение, {{#имя}}...{{/имя}} — повтор для списка или блок, если значение задано.
+ */
+public final class ProjectTemplates {
+
+    static final String POM_TEMPLATE = """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <project xmlns="http://maven.apache.org/POM/4.0.0"
+                     xmlns:xsi="http://www.w3.org/2001/XMLSchema-instance"
+                     xsi:schemaLocation="http://maven.apache.org/POM/4.0.0 http://maven.apache.org/xsd/maven-4.0.0.xsd">
+                <modelVersion>4.0.0</modelVersion>
+
+                <groupId>{{groupId}}</groupId>
+                <artifactId>{{artifactId}}</artifactId>
+                <version>{{version}}</version>
+                <packaging>jar</packaging>
+
+                <properties>
+                    <maven.compiler.release>{{javaRelease}}</maven.compiler.release>
+                    <project.build.sourceEncoding>UTF-8</project.build.sourceEncoding>
+                </properties>
+
+                <repositories>
+                    <repository>
+                        <id>spigotmc-repo</id>
+                        <url>https://hub.spigotmc.org/nexus/content/repositories/snapshots/</url>
+                    </repository>
+            {{#libraries}}        <repository>
+                        <id>{{repositoryId}}</id>
+                        <url>{{repositoryUrl}}</url>
+                    </repository>
+            {{/libraries}}    </repositories>
+
+                <dependencies>
+                    <dependency>
+                        <groupId>{{apiGroupId}}</groupId>
+                        <artifactId>{{apiArtifactId}}</artifactId>
+                        <version>{{apiVersion}}</version>
+                        <scope>provided</scope>
+                    </dependency>
+            {{#libraries}}        <dependency>
+                        <groupId>{{groupId}}</groupId>
+                        <artifactId>{{artifactId}}</artifactId>
+                        <version>{{version}}</version>
+                        <scope>provided</scope>
+                    </dependency>
+            {{/libraries}}    </dependencies>
+
+                <build>
+                    <finalName>${project.artifactId}-${project.version}</finalName>
+                    <resources>
+                        <resource>
+                            <directory>src/main/resources</directory>
+                            <filtering>false</filtering>
+                        </resource>
+                    </resources>
+                    <plugins>
+                        <plugin>
+                            <groupId>org.apache.maven.plugins</groupId>
+                            <artifactId>maven-compiler-plugin</artifactId>
+                            <version>3.13.0</version>
+                        </plugin>
+                    </plugins>
+                </build>
+            </project>
+            """;
+
+    static final String PLUGIN_YML_TEMPLATE = """
+            name: {{name}}
+            version: '{{version}}'
+            main: {{main}}
+            api-version: '{{bukkitApiVersion}}'
+            description: {{description}}
+            {{#softDepend}}softdepend: [{{softDepend}}]
+            {{/softDepend}}{{#hasCommands}}commands:
+            {{/hasCommands}}{{#commands}}  {{name}}:
+                description: {{description}}
+                usage: /{{name}}
+            {{#permission}}    permission: {{permission}}
+            {{/permission}}{{/commands}}{{#hasPermissions}}permissions:
+            {{/hasPermissions}}{{#permissions}}  {{name}}:
+                description: {{description}}
+                default: {{default}}
+            {{/permissions}}""";
+
+    /**
+     * Библиотека, которая подключается, если в исходниках есть импорт из её пакета.
+     */
+    private record Library(String importPrefix, String plugin, String groupId, String artifactId, String version,
+                           String repositoryId, String repositoryUrl) {}
+
+    private static final List<Library> LIBRARIES = List.of(
+            new Library("net.milkbowl.vault.", "Vault", "com.github.MilkBowl", "VaultAPI", "1.7",
+                    "jitpack.io", "https://jitpack.io"),
+            new Library("me.clip.placeholderapi.", "PlaceholderAPI", "me.clip", "placeholderapi", "2.11.5",
+                    "placeholderapi", "https://repo.extendedclip.com/content/repositories/placeholderapi/")
+    );
+
+    private static final Pattern PACKAGE = Pattern.compile("^\\s*package\\s+([\\w.]+)\\s*;", Pattern.MULTILINE);
+    private static final Pattern MAIN_CLASS = Pattern.compile("class\\s+(\\w+)\\s+extends\\s+(?:org\\.bukkit\\.plugin\\.java\\.)?JavaPlugin\\b");
+    private static final Pattern GET_COMMAND = Pattern.compile("getCommand\\(\\s*\"([^\"\\s]+)\"\\s*\\)");
+    // if (command.getName().equalsIgnoreCase("heal")) или label.equals("heal") в onCommand
+    private static final Pattern COMMAND_NAME_CHECK = Pattern.compile(
+            "(?:getName\\(\\)|\\blabel)\\s*\\.\\s*equals(?:IgnoreCase)?\\(\\s*\"([^\"\\s]+)\"\\s*\\)");
+    private static final Pattern PERMISSION = Pattern.compile(
+            "(?:hasPermission|setPermission|new\\s+Permission)\\(\\s*\"([\\w.*-]+)\"");
+    private static final Pattern IMPORT = Pattern.compile("^\\s*import\\s+(?:static\\s+)?([\\w.]+)", Pattern.MULTILINE);
+
+    /**
+     * Сведения о плагине, извлечённые из исходников.
+     * @param commands Команды и права, которые проверяются в файле, где команда упоминается (если право одно).
+     */
+    record Descriptor(String mainClass, Map<String, String> commands, Collection<String> permissions,
+                      List<Library> libraries) {}
+
+    private ProjectTemplates() {
+    }
+
+    /**
+     * Создаёт pom.xml и plugin.yml проекта по его Java-файлам.
+     * @param description Описание плагина (запрос пользователя).
+     * @param commandDescriptions Описания команд из плана (параллельная генерация) или пустая карта.
+     * @return false, если в проекте не найден главный класс и файлы не созданы.
+     */
+    public static boolean render(ProjectCreator creator, String description, Map<String, String> commandDescriptions,
+                                 ConfigOptions options) throws IOException {
+        Descriptor descriptor = extract(creator.javaSources().values());
+        if (descriptor.mainClass() == null) {
+            System.out.println("   [Предупреждение] Не найден класс, наследующий JavaPlugin: pom.xml и plugin.yml не созданы.");
+            return false;
+        }
+
+        Path templatesDir = Path.of(options.getString("templates.dir", "templates"));
+        String version = options.getString("templates.version", "1.0.0");
+        String pluginName = creator.pluginName();
+        creator.putFile("pom.xml",
+                render(template(templatesDir, "pom.xml", POM_TEMPLATE), pomContext(descriptor, pluginName, version, options)));
+        creator.putFile("src/main/resources/plugin.yml",
+                render(template(templatesDir, "plugin.yml", PLUGIN_YML_TEMPLATE),
+                        pluginYmlContext(descriptor, pluginName, version, description, commandDescriptions, options)));
+
+        System.out.printf("   pom.xml и plugin.yml созданы по шаблону: главный класс %s, команд: %d, прав: %d%n",
+                descriptor.mainClass(), descriptor.commands().size(), descriptor.permissions().size());
+        return true;
+    }
+
+    private static String template(Path dir, String name, String builtIn) throws IOException {
+        Path file = dir.resolve(name);
+        return Files.isRegularFile(file) ? Files.readString(file) : builtIn;
+    }
+
+    /**
+     * Извлекает главный класс, команды, права и библиотеки из текстов Java-файлов.
+     */
+    static Descriptor extract(Collection<String> sources) {
+        String mainClass = null;
+        Map<String, String> commands = new TreeMap<>();
+        TreeSet<String> permissions = new TreeSet<>();
+        TreeSet<String> imports = new TreeSet<>();
+        for (String source : sources) {
+            Matcher main = MAIN_CLASS.matcher(source);
+            if (mainClass == null && main.find()) {
+                Matcher pkg = PACKAGE.matcher(source);
+                mainClass = pkg.find() ? pkg.group(1) + "." + main.group(1) : main.group(1);
+            }
+            TreeSet<String> filePermissions = new TreeSet<>();
+            Matcher permission = PERMISSION.matcher(source);
+            while (permission.find()) {
+                filePermissions.add(permission.group(1));
+            }
+            permissions.addAll(filePermissions);
+            // Право команды угадываем, только если в файле, где она обрабатывается, проверяется ровно одно право
+            String commandPermission = filePermissions.size() == 1 ? filePermissions.first() : null;
+            for (Pattern pattern : List.of(GET_COMMAND, COMMAND_NAME_CHECK)) {
+                Matcher command = pattern.matcher(source);
+                while (command.find()) {
+                    String name = command.group(1).toLowerCase(Locale.ROOT);
+                    if (pattern == GET_COMMAND || !commands.containsKey(name)) {
+                        commands.merge(name, commandPermission == null ? "" : commandPermission,
+                                (old, candidate) -> old.isEmpty() ? candidate : old);
+                    }
+                }
+            }
+            Matcher importMatcher = IMPORT.matcher(source);
+            while (importMatcher.find()) {
+                imports.add(importMatcher.group(1));
+            }
+        }
+        List<Library> libraries = new ArrayList<>();
+        for (Library library : LIBRARIES) {
+            if (imports.stream().anyMatch(name -> name.startsWith(library.importPrefix()))) {
+                libraries.add(library);
+            }
+        }
+        // Шаблоны прав вида "myplugin.*" в plugin.yml не объявляются
+        permissions.removeIf(name -> name.contains("*"));
+        return new Descriptor(mainClass, commands, permissions, libraries);
+    }
+
+    private static Map<String, Object> pomContext(Descriptor descriptor, String pluginName, String version,
+                                                  ConfigOptions options) {
+        String mainPackage = descriptor.mainClass().contains(".")
+                ? descriptor.mainClass().substring(0, descriptor.mainClass().lastIndexOf('.')) : "com.example";
+        String[] api = options.getString("validate.api-artifact", "org.spigotmc:spigot-api:1.20.4-R0.1-SNAPSHOT").split(":");
+        Map<String, Object> context = new LinkedHashMap<>();
+        context.put("groupId", xml(mainPackage.contains(".") ? mainPackage.substring(0, mainPackage.lastIndexOf('.')) : mainPackage));
+        context.put("artifactId", xml(pluginName));
+        context.put("version", xml(version));
+        context.put("javaRelease", options.getInt("validate.release", 17));
+        context.put("apiGroupId", xml(api[0]));
+        context.put("apiArtifactId", xml(api.length > 1 ? api[1] : "spigot-api"));
+        context.put("apiVersion", xml(api.length > 2 ? api[2] : "1.20.4-R0.1-SNAPSHOT"));
+        List<Map<String, Object>> libraries = new ArrayList<>();
+        for (Library library : descriptor.libraries()) {
+            libraries.add(Map.of("groupId", library.groupId(), "artifactId", library.artifactId(),
+                    "version", library.version(), "repositoryId", library.repositoryId(),
+                    "repositoryUrl", library.repositoryUrl()));
+        }
+        context.put("libraries", libraries);
+        return context;
+    }
+
+    private static Map<String, Object> pluginYmlContext(Descriptor descriptor, String pluginName, String version,
+                                                        String description, Map<String, String> commandDescriptions,
+                                                        ConfigOptions options) {
+        String[] api = options.getString("validate.api-artifact", "org.spigotmc:spigot-api:1.20.4-R0.1-SNAPSHOT").split(":");
+        Map<String, Object> context = new LinkedHashMap<>();
+        context.put("name", yaml(pluginName));
+        context.put("version", version.replace("'", "''"));
+        context.put("main", descriptor.mainClass());
+        context.put("bukkitApiVersion", options.getString("templates.api-version",
+                api.length > 2 ? bukkitApiVersion(api[2]) : "1.20"));
+        context.put("description", yaml(firstLine(description)));
+        context.put("softDepend", String.join(", ", descriptor.libraries().stream().map(Library::plugin).toList()));
+
+        List<Map<String, Object>> commands = new ArrayList<>();
+        descriptor.commands().forEach((name, permission) -> {
+            Map<String, Object> command = new LinkedHashMap<>();
+            command.put("name", name);
+            String text = commandDescriptions.getOrDefault(name, "");
+            command.put("description", yaml(text.isBlank() ? "Command /" + name : firstLine(text)));
+            command.put("permission", permission.isEmpty() ? null : permission);
+            commands.add(command);
+        });
+        context.put("hasCommands", !commands.isEmpty());
+        context.put("commands", commands);
+
+        List<Map<String, Object>> permissions = new ArrayList<>();
+        for (String name : descriptor.permissions()) {
+            permissions.add(Map.of("name", name, "description", yaml("Permission " + name),
+                    "default", options.getString("templates.permission-default", "op")));
+        }
+        context.put("hasPermissions", !permissions.isEmpty());
+        context.put("permissions", permissions);
+        return context;
+    }
+
+    /**
+     * "1.20.4-R0.1-SNAPSHOT" -> "1.20": api-version в plugin.yml задаётся без патча.
+     */
+    static String bukkitApiVersion(String artifactVersion) {
+        Matcher matcher = Pattern.compile("^(\\d+\\.\\d+)").matcher(artifactVersion);
+        return matcher.find() ? matcher.group(1) : "1.20";
+    }
+
+    private static String firstLine(String text) {
+        String line = text == null ? "" : text.strip().lines().findFirst().orElse("");
+        return line.length() > 200 ? line.substring(0, 197) + "..." : line;
+    }
+
+    // --- Подстановка ---
+
+    /**
+     * Подставляет значения в шаблон. {{имя}} ищется сначала в текущем элементе списка, затем во внешних контекстах.
+     * {{#имя}}...{{/имя}} повторяется для каждого элемента списка, выводится один раз для true или непустой строки
+     * и пропускается для false, null, пустой строки или пустого списка.
+     */
+    static String render(String template, Map<String, Object> context) {
+        List<Map<String, Object>> scopes = new ArrayList<>();
+        scopes.add(context);
+        StringBuilder out = new StringBuilder(template.length() + 256);
+        render(template, scopes, out);
+        return out.toString();
+    }
+
+    private static void render(String template, List<Map<String, Object>> scopes, StringBuilder out) {
+        int position = 0;
+        while (true) {
+            int open = template.indexOf("{{", position);
+            if (open < 0) {
+                out.append(template, position, template.length());
+                return;
+            }
+            out.append(template, position, open);
+            int close = template.indexOf("}}", open);
+            if (close < 0) {
+                throw new IllegalArgumentException("Незакрытая метка шаблона в позиции " + open);
+            }
+            String tag = template.substring(open + 2, close).trim();
+            position = close + 2;
+            if (!tag.startsWith("#")) {
+                Object value = lookup(scopes, tag);
+                out.append(value == null ? "" : value);
+                continue;
+            }
+            String name = tag.substring(1);
+            String end = "{{/" + name + "}}";
+            int endIndex = template.indexOf(end, position);
+            if (endIndex < 0) {
+                throw new IllegalArgumentException("Нет закрывающей метки " + end);
+            }
+            String body = template.substring(position, endIndex);
+            position = endIndex + end.length();
+            Object value = lookup(scopes, name);
+            if (value instanceof List<?> list) {
+                for (Object item : list) {
+                    @SuppressWarnings("unchecked")
+                    Map<String, Object> scope = (Map<String, Object>) item;
+                    scopes.add(scope);
+                    render(body, scopes, out);
+                    scopes.remove(scopes.size() - 1);
+                }
+            } else if (value != null && !Boolean.FALSE.equals(value) && !"".equals(value)) {
+                render(body, scopes, out);
+            }
+        }
+    }
+
+    private static Object lookup(List<Map<String, Object>> scopes, String name) {
+        for (int i = scopes.size() - 1; i >= 0; i--) {
+            if (scopes.get(i).containsKey(name)) {
+                return scopes.get(i).get(name);
+            }
+        }
+        return null;
+    }
+
+    private static String xml(String value) {
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+
+    /**
+     * Строка YAML в одинарных кавычках: внутри удваивается только сама кавычка.
+     */
+    private static String yaml(String value) {
+        return "'" + value.replace("'", "''") + "'";
+    }
+}
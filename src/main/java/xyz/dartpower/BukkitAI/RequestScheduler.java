@@ -0,0 +1,301 @@
+package xyz.dartpower.BukkitAI;
+
+import java.net.http.HttpHeaders;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Планировщик запросов к провайдерам: ограничивает частоту запросов по каждой паре (провайдер, модель)
+ * с помощью token bucket, учитывает заголовки Retry-After и x-ratelimit-* и вычисляет задержки
+ * для повторов с экспоненциальным ростом и случайным разбросом.
+ */
+public class RequestScheduler {
+
+    private static RequestScheduler shared;
+
+    private static final Pattern DURATION_PART = Pattern.compile("(\\d+(?:\\.\\d+)?)(ms|h|m|s)");
+
+    private final double requestsPerMinute;
+    private final int burst;
+    private final int maxRetries;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+    public RequestScheduler(double requestsPerMinute, int burst, int maxRetries, long baseDelayMillis, long maxDelayMillis) {
+        this.requestsPerMinute = requestsPerMinute;
+        this.burst = Math.max(1, burst);
+        this.maxRetries = maxRetries;
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+    }
+
+    /**
+     * Возвращает общий планировщик, созданный по настройкам секции "scheduler" config.yaml.
+     */
+    public static synchronized RequestScheduler shared(ConfigOptions options) {
+        if (shared == null) {
+            shared = new RequestScheduler(
+                    options.getDouble("scheduler.requests-per-minute", 0),
+                    options.getInt("scheduler.burst", 5),
+                    options.getInt("scheduler.max-retries", 5),
+                    options.getLong("scheduler.base-delay-ms", 1000),
+                    options.getLong("scheduler.max-delay-ms", 60_000)
+            );
+        }
+        return shared;
+    }
+
+    /**
+     * Оборачивает клиента так, чтобы все его запросы проходили через планировщик.
+     */
+    public AiClient schedule(AiClient client) {
+        return new ScheduledAiClient(client, this);
+    }
+
+    public int maxRetries() {
+        return maxRetries;
+    }
+
+    Bucket bucket(String provider, String model) {
+        return buckets.computeIfAbsent(provider + "/" + model, key -> new Bucket(key, requestsPerMinute, burst));
+    }
+
+    /**
+     * Задержка перед повтором: значение Retry-After, если сервер его прислал,
+     * иначе случайная величина в диапазоне [0, base * 2^attempt] ("full jitter").
+     * @param attempt Номер повтора, начиная с 0.
+     */
+    long retryDelayMillis(int attempt, HttpHeaders headers) {
+        long retryAfter = headers == null ? -1 : parseRetryAfter(headers);
+        if (retryAfter >= 0) {
+            return retryAfter + ThreadLocalRandom.current().nextLong(250);
+        }
+        long cap = Math.min(maxDelayMillis, baseDelayMillis << Math.min(attempt, 20));
+        return ThreadLocalRandom.current().nextLong(cap + 1);
+    }
+
+    /**
+     * @return Значение Retry-After в миллисекундах или -1, если заголовка нет.
+     */
+    static long parseRetryAfter(HttpHeaders headers) {
+        Optional<String> value = headers.firstValue("Retry-After");
+        if (value.isEmpty()) {
+            return -1;
+        }
+        String text = value.get().trim();
+        try {
+            return (long) (Double.parseDouble(text) * 1000);
+        } catch (NumberFormatException e) {
+            try {
+                ZonedDateTime date = ZonedDateTime.parse(text, DateTimeFormatter.RFC_1123_DATE_TIME);
+                return Math.max(0, date.toInstant().toEpochMilli() - System.currentTimeMillis());
+            } catch (RuntimeException ignored) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Разбирает время сброса лимита: длительность в формате OpenAI ("1s", "6m0s", "20ms")
+     * либо момент времени в секундах или миллисекундах Unix (OpenRouter).
+     * @return Миллисекунды до сброса или -1, если значение не распознано.
+     */
+    static long parseResetMillis(String value) {
+        String text = value.trim();
+        try {
+            double number = Double.parseDouble(text);
+            if (number > 1e12) {
+                return Math.max(0, (long) number - System.currentTimeMillis());
+            }
+            if (number > 1e9) {
+                return Math.max(0, (long) (number * 1000) - System.currentTimeMillis());
+            }
+            return (long) (number * 1000);
+        } catch (NumberFormatException e) {
+            Matcher matcher = DURATION_PART.matcher(text);
+            long total = 0;
+            boolean found = false;
+            while (matcher.find()) {
+                found = true;
+                double amount = Double.parseDouble(matcher.group(1));
+                total += (long) switch (matcher.group(2)) {
+                    case "ms" -> amount;
+                    case "s" -> amount * 1000;
+                    case "m" -> amount * 60_000;
+                    default -> amount * 3_600_000;
+                };
+            }
+            return found ? total : -1;
+        }
+    }
+
+    /**
+     * Token bucket для одной пары (провайдер, модель). Потоки, ожидающие токен, просыпаются
+     * ровно к моменту его появления или сразу после того, как сервер сообщил о свободной ёмкости.
+     */
+    static class Bucket {
+
+        private final String key;
+        private final ReentrantLock lock = new ReentrantLock(true);
+        private final Condition changed = lock.newCondition();
+
+        // Скорость пополнения в токенах за миллисекунду; 0 — без локального ограничения
+        private double ratePerMilli;
+        private double capacity;
+        private double tokens;
+        private long lastRefill = System.nanoTime();
+        private long pausedUntil = lastRefill;
+
+        Bucket(String key, double requestsPerMinute, int burst) {
+            this.key = key;
+            this.ratePerMilli = requestsPerMinute / 60_000.0;
+            this.capacity = burst;
+            this.tokens = burst;
+        }
+
+        /**
+         * Ждёт, пока запрос можно будет отправить, но не дольше срока генерации, и забирает один токен.
+         * @throws DeadlineExceededException Если срок истёк или отменён во время ожидания.
+         */
+        void acquire(Deadline deadline) throws InterruptedException, DeadlineExceededException {
+            deadline.check();
+            // Отмена срока будит ожидающих, чтобы они не ждали окончания лимита; регистрация снимается
+            // и тогда, когда ожидание блокировки прервано
+            try (Deadline.Registration ignored = deadline.onCancel(this::wakeUp)) {
+                lock.lockInterruptibly();
+                try {
+                    boolean announced = false;
+                    while (true) {
+                        deadline.check();
+                        long now = System.nanoTime();
+                        refill(now);
+                        long waitNanos;
+                        if (now - pausedUntil < 0) {
+                            waitNanos = pausedUntil - now;
+                        } else if (ratePerMilli <= 0 || tokens >= 1) {
+                            if (ratePerMilli > 0) {
+                                tokens -= 1;
+                            }
+                            return;
+                        } else {
+                            waitNanos = (long) ((1 - tokens) / ratePerMilli * 1_000_000);
+                        }
+                        if (!announced) {
+                            System.out.printf("-> [Планировщик] %s: ожидание лимита запросов (~%d мс)%n", key,
+                                    TimeUnit.NANOSECONDS.toMillis(waitNanos));
+                            announced = true;
+                        }
+                        changed.awaitNanos(Math.max(waitNanos, 1_000_000));
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+
+        private void wakeUp() {
+            lock.lock();
+            try {
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Приостанавливает отправку запросов на указанное время (Retry-After, исчерпанный лимит).
+         */
+        void pauseFor(long millis) {
+            lock.lock();
+            try {
+                long until = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+                if (until - pausedUntil > 0) {
+                    pausedUntil = until;
+                }
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Уточняет состояние корзины по заголовкам x-ratelimit-* ответа сервера.
+         */
+        void observe(HttpHeaders headers) {
+            Optional<String> limit = firstOf(headers, "x-ratelimit-limit-requests", "x-ratelimit-limit");
+            Optional<String> remaining = firstOf(headers, "x-ratelimit-remaining-requests", "x-ratelimit-remaining");
+            Optional<String> reset = firstOf(headers, "x-ratelimit-reset-requests", "x-ratelimit-reset");
+            if (limit.isEmpty() && remaining.isEmpty()) {
+                return;
+            }
+
+            lock.lock();
+            try {
+                refill(System.nanoTime());
+                // Если локальный лимит не задан, перенимаем лимит сервера (запросов в минуту)
+                if (limit.isPresent() && ratePerMilli <= 0) {
+                    double perMinute = parseDouble(limit.get());
+                    if (perMinute > 0) {
+                        ratePerMilli = perMinute / 60_000.0;
+                        capacity = Math.max(1, perMinute);
+                        tokens = capacity;
+                    }
+                }
+                if (remaining.isPresent()) {
+                    double left = parseDouble(remaining.get());
+                    if (left >= 0 && ratePerMilli > 0) {
+                        tokens = Math.min(tokens, left);
+                    }
+                    if (left == 0 && reset.isPresent()) {
+                        long resetMillis = parseResetMillis(reset.get());
+                        if (resetMillis > 0) {
+                            long until = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(resetMillis);
+                            if (until - pausedUntil > 0) {
+                                pausedUntil = until;
+                            }
+                        }
+                    }
+                }
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void refill(long now) {
+            if (ratePerMilli > 0) {
+                double elapsedMillis = (now - lastRefill) / 1_000_000.0;
+                tokens = Math.min(capacity, tokens + elapsedMillis * ratePerMilli);
+            }
+            lastRefill = now;
+        }
+
+        private static Optional<String> firstOf(HttpHeaders headers, String... names) {
+            for (String name : names) {
+                Optional<String> value = headers.firstValue(name);
+                if (value.isPresent()) {
+                    return value;
+                }
+            }
+            return Optional.empty();
+        }
+
+        private static double parseDouble(String value) {
+            try {
+                return Double.parseDouble(value.trim());
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package xyz.dartpower.BukkitAI;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Кэш ответов модели с адресацией по содержимому запроса.
+ * <p>
+ * Ключ — SHA-256 от провайдера, модели и всех сообщений запроса. Первый уровень — LRU в памяти,
+ * ограниченный по объёму, второй — файлы в папке на диске (cache/ab/abcdef....json).
+ */
+public class ResponseCache {
+
+    private static ResponseCache shared;
+
+    private final Path dir;
+    private final long ttlMillis;
+    private final long memoryMaxBytes;
+    private final long diskMaxBytes;
+    private final Gson gson = new Gson();
+
+    private final LinkedHashMap<String, Entry> memory = new LinkedHashMap<>(64, 0.75f, true);
+    private long memoryBytes;
+    private long diskBytes = -1;
+
+    private record Entry(Completion completion, long createdAt) {
+        long sizeInBytes() {
+            return 2L * completion.content().length() + 64;
+        }
+    }
+
+    public ResponseCache(Path dir, long ttlMillis, long memoryMaxBytes, long diskMaxBytes) {
+        this.dir = dir;
+        this.ttlMillis = ttlMillis;
+        this.memoryMaxBytes = memoryMaxBytes;
+        this.diskMaxBytes = diskMaxBytes;
+    }
+
+    /**
+     * Возвращает общий для всех клиентов кэш, созданный по настройкам из секции "cache" config.yaml.
+     */
+    public static synchronized ResponseCache shared(ConfigOptions options) {
+        if (shared == null) {
+            shared = new ResponseCache(
+                    Path.of(options.getString("cache.dir", "cache")),
+                    options.getLong("cache.ttl-hours", 24 * 7) * 3_600_000L,
+                    options.getLong("cache.memory-max-mb", 64) * 1024 * 1024,
+                    options.getLong("cache.disk-max-mb", 512) * 1024 * 1024
+            );
+        }
+        return shared;
+    }
+
+    /**
+     * Вычисляет ключ кэша для запроса к указанному провайдеру и модели.
+     */
+    public static String key(String provider, String model, ChatRequest request) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            update(digest, provider);
+            update(digest, model);
+            for (ChatRequest.Message message : request.messages()) {
+                update(digest, message.role());
+                update(digest, message.content());
+            }
+            if (request.maxTokens() > 0) {
+                // Ограничение длины меняет ответ; без него ключи прежние
+                update(digest, "max_tokens=" + request.maxTokens());
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 недоступен", e);
+        }
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        // Разделитель, чтобы ("ab", "c") и ("a", "bc") давали разные ключи
+        digest.update((byte) 0);
+    }
+
+    /**
+     * @return Сохранённый ответ или null, если его нет или истёк срок хранения.
+     */
+    public Completion get(String key) {
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            Entry entry = memory.get(key);
+            if (entry != null) {
+                if (!isExpired(entry.createdAt(), now)) {
+                    return entry.completion();
+                }
+                removeFromMemory(key);
+            }
+        }
+
+        Path file = fileFor(key);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try {
+            JsonObject json = gson.fromJson(Files.readString(file), JsonObject.class);
+            long createdAt = json.get("createdAt").getAsLong();
+            if (isExpired(createdAt, now)) {
+                deleteFile(file);
+                return null;
+            }
+            Completion completion = new Completion(
+                    json.get("content").getAsString(),
+                    json.has("finishReason") ? json.get("finishReason").getAsString() : null,
+                    json.get("promptTokens").getAsInt(),
+                    json.get("completionTokens").getAsInt()
+            );
+            // Время изменения файла используется как время последнего обращения для вытеснения с диска
+            Files.setLastModifiedTime(file, FileTime.fromMillis(now));
+            putInMemory(key, new Entry(completion, createdAt));
+            return completion;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("   [Кэш] Повреждённая запись " + file + " удалена: " + e.getMessage());
+            deleteFile(file);
+            return null;
+        }
+    }
+
+    /**
+     * Сохраняет ответ в памяти и на диске.
+     */
+    public void put(String key, Completion completion) {
+        long now = System.currentTimeMillis();
+        putInMemory(key, new Entry(completion, now));
+
+        JsonObject json = new JsonObject();
+        json.addProperty("createdAt", now);
+        json.addProperty("content", completion.content());
+        if (completion.finishReason() != null) {
+            json.addProperty("finishReason", completion.finishReason());
+        }
+        json.addProperty("promptTokens", completion.promptTokens());
+        json.addProperty("completionTokens", completion.completionTokens());
+
+        Path file = fileFor(key);
+        try {
+            Files.createDirectories(file.getParent());
+            Path tmp = Files.createTempFile(file.getParent(), key, ".tmp");
+            Files.writeString(tmp, json.toString());
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            trackDiskUsage(Files.size(file));
+        } catch (IOException e) {
+            System.err.println("   [Кэш] Не удалось сохранить ответ на диск: " + e.getMessage());
+        }
+    }
+
+    private boolean isExpired(long createdAt, long now) {
+        return ttlMillis > 0 && now - createdAt > ttlMillis;
+    }
+
+    private Path fileFor(String key) {
+        return dir.resolve(key.substring(0, 2)).resolve(key + ".json");
+    }
+
+    private synchronized void putInMemory(String key, Entry entry) {
+        removeFromMemory(key);
+        memory.put(key, entry);
+        memoryBytes += entry.sizeInBytes();
+
+        // Вытесняем самые давно использованные записи
+        Iterator<Map.Entry<String, Entry>> it = memory.entrySet().iterator();
+        while (memoryBytes > memoryMaxBytes && it.hasNext()) {
+            Map.Entry<String, Entry> eldest = it.next();
+            memoryBytes -= eldest.getValue().sizeInBytes();
+            it.remove();
+        }
+    }
+
+    private void removeFromMemory(String key) {
+        Entry removed = memory.remove(key);
+        if (removed != null) {
+            memoryBytes -= removed.sizeInBytes();
+        }
+    }
+
+    private synchronized void trackDiskUsage(long addedBytes) throws IOException {
+        if (diskBytes < 0) {
+            diskBytes = scanDisk().stream().mapToLong(DiskFile::size).sum();
+        } else {
+            diskBytes += addedBytes;
+        }
+        if (diskBytes <= diskMaxBytes) {
+            return;
+        }
+
+        // Удаляем файлы, к которым дольше всего не обращались, пока не уложимся в лимит
+        List<DiskFile> files = scanDisk();
+        files.sort(Comparator.comparingLong(DiskFile::lastAccess));
+        diskBytes = files.stream().mapToLong(DiskFile::size).sum();
+        for (DiskFile file : files) {
+            if (diskBytes <= diskMaxBytes) {
+                break;
+            }
+            deleteFile(file.path());
+            diskBytes -= file.size();
+        }
+    }
+
+    private record DiskFile(Path path, long size, long lastAccess) {}
+
+    private List<DiskFile> scanDisk() throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return new ArrayList<>();
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            return paths.filter(p -> p.toString().endsWith(".json"))
+                    .map(p -> {
+                        try {
+                            return new DiskFile(p, Files.size(p), Files.getLastModifiedTime(p).toMillis());
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    })
+                    .collect(Collectors.toCollection(ArrayList::new));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static void deleteFile(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            System.err.println("   [Кэш] Не удалось удалить " + file + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package xyz.dartpower.BukkitAI;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.http.HttpHeaders;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Декоратор {@link AiClient}, пропускающий запросы через {@link RequestScheduler}:
+ * ждёт свободной ёмкости лимита и повторяет запрос после 429/5xx.
+ */
+public class ScheduledAiClient implements AiClient {
+
+    private final AiClient delegate;
+    private final RequestScheduler scheduler;
+    private final RequestScheduler.Bucket bucket;
+
+    public ScheduledAiClient(AiClient delegate, RequestScheduler scheduler) {
+        this.delegate = delegate;
+        this.scheduler = scheduler;
+        this.bucket = scheduler.bucket(delegate.provider(), delegate.model());
+        if (delegate instanceof ChatCompletionsClient chatClient) {
+            chatClient.setResponseListener((statusCode, headers) -> bucket.observe(headers));
+        } else if (delegate instanceof EndpointPool pool) {
+            pool.setResponseListener((statusCode, headers) -> bucket.observe(headers));
+        }
+    }
+
+    @Override
+    public String provider() {
+        return delegate.provider();
+    }
+
+    @Override
+    public String model() {
+        return delegate.model();
+    }
+
+    @Override
+    public List<String> models() {
+        return delegate.models();
+    }
+
+    @Override
+    public Completion complete(ChatRequest request) throws IOException, InterruptedException {
+        return execute(request.deadline(), () -> delegate.complete(request));
+    }
+
+    @Override
+    public Completion stream(ChatRequest request, StreamListener listener) throws IOException, InterruptedException {
+        // Ошибка с кодом ответа возникает до первого фрагмента, поэтому повтор не дублирует переданный текст
+        return execute(request.deadline(), () -> delegate.stream(request, listener));
+    }
+
+    private interface Call {
+        Completion run() throws IOException, InterruptedException;
+    }
+
+    private Completion execute(Deadline deadline, Call call) throws IOException, InterruptedException {
+        for (int attempt = 0; ; attempt++) {
+            bucket.acquire(deadline);
+            try {
+                return call.run();
+            } catch (ApiException e) {
+                if (!e.isRetryable() || attempt >= scheduler.maxRetries()) {
+                    throw e;
+                }
+                waitBeforeRetry(deadline, attempt, e.statusCode(), e.headers());
+            } catch (ConnectException e) {
+                if (attempt >= scheduler.maxRetries()) {
+                    throw e;
+                }
+                waitBeforeRetry(deadline, attempt, -1, null);
+            }
+        }
+    }
+
+    /**
+     * Пауза перед повтором; если она не укладывается в срок генерации, повтора не будет.
+     */
+    private void waitBeforeRetry(Deadline deadline, int attempt, int statusCode, HttpHeaders headers)
+            throws IOException, InterruptedException {
+        long delay = scheduler.retryDelayMillis(attempt, headers);
+        System.out.printf("-> [Планировщик] %s/%s: %s, повтор %d из %d через %d мс%n",
+                provider(), model(), statusCode > 0 ? "код " + statusCode : "нет соединения",
+                attempt + 1, scheduler.maxRetries(), delay);
+        if (statusCode == 429) {
+            // Лимит исчерпан для всех запросов к этой модели, а не только для текущего
+            bucket.pauseFor(delay);
+            Duration remaining = deadline.remaining();
+            if (remaining != null && remaining.toMillis() < delay) {
+                throw new DeadlineExceededException("до истечения срока генерации осталось меньше паузы лимита ("
+                        + delay + " мс)");
+            }
+        } else {
+            deadline.sleep(delay);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package xyz.dartpower.BukkitAI;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Читатель потока server-sent events (text/event-stream).
+ * Возвращает содержимое полей "data:" по одному событию, комментарии (":") пропускает.
+ */
+public class SseReader implements Closeable {
+
+    public static final String DONE = "[DONE]";
+
+    private final BufferedReader reader;
+
+    public SseReader(InputStream in) {
+        this.reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return Данные следующего события или null, если поток закончился.
+     * @throws IOException В случае ошибки чтения.
+     */
+    public String nextData() throws IOException {
+        StringBuilder data = null;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isEmpty()) {
+                // Пустая строка завершает событие
+                if (data != null) {
+                    return data.toString();
+                }
+                continue;
+            }
+            if (line.startsWith(":") || !line.startsWith("data:")) {
+                continue;
+            }
+            String value = line.substring(5);
+            if (value.startsWith(" ")) {
+                value = value.substring(1);
+            }
+            if (data == null) {
+                data = new StringBuilder(value);
+            } else {
+                data.append('\n').append(value);
+            }
+        }
+        return data == null ? null : data.toString();
+    }
+
+    /**
+     * Читает поток chat/completions ("stream": true) и передаёт каждый фрагмент choices[0].delta.content
+     * получателю. Текст ответа не накапливается: его обрабатывает (и при необходимости собирает) получатель.
+     * @param in Тело ответа API.
+     * @param listener Получатель фрагментов.
+     * @return finish_reason и usage (если API их прислал); текст ответа — null.
+     * @throws IOException В случае ошибки чтения или ошибки, переданной API внутри потока.
+     */
+    public static Completion readCompletionDeltas(InputStream in, StreamListener listener) throws IOException {
+        String finishReason = null;
+        int promptTokens = -1;
+        int completionTokens = -1;
+        try (SseReader sse = new SseReader(in)) {
+            String data;
+            while ((data = sse.nextData()) != null) {
+                if (DONE.equals(data.trim())) {
+                    break;
+                }
+                CompletionReader.Parsed chunk;
+                try {
+                    chunk = CompletionReader.readChunk(data);
+                } catch (IOException | RuntimeException e) {
+                    throw new IOException("Некорректный фрагмент потока: " + data, e);
+                }
+                if (chunk.error() != null) {
+                    throw new IOException("API вернул ошибку в потоке: " + chunk.error());
+                }
+                if (chunk.promptTokens() >= 0) {
+                    promptTokens = chunk.promptTokens();
+                }
+                if (chunk.completionTokens() >= 0) {
+                    completionTokens = chunk.completionTokens();
+                }
+                if (chunk.finishReason() != null) {
+                    finishReason = chunk.finishReason();
+                }
+                if (chunk.content() != null) {
+                    listener.onDelta(chunk.content());
+                }
+            }
+        }
+        listener.onComplete();
+        return new Completion(null, finishReason, promptTokens, completionTokens);
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
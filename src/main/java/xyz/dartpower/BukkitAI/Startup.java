@@ -0,0 +1,223 @@
+package xyz.dartpower.BukkitAI;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Ускорение запуска CLI.
+ * <ul>
+ *     <li>Тяжёлая инициализация (SnakeYAML, Gson, HttpClient, клиенты провайдеров) выполняется
+ *     в фоновом потоке, пока пользователь отвечает на вопросы.</li>
+ *     <li>--startup-report выводит, сколько времени занял запуск до первого вопроса и до готовности клиента.</li>
+ *     <li>--cds создаёт архив AppCDS (class data sharing) для собранного jar и сравнивает время запуска
+ *     с архивом и без него.</li>
+ * </ul>
+ */
+final class Startup {
+
+    // Скрытый режим: прогон типичной инициализации без сети и ввода (для записи архива CDS и замеров)
+    static final String PROBE_FLAG = "--startup-probe";
+
+    private static final int MEASURE_RUNS = 5;
+
+    private static boolean report;
+    private static long jvmStartMillis;
+    private static final List<String> marks = new ArrayList<>();
+
+    private Startup() {
+    }
+
+    static void enableReport() {
+        report = true;
+        // Время старта из /proc на Linux округлено до секунды, поэтому берём его у JVM (только в режиме отчёта)
+        jvmStartMillis = ManagementFactory.getRuntimeMXBean().getStartTime();
+        System.out.println("Default Charset: " + Charset.defaultCharset());
+        System.out.println("File Encoding: " + System.getProperty("file.encoding"));
+        mark("main()");
+    }
+
+    /**
+     * Отмечает этап запуска; время считается от старта процесса.
+     */
+    static synchronized void mark(String stage) {
+        if (report) {
+            marks.add(String.format("%-32s %6d мс", stage, sinceProcessStartMillis()));
+        }
+    }
+
+    static synchronized void printReport() {
+        if (!report) {
+            return;
+        }
+        System.out.println("\n--- Время запуска (от старта JVM) ---");
+        marks.forEach(System.out::println);
+    }
+
+    private static long sinceProcessStartMillis() {
+        return System.currentTimeMillis() - jvmStartMillis;
+    }
+
+    /**
+     * Запускает задачу в фоновом потоке; результат забирается через {@link #await}.
+     */
+    static <T> CompletableFuture<T> async(String stage, Callable<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Thread.ofPlatform().daemon().name("startup-" + stage).start(() -> {
+            try {
+                T result = task.call();
+                mark(stage + " (фон)");
+                future.complete(result);
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Дожидается фоновой задачи; её исключение пробрасывается как есть.
+     */
+    static <T> T await(CompletableFuture<T> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io) {
+                throw io;
+            }
+            if (cause instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw new CompletionException(cause);
+        }
+    }
+
+    /**
+     * Загружает классы, которые понадобятся при генерации: JSON, чтение ответов, разбор блоков кода, HTTP.
+     * Сеть не используется.
+     */
+    static Void warmUp(ConfigOptions options) throws IOException {
+        ChatRequest.pluginCode("warm up", "WarmUp", options.getBoolean("templates.enabled", true)).toJson("model", false).toString();
+        String response = "{\"choices\":[{\"message\":{\"content\":\"```java\\npublic class A {}\\n```\"},"
+                + "\"finish_reason\":\"stop\"}],\"usage\":{\"prompt_tokens\":1,\"completion_tokens\":1}}";
+        try (InputStream in = new ByteArrayInputStream(response.getBytes(StandardCharsets.UTF_8))) {
+            Completion completion = CompletionReader.read(in);
+            CodeFenceParser.parse(completion.content(), block -> { });
+        }
+        CompletionReader.readChunk("{\"choices\":[{\"delta\":{\"content\":\"x\"}}]}");
+        HttpTransport.shared(options);
+        return null;
+    }
+
+    /**
+     * Скрытый режим --startup-probe: то же, что делает запуск до первого запроса к API.
+     */
+    static int probe() {
+        try {
+            ConfigManager configManager = new ConfigManager();
+            ConfigManager.ConfigData config = configManager.configExists() ? configManager.loadConfig() : null;
+            warmUp(config != null ? config.options() : ConfigOptions.EMPTY);
+            return 0;
+        } catch (IOException e) {
+            System.err.println("Ошибка: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    /**
+     * Режим --cds: записывает архив AppCDS для собранного jar и сравнивает время запуска с ним и без него.
+     * @param archiveArg Путь к архиву или null (тогда архив кладётся рядом с jar).
+     */
+    static int createCdsArchive(String archiveArg) {
+        Path jar;
+        try {
+            jar = Path.of(PluginGenerator.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        } catch (Exception e) {
+            System.err.println("Не удалось определить путь к jar: " + e.getMessage());
+            return 1;
+        }
+        if (!Files.isRegularFile(jar)) {
+            // Классы из каталогов в архив CDS не попадают
+            System.err.println("Архив CDS создаётся только для собранного jar (mvn package), а не для " + jar);
+            return 2;
+        }
+        Path archive = archiveArg != null ? Path.of(archiveArg)
+                : jar.resolveSibling(jar.getFileName().toString().replaceFirst("\\.jar$", "") + ".jsa");
+        String java = ProcessHandle.current().info().command().orElse(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+
+        try {
+            System.out.println("-> Запись архива классов: " + archive.toAbsolutePath());
+            Files.deleteIfExists(archive);
+            int exit = run(List.of(java, "-XX:ArchiveClassesAtExit=" + archive, "-Xlog:cds=off", "-Xlog:cds+dynamic=off",
+                    "-cp", jar.toString(),
+                    PluginGenerator.class.getName(), PROBE_FLAG));
+            if (exit != 0 || !Files.isRegularFile(archive)) {
+                System.err.println("Не удалось создать архив CDS (код выхода " + exit + ").");
+                return 1;
+            }
+
+            System.out.printf("-> Замер времени запуска (%d прогонов в каждом режиме)...%n", MEASURE_RUNS);
+            List<String> plain = List.of(java, "-cp", jar.toString(), PluginGenerator.class.getName(), PROBE_FLAG);
+            List<String> shared = List.of(java, "-XX:SharedArchiveFile=" + archive, "-Xlog:cds=off", "-Xlog:cds+dynamic=off",
+                    "-cp", jar.toString(), PluginGenerator.class.getName(), PROBE_FLAG);
+            long[] without = measure(plain);
+            long[] with = measure(shared);
+
+            System.out.println("\n--- Время запуска до готовности к генерации ---");
+            System.out.printf("Без архива:  медиана %d мс, минимум %d мс%n", median(without), without[0]);
+            System.out.printf("С архивом:   медиана %d мс, минимум %d мс%n", median(with), with[0]);
+            if (median(with) > 0) {
+                System.out.printf("Ускорение:   %.2fx%n", median(without) / (double) median(with));
+            }
+            System.out.println("\nЗапуск с архивом:");
+            System.out.println("   java -XX:SharedArchiveFile=" + archive + " -jar " + jar);
+            System.out.println("Архив нужно пересоздать после пересборки jar или смены версии Java.");
+            return 0;
+        } catch (IOException e) {
+            System.err.println("Ошибка создания архива CDS: " + e.getMessage());
+            return 1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 1;
+        }
+    }
+
+    private static long[] measure(List<String> command) throws IOException, InterruptedException {
+        // Первый прогон прогревает файловый кэш ОС и не учитывается
+        run(command);
+        long[] millis = new long[MEASURE_RUNS];
+        for (int i = 0; i < MEASURE_RUNS; i++) {
+            long start = System.nanoTime();
+            if (run(command) != 0) {
+                throw new IOException("Пробный запуск завершился с ошибкой: " + String.join(" ", command));
+            }
+            millis[i] = (System.nanoTime() - start) / 1_000_000;
+        }
+        Arrays.sort(millis);
+        return millis;
+    }
+
+    private static long median(long[] sorted) {
+        return sorted[sorted.length / 2];
+    }
+
+    private static int run(List<String> command) throws IOException, InterruptedException {
+        return new ProcessBuilder(command).inheritIO().start().waitFor();
+    }
+}
@@ -0,0 +1,23 @@
+package xyz.dartpower.BukkitAI;
+
+import java.io.IOException;
+
+/**
+ * Получатель фрагментов ответа ИИ при потоковой (SSE) генерации.
+ */
+public interface StreamListener {
+
+    /**
+     * Вызывается для каждого нового фрагмента текста ответа.
+     * @param delta Очередной фрагмент сгенерированного текста.
+     * @throws IOException В случае ошибки обработки фрагмента (например, записи файла).
+     */
+    void onDelta(String delta) throws IOException;
+
+    /**
+     * Вызывается один раз после получения последнего фрагмента.
+     * @throws IOException В случае ошибки завершения обработки.
+     */
+    default void onComplete() throws IOException {
+    }
+}
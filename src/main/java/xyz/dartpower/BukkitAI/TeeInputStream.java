@@ -0,0 +1,98 @@
+package xyz.dartpower.BukkitAI;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Поток, который по мере чтения сохраняет прочитанные байты (например, тело ответа API для журнала),
+ * чтобы разбор и журналирование обходились одной копией данных.
+ */
+public class TeeInputStream extends FilterInputStream {
+
+    private static final int DEFAULT_CAPACITY = 8 * 1024;
+    private static final int MAX_PRESIZE = 64 * 1024 * 1024;
+
+    private byte[] buffer;
+    private int size;
+
+    /**
+     * @param expectedLength Ожидаемая длина (например, Content-Length) или -1, если она неизвестна.
+     */
+    public TeeInputStream(InputStream in, long expectedLength) {
+        super(in);
+        this.buffer = new byte[expectedLength > 0 ? (int) Math.min(expectedLength, MAX_PRESIZE) : DEFAULT_CAPACITY];
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b >= 0) {
+            ensureCapacity(1);
+            buffer[size++] = (byte) b;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = super.read(b, off, len);
+        if (n > 0) {
+            ensureCapacity(n);
+            System.arraycopy(b, off, buffer, size, n);
+            size += n;
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        // Пропущенные байты тоже должны попасть в копию
+        byte[] scratch = new byte[(int) Math.min(n, 8192)];
+        long skipped = 0;
+        while (skipped < n) {
+            int read = read(scratch, 0, (int) Math.min(scratch.length, n - skipped));
+            if (read < 0) {
+                break;
+            }
+            skipped += read;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    /**
+     * Дочитывает поток до конца, чтобы копия содержала всё тело.
+     */
+    public void drain() throws IOException {
+        byte[] scratch = new byte[8192];
+        while (read(scratch, 0, scratch.length) >= 0) {
+            // Данные сохраняются в read()
+        }
+    }
+
+    /**
+     * @return Количество прочитанных байт.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return Прочитанные байты; если длина совпала с ожидаемой, возвращается сам буфер без копирования.
+     */
+    public byte[] captured() {
+        return size == buffer.length ? buffer : Arrays.copyOf(buffer, size);
+    }
+
+    private void ensureCapacity(int extra) {
+        if (size + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(size + extra, buffer.length * 2));
+        }
+    }
+}
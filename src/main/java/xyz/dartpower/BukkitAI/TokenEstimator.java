@@ -0,0 +1,192 @@
+package xyz.dartpower.BukkitAI;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Локальная (без сети и словарей токенизатора) оценка числа токенов текста.
+ * <p>
+ * Текст делится на отрезки так же, как это делают предварительные разбиения BPE-токенизаторов:
+ * слова, числа, знаки препинания и пробельные последовательности. Длина слова переводится в токены
+ * по среднему числу символов на токен для семейства модели, отдельно для латиницы и остальных алфавитов.
+ * Оценка намеренно немного завышена; после ответа она уточняется по usage.prompt_tokens ({@link #calibrate}).
+ */
+public final class TokenEstimator {
+
+    // Служебные токены на каждое сообщение (роль, разделители) и на начало ответа
+    private static final int TOKENS_PER_MESSAGE = 4;
+    private static final int TOKENS_PER_REPLY = 3;
+
+    /**
+     * Параметры семейства моделей.
+     * @param latinCharsPerToken Среднее число латинских символов в токене.
+     * @param otherCharsPerToken То же для кириллицы и других алфавитов.
+     * @param contextWindow Размер контекста в токенах.
+     * @param maxOutput Предел длины ответа или -1, если он неизвестен (тогда max_tokens не передаётся).
+     * @param maxTokensField Имя поля запроса для ограничения длины ответа.
+     */
+    public record Family(String name, double latinCharsPerToken, double otherCharsPerToken,
+                         int contextWindow, int maxOutput, String maxTokensField) {
+
+        // Порядок важен: более конкретные имена проверяются раньше общих.
+        // Имя, оканчивающееся на точку, охватывает все подверсии (llama-3.1, llama-3.3)
+        private static final List<Family> KNOWN = List.of(
+                new Family("o1", 6.5, 4.0, 128_000, 32_768, "max_completion_tokens"),
+                new Family("o3", 6.5, 4.0, 200_000, 65_536, "max_completion_tokens"),
+                new Family("o4", 6.5, 4.0, 200_000, 65_536, "max_completion_tokens"),
+                new Family("gpt-5.", 6.5, 4.0, 400_000, 128_000, "max_completion_tokens"),
+                new Family("gpt-5", 6.5, 4.0, 400_000, 128_000, "max_completion_tokens"),
+                new Family("gpt-4.5", 6.5, 4.0, 128_000, 16_384, "max_tokens"),
+                new Family("gpt-4.1", 6.5, 4.0, 1_000_000, 32_768, "max_tokens"),
+                new Family("gpt-4o", 6.5, 4.0, 128_000, 16_384, "max_tokens"),
+                new Family("chatgpt-4o", 6.5, 4.0, 128_000, 16_384, "max_tokens"),
+                new Family("gpt-4-turbo", 6.0, 2.5, 128_000, 4_096, "max_tokens"),
+                new Family("gpt-4", 6.0, 2.5, 8_192, 4_096, "max_tokens"),
+                new Family("gpt-3.5", 6.0, 2.5, 16_385, 4_096, "max_tokens"),
+                new Family("llama-3.", 6.0, 3.0, 131_072, 8_192, "max_tokens"),
+                new Family("llama-3", 6.0, 3.0, 8_192, 4_096, "max_tokens"),
+                new Family("llama-2", 4.5, 2.5, 4_096, 2_048, "max_tokens"),
+                new Family("mixtral", 4.5, 2.5, 32_768, 8_192, "max_tokens"),
+                new Family("mistral", 4.5, 2.5, 32_768, 8_192, "max_tokens"),
+                new Family("qwen", 5.5, 3.0, 32_768, 8_192, "max_tokens"),
+                new Family("deepseek", 5.5, 3.0, 65_536, 8_192, "max_tokens"),
+                new Family("claude", 5.0, 3.0, 200_000, 8_192, "max_tokens"),
+                new Family("gemini", 6.0, 4.0, 1_000_000, 8_192, "max_tokens")
+        );
+
+        // Неизвестная модель (например, локальная в LM Studio): осторожная оценка и небольшой контекст
+        private static final Family DEFAULT = new Family("default", 4.5, 2.5, 8_192, -1, "max_tokens");
+
+        public static Family of(String model) {
+            String name = model == null ? "" : model.toLowerCase(Locale.ROOT);
+            // У OpenRouter имя модели начинается с поставщика: meta-llama/llama-3.1-8b-instruct
+            String base = name.substring(name.lastIndexOf('/') + 1);
+            for (Family family : KNOWN) {
+                if (matches(base, family.name())) {
+                    return family;
+                }
+            }
+            return DEFAULT;
+        }
+
+        /**
+         * @return false, если модель не распознана и взяты осторожные параметры по умолчанию.
+         */
+        public boolean known() {
+            return !name.equals(DEFAULT.name);
+        }
+
+        /**
+         * Имя семейства должно стоять в имени модели отдельной частью: "gpt-4" подходит для gpt-4-0613,
+         * но не для gpt-4o или gpt-4.5, а "qwen" — для qwen2.5-coder, но не для qwenlong.
+         */
+        private static boolean matches(String base, String family) {
+            char last = family.charAt(family.length() - 1);
+            for (int i = base.indexOf(family); i >= 0; i = base.indexOf(family, i + 1)) {
+                if (i > 0 && Character.isLetterOrDigit(base.charAt(i - 1))) {
+                    continue;
+                }
+                int end = i + family.length();
+                if (end == base.length() || last == '.' || last == '-') {
+                    return true;
+                }
+                char next = base.charAt(end);
+                boolean continues = Character.isDigit(last)
+                        ? Character.isLetterOrDigit(next) || next == '.'
+                        : Character.isLetter(next);
+                if (!continues) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    // Поправочные коэффициенты по моделям: отношение реального числа токенов промпта к оценке
+    private static final Map<String, Double> corrections = new ConcurrentHashMap<>();
+
+    private TokenEstimator() {
+    }
+
+    /**
+     * Оценка числа токенов всех сообщений запроса вместе со служебными токенами.
+     */
+    public static int estimate(ChatRequest request, String model) {
+        int tokens = TOKENS_PER_REPLY;
+        for (ChatRequest.Message message : request.messages()) {
+            tokens += TOKENS_PER_MESSAGE + estimate(message.content(), model);
+        }
+        return tokens;
+    }
+
+    /**
+     * Оценка числа токенов текста для модели.
+     */
+    public static int estimate(String text, String model) {
+        Family family = Family.of(model);
+        double tokens = 0;
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            char c = text.charAt(i);
+            int start = i;
+            if (Character.isWhitespace(c)) {
+                while (i < length && Character.isWhitespace(text.charAt(i))) {
+                    i++;
+                }
+                // Одиночный пробел входит в токен следующего слова, остальные последовательности — примерно токен
+                if (i - start > 1 || c != ' ') {
+                    tokens += 1;
+                }
+            } else if (Character.isLetter(c)) {
+                int latin = 0;
+                int cjk = 0;
+                while (i < length && Character.isLetter(text.charAt(i))) {
+                    char letter = text.charAt(i);
+                    if (letter < 0x250) {
+                        latin++;
+                    } else if (Character.isIdeographic(letter)) {
+                        cjk++;
+                    }
+                    i++;
+                }
+                int other = i - start - latin - cjk;
+                tokens += Math.max(1, Math.round(latin / family.latinCharsPerToken() + other / family.otherCharsPerToken())) + cjk;
+            } else if (Character.isDigit(c)) {
+                while (i < length && Character.isDigit(text.charAt(i))) {
+                    i++;
+                }
+                tokens += Math.ceil((i - start) / 3.0);
+            } else {
+                while (i < length && !Character.isLetterOrDigit(text.charAt(i)) && !Character.isWhitespace(text.charAt(i))) {
+                    i++;
+                }
+                tokens += Math.ceil((i - start) / 2.0);
+            }
+        }
+        return (int) Math.ceil(tokens * corrections.getOrDefault(correctionKey(model), 1.0));
+    }
+
+    /**
+     * Уточняет оценку для модели по реальному числу токенов промпта из ответа API.
+     * Коэффициент сглаживается и не опускается ниже 0.8: недооценка опаснее переоценки.
+     */
+    public static void calibrate(String model, int estimated, int actual) {
+        if (estimated <= 0 || actual <= 0) {
+            return;
+        }
+        // Оценка уже включает текущий коэффициент, поэтому новое отношение умножается на него
+        corrections.compute(correctionKey(model), (key, current) -> {
+            double factor = current != null ? current : 1.0;
+            double observed = factor * actual / estimated;
+            double updated = current == null ? observed : factor * 0.8 + observed * 0.2;
+            return Math.max(0.8, Math.min(3.0, updated));
+        });
+    }
+
+    private static String correctionKey(String model) {
+        return model == null ? "" : model;
+    }
+}
@@ -0,0 +1,181 @@
+package xyz.dartpower.BukkitAI;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CodeFenceParserTest {
+
+    // Результат разбора: блоки и признак незакрытого блока в конце
+    private record Parsed(List<CodeFenceParser.CodeBlock> blocks, boolean unterminated) {}
+
+    private static Parsed parse(String text) throws IOException {
+        List<CodeFenceParser.CodeBlock> blocks = new ArrayList<>();
+        boolean unterminated = CodeFenceParser.parse(text, blocks::add);
+        return new Parsed(blocks, unterminated);
+    }
+
+    /**
+     * Разбирает текст, подавая его двумя фрагментами с разрезом в позиции split.
+     */
+    private static Parsed parseSplit(String text, int split) throws IOException {
+        List<CodeFenceParser.CodeBlock> blocks = new ArrayList<>();
+        CodeFenceParser parser = new CodeFenceParser(blocks::add);
+        parser.feed(text.substring(0, split));
+        parser.feed(text.substring(split));
+        return new Parsed(blocks, parser.finish());
+    }
+
+    @Test
+    void parsesJavaBlockWithPackageAndPublicType() throws IOException {
+        Parsed parsed = parse("""
+                Вот плагин:
+                ```java
+                package com.example.demo;
+
+                import org.bukkit.plugin.java.JavaPlugin;
+
+                class Helper {}
+
+                public final class DemoPlugin extends JavaPlugin {
+                    static class Inner {}
+                }
+                ```
+                """);
+
+        assertFalse(parsed.unterminated());
+        assertEquals(1, parsed.blocks().size());
+        CodeFenceParser.CodeBlock block = parsed.blocks().get(0);
+        assertEquals("java", block.language());
+        assertEquals("com.example.demo", block.packageName());
+        assertEquals("DemoPlugin", block.typeName());
+    }
+
+    @Test
+    void opensFenceAfterTextOnTheSameLine() throws IOException {
+        Parsed parsed = parse("Вот код: ```java\npublic class Main {}\n```\nи конфиг: ```yaml plugin.yml\nmain: a.Main\n```\n");
+
+        assertEquals(2, parsed.blocks().size());
+        assertEquals("Main", parsed.blocks().get(0).typeName());
+        assertEquals("yaml", parsed.blocks().get(1).language());
+        assertEquals("plugin.yml", parsed.blocks().get(1).fileName());
+        assertEquals("main: a.Main", parsed.blocks().get(1).code());
+    }
+
+    @Test
+    void treatsInlineTripleBackticksAsText() throws IOException {
+        Parsed parsed = parse("Используйте ```yaml``` для конфигов, а ``` для блоков.\n```java\nclass X {}\n```\n");
+
+        assertEquals(1, parsed.blocks().size());
+        assertEquals("X", parsed.blocks().get(0).typeName());
+        assertFalse(parsed.unterminated());
+    }
+
+    @Test
+    void closesOnFenceLongerThanOpening() throws IOException {
+        Parsed parsed = parse("```java\nclass A {}\n`````\nтекст\n");
+
+        assertEquals(1, parsed.blocks().size());
+        assertEquals("class A {}", parsed.blocks().get(0).code());
+        assertFalse(parsed.unterminated());
+    }
+
+    @Test
+    void shorterFenceDoesNotCloseLongerOne() throws IOException {
+        Parsed parsed = parse("````markdown\n```java\nclass A {}\n```\n````\n");
+
+        assertEquals(1, parsed.blocks().size());
+        assertEquals("```java\nclass A {}\n```", parsed.blocks().get(0).code());
+    }
+
+    @Test
+    void backticksInsideCodeLineDoNotCloseBlock() throws IOException {
+        Parsed parsed = parse("```java\nclass A { String s = \"```\"; }\n```\n");
+
+        assertEquals(1, parsed.blocks().size());
+        assertEquals("class A { String s = \"```\"; }", parsed.blocks().get(0).code());
+    }
+
+    @Test
+    void sameResultForEverySplitPoint() throws IOException {
+        // Разрезы приходятся и на открывающую ```, и на строку информации, и на закрывающую ```
+        String text = "Код: ```java Main.java\npackage a;\npublic class Main {}\n```\n```yml\nmain: a.Main\nname: X\n```";
+        Parsed whole = parse(text);
+        assertEquals(2, whole.blocks().size());
+        for (int split = 0; split <= text.length(); split++) {
+            Parsed parsed = parseSplit(text, split);
+            assertEquals(whole, parsed, "разрез в позиции " + split);
+        }
+    }
+
+    @Test
+    void sameResultForSingleCharacterDeltas() throws IOException {
+        String text = "Вот: ```java\npublic class Main {}\n```\n";
+        List<CodeFenceParser.CodeBlock> blocks = new ArrayList<>();
+        CodeFenceParser parser = new CodeFenceParser(blocks::add);
+        for (char c : text.toCharArray()) {
+            parser.feed(String.valueOf(c));
+        }
+
+        assertFalse(parser.finish());
+        assertEquals(parse(text).blocks(), blocks);
+    }
+
+    @Test
+    void reportsUnterminatedBlockWithoutEmittingIt() throws IOException {
+        Parsed parsed = parse("```java\nclass A {}\n```\n```yaml\nmain: a.Main\n");
+
+        assertTrue(parsed.unterminated());
+        assertEquals(1, parsed.blocks().size());
+        assertEquals("A", parsed.blocks().get(0).typeName());
+    }
+
+    @Test
+    void reportsUnterminatedInfoString() throws IOException {
+        assertTrue(parse("Текст\n```java").unterminated());
+    }
+
+    @Test
+    void lastLineWithoutNewlineClosesBlock() throws IOException {
+        Parsed parsed = parse("```properties\nkey=value\n```");
+
+        assertFalse(parsed.unterminated());
+        assertEquals("properties", parsed.blocks().get(0).language());
+        assertEquals("key=value", parsed.blocks().get(0).code());
+    }
+
+    @Test
+    void readerGivesSameBlocksAsString() throws IOException {
+        String text = "```xml\n<project/>\n```\n";
+        List<CodeFenceParser.CodeBlock> blocks = new ArrayList<>();
+
+        assertFalse(CodeFenceParser.parse(new StringReader(text), blocks::add));
+        assertEquals(parse(text).blocks(), blocks);
+    }
+
+    @Test
+    void guessesLanguageOfUntaggedBlock() throws IOException {
+        Parsed parsed = parse("```\n<?xml version=\"1.0\"?>\n<project/>\n```\n```\nmain: a.Main\nname: X\n```\n");
+
+        assertEquals("xml", parsed.blocks().get(0).language());
+        assertEquals("yaml", parsed.blocks().get(1).language());
+        assertNull(parsed.blocks().get(1).typeName());
+    }
+
+    @Test
+    void normalizesLanguageTags() {
+        assertEquals("java", CodeFenceParser.normalizeLanguage("Java17"));
+        assertEquals("javascript", CodeFenceParser.normalizeLanguage("javascript"));
+        assertEquals("yaml", CodeFenceParser.normalizeLanguage("yml"));
+        assertEquals("xml", CodeFenceParser.normalizeLanguage("pom"));
+        assertEquals("properties", CodeFenceParser.normalizeLanguage("ini"));
+    }
+}
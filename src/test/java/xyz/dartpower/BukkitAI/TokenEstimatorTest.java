@@ -0,0 +1,104 @@
+package xyz.dartpower.BukkitAI;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TokenEstimatorTest {
+
+    @ParameterizedTest(name = "{0} -> {1}")
+    @CsvSource({
+            // "gpt-4" — только сама gpt-4 и её снимки, но не gpt-4o и не gpt-4.x
+            "gpt-4, gpt-4",
+            "gpt-4-0613, gpt-4",
+            "gpt-4-32k, gpt-4",
+            "gpt-4-turbo-preview, gpt-4-turbo",
+            "gpt-4o, gpt-4o",
+            "gpt-4o-mini, gpt-4o",
+            "chatgpt-4o-latest, chatgpt-4o",
+            "gpt-4.1-mini, gpt-4.1",
+            "gpt-4.5-preview, gpt-4.5",
+            "gpt-5, gpt-5",
+            "gpt-5-mini, gpt-5",
+            "gpt-5.1, gpt-5.",
+            "gpt-3.5-turbo-16k, gpt-3.5",
+            "o1-preview, o1",
+            "o3-mini, o3",
+            // "llama-3." охватывает подверсии, "llama-3" — только саму llama-3
+            "llama-3-8b-instruct, llama-3",
+            "llama-3.1-70b-instruct, llama-3.",
+            "llama-3.3-70b, llama-3.",
+            "llama-2-13b-chat, llama-2",
+            // За именем из букв может сразу идти версия
+            "qwen2.5-coder-7b-instruct, qwen",
+            "qwen3-32b, qwen",
+            "mixtral-8x7b-instruct, mixtral",
+            "mistral-large-latest, mistral",
+            "deepseek-r1, deepseek",
+            "claude-3-5-sonnet, claude",
+            "gemini-2.5-pro, gemini",
+            // Имена OpenRouter с префиксом поставщика
+            "openai/gpt-4o-mini, gpt-4o",
+            "openai/gpt-4, gpt-4",
+            "meta-llama/llama-3.1-8b-instruct, llama-3.",
+            "mistralai/mixtral-8x22b-instruct, mixtral",
+            "qwen/qwen-2.5-coder-32b-instruct, qwen",
+            "anthropic/claude-3.5-sonnet, claude",
+            "deepseek/deepseek-chat, deepseek",
+            // Регистр не важен
+            "GPT-4O, gpt-4o",
+    })
+    void matchesFamilyByWholeNamePart(String model, String family) {
+        assertEquals(family, TokenEstimator.Family.of(model).name());
+    }
+
+    @ParameterizedTest(name = "[{index}] {0}")
+    @CsvSource({
+            "qwenlong",
+            "gpt-40",
+            "mistralai-experimental",
+            "my-local-model",
+            "''",
+    })
+    void unknownModelsFallBackToDefault(String model) {
+        TokenEstimator.Family family = TokenEstimator.Family.of(model);
+
+        assertFalse(family.known());
+        assertEquals(8_192, family.contextWindow());
+        assertEquals(-1, family.maxOutput());
+    }
+
+    @Test
+    void nullModelIsUnknown() {
+        assertFalse(TokenEstimator.Family.of(null).known());
+    }
+
+    @Test
+    void knownFamiliesAreKnown() {
+        assertTrue(TokenEstimator.Family.of("gpt-4o").known());
+        assertEquals("max_completion_tokens", TokenEstimator.Family.of("o3-mini").maxTokensField());
+        assertEquals("max_completion_tokens", TokenEstimator.Family.of("gpt-5-mini").maxTokensField());
+        assertEquals("max_tokens", TokenEstimator.Family.of("gpt-4.1").maxTokensField());
+    }
+
+    @Test
+    void estimateCountsServiceTokensPerMessage() {
+        ChatRequest empty = new ChatRequest("test", "", List.of(new ChatRequest.Message("user", "")), false);
+
+        // 3 токена на начало ответа и 4 на сообщение
+        assertEquals(7, TokenEstimator.estimate(empty, "test-estimate-model"));
+    }
+
+    @Test
+    void cyrillicCostsMoreTokensThanLatin() {
+        String model = "test-estimate-model";
+
+        assertTrue(TokenEstimator.estimate("проверка", model) > TokenEstimator.estimate("checking", model));
+    }
+}